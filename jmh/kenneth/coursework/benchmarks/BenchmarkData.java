@@ -0,0 +1,153 @@
+package kenneth.coursework.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The kinds of input the benchmarks are run over. Every data set is generated from a fixed seed, so that the
+ * results of different runs and different machines can be compared.
+ */
+public enum BenchmarkData {
+    /**
+     * English-like prose, with words picked from a small vocabulary following a Zipf distribution.
+     */
+    TEXT {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            final var output = new Output(bytes);
+            var wordsInSentence = 0;
+
+            while (output.hasRemaining()) {
+                final var word = WORDS[zipf(random, WORDS.length)];
+                output.append(wordsInSentence == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+
+                wordsInSentence++;
+                if (wordsInSentence > 6 && random.nextInt(8) == 0) {
+                    output.append(random.nextInt(6) == 0 ? ".\n" : ". ");
+                    wordsInSentence = 0;
+                } else {
+                    output.append(random.nextInt(12) == 0 ? ", " : " ");
+                }
+            }
+        }
+    },
+
+    /**
+     * Application log lines, which repeat a lot of structure with a few varying fields.
+     */
+    LOGS {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            final var output = new Output(bytes);
+            var time = 1_600_000_000_000L;
+
+            while (output.hasRemaining()) {
+                time += random.nextInt(50);
+                output.append(String.format("%d %-5s [worker-%d] kenneth.coursework.%s - %s /api/items/%d %d %dms\n",
+                        time,
+                        LEVELS[zipf(random, LEVELS.length)],
+                        random.nextInt(16),
+                        LOGGERS[random.nextInt(LOGGERS.length)],
+                        METHODS[zipf(random, METHODS.length)],
+                        random.nextInt(100_000),
+                        STATUSES[zipf(random, STATUSES.length)],
+                        random.nextInt(2_000)));
+            }
+        }
+    },
+
+    /**
+     * Uniformly random bytes, which cannot be compressed.
+     */
+    RANDOM {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            random.nextBytes(bytes);
+        }
+    },
+
+    /**
+     * Binary data where a few bytes are far more frequent than the rest, which produces long codes.
+     */
+    SKEWED {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            for (var i = 0; i < bytes.length; i++) {
+                // geometric distribution, so that the frequency of every byte is half of the previous one
+                bytes[i] = (byte) Math.min(255, Long.numberOfTrailingZeros(random.nextLong() | Long.MIN_VALUE));
+            }
+        }
+    },
+
+    /**
+     * A single byte repeated over the whole input.
+     */
+    SINGLE_SYMBOL {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            Arrays.fill(bytes, (byte) 'a');
+        }
+    };
+
+    private static final long SEED = 0x5EED_0F_4AFF_AA11L;
+
+    private static final String[] WORDS = ("the of and to a in that is was he for it with as his on be at by had not are but "
+            + "from or have an they which one you were her all she there would their we him been has when who will more no "
+            + "if out so said what up its about into than them can only other new some could time these two may then do "
+            + "first any my now such like our over man me even most made after also did many before must through back "
+            + "years where much your way well down should because each just those people how too little state good very "
+            + "make world still own see men work long get here between both life being under never day same another know "
+            + "while last might us great old year off come since against go came right used take three thought speech "
+            + "language origin mind nature children words sound").split(" ");
+
+    private static final String[] LEVELS = {"INFO", "DEBUG", "WARN", "ERROR", "TRACE"};
+    private static final String[] LOGGERS = {"RequestHandler", "Repository", "CacheService", "Scheduler", "AuthFilter"};
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH"};
+    private static final int[] STATUSES = {200, 201, 204, 304, 400, 404, 500};
+
+    /**
+     * Generates the data set.
+     *
+     * @param size The number of bytes to generate.
+     * @return The bytes of the data set. Always the same for the same size.
+     */
+    public byte[] generate(int size) {
+        final var bytes = new byte[size];
+        fill(bytes, new Random(SEED));
+        return bytes;
+    }
+
+    abstract void fill(byte[] bytes, Random random);
+
+    /**
+     * @return A random index between 0 and count, where index i is roughly (i + 1) times less likely than index 0.
+     */
+    private static int zipf(Random random, int count) {
+        final var index = (int) Math.floor(Math.pow(count + 1, random.nextDouble())) - 1;
+        return Math.min(index, count - 1);
+    }
+
+    /**
+     * Appends text to an array until it is full.
+     */
+    private static class Output {
+        private final byte[] bytes;
+        private int position = 0;
+
+        Output(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean hasRemaining() {
+            return position < bytes.length;
+        }
+
+        void append(String text) {
+            final var textBytes = text.getBytes(StandardCharsets.US_ASCII);
+            final var length = Math.min(textBytes.length, bytes.length - position);
+            System.arraycopy(textBytes, 0, bytes, position, length);
+            position += length;
+        }
+    }
+}
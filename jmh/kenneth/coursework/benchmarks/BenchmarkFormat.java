@@ -0,0 +1,43 @@
+package kenneth.coursework.benchmarks;
+
+import kenneth.coursework.compression.HuffmanCompressor;
+
+/**
+ * The formats of compressed files the benchmarks are run over.
+ */
+public enum BenchmarkFormat {
+    /**
+     * Blocks of the default size, encoded with canonical codes.
+     */
+    BLOCKS,
+
+    /**
+     * A single stream encoded with canonical codes.
+     */
+    CANONICAL,
+
+    /**
+     * A single stream with a serialized tree.
+     */
+    LEGACY;
+
+    /**
+     * Creates a compressor that writes files in this format.
+     *
+     * @param parallelism The number of threads used to compress blocks.
+     * @return The configured compressor.
+     */
+    HuffmanCompressor newCompressor(int parallelism) {
+        final var compressor = new HuffmanCompressor();
+        compressor.setParallelism(parallelism);
+
+        if (this != BLOCKS) {
+            compressor.setBlockSize(0);
+        }
+        if (this == LEGACY) {
+            compressor.setUseCanonicalCodes(false);
+        }
+
+        return compressor;
+    }
+}
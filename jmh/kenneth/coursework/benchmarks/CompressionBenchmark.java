@@ -0,0 +1,74 @@
+package kenneth.coursework.benchmarks;
+
+import kenneth.coursework.compression.HuffmanDecompressor;
+import kenneth.coursework.exceptions.IncorrectFormatException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures compressing and decompressing files in every format.
+ * <p>
+ * Files are written into a temporary directory, so the numbers include the cost of going through the file system.
+ * The directory should be on a local disk with enough free memory for the page cache to hold the files.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    @Param({"TEXT", "LOGS", "RANDOM", "SKEWED", "SINGLE_SYMBOL"})
+    public BenchmarkData data;
+
+    @Param({"BLOCKS", "CANONICAL", "LEGACY"})
+    public BenchmarkFormat format;
+
+    @Param({"4"})
+    public int sizeMiB;
+
+    @Param({"1"})
+    public int parallelism;
+
+    private File directory;
+    private File inputFile;
+    private File compressedFile;
+    private File outputFile;
+
+    @Setup
+    public void setUp() throws IOException, IncorrectFormatException {
+        directory = Files.createTempDirectory("huffman-benchmark").toFile();
+        inputFile = new File(directory, "input");
+        outputFile = new File(directory, "output");
+        Files.write(inputFile.toPath(), data.generate(sizeMiB << 20));
+
+        format.newCompressor(parallelism).compress(inputFile, new File(directory, "compressed"), null, true);
+        compressedFile = new File(directory, "compressed.huff");
+    }
+
+    @TearDown
+    public void tearDown() {
+        final var files = directory.listFiles();
+        if (files != null) {
+            for (final var file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public void compress(Throughput throughput) throws IOException, IncorrectFormatException {
+        format.newCompressor(parallelism).compress(inputFile, outputFile, null, true);
+        throughput.megabytes += sizeMiB;
+    }
+
+    @Benchmark
+    public void decompress(Throughput throughput) throws IOException, IncorrectFormatException {
+        final var decompressor = new HuffmanDecompressor();
+        decompressor.setParallelism(parallelism);
+        decompressor.decompress(compressedFile, outputFile, true);
+        throughput.megabytes += sizeMiB;
+    }
+}
@@ -0,0 +1,38 @@
+package kenneth.coursework.benchmarks;
+
+import kenneth.coursework.compression.HuffmanTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures counting the bytes of an input and building its huffman tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class HuffmanTreeBenchmark {
+    @Param({"TEXT", "LOGS", "RANDOM", "SKEWED", "SINGLE_SYMBOL"})
+    public BenchmarkData data;
+
+    @Param({"4"})
+    public int sizeMiB;
+
+    private byte[] input;
+
+    @Setup
+    public void setUp() {
+        input = data.generate(sizeMiB << 20);
+    }
+
+    @Benchmark
+    public HuffmanTree build(Throughput throughput) throws IOException {
+        final var tree = new HuffmanTree(new ByteArrayInputStream(input));
+        tree.build();
+
+        throughput.megabytes += sizeMiB;
+        return tree;
+    }
+}
@@ -0,0 +1,60 @@
+package kenneth.coursework.benchmarks;
+
+import kenneth.coursework.compression.HuffmanTree;
+import kenneth.coursework.compression.HuffmanTreeSerializer;
+import kenneth.coursework.exceptions.IncorrectFormatException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the tree stored at the start of a compressed file, which is done whenever a file is decompressed
+ * or used as the tree source of another file. The score is the number of trees read per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+    @Param({"TEXT", "LOGS", "RANDOM", "SKEWED", "SINGLE_SYMBOL"})
+    public BenchmarkData data;
+
+    @Param({"BLOCKS", "CANONICAL", "LEGACY"})
+    public BenchmarkFormat format;
+
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() throws IOException, IncorrectFormatException {
+        final var output = new ByteArrayOutputStream();
+        final var input = new ByteArrayInputStream(data.generate(1 << 20));
+
+        if (format == BenchmarkFormat.BLOCKS) {
+            format.newCompressor(1).compress(input, output, null);
+        } else {
+            // the single stream formats can only be written into files
+            final var inputFile = File.createTempFile("huffman-benchmark", "");
+            final var compressedFile = new File(inputFile.getPath() + ".huff");
+            try {
+                Files.write(inputFile.toPath(), input.readAllBytes());
+                format.newCompressor(1).compress(inputFile, inputFile, null, true);
+                output.write(Files.readAllBytes(compressedFile.toPath()));
+            } finally {
+                inputFile.delete();
+                compressedFile.delete();
+            }
+        }
+
+        compressed = output.toByteArray();
+    }
+
+    @Benchmark
+    public HuffmanTree deserializeFromStream() throws IOException, IncorrectFormatException {
+        return HuffmanTreeSerializer.deserializeFromStream(new DataInputStream(new ByteArrayInputStream(compressed)));
+    }
+}
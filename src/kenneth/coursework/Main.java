@@ -1,9 +1,15 @@
 package kenneth.coursework;
 
+import kenneth.coursework.cli.CommandLine;
 import kenneth.coursework.ui.MainApplication;
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // arguments run the command line interface, which never loads JavaFX
+            System.exit(CommandLine.run(args));
+        }
+
         MainApplication.main(args);
     }
 }
@@ -0,0 +1,555 @@
+package kenneth.coursework.cli;
+
+import kenneth.coursework.compression.BatchProcessor;
+import kenneth.coursework.compression.CompressedFileInfo;
+import kenneth.coursework.compression.DictionaryTrainer;
+import kenneth.coursework.compression.HuffmanCompressor;
+import kenneth.coursework.compression.HuffmanDecompressor;
+import kenneth.coursework.compression.HuffmanDictionary;
+import kenneth.coursework.compression.HuffmanInputStream;
+import kenneth.coursework.exceptions.ChecksumMismatchException;
+import kenneth.coursework.exceptions.IncorrectFormatException;
+import kenneth.coursework.exceptions.UnknownDictionaryException;
+
+import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A command line interface to compress and decompress files without a display.
+ * <p>
+ * Nothing in this package depends on JavaFX, so the interface starts as quickly as the JVM does.
+ */
+public class CommandLine {
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_FAILURE = 1;
+    static final int EXIT_USAGE = 2;
+
+    private static final String NAME = "huffman";
+    private static final String EXTENSION = ".huff";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String USAGE = "Usage: " + NAME + " <command> [options] [files...]\n"
+            + "\n"
+            + "Commands:\n"
+            + "  compress      Compress every file into <file>" + EXTENSION + "\n"
+            + "  decompress    Decompress every " + EXTENSION + " file into the file without the extension\n"
+            + "  test          Check that every file can be decompressed, without writing anything\n"
+            + "  stat          Print the format, sizes and codes of every compressed file\n"
+            + "  train         Train a dictionary from sample files, and write it into the file given by --dict\n"
+            + "\n"
+            + "Files can be directories or glob patterns such as 'logs/**.log'. Use - or no files at all to read from\n"
+            + "the standard input and write to the standard output.\n"
+            + "\n"
+            + "Options:\n"
+            + "  -r, --recursive             Process the files in directories and their subdirectories\n"
+            + "  -o, --output <dir>          Write output files into the given directory instead of next to the inputs\n"
+            + "  -f, --force                 Overwrite output files that already exist\n"
+            + "  -c, --stdout                Write the output of a single file to the standard output\n"
+            + "  -t, --threads <n>           Number of threads used for a single file, or number of files processed at\n"
+            + "                              the same time when there are several (default: number of processors)\n"
+            + "      --tree <file>           Compress with the tree stored in the given compressed file\n"
+            + "      --dict <file>           Compress with the given dictionary, or load it to decompress files that\n"
+            + "                              were compressed with it\n"
+            + "      --block-size <bytes>    Size of compressed blocks, such as 1M, up to 128M. 0 writes a single\n"
+            + "                              stream\n"
+            + "      --checkpoint <bytes>    Record a checkpoint in the index every given number of bytes, such as 64K,\n"
+            + "                              so that ranges can be read without decompressing whole blocks\n"
+            + "      --adaptive              Compress in a single pass with codes that adapt to the input, which lets\n"
+            + "                              a stream such as 'tail -f' be decompressed while it is being written\n"
+            + "      --context               Encode every byte with the codes of the byte before it, which usually\n"
+            + "                              compresses text further\n"
+            + "      --block-codes           Give every block codes of its own, for inputs that mix different kinds\n"
+            + "                              of content\n"
+            + "      --checksum              Store a CRC32C of every block and of the whole file, which decompress\n"
+            + "                              and test check to detect corrupted files\n"
+            + "      --max-code-length <n>   Maximum length of a code in bits\n"
+            + "  -q, --quiet                 Do not print the size and throughput of every file\n"
+            + "  -h, --help                  Print this help\n";
+
+    private final Options options;
+    private final InputStream in;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Summary summary;
+    private final HuffmanCompressor compressor = new HuffmanCompressor();
+    private final HuffmanDecompressor decompressor = new HuffmanDecompressor();
+    private final DictionaryTrainer trainer = new DictionaryTrainer();
+    private HuffmanDictionary dictionary = null;
+    private int failureCount = 0;
+
+    private CommandLine(Options options, InputStream in, PrintStream out, PrintStream err) {
+        this.options = options;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+
+        // the summary never goes to the standard output, which may be the compressed data itself
+        summary = new Summary(err, !options.isQuiet, options.command == Options.Command.COMPRESS);
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the command line interface with the standard streams.
+     *
+     * @param args The arguments, starting with the command.
+     * @return The exit code: 0 on success, 1 if any file fails to be processed, 2 if the arguments are invalid.
+     */
+    public static int run(String[] args) {
+        return run(args, System.in, System.out, System.err);
+    }
+
+    static int run(String[] args, InputStream in, PrintStream out, PrintStream err) {
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException ex) {
+            return usageError(err, ex.getMessage());
+        }
+
+        if (options.isHelp) {
+            out.print(USAGE);
+            return EXIT_SUCCESS;
+        }
+
+        final var commandLine = new CommandLine(options, in, out, err);
+        try {
+            commandLine.configure();
+        } catch (IllegalArgumentException ex) {
+            return usageError(err, ex.getMessage());
+        }
+
+        return commandLine.execute();
+    }
+
+    private static int usageError(PrintStream err, String message) {
+        err.println(NAME + ": " + message);
+        err.println("Try '" + NAME + " --help' for more information.");
+        return EXIT_USAGE;
+    }
+
+    private void configure() {
+        if (options.dictionary != null && options.command != Options.Command.TRAIN) {
+            // files compressed with the dictionary can be decompressed once it is loaded
+            try {
+                dictionary = HuffmanDictionary.read(options.dictionary);
+            } catch (IOException | IncorrectFormatException ex) {
+                throw new IllegalArgumentException("Cannot read the dictionary '" + options.dictionary + "': " + ex.getMessage());
+            }
+        }
+
+        if (options.maxCodeLength > 0) {
+            trainer.setMaxCodeLength(options.maxCodeLength);
+        }
+
+        compressor.setParallelism(options.threads);
+        decompressor.setParallelism(options.threads);
+        configure(compressor);
+
+        if (options.operands.isEmpty()) {
+            options.operands.add(Options.STDIN);
+        }
+
+        if (options.useStdout && options.operands.size() > 1) {
+            throw new IllegalArgumentException("Option '--stdout' can only be used with a single file.");
+        }
+
+        if (options.outputDirectory != null && !options.outputDirectory.isDirectory() && !options.outputDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the output directory '" + options.outputDirectory + "'.");
+        }
+    }
+
+    private void configure(HuffmanCompressor compressor) {
+        if (options.blockSize >= 0) {
+            compressor.setBlockSize(options.blockSize);
+        }
+        if (options.maxCodeLength > 0) {
+            compressor.setMaxCodeLength(options.maxCodeLength);
+        }
+        compressor.setCheckpointInterval(options.checkpointInterval);
+        compressor.setDictionary(dictionary);
+        compressor.setUseAdaptiveCodes(options.useAdaptiveCodes);
+        compressor.setUseContextCodes(options.useContextCodes);
+        compressor.setUseBlockCodes(options.useBlockCodes);
+        compressor.setUseChecksums(options.useChecksums);
+    }
+
+    private int execute() {
+        final var isCompressing = options.command == Options.Command.COMPRESS || options.command == Options.Command.TRAIN;
+        final var inputFiles = new InputFiles(
+                options.isRecursive,
+                // only files with the matching extension are picked up from directories and globs
+                path -> path.toString().endsWith(EXTENSION) != isCompressing,
+                this::reportError
+        );
+
+        // consecutive files are expanded together, so that files given one by one, such as by a glob expanded by
+        // the shell, are processed in the same batch
+        final var fileOperands = new ArrayList<String>();
+        for (final var operand : options.operands) {
+            if (!operand.equals(Options.STDIN)) {
+                fileOperands.add(operand);
+                continue;
+            }
+
+            processFiles(inputFiles.expand(fileOperands));
+            fileOperands.clear();
+            processStandardInput();
+        }
+        processFiles(inputFiles.expand(fileOperands));
+
+        if (options.command == Options.Command.TRAIN) {
+            writeDictionary();
+        }
+
+        summary.printTotal();
+
+        return failureCount == 0 ? EXIT_SUCCESS : EXIT_FAILURE;
+    }
+
+    private void processFiles(List<File> files) {
+        if (files.size() > 1 && options.threads > 1 && !options.useStdout
+                && (options.command == Options.Command.COMPRESS || options.command == Options.Command.DECOMPRESS)) {
+            processBatch(files);
+            return;
+        }
+
+        for (final var file : files) {
+            processFile(file);
+        }
+    }
+
+    private void processFile(File file) {
+        try {
+            switch (options.command) {
+                case COMPRESS:
+                    compress(file);
+                    break;
+                case DECOMPRESS:
+                    decompress(file);
+                    break;
+                case TEST:
+                    test(file);
+                    break;
+                case STAT:
+                    stat(file);
+                    break;
+                case TRAIN:
+                    trainer.addSample(file);
+                    break;
+            }
+        } catch (IOException | IncorrectFormatException ex) {
+            reportError(file.getPath(), ex);
+        }
+    }
+
+    /**
+     * Compresses or decompresses several files at the same time, a file per thread. Most files in a directory are
+     * small, and take longer to open and create than to encode, so they gain little from being split into blocks
+     * that are encoded in parallel.
+     */
+    private void processBatch(List<File> files) {
+        final var start = System.nanoTime();
+
+        try (final var batch = new BatchProcessor(options.threads, options.threads * 4)) {
+            configure(batch.getCompressor());
+
+            for (final var file : files) {
+                final CompletableFuture<BatchProcessor.Result> result;
+
+                if (options.command == Options.Command.COMPRESS) {
+                    result = batch.compress(file, outputFile(file, file.getName()), options.treeSource, options.shouldOverwrite);
+                } else {
+                    final var dest = decompressedFile(file);
+                    if (dest == null) continue;
+                    result = batch.decompress(file, dest, options.shouldOverwrite);
+                }
+
+                result.whenComplete((completed, ex) -> {
+                    if (ex != null) {
+                        reportError(file.getPath(), ex);
+                    } else if (options.command == Options.Command.COMPRESS) {
+                        summary.addConcurrent(file.getPath(), completed.getOutputSize(), completed.getInputSize(), completed.getNanos());
+                    } else {
+                        summary.addConcurrent(file.getPath(), completed.getInputSize(), completed.getOutputSize(), completed.getNanos());
+                    }
+                });
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            reportError("interrupted");
+        }
+
+        // files are processed at the same time, so the total throughput is measured against the elapsed time
+        summary.addTime(System.nanoTime() - start);
+    }
+
+    private void processStandardInput() {
+        try {
+            switch (options.command) {
+                case COMPRESS:
+                    compressStream(in, Options.STDIN);
+                    break;
+                case DECOMPRESS:
+                    decompressStream(in, Options.STDIN);
+                    break;
+                case TEST:
+                    test(in, Options.STDIN);
+                    break;
+                case STAT:
+                    reportError("stat cannot read the standard input");
+                    break;
+                case TRAIN:
+                    trainer.addSample(in);
+                    break;
+            }
+        } catch (IOException | IncorrectFormatException ex) {
+            reportError("standard input", ex);
+        }
+    }
+
+    private void compress(File file) throws IOException, IncorrectFormatException {
+        if (options.useStdout) {
+            try (final var input = new FileInputStream(file)) {
+                compressStream(input, file.getPath());
+            }
+            return;
+        }
+
+        final var dest = outputFile(file, file.getName());
+        final var start = System.nanoTime();
+        compressor.compress(file, dest, options.treeSource, options.shouldOverwrite);
+        final var nanos = System.nanoTime() - start;
+
+        summary.add(file.getPath(), new File(dest.getPath() + EXTENSION).length(), file.length(), nanos);
+    }
+
+    private void compressStream(InputStream input, String name) throws IOException, IncorrectFormatException {
+        final var countingInput = new CountingInputStream(input);
+        final var countingOutput = new CountingOutputStream(out);
+
+        final var start = System.nanoTime();
+        compressor.compress(countingInput, countingOutput, options.treeSource);
+        countingOutput.flush();
+        final var nanos = System.nanoTime() - start;
+
+        summary.add(name, countingOutput.count, countingInput.count, nanos);
+    }
+
+    private void decompress(File file) throws IOException, IncorrectFormatException {
+        final var dest = decompressedFile(file);
+        if (dest == null) return;
+
+        if (options.useStdout) {
+            try (final var input = new BufferedInputStream(new FileInputStream(file))) {
+                decompressStream(input, file.getPath());
+            }
+            return;
+        }
+
+        final var start = System.nanoTime();
+        decompressor.decompress(file, dest, options.shouldOverwrite);
+        final var nanos = System.nanoTime() - start;
+
+        summary.add(file.getPath(), file.length(), dest.length(), nanos);
+    }
+
+    private void decompressStream(InputStream input, String name) throws IOException {
+        final var countingInput = new CountingInputStream(input);
+        final var countingOutput = new CountingOutputStream(out);
+
+        final var start = System.nanoTime();
+        new HuffmanInputStream(countingInput).transferTo(countingOutput);
+        countingOutput.flush();
+        // the block index after the blocks is not needed to decode a stream, but is still part of the input
+        countingInput.transferTo(OutputStream.nullOutputStream());
+        final var nanos = System.nanoTime() - start;
+
+        summary.add(name, countingInput.count, countingOutput.count, nanos);
+    }
+
+    private void test(File file) throws IOException, IncorrectFormatException {
+        final var start = System.nanoTime();
+        final var decodedBytes = decompressor.verify(file);
+        final var nanos = System.nanoTime() - start;
+
+        summary.add(file.getPath() + " OK", file.length(), decodedBytes, nanos);
+    }
+
+    private void test(InputStream input, String name) throws IOException {
+        final var countingInput = new CountingInputStream(input);
+        final var buffer = new byte[BUFFER_SIZE];
+        var decodedBytes = 0L;
+
+        final var start = System.nanoTime();
+        try (final var huffmanInput = new HuffmanInputStream(countingInput)) {
+            for (var read = huffmanInput.read(buffer); read >= 0; read = huffmanInput.read(buffer)) {
+                decodedBytes += read;
+            }
+            countingInput.transferTo(OutputStream.nullOutputStream());
+        }
+        final var nanos = System.nanoTime() - start;
+
+        summary.add(name + " OK", countingInput.count, decodedBytes, nanos);
+    }
+
+    private void stat(File file) throws IOException, IncorrectFormatException {
+        final var info = CompressedFileInfo.read(file);
+        final var ratio = info.getOriginalSize() == 0 ? 100.0 : 100.0 * info.getCompressedSize() / info.getOriginalSize();
+
+        final var line = new StringBuilder()
+                .append(file.getPath()).append(": ")
+                .append(info.getFormat()).append(", ")
+                .append(info.getOriginalSize()).append(" -> ").append(info.getCompressedSize())
+                .append(String.format(" bytes (%.2f%%)", ratio));
+
+        if (info.getBlockSize() > 0) {
+            line.append(", ").append(info.getBlockCount()).append(" blocks of up to ").append(info.getBlockSize()).append(" bytes")
+                    .append(info.hasIndex() ? ", indexed" : ", not indexed");
+        }
+
+        if (info.getCheckpointInterval() > 0) {
+            line.append(", checkpoints every ").append(info.getCheckpointInterval()).append(" bytes");
+        }
+
+        if (info.hasChecksums()) {
+            line.append(", CRC32C checksums");
+        }
+
+        if (info.hasDictionary()) {
+            line.append(String.format(", dictionary %08x", info.getDictionaryId()));
+        }
+
+        if (info.getContextTableCount() > 0) {
+            line.append(", ").append(info.getContextTableCount()).append(" context tables");
+        }
+
+        if (info.getBlockCodeCount() > 0) {
+            line.append(", ").append(info.getBlockCodeCount()).append(" block tables");
+        }
+
+        if (info.hasCodeLengths()) {
+            line.append(", ").append(info.getSymbolCount()).append(" symbols")
+                    .append(", codes of up to ").append(info.getMaxCodeLength()).append(" bits");
+        }
+
+        out.println(line);
+    }
+
+    private void writeDictionary() {
+        if (trainer.getSampleCount() == 0) {
+            reportError("no samples to train the dictionary from");
+            return;
+        }
+
+        try {
+            final var trained = trainer.train();
+            trained.write(options.dictionary, options.shouldOverwrite);
+
+            if (!options.isQuiet) {
+                err.printf("%s: dictionary %08x trained from %d samples%n", options.dictionary, trained.getId(), trainer.getSampleCount());
+            }
+        } catch (IOException ex) {
+            reportError(options.dictionary.getPath(), ex);
+        }
+    }
+
+    /**
+     * @return The file the given compressed file is decompressed into, or null if the file does not have the extension
+     * of compressed files.
+     */
+    private File decompressedFile(File file) {
+        final var name = file.getName();
+        if (!name.endsWith(EXTENSION) || name.length() == EXTENSION.length()) {
+            reportError(file + ": does not end with " + EXTENSION + ", ignored");
+            return null;
+        }
+
+        return outputFile(file, name.substring(0, name.length() - EXTENSION.length()));
+    }
+
+    /**
+     * @return The file with the given name in the output directory, or next to the input if there is none.
+     */
+    private File outputFile(File input, String name) {
+        final var directory = options.outputDirectory != null ? options.outputDirectory : input.getAbsoluteFile().getParentFile();
+        return new File(directory, name);
+    }
+
+    private void reportError(String name, Throwable ex) {
+        // streams can only throw IOExceptions, so format errors that come from them are wrapped in one
+        if (ex instanceof IOException && ex.getCause() instanceof IncorrectFormatException) {
+            ex = ex.getCause();
+        }
+
+        if (ex instanceof UnknownDictionaryException) {
+            reportError(String.format("%s: compressed with dictionary %08x, use --dict to load it", name,
+                    ((UnknownDictionaryException) ex).getDictionaryId()));
+        } else if (ex instanceof ChecksumMismatchException) {
+            final var offset = ((ChecksumMismatchException) ex).getOffset();
+            reportError(name + ": corrupted, " + (offset >= 0
+                    ? "the block at offset " + offset + " does not match its checksum"
+                    : "the content does not match its checksum"));
+        } else if (ex instanceof IncorrectFormatException) {
+            reportError(name + ": not in the correct format");
+        } else if (ex instanceof EOFException) {
+            reportError(name + ": unexpected end of file");
+        } else if (ex instanceof FileAlreadyExistsException) {
+            reportError(((FileAlreadyExistsException) ex).getFile() + ": already exists, use --force to overwrite it");
+        } else {
+            reportError(name + ": " + ex.getMessage());
+        }
+    }
+
+    private synchronized void reportError(String message) {
+        failureCount++;
+        err.println(NAME + ": " + message);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final var read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
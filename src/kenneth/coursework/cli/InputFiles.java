@@ -0,0 +1,141 @@
+package kenneth.coursework.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Expands the operands given to the command line interface into the files to be processed.
+ * <p>
+ * Operands can be files, directories or glob patterns such as {@code logs/**.log}. Globs are usually expanded by the
+ * shell, but they are also expanded here when they are quoted, or when the shell does not expand them.
+ * Directories are only searched when the recursive option is given.
+ */
+class InputFiles {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final boolean isRecursive;
+    private final Predicate<Path> isIncluded;
+    private final Consumer<String> onError;
+
+    /**
+     * @param isRecursive Whether directories are searched for files.
+     * @param isIncluded  Whether a file found in a directory or by a glob should be processed.
+     *                    Files given directly are always processed.
+     * @param onError     Called with a message for every operand that cannot be expanded.
+     */
+    InputFiles(boolean isRecursive, Predicate<Path> isIncluded, Consumer<String> onError) {
+        this.isRecursive = isRecursive;
+        this.isIncluded = isIncluded;
+        this.onError = onError;
+    }
+
+    /**
+     * @param operands The operands to be expanded.
+     * @return The files to be processed, in the order of the operands. Files found in the same directory or by the
+     * same glob are sorted by their paths.
+     */
+    List<File> expand(List<String> operands) {
+        final var files = new ArrayList<File>();
+
+        for (final var operand : operands) {
+            try {
+                final var file = new File(operand);
+
+                // files whose names contain glob characters are still taken as they are
+                if (!file.exists() && isGlob(operand)) {
+                    files.addAll(expandGlob(operand));
+                    continue;
+                }
+
+                if (file.isDirectory()) {
+                    if (isRecursive) {
+                        files.addAll(walk(file.toPath()));
+                    } else {
+                        onError.accept(operand + ": is a directory, use --recursive to process the files in it");
+                    }
+                } else if (file.exists()) {
+                    files.add(file);
+                } else {
+                    onError.accept(operand + ": no such file or directory");
+                }
+            } catch (IOException | RuntimeException ex) {
+                onError.accept(operand + ": " + ex.getMessage());
+            }
+        }
+
+        return files;
+    }
+
+    private List<File> expandGlob(String pattern) throws IOException {
+        // the part of the pattern before the first glob character is the directory to search in
+        final var firstGlobCharacter = indexOfGlobCharacter(pattern);
+        final var lastSeparator = Math.max(pattern.lastIndexOf('/', firstGlobCharacter), pattern.lastIndexOf(File.separatorChar, firstGlobCharacter));
+        final var base = lastSeparator < 0 ? Paths.get(".") : Paths.get(pattern.substring(0, lastSeparator + 1));
+        final var relativePattern = pattern.substring(lastSeparator + 1);
+
+        // a pattern without ** only matches files at the depth of its path segments
+        final var maxDepth = relativePattern.contains("**") ? Integer.MAX_VALUE : relativePattern.split("[/\\\\]").length;
+        final var matcher = FileSystems.getDefault().getPathMatcher("glob:" + relativePattern);
+
+        final var files = new ArrayList<File>();
+        if (!Files.isDirectory(base)) {
+            onError.accept(pattern + ": no such file or directory");
+            return files;
+        }
+
+        try (final Stream<Path> paths = Files.walk(base, maxDepth)) {
+            final var matches = paths
+                    .filter(path -> !path.equals(base) && matcher.matches(base.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+
+            for (final var path : matches) {
+                if (Files.isDirectory(path)) {
+                    if (isRecursive) {
+                        files.addAll(walk(path));
+                    }
+                } else if (isIncluded.test(path)) {
+                    files.add(path.toFile());
+                }
+            }
+        }
+
+        if (files.isEmpty()) {
+            onError.accept(pattern + ": no files match the pattern");
+        }
+
+        return files;
+    }
+
+    private List<File> walk(Path directory) throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(isIncluded)
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isGlob(String operand) {
+        return indexOfGlobCharacter(operand) >= 0;
+    }
+
+    private static int indexOfGlobCharacter(String operand) {
+        for (var i = 0; i < operand.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(operand.charAt(i)) >= 0) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,282 @@
+package kenneth.coursework.cli;
+
+import kenneth.coursework.compression.HuffmanCompressor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The options and operands given to the command line interface.
+ */
+class Options {
+    enum Command {
+        COMPRESS,
+        DECOMPRESS,
+        TEST,
+        STAT,
+        TRAIN,
+    }
+
+    /**
+     * The operand that stands for the standard input.
+     */
+    static final String STDIN = "-";
+
+    Command command;
+    boolean isRecursive = false;
+    boolean shouldOverwrite = false;
+    boolean useStdout = false;
+    boolean isQuiet = false;
+    boolean isHelp = false;
+    boolean useAdaptiveCodes = false;
+    boolean useContextCodes = false;
+    boolean useBlockCodes = false;
+    boolean useChecksums = false;
+    File outputDirectory = null;
+    File treeSource = null;
+    File dictionary = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int blockSize = -1;
+    int checkpointInterval = 0;
+    int maxCodeLength = -1;
+    final List<String> operands = new ArrayList<>();
+
+    /**
+     * Parses the given arguments.
+     *
+     * @param args The arguments given to the program, starting with the command.
+     * @return The parsed options.
+     * @throws IllegalArgumentException When the arguments are invalid.
+     */
+    static Options parse(String[] args) {
+        final var options = new Options();
+        var i = 0;
+
+        if (args.length > 0 && (args[0].equals("-h") || args[0].equals("--help"))) {
+            options.isHelp = true;
+            return options;
+        }
+
+        if (args.length == 0) {
+            throw new IllegalArgumentException("Missing command.");
+        }
+
+        try {
+            options.command = Command.valueOf(args[i++].toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Unknown command '" + args[0] + "'.");
+        }
+
+        var hasOperandsOnly = false;
+        while (i < args.length) {
+            final var arg = args[i++];
+
+            if (hasOperandsOnly || arg.equals(STDIN) || !arg.startsWith("-")) {
+                options.operands.add(arg);
+                continue;
+            }
+
+            if (arg.equals("--")) {
+                hasOperandsOnly = true;
+                continue;
+            }
+
+            if (arg.startsWith("--")) {
+                // long options take their value either after '=' or as the next argument
+                final var separator = arg.indexOf('=');
+                final var name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+                final var inlineValue = separator < 0 ? null : arg.substring(separator + 1);
+
+                if (options.takesValue(name)) {
+                    final var value = inlineValue != null ? inlineValue : valueAt(args, i++, arg);
+                    options.setValue(name, value);
+                } else if (inlineValue == null) {
+                    options.setFlag(name);
+                } else {
+                    throw new IllegalArgumentException("Option '--" + name + "' does not take a value.");
+                }
+                continue;
+            }
+
+            // short options can be grouped, and the last one of a group can take the next argument as its value
+            for (var j = 1; j < arg.length(); j++) {
+                final var name = longName(arg.charAt(j));
+                if (options.takesValue(name)) {
+                    final var value = j + 1 < arg.length() ? arg.substring(j + 1) : valueAt(args, i++, arg);
+                    options.setValue(name, value);
+                    break;
+                }
+                options.setFlag(name);
+            }
+        }
+
+        if (options.treeSource != null && options.command != Command.COMPRESS) {
+            throw new IllegalArgumentException("Option '--tree' can only be used to compress files.");
+        }
+
+        if (options.treeSource != null && options.dictionary != null) {
+            throw new IllegalArgumentException("Options '--tree' and '--dict' cannot be used together.");
+        }
+
+        if (options.useAdaptiveCodes && (options.treeSource != null || options.dictionary != null)) {
+            throw new IllegalArgumentException("Option '--adaptive' cannot be used with '--tree' or '--dict'.");
+        }
+
+        if (options.useContextCodes && (options.treeSource != null || options.dictionary != null || options.useAdaptiveCodes)) {
+            throw new IllegalArgumentException("Option '--context' cannot be used with '--tree', '--dict' or '--adaptive'.");
+        }
+
+        if (options.useBlockCodes && (options.treeSource != null || options.dictionary != null || options.useAdaptiveCodes
+                || options.useContextCodes)) {
+            throw new IllegalArgumentException("Option '--block-codes' cannot be used with '--tree', '--dict', '--adaptive' or '--context'.");
+        }
+
+        if (options.command == Command.TRAIN && options.dictionary == null) {
+            throw new IllegalArgumentException("Command 'train' requires the dictionary file to be given with '--dict'.");
+        }
+
+        return options;
+    }
+
+    private static String valueAt(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Option '" + option + "' requires a value.");
+        }
+        return args[index];
+    }
+
+    private static String longName(char shortName) {
+        switch (shortName) {
+            case 'r':
+                return "recursive";
+            case 'f':
+                return "force";
+            case 'c':
+                return "stdout";
+            case 'q':
+                return "quiet";
+            case 'h':
+                return "help";
+            case 'o':
+                return "output";
+            case 't':
+                return "threads";
+            default:
+                throw new IllegalArgumentException("Unknown option '-" + shortName + "'.");
+        }
+    }
+
+    private boolean takesValue(String name) {
+        switch (name) {
+            case "output":
+            case "threads":
+            case "tree":
+            case "dict":
+            case "block-size":
+            case "checkpoint":
+            case "max-code-length":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void setFlag(String name) {
+        switch (name) {
+            case "recursive":
+                isRecursive = true;
+                break;
+            case "force":
+                shouldOverwrite = true;
+                break;
+            case "stdout":
+                useStdout = true;
+                break;
+            case "quiet":
+                isQuiet = true;
+                break;
+            case "help":
+                isHelp = true;
+                break;
+            case "adaptive":
+                useAdaptiveCodes = true;
+                break;
+            case "context":
+                useContextCodes = true;
+                break;
+            case "block-codes":
+                useBlockCodes = true;
+                break;
+            case "checksum":
+                useChecksums = true;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option '--" + name + "'.");
+        }
+    }
+
+    private void setValue(String name, String value) {
+        switch (name) {
+            case "output":
+                outputDirectory = new File(value);
+                break;
+            case "threads":
+                threads = parsePositiveInt(name, value);
+                break;
+            case "tree":
+                treeSource = new File(value);
+                break;
+            case "dict":
+                dictionary = new File(value);
+                break;
+            case "block-size":
+                blockSize = parseSize(name, value);
+                if (blockSize > HuffmanCompressor.MAX_BLOCK_SIZE) {
+                    throw new IllegalArgumentException("Option '--block-size' must be at most " + (HuffmanCompressor.MAX_BLOCK_SIZE >> 20) + "M.");
+                }
+                break;
+            case "checkpoint":
+                checkpointInterval = parseSize(name, value);
+                break;
+            case "max-code-length":
+                maxCodeLength = parsePositiveInt(name, value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option '--" + name + "'.");
+        }
+    }
+
+    private static int parsePositiveInt(String name, String value) {
+        try {
+            final var number = Integer.parseInt(value);
+            if (number > 0) return number;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException("Option '--" + name + "' must be a positive number.");
+    }
+
+    /**
+     * Parses a number of bytes, optionally followed by K or M.
+     */
+    private static int parseSize(String name, String value) {
+        final var upperValue = value.toUpperCase();
+        var multiplier = 1;
+        var digits = upperValue;
+
+        if (upperValue.endsWith("K")) {
+            multiplier = 1 << 10;
+            digits = upperValue.substring(0, upperValue.length() - 1);
+        } else if (upperValue.endsWith("M")) {
+            multiplier = 1 << 20;
+            digits = upperValue.substring(0, upperValue.length() - 1);
+        }
+
+        try {
+            final var size = Math.multiplyExact(Integer.parseInt(digits), multiplier);
+            if (size >= 0) return size;
+        } catch (NumberFormatException | ArithmeticException ignored) {
+        }
+        throw new IllegalArgumentException("Option '--" + name + "' must be a number of bytes, such as 1M.");
+    }
+}
@@ -0,0 +1,89 @@
+package kenneth.coursework.cli;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the size and throughput of every processed file, followed by the totals of all files.
+ */
+class Summary {
+    private static final double MEGABYTE = 1 << 20;
+
+    private final PrintStream output;
+    private final boolean isEnabled;
+    private final boolean isCompressing;
+
+    private int fileCount = 0;
+    private long totalCompressedSize = 0;
+    private long totalOriginalSize = 0;
+    private long totalNanos = 0;
+
+    /**
+     * @param output        The stream the summary is printed to.
+     * @param isEnabled     Whether anything should be printed.
+     * @param isCompressing Whether original files are read and compressed files are written, or the other way round.
+     */
+    Summary(PrintStream output, boolean isEnabled, boolean isCompressing) {
+        this.output = output;
+        this.isEnabled = isEnabled;
+        this.isCompressing = isCompressing;
+    }
+
+    /**
+     * Records a processed file.
+     *
+     * @param name           The name of the file.
+     * @param compressedSize The number of bytes of the compressed content.
+     * @param originalSize   The number of bytes of the original content, which the throughput is measured in.
+     * @param nanos          The time it took to process the file.
+     */
+    void add(String name, long compressedSize, long originalSize, long nanos) {
+        addConcurrent(name, compressedSize, originalSize, nanos);
+        addTime(nanos);
+    }
+
+    /**
+     * Records a file that is processed at the same time as other files. Its time is not added to the total,
+     * which is given by {@link #addTime(long)} instead. Can be called from any thread.
+     *
+     * @see #add(String, long, long, long)
+     */
+    synchronized void addConcurrent(String name, long compressedSize, long originalSize, long nanos) {
+        fileCount++;
+        totalCompressedSize += compressedSize;
+        totalOriginalSize += originalSize;
+
+        print(name, compressedSize, originalSize, nanos);
+    }
+
+    /**
+     * Adds the given time to the total time.
+     *
+     * @param nanos The time it took to process one or more files.
+     */
+    synchronized void addTime(long nanos) {
+        totalNanos += nanos;
+    }
+
+    /**
+     * Prints the totals if more than one file has been processed.
+     */
+    synchronized void printTotal() {
+        if (fileCount > 1) {
+            print("total (" + fileCount + " files)", totalCompressedSize, totalOriginalSize, totalNanos);
+        }
+    }
+
+    private void print(String name, long compressedSize, long originalSize, long nanos) {
+        if (!isEnabled) return;
+
+        final var seconds = nanos / 1e9;
+        final var ratio = originalSize == 0 ? 100.0 : 100.0 * compressedSize / originalSize;
+        final var throughput = seconds == 0 ? 0 : originalSize / MEGABYTE / seconds;
+
+        output.printf("%s: %d -> %d bytes (%.2f%%), %.1f MB/s, %d ms%n",
+                name,
+                isCompressing ? originalSize : compressedSize,
+                isCompressing ? compressedSize : originalSize,
+                ratio, throughput, nanos / 1_000_000);
+    }
+}
@@ -0,0 +1,112 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a bit stream written with an {@link AdaptiveHuffmanTree}, rebuilding the same tree as it goes.
+ * <p>
+ * Unlike {@link BitReader}, the stream is never read further than the bits of the symbols being decoded need, so that
+ * everything written before a flush can be decoded while the rest of the stream has not been written yet. Bytes
+ * after the end of the stream may still be read into the buffer, as with every other format.
+ */
+class AdaptiveHuffmanDecoder {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream input;
+    private final AdaptiveHuffmanTree tree = new AdaptiveHuffmanTree();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    // the bits of the current byte that are not consumed yet, right aligned
+    private int bitBuffer = 0;
+    // number of valid bits in bitBuffer
+    private int bitCount = 0;
+    private boolean isFinished = false;
+
+    /**
+     * @param input The stream that contains the bit stream, right after the version byte.
+     */
+    AdaptiveHuffmanDecoder(InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Decodes bytes into the given array until it is full, until the encoder was flushed or until the end of the
+     * stream. Blocks only while the bits of the next symbol have not been written yet.
+     *
+     * @param bytes  The array the decoded bytes are written to.
+     * @param offset The index of the first decoded byte.
+     * @param length The maximum number of bytes to decode.
+     * @return The number of decoded bytes, which can be 0 if the encoder was flushed, or -1 at the end of the stream.
+     * @throws IncorrectFormatException When a symbol that is already in the tree is written as is.
+     * @throws EOFException             When the stream ends before the end of the stream is marked.
+     */
+    int decode(byte[] bytes, int offset, int length) throws IOException, IncorrectFormatException {
+        if (isFinished) return -1;
+
+        var count = 0;
+        while (count < length) {
+            final var symbol = decodeSymbol();
+
+            if (symbol == AdaptiveHuffmanTree.END_OF_STREAM) {
+                isFinished = true;
+                return count == 0 ? -1 : count;
+            } else if (symbol == AdaptiveHuffmanTree.FLUSH) {
+                // the encoder padded the bit stream to a full byte after flushing
+                bitCount = 0;
+                break;
+            }
+
+            bytes[offset + count++] = (byte) symbol;
+        }
+
+        return count;
+    }
+
+    private int decodeSymbol() throws IOException, IncorrectFormatException {
+        var node = tree.getRoot();
+        while (!tree.isLeaf(node)) {
+            node = tree.getChild(node, readBit());
+        }
+
+        var symbol = tree.getSymbol(node);
+        if (symbol < 0) {
+            symbol = 0;
+            for (var i = 0; i < AdaptiveHuffmanTree.SYMBOL_BITS; i++) {
+                symbol = (symbol << 1) | readBit();
+            }
+
+            if (symbol >= AdaptiveHuffmanTree.SYMBOL_COUNT || tree.contains(symbol)) {
+                throw new IncorrectFormatException();
+            }
+        }
+
+        tree.update(symbol);
+        return symbol;
+    }
+
+    private int readBit() throws IOException {
+        if (bitCount == 0) {
+            if (position == limit) {
+                limit = input.read(buffer);
+                position = 0;
+
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new EOFException();
+                }
+            }
+
+            bitBuffer = buffer[position++] & 0xFF;
+            bitCount = 8;
+        }
+
+        bitCount--;
+        return (bitBuffer >>> bitCount) & 1;
+    }
+}
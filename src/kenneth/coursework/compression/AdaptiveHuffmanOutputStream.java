@@ -0,0 +1,120 @@
+package kenneth.coursework.compression;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that compresses the bytes written into it with adaptive huffman codes, and writes the compressed
+ * bytes into the underlying stream in a single pass. The compressed bytes can be decompressed with
+ * {@link HuffmanInputStream} or {@link HuffmanDecompressor}.
+ * <p>
+ * The codes are updated after every byte by an {@link AdaptiveHuffmanTree}, which the decoder rebuilds from the bytes
+ * it decodes, so nothing but the version byte is written before the first code and no byte is ever held back to build
+ * a tree. This suits streams that never end, such as a log that is being tailed, where {@link HuffmanOutputStream}
+ * would have to wait for a whole block before writing anything.
+ * <p>
+ * {@link #flush()} writes a marker and pads the codes to a full byte, so that a reader can decode every byte written
+ * before it right away. {@link #finish()} or {@link #close()} must be called to mark the end of the compressed bytes.
+ */
+public class AdaptiveHuffmanOutputStream extends FilterOutputStream {
+    private final BitWriter bitWriter;
+    private final AdaptiveHuffmanTree tree = new AdaptiveHuffmanTree();
+    private boolean isHeaderWritten = false;
+    private boolean isFinished = false;
+    private boolean isClosed = false;
+
+    /**
+     * @param out The stream the compressed bytes are written to.
+     */
+    public AdaptiveHuffmanOutputStream(OutputStream out) {
+        super(out);
+        bitWriter = new BitWriter(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureWritable();
+        tree.encode(b & 0xFF, bitWriter);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        ensureWritable();
+
+        final var end = off + len;
+        for (var i = off; i < end; i++) {
+            tree.encode(b[i] & 0xFF, bitWriter);
+        }
+    }
+
+    /**
+     * Makes every byte written so far decodable, and flushes the underlying stream. Every flush costs a few bits
+     * and the padding to a full byte, so it should not be called after every byte.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+
+        if (!isFinished) {
+            ensureWritable();
+            tree.encode(AdaptiveHuffmanTree.FLUSH, bitWriter);
+        }
+        bitWriter.flush();
+    }
+
+    /**
+     * Marks the end of the compressed bytes and flushes the underlying stream, without closing it.
+     * Nothing can be written afterwards.
+     */
+    public void finish() throws IOException {
+        ensureOpen();
+        if (isFinished) return;
+
+        ensureWritable();
+        tree.encode(AdaptiveHuffmanTree.END_OF_STREAM, bitWriter);
+        bitWriter.flush();
+        isFinished = true;
+    }
+
+    /**
+     * Marks the end of the compressed bytes and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) return;
+
+        try {
+            finish();
+        } finally {
+            isClosed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the version byte before the first code.
+     */
+    private void ensureWritable() throws IOException {
+        ensureOpen();
+
+        if (isFinished) {
+            throw new IOException("Stream finished");
+        }
+
+        if (!isHeaderWritten) {
+            bitWriter.writeByte(HuffmanCompressor.FormatVersion.ADAPTIVE.b);
+            isHeaderWritten = true;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package kenneth.coursework.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A huffman tree that is updated after every symbol it codes, with the FGK algorithm, so that the encoder and the
+ * decoder can build the same tree from the symbols seen so far without the tree ever being stored.
+ * <p>
+ * The tree starts with a single NYT (not yet transmitted) leaf of weight 0. A symbol that is not in the tree yet is
+ * coded as the code of the NYT leaf followed by the symbol in {@link #SYMBOL_BITS} bits, after which the NYT leaf is
+ * split into a new NYT leaf and a leaf for the symbol.
+ * <p>
+ * Nodes are stored in primitive arrays indexed by their order number, instead of {@link HuffmanTree.HuffmanNode}s,
+ * so that coding a symbol never allocates. The weights of the nodes never decrease with their number, and siblings
+ * always have consecutive numbers, which is the sibling property that makes the tree a huffman tree. The children of
+ * a node are therefore only stored as the number of its left child.
+ * <p>
+ * Once the weight of the root reaches {@link #MAX_WEIGHT}, every weight is halved and the tree is rebuilt, which
+ * keeps the codes short enough to fit in a long and lets the tree follow input whose frequencies change over time.
+ */
+class AdaptiveHuffmanTree {
+    /**
+     * Marks the end of the stream.
+     */
+    static final int END_OF_STREAM = HuffmanTree.SYMBOL_COUNT;
+
+    /**
+     * Makes the decoder skip to the next byte boundary, so that everything coded so far can be flushed.
+     */
+    static final int FLUSH = HuffmanTree.SYMBOL_COUNT + 1;
+
+    /**
+     * The number of symbols that can be coded: every byte, {@link #END_OF_STREAM} and {@link #FLUSH}.
+     */
+    static final int SYMBOL_COUNT = HuffmanTree.SYMBOL_COUNT + 2;
+
+    /**
+     * The number of bits a symbol is written with when it is not in the tree yet.
+     */
+    static final int SYMBOL_BITS = 9;
+
+    /**
+     * The weight of the root at which every weight is halved.
+     */
+    static final int MAX_WEIGHT = 1 << 16;
+
+    // the NYT leaf is stored in leafOf after every other symbol
+    private static final int NYT = SYMBOL_COUNT;
+    private static final int NODE_COUNT = 2 * (SYMBOL_COUNT + 1) - 1;
+    private static final int ROOT = NODE_COUNT - 1;
+
+    private final int[] weights = new int[NODE_COUNT];
+    private final int[] parents = new int[NODE_COUNT];
+    // the number of the left child of an internal node. the right child is the next number.
+    private final int[] leftChildren = new int[NODE_COUNT];
+    // the symbol of a leaf, or -1 for an internal node
+    private final int[] symbols = new int[NODE_COUNT];
+    // the node of every symbol, or -1 if the symbol is not in the tree yet
+    private final int[] leafOf = new int[SYMBOL_COUNT + 1];
+
+    AdaptiveHuffmanTree() {
+        Arrays.fill(leafOf, -1);
+        symbols[ROOT] = NYT;
+        leafOf[NYT] = ROOT;
+    }
+
+    /**
+     * Writes the code of the given symbol, followed by the symbol itself if it is not in the tree yet,
+     * and updates the tree.
+     *
+     * @param symbol The symbol to be coded, between 0 and {@link #SYMBOL_COUNT} - 1.
+     * @param writer The bit stream the code is written to.
+     */
+    void encode(int symbol, BitWriter writer) throws IOException {
+        final var leaf = leafOf[symbol];
+
+        if (leaf < 0) {
+            writeCode(leafOf[NYT], writer);
+            writer.write(symbol, SYMBOL_BITS);
+        } else {
+            writeCode(leaf, writer);
+        }
+
+        update(symbol);
+    }
+
+    /**
+     * @param symbol A symbol.
+     * @return Whether the symbol is in the tree, in which case it is coded without being written as is.
+     */
+    boolean contains(int symbol) {
+        return leafOf[symbol] >= 0;
+    }
+
+    /**
+     * @return The number of the root, where decoding a symbol starts.
+     */
+    int getRoot() {
+        return ROOT;
+    }
+
+    /**
+     * @return Whether the given node is a leaf, in which case decoding a symbol ends.
+     */
+    boolean isLeaf(int node) {
+        return symbols[node] >= 0;
+    }
+
+    /**
+     * @param node An internal node.
+     * @param bit  The next bit of the code.
+     * @return The child of the node the bit leads to.
+     */
+    int getChild(int node, int bit) {
+        return leftChildren[node] + bit;
+    }
+
+    /**
+     * @param leaf A leaf.
+     * @return The symbol of the leaf, or -1 if the leaf is the NYT leaf, in which case the symbol follows as is.
+     */
+    int getSymbol(int leaf) {
+        final var symbol = symbols[leaf];
+        return symbol == NYT ? -1 : symbol;
+    }
+
+    /**
+     * Adds 1 to the weight of the given symbol, and adds it to the tree if it is not in the tree yet.
+     *
+     * @param symbol The symbol that has just been coded.
+     */
+    void update(int symbol) {
+        var node = leafOf[symbol];
+
+        if (node < 0) {
+            // the NYT leaf always has the lowest number, so the numbers right below it are free
+            final var oldNyt = leafOf[NYT];
+            final var newNyt = oldNyt - 2;
+            node = oldNyt - 1;
+
+            symbols[oldNyt] = -1;
+            leftChildren[oldNyt] = newNyt;
+            setLeaf(newNyt, NYT, oldNyt);
+            setLeaf(node, symbol, oldNyt);
+        }
+
+        while (true) {
+            // the node is swapped with the node of the highest number among the nodes of the same weight,
+            // so that its weight can be increased without breaking the sibling property
+            var leader = node;
+            while (leader < ROOT && weights[leader + 1] == weights[node]) {
+                leader++;
+            }
+
+            if (leader != node && leader != parents[node]) {
+                swap(node, leader);
+                node = leader;
+            }
+
+            weights[node]++;
+            if (node == ROOT) break;
+            node = parents[node];
+        }
+
+        if (weights[ROOT] >= MAX_WEIGHT) {
+            rescale();
+        }
+    }
+
+    /**
+     * Writes the path from the root to the given node. Codes are never longer than 64 bits,
+     * since the weight of the root is bounded.
+     */
+    private void writeCode(int node, BitWriter writer) throws IOException {
+        var code = 0L;
+        var length = 0;
+
+        while (node != ROOT) {
+            final var parent = parents[node];
+            code |= (long) (node - leftChildren[parent]) << length;
+            length++;
+            node = parent;
+        }
+
+        if (length > 32) {
+            writer.write((int) (code >>> 32), length - 32);
+            writer.write((int) code, 32);
+        } else {
+            writer.write((int) code, length);
+        }
+    }
+
+    private void setLeaf(int node, int symbol, int parent) {
+        symbols[node] = symbol;
+        weights[node] = 0;
+        parents[node] = parent;
+        leafOf[symbol] = node;
+    }
+
+    /**
+     * Exchanges the subtrees at the given numbers, which must have the same weight.
+     */
+    private void swap(int a, int b) {
+        final var symbol = symbols[a];
+        symbols[a] = symbols[b];
+        symbols[b] = symbol;
+
+        final var leftChild = leftChildren[a];
+        leftChildren[a] = leftChildren[b];
+        leftChildren[b] = leftChild;
+
+        adoptChildren(a);
+        adoptChildren(b);
+    }
+
+    /**
+     * Points the children of the given node, or the symbol of the given leaf, back to the node.
+     */
+    private void adoptChildren(int node) {
+        if (symbols[node] >= 0) {
+            leafOf[symbols[node]] = node;
+        } else {
+            parents[leftChildren[node]] = node;
+            parents[leftChildren[node] + 1] = node;
+        }
+    }
+
+    /**
+     * Halves the weight of every leaf, rounding up so that no symbol drops to 0, and rebuilds the tree with the
+     * two-queue huffman algorithm. Nodes are numbered in the order they are merged, which is the order of their
+     * weights, so the rebuilt tree has the sibling property.
+     */
+    private void rescale() {
+        // the leaves are already in the order of their weights, which halving does not change
+        var leafCount = 0;
+        final var leafSymbols = new int[SYMBOL_COUNT + 1];
+        final var leafWeights = new int[SYMBOL_COUNT + 1];
+
+        for (var node = leafOf[NYT]; node <= ROOT; node++) {
+            if (symbols[node] >= 0) {
+                leafSymbols[leafCount] = symbols[node];
+                leafWeights[leafCount] = (weights[node] + 1) >>> 1;
+                leafCount++;
+            }
+        }
+
+        // items 0 to leafCount - 1 are the leaves, and the rest are internal nodes in the order they are created
+        final var itemCount = 2 * leafCount - 1;
+        final var itemWeights = new int[itemCount];
+        final var itemLeftChildren = new int[itemCount];
+        final var itemNumbers = new int[itemCount];
+        System.arraycopy(leafWeights, 0, itemWeights, 0, leafCount);
+
+        var nextLeaf = 0;
+        var nextInternal = leafCount;
+        var nextNumber = ROOT - (itemCount - 1);
+
+        for (var item = leafCount; item < itemCount; item++) {
+            var weight = 0;
+            for (var i = 0; i < 2; i++) {
+                final int taken;
+                if (nextLeaf < leafCount && (nextInternal == item || itemWeights[nextLeaf] <= itemWeights[nextInternal])) {
+                    taken = nextLeaf++;
+                } else {
+                    taken = nextInternal++;
+                }
+
+                if (i == 0) {
+                    itemLeftChildren[item] = taken;
+                }
+                itemNumbers[taken] = nextNumber++;
+                weight += itemWeights[taken];
+            }
+            itemWeights[item] = weight;
+        }
+        itemNumbers[itemCount - 1] = ROOT;
+
+        for (var item = 0; item < itemCount; item++) {
+            final var node = itemNumbers[item];
+            weights[node] = itemWeights[item];
+
+            if (item < leafCount) {
+                symbols[node] = leafSymbols[item];
+                leafOf[leafSymbols[item]] = node;
+            } else {
+                final var leftChild = itemNumbers[itemLeftChildren[item]];
+                symbols[node] = -1;
+                leftChildren[node] = leftChild;
+                parents[leftChild] = node;
+                parents[leftChild + 1] = node;
+            }
+        }
+    }
+}
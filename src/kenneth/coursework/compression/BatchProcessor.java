@@ -0,0 +1,423 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compresses and decompresses many files at the same time on a fixed number of threads.
+ * <p>
+ * Most of the time spent on a small file goes into opening it, reading its header and creating the output, rather
+ * than encoding it, so a batch of small files is processed a file per thread instead of a block per thread. Every file
+ * is processed on a single thread by the compressor and decompressor of the batch, and completes its own future.
+ * <p>
+ * Only a limited number of files can be pending at the same time. Once the limit is reached, submitting another file
+ * blocks until one of the pending files completes, so that a directory of any size can be submitted file by file
+ * without queueing all of it in memory. {@link #compressDirectory} and {@link #decompressDirectory} submit every file
+ * of a directory tree this way.
+ */
+public class BatchProcessor implements AutoCloseable {
+    private final ExecutorService executor;
+    private final Semaphore pendingFiles;
+
+    private final HuffmanCompressor compressor = new HuffmanCompressor();
+    private final HuffmanDecompressor decompressor = new HuffmanDecompressor();
+
+    private final long startTime = System.nanoTime();
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+
+    /**
+     * Creates a batch processor with a thread for every available processor, which allows 4 files per thread
+     * to be pending.
+     */
+    public BatchProcessor() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param threads         The number of files processed at the same time.
+     * @param maxPendingFiles The maximum number of files that are submitted but not yet completed,
+     *                        including the ones being processed. Must be at least the number of threads.
+     */
+    public BatchProcessor(int threads, int maxPendingFiles) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1.");
+        }
+        if (maxPendingFiles < threads) {
+            throw new IllegalArgumentException("Maximum number of pending files must be at least the number of threads.");
+        }
+
+        final var threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, (task) -> {
+            final var thread = new Thread(task, "huffman-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pendingFiles = new Semaphore(maxPendingFiles);
+
+        // files already run in parallel with each other, so blocks of the same file do not have to
+        compressor.setParallelism(1);
+        decompressor.setParallelism(1);
+    }
+
+    /**
+     * @return The compressor used for every file in the batch. Its settings should only be changed
+     * while no file is pending.
+     */
+    public HuffmanCompressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * @return The decompressor used for every file in the batch. Its settings should only be changed
+     * while no file is pending.
+     */
+    public HuffmanDecompressor getDecompressor() {
+        return decompressor;
+    }
+
+    /**
+     * Submits a file to be compressed. Blocks while the maximum number of files are pending.
+     *
+     * @param inputFile  The file to be compressed.
+     * @param dest       The output file, which the extension of compressed files is added to.
+     * @param treeSource The compressed file where the tree is stored. If null, a unique tree is generated for the file.
+     * @param overwrite  Whether to overwrite the destination file if it already exists.
+     * @return The future that completes when the file is compressed, or completes exceptionally with the
+     * {@link IOException} or {@link IncorrectFormatException} that the compressor throws.
+     * @throws InterruptedException When the thread is interrupted while waiting for a pending file to complete.
+     * @see HuffmanCompressor#compress(File, File, File, boolean)
+     */
+    public CompletableFuture<Result> compress(File inputFile, File dest, File treeSource, boolean overwrite) throws InterruptedException {
+        final var output = new File(dest.getPath() + HuffmanCompressor.FILE_EXTENSION);
+        return submit(inputFile, output, () -> compressor.compress(inputFile, dest, treeSource, overwrite));
+    }
+
+    /**
+     * Submits a file to be decompressed. Blocks while the maximum number of files are pending.
+     *
+     * @param inputFile The compressed file to be decompressed.
+     * @param dest      The destination file to which the decompressed content will be written to.
+     * @param overwrite Whether to overwrite the destination file if it already exists.
+     * @return The future that completes when the file is decompressed, or completes exceptionally with the
+     * {@link IOException} or {@link IncorrectFormatException} that the decompressor throws.
+     * @throws InterruptedException When the thread is interrupted while waiting for a pending file to complete.
+     * @see HuffmanDecompressor#decompress(File, File, boolean)
+     */
+    public CompletableFuture<Result> decompress(File inputFile, File dest, boolean overwrite) throws InterruptedException {
+        return submit(inputFile, dest, () -> decompressor.decompress(inputFile, dest, overwrite));
+    }
+
+    /**
+     * Submits every file in the given directory and its subdirectories to be compressed next to it, except the files
+     * that are already compressed. Files are submitted in the order of their paths, each blocking while the maximum
+     * number of files are pending, so only the paths of the files are held in memory.
+     *
+     * @param directory  The directory whose files are compressed.
+     * @param treeSource The compressed file where the tree is stored. If null, a unique tree is generated for every file.
+     * @param overwrite  Whether to overwrite the compressed files that already exist.
+     * @return The futures of the files, in the order they were submitted.
+     * @throws IOException          When the directory cannot be searched.
+     * @throws InterruptedException When the thread is interrupted while waiting for a pending file to complete. The
+     *                              files submitted before are still processed.
+     * @see #compress(File, File, File, boolean)
+     */
+    public List<CompletableFuture<Result>> compressDirectory(File directory, File treeSource, boolean overwrite) throws IOException, InterruptedException {
+        final var futures = new ArrayList<CompletableFuture<Result>>();
+        for (final var file : listFiles(directory, false)) {
+            futures.add(compress(file, file, treeSource, overwrite));
+        }
+        return futures;
+    }
+
+    /**
+     * Submits every compressed file in the given directory and its subdirectories to be decompressed next to it, into
+     * a file without the extension of compressed files. Other files are ignored.
+     *
+     * @param directory The directory whose compressed files are decompressed.
+     * @param overwrite Whether to overwrite the decompressed files that already exist.
+     * @return The futures of the files, in the order they were submitted.
+     * @throws IOException          When the directory cannot be searched.
+     * @throws InterruptedException When the thread is interrupted while waiting for a pending file to complete. The
+     *                              files submitted before are still processed.
+     * @see #compressDirectory(File, File, boolean)
+     */
+    public List<CompletableFuture<Result>> decompressDirectory(File directory, boolean overwrite) throws IOException, InterruptedException {
+        final var futures = new ArrayList<CompletableFuture<Result>>();
+        for (final var file : listFiles(directory, true)) {
+            final var path = file.getPath();
+            futures.add(decompress(file, new File(path.substring(0, path.length() - HuffmanCompressor.FILE_EXTENSION.length())), overwrite));
+        }
+        return futures;
+    }
+
+    /**
+     * @return The statistics of every file submitted so far.
+     */
+    public Statistics getStatistics() {
+        return new Statistics(
+                submittedCount.sum(),
+                completedCount.sum(),
+                failedCount.sum(),
+                bytesRead.sum(),
+                bytesWritten.sum(),
+                busyNanos.sum(),
+                System.nanoTime() - startTime
+        );
+    }
+
+    /**
+     * Waits for every pending file to complete, and stops the threads. No more files can be submitted afterwards.
+     * If the thread is interrupted while waiting, the files that have not started yet are cancelled.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting, a batch can take a long time
+            }
+        } catch (InterruptedException ex) {
+            for (final var task : executor.shutdownNow()) {
+                ((PendingFile) task).cancel();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param isCompressed Whether to list the compressed files, or the files that are not compressed.
+     * @return The regular files in the given directory and its subdirectories, sorted by their paths. The list is made
+     * before anything is submitted, so files created by the batch are never picked up.
+     */
+    private static List<File> listFiles(File directory, boolean isCompressed) throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory.toPath())) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(HuffmanCompressor.FILE_EXTENSION) == isCompressed)
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private CompletableFuture<Result> submit(File inputFile, File outputFile, FileTask task) throws InterruptedException {
+        pendingFiles.acquire();
+
+        final var future = new CompletableFuture<Result>();
+        submittedCount.increment();
+        try {
+            executor.execute(new PendingFile(inputFile, outputFile, task, future));
+        } catch (RejectedExecutionException ex) {
+            submittedCount.decrement();
+            pendingFiles.release();
+            throw ex;
+        }
+
+        return future;
+    }
+
+    private class PendingFile implements Runnable {
+        private final File inputFile;
+        private final File outputFile;
+        private final FileTask task;
+        private final CompletableFuture<Result> future;
+
+        PendingFile(File inputFile, File outputFile, FileTask task, CompletableFuture<Result> future) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.task = task;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final var start = System.nanoTime();
+                task.run();
+                final var nanos = System.nanoTime() - start;
+
+                final var result = new Result(inputFile, outputFile, inputFile.length(), outputFile.length(), nanos);
+                completedCount.increment();
+                bytesRead.add(result.inputSize);
+                bytesWritten.add(result.outputSize);
+                busyNanos.add(nanos);
+
+                future.complete(result);
+            } catch (Exception ex) {
+                failedCount.increment();
+                future.completeExceptionally(ex);
+            } finally {
+                pendingFiles.release();
+            }
+        }
+
+        /**
+         * Cancels the file before it starts, when the batch is stopped.
+         */
+        void cancel() {
+            failedCount.increment();
+            future.cancel(false);
+            pendingFiles.release();
+        }
+    }
+
+    private interface FileTask {
+        void run() throws IOException, IncorrectFormatException;
+    }
+
+    /**
+     * The outcome of a file that is processed successfully.
+     */
+    public static class Result {
+        private final File inputFile;
+        private final File outputFile;
+        private final long inputSize;
+        private final long outputSize;
+        private final long nanos;
+
+        Result(File inputFile, File outputFile, long inputSize, long outputSize, long nanos) {
+            this.inputFile = inputFile;
+            this.outputFile = outputFile;
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return The file that was read.
+         */
+        public File getInputFile() {
+            return inputFile;
+        }
+
+        /**
+         * @return The file that was written. For compressed files, this includes the extension of compressed files.
+         */
+        public File getOutputFile() {
+            return outputFile;
+        }
+
+        /**
+         * @return The size of the file that was read in bytes.
+         */
+        public long getInputSize() {
+            return inputSize;
+        }
+
+        /**
+         * @return The size of the file that was written in bytes.
+         */
+        public long getOutputSize() {
+            return outputSize;
+        }
+
+        /**
+         * @return The time it took to process the file, excluding the time it was waiting for a thread.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    /**
+     * The totals of the files in a batch at a point in time.
+     */
+    public static class Statistics {
+        private final long submittedCount;
+        private final long completedCount;
+        private final long failedCount;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long busyNanos;
+        private final long elapsedNanos;
+
+        Statistics(long submittedCount, long completedCount, long failedCount, long bytesRead, long bytesWritten, long busyNanos, long elapsedNanos) {
+            this.submittedCount = submittedCount;
+            this.completedCount = completedCount;
+            this.failedCount = failedCount;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.busyNanos = busyNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The number of files submitted.
+         */
+        public long getSubmittedCount() {
+            return submittedCount;
+        }
+
+        /**
+         * @return The number of files processed successfully.
+         */
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * @return The number of files that failed to be processed.
+         */
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        /**
+         * @return The number of files that are waiting for a thread or being processed.
+         */
+        public long getPendingCount() {
+            return submittedCount - completedCount - failedCount;
+        }
+
+        /**
+         * @return The total size of the files read by successfully processed files.
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * @return The total size of the files written by successfully processed files.
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * @return The sum of the time every successfully processed file took. Larger than the elapsed time when
+         * files are processed in parallel.
+         */
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        /**
+         * @return The time since the batch processor was created.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a huffman bit stream, most significant bit first.
+ * <p>
+ * The bit stream is read from {@link ByteBuffer}s provided by a {@link Source}, which can be an array, a memory-mapped
+ * region of a file or an {@link InputStream}. Bytes are kept in a 64-bit buffer, so that callers can look at several
+ * bits at once without going back to the source for every bit.
+ */
+class BitReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Provides the bytes of a bit stream, one buffer at a time.
+     */
+    interface Source {
+        /**
+         * @return The buffer with the next bytes of the bit stream, or null if there are no more bytes.
+         */
+        ByteBuffer next() throws IOException;
+    }
+
+    private final Source source;
+    private ByteBuffer buffer;
+    private boolean isSourceExhausted = false;
+
+    // bits that are read from the source but not yet consumed, right aligned
+    private long bitBuffer = 0;
+    // number of valid bits in bitBuffer
+    private int bitCount = 0;
+    // number of zero bits appended to bitBuffer after the end of the stream is reached
+    private int paddingBits = 0;
+
+    /**
+     * Creates a bit reader that reads the bit stream from the given source.
+     *
+     * @param source Provides the bytes of the bit stream.
+     */
+    BitReader(Source source) {
+        this.source = source;
+        buffer = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Creates a bit reader that reads the bit stream from the given stream in bulk.
+     *
+     * @param input The stream that contains the bit stream.
+     */
+    BitReader(InputStream input) {
+        final var bytes = new byte[BUFFER_SIZE];
+        source = () -> {
+            final var read = input.read(bytes);
+            return read < 0 ? null : ByteBuffer.wrap(bytes, 0, read);
+        };
+        buffer = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Creates a bit reader that reads the remaining bytes of the given buffer directly, without copying them.
+     *
+     * @param bytes The buffer that contains the bit stream.
+     */
+    BitReader(ByteBuffer bytes) {
+        source = () -> null;
+        buffer = bytes;
+    }
+
+    /**
+     * Creates a bit reader that reads the given range of an array directly, without copying it.
+     *
+     * @param bytes  The array that contains the bit stream.
+     * @param offset The index of the first byte of the bit stream.
+     * @param length The number of bytes in the bit stream.
+     */
+    BitReader(byte[] bytes, int offset, int length) {
+        this(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Obtains the next bits in the stream without consuming them.
+     * If the stream does not have enough bits left, the missing bits are read as 0.
+     *
+     * @param count The number of bits to look at. Must be between 0 and 32.
+     * @return The next bits in the stream.
+     */
+    int peek(int count) throws IOException {
+        if (bitCount < count) {
+            refill();
+        }
+        return (int) (bitBuffer >>> (bitCount - count)) & ((1 << count) - 1);
+    }
+
+    /**
+     * Consumes the given number of bits that have previously been looked at with {@link #peek(int)}.
+     *
+     * @param count The number of bits to consume.
+     * @throws IncorrectFormatException When the consumed bits go past the end of the stream.
+     */
+    void skip(int count) throws IncorrectFormatException {
+        bitCount -= count;
+        if (bitCount < paddingBits) {
+            throw new IncorrectFormatException();
+        }
+    }
+
+    private void refill() throws IOException {
+        while (bitCount <= 56) {
+            if (bitCount <= 32 && buffer.remaining() >= Integer.BYTES) {
+                bitBuffer = (bitBuffer << 32) | (buffer.getInt() & 0xFFFFFFFFL);
+                bitCount += 32;
+                continue;
+            }
+
+            if (!buffer.hasRemaining()) {
+                final var next = isSourceExhausted ? null : source.next();
+                if (next != null) {
+                    buffer = next;
+                    continue;
+                }
+
+                // end of stream. pad the buffer with zeros so that peek can still look ahead,
+                // but remember how many of them there are so that they can never be consumed.
+                isSourceExhausted = true;
+                bitBuffer <<= 8;
+                bitCount += 8;
+                paddingBits += 8;
+                continue;
+            }
+
+            bitBuffer = (bitBuffer << 8) | (buffer.get() & 0xFF);
+            bitCount += 8;
+        }
+    }
+}
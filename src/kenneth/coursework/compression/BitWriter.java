@@ -0,0 +1,102 @@
+package kenneth.coursework.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a huffman bit stream into an {@link OutputStream}, most significant bit first.
+ * <p>
+ * Codes are collected in a 64-bit accumulator. Whenever the accumulator holds at least 32 bits, the whole word
+ * is moved into a byte buffer, which is only written into the stream when it is full.
+ */
+class BitWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream output;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    // number of bytes written into the stream so far
+    private long bytesFlushed = 0;
+
+    // bits that are not yet moved into the buffer, right aligned. never more than 31 bits between writes.
+    private long bitBuffer = 0;
+    // number of valid bits in bitBuffer
+    private int bitCount = 0;
+
+    BitWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Writes the given code into the bit stream.
+     *
+     * @param code   The code to be written, right aligned. Bits above the length of the code must be 0.
+     * @param length The number of bits in the code. Must be between 0 and 32.
+     */
+    void write(int code, int length) throws IOException {
+        bitBuffer = (bitBuffer << length) | (code & 0xFFFFFFFFL);
+        bitCount += length;
+
+        if (bitCount >= 32) {
+            if (position > BUFFER_SIZE - 4) {
+                flushBuffer();
+            }
+
+            bitCount -= 32;
+            final var word = (int) (bitBuffer >>> bitCount);
+            buffer[position] = (byte) (word >>> 24);
+            buffer[position + 1] = (byte) (word >>> 16);
+            buffer[position + 2] = (byte) (word >>> 8);
+            buffer[position + 3] = (byte) word;
+            position += 4;
+        }
+    }
+
+    /**
+     * Pads the bit stream with 0 bits until it ends at a byte boundary.
+     */
+    void alignToByte() throws IOException {
+        write(0, (8 - (bitCount & 7)) & 7);
+
+        while (bitCount > 0) {
+            bitCount -= 8;
+            writeByte((int) (bitBuffer >>> bitCount));
+        }
+    }
+
+    /**
+     * Writes a byte into the stream as is. The bit stream must be aligned to a byte boundary first.
+     *
+     * @param b The byte to be written.
+     * @see #alignToByte()
+     */
+    void writeByte(int b) throws IOException {
+        if (position == BUFFER_SIZE) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    /**
+     * @return The number of bits written so far, excluding the bits used to pad the stream to a byte boundary
+     * when it is flushed.
+     */
+    long getBitCount() {
+        return (bytesFlushed + position) * 8 + bitCount;
+    }
+
+    /**
+     * Pads the bit stream to a byte boundary and writes everything that is buffered into the stream.
+     */
+    void flush() throws IOException {
+        alignToByte();
+        flushBuffer();
+        output.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        output.write(buffer, 0, position);
+        bytesFlushed += position;
+        position = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package kenneth.coursework.compression;
+
+/**
+ * Chooses the codes of every block of a file whose blocks have codes of their own, so that input whose statistics
+ * shift from one part to another, such as an archive of JSON, base64 and binary files, is encoded with codes that fit
+ * every part of it.
+ * <p>
+ * A block is given codes built from its own frequencies, unless the codes of the last block that has codes of its own
+ * would encode it in nearly as few bits. Storing new code lengths is then not worth it, and the decoder does not have
+ * to build new tables. The cost of both choices is estimated from the frequencies of the block, including the bytes
+ * that store the codes, without encoding anything.
+ * <p>
+ * Every choice depends on the codes chosen before it, so blocks must be given in the order they are written.
+ */
+class BlockCodeSelector {
+    private final int maxCodeLength;
+    private final double reuseTolerance;
+
+    // the codes of the last block with codes of its own. null before the first block.
+    private HuffmanCodeTable codeTable = null;
+
+    /**
+     * @param maxCodeLength  The maximum length of a code.
+     * @param reuseTolerance The fraction of the size of a block with codes of its own that the block may grow by
+     *                       when it reuses the codes of an earlier block instead.
+     */
+    BlockCodeSelector(int maxCodeLength, double reuseTolerance) {
+        this.maxCodeLength = maxCodeLength;
+        this.reuseTolerance = reuseTolerance;
+    }
+
+    /**
+     * Chooses the codes of the next block. The chosen codes are then returned by {@link #getCodeTable()}.
+     *
+     * @param frequencies The frequency of every byte in the block.
+     * @return The code lengths of the block if it is given codes of its own, or null if it reuses the codes of the
+     * last block that has codes of its own.
+     */
+    int[] select(long[] frequencies) {
+        final var codeLengths = HuffmanTree.computeCodeLengths(frequencies, maxCodeLength);
+        final var bits = HuffmanTree.encodedBits(frequencies, codeLengths)
+                + 8L * (1 + HuffmanTreeSerializer.serializedCodeLengthsSize(codeLengths));
+
+        if (codeTable != null) {
+            // a byte that has no code in the earlier codes cannot be encoded with them at all
+            final var reusedBits = HuffmanTree.encodedBits(frequencies, codeTable.lengths);
+            if (reusedBits >= 0 && reusedBits + 8L * BlockWriter.REUSED_CODES_SIZE - bits <= reuseTolerance * bits) {
+                return null;
+            }
+        }
+
+        codeTable = HuffmanCodeTable.fromCodeLengths(codeLengths);
+        return codeLengths;
+    }
+
+    /**
+     * @return The codes chosen for the last block.
+     */
+    HuffmanCodeTable getCodeTable() {
+        return codeTable;
+    }
+}
@@ -0,0 +1,37 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the bit stream of a block in the block-based format, with either a single {@link HuffmanDecodeTable} or
+ * the tables of {@link ContextCodes}.
+ */
+interface BlockDecoder {
+    /**
+     * Decodes the given number of bytes in the given bit stream, which starts at the start of a block.
+     *
+     * @param reader The bit stream to be decoded.
+     * @param output The array the decoded bytes are written to.
+     * @param offset The index in the array of the first decoded byte.
+     * @param length The number of bytes to decode.
+     * @throws IncorrectFormatException When the bit stream contains a code that does not exist,
+     *                                  or when the stream ends before all bytes are decoded.
+     */
+    void decode(BitReader reader, byte[] output, int offset, int length) throws IOException, IncorrectFormatException;
+
+    /**
+     * Decodes the given number of bytes in the given bit stream, which starts at the start of a block, into a buffer
+     * such as a memory-mapped region of the output file.
+     *
+     * @param reader The bit stream to be decoded.
+     * @param output The buffer the decoded bytes are written to.
+     * @param offset The index in the buffer of the first decoded byte.
+     * @param length The number of bytes to decode.
+     * @throws IncorrectFormatException When the bit stream contains a code that does not exist,
+     *                                  or when the stream ends before all bytes are decoded.
+     */
+    void decode(BitReader reader, ByteBuffer output, int offset, int length) throws IOException, IncorrectFormatException;
+}
@@ -0,0 +1,266 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Records where every block of a block-based compressed file starts, both in the compressed file and in the original
+ * input, so that blocks can be located without reading the blocks before them.
+ * <p>
+ * The index is written after the end of the blocks. It stores the number of blocks as an int and the length of the
+ * original input as a long, followed by the offset of every block in the compressed file and in the original input,
+ * as pairs of longs. The file then ends with the offset of the index itself as a long.
+ * <p>
+ * If the file has checkpoints, the pairs are followed by the checkpoints of every block in order, as unsigned ints
+ * like the bit length of a block. A block has a checkpoint every checkpoint interval bytes after its start, which
+ * stores the offset in its bit stream of the code of the byte at that position, so that a range of the original input
+ * can be decoded from the nearest checkpoint before it rather than from the start of its block. The number of
+ * checkpoints of a block follows from its length.
+ */
+class BlockIndex {
+    private static final int FOOTER_SIZE = Long.BYTES;
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    private long[] compressedOffsets = new long[16];
+    private long[] rawOffsets = new long[16];
+    private int[][] checkpoints = new int[16][];
+    private int blockCount = 0;
+    private long rawLength = 0;
+    private final int checkpointInterval;
+
+    // the offset of the index in the compressed file. -1 until the index is written or read.
+    private long offset = -1;
+
+    /**
+     * @param checkpointInterval The number of bytes of the original input between checkpoints, or 0 if the blocks have
+     *                           no checkpoints.
+     */
+    BlockIndex(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Records the next block in the file.
+     *
+     * @param compressedOffset The offset of the block in the compressed file.
+     * @param rawLength        The number of bytes of the original input in the block.
+     * @param checkpoints      The checkpoints of the block, as described in {@link EncodedBlock#checkpoints}.
+     */
+    void add(long compressedOffset, int rawLength, int[] checkpoints) {
+        if (checkpoints.length != checkpointCount(rawLength, checkpointInterval)) {
+            throw new IllegalArgumentException("The block does not have a checkpoint every " + checkpointInterval + " bytes.");
+        }
+
+        if (blockCount == compressedOffsets.length) {
+            compressedOffsets = Arrays.copyOf(compressedOffsets, blockCount * 2);
+            rawOffsets = Arrays.copyOf(rawOffsets, blockCount * 2);
+            this.checkpoints = Arrays.copyOf(this.checkpoints, blockCount * 2);
+        }
+
+        compressedOffsets[blockCount] = compressedOffset;
+        rawOffsets[blockCount] = this.rawLength;
+        this.checkpoints[blockCount] = checkpoints;
+        blockCount++;
+        this.rawLength += rawLength;
+    }
+
+    /**
+     * @return The number of blocks in the file.
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return The length of the original input.
+     */
+    long getRawLength() {
+        return rawLength;
+    }
+
+    /**
+     * @return The offset of the given block in the compressed file.
+     */
+    long getCompressedOffset(int block) {
+        return compressedOffsets[block];
+    }
+
+    /**
+     * @return The offset of the given block in the original input.
+     */
+    long getRawOffset(int block) {
+        return rawOffsets[block];
+    }
+
+    /**
+     * @return The offset of the index in the compressed file, right after the end of the blocks and the checksum of the
+     * whole original input, or -1 if the index has not been written or read yet.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The number of bytes of the original input between checkpoints, or 0 if the blocks have no checkpoints.
+     */
+    int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return The checkpoints of the given block, as described in {@link EncodedBlock#checkpoints}. Must not be modified.
+     */
+    int[] getCheckpoints(int block) {
+        return checkpoints[block];
+    }
+
+    /**
+     * Finds the block that contains the byte at the given offset of the original input.
+     *
+     * @param rawOffset The offset in the original input, which must be less than its length.
+     * @return The position of the block in the index.
+     */
+    int findBlock(long rawOffset) {
+        final var position = Arrays.binarySearch(rawOffsets, 0, blockCount, rawOffset);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    /**
+     * @return The number of bytes of the original input in the given block.
+     */
+    int getBlockLength(int block) {
+        return (int) ((block + 1 < blockCount ? rawOffsets[block + 1] : rawLength) - rawOffsets[block]);
+    }
+
+    /**
+     * @param rawLength          The number of bytes of the original input in a block.
+     * @param checkpointInterval The number of bytes between checkpoints, or 0 if there are none.
+     * @return The number of checkpoints in the block. The start of the block is not a checkpoint, since its offset in
+     * the bit stream is always 0.
+     */
+    static int checkpointCount(int rawLength, int checkpointInterval) {
+        return checkpointInterval > 0 && rawLength > 0 ? (rawLength - 1) / checkpointInterval : 0;
+    }
+
+    /**
+     * Writes the index into the given stream, followed by the footer that points to the index.
+     *
+     * @param output      The stream to write to.
+     * @param indexOffset The offset in the compressed file at which the index is written.
+     */
+    void write(DataOutputStream output, long indexOffset) throws IOException {
+        output.writeInt(blockCount);
+        output.writeLong(rawLength);
+        for (var i = 0; i < blockCount; i++) {
+            output.writeLong(compressedOffsets[i]);
+            output.writeLong(rawOffsets[i]);
+        }
+        for (var i = 0; i < blockCount; i++) {
+            for (final var checkpoint : checkpoints[i]) {
+                output.writeInt(checkpoint);
+            }
+        }
+        output.writeLong(indexOffset);
+        offset = indexOffset;
+    }
+
+    /**
+     * Reads the index at the end of the given compressed file.
+     *
+     * @param channel            The compressed file.
+     * @param checkpointInterval The number of bytes between checkpoints, as stored in the header of the file, or 0 if
+     *                           the blocks have no checkpoints.
+     * @return The index of the file.
+     * @throws IncorrectFormatException When the index is invalid.
+     */
+    static BlockIndex read(FileChannel channel, int checkpointInterval) throws IOException, IncorrectFormatException {
+        final var fileSize = channel.size();
+        if (fileSize < FOOTER_SIZE) {
+            throw new IncorrectFormatException();
+        }
+
+        final var indexOffset = readFully(channel, fileSize - FOOTER_SIZE, FOOTER_SIZE).getLong();
+        if (indexOffset < 0 || indexOffset > fileSize - FOOTER_SIZE - Integer.BYTES - Long.BYTES) {
+            throw new IncorrectFormatException();
+        }
+
+        final var header = readFully(channel, indexOffset, Integer.BYTES + Long.BYTES);
+        final var blockCount = header.getInt();
+        final var rawLength = header.getLong();
+
+        final var size = fileSize - FOOTER_SIZE - indexOffset - header.capacity();
+        if (blockCount < 0 || (long) blockCount * ENTRY_SIZE > size || size > Integer.MAX_VALUE
+                || checkpointInterval == 0 && (long) blockCount * ENTRY_SIZE != size) {
+            throw new IncorrectFormatException();
+        }
+
+        final var entries = readFully(channel, indexOffset + header.capacity(), (int) size);
+        final var index = new BlockIndex(checkpointInterval);
+        index.compressedOffsets = new long[blockCount];
+        index.rawOffsets = new long[blockCount];
+        index.checkpoints = new int[blockCount][];
+        index.blockCount = blockCount;
+        index.rawLength = rawLength;
+        index.offset = indexOffset;
+
+        for (var i = 0; i < blockCount; i++) {
+            index.compressedOffsets[i] = entries.getLong();
+            index.rawOffsets[i] = entries.getLong();
+
+            if (index.compressedOffsets[i] < 0 || index.compressedOffsets[i] >= indexOffset
+                    || index.rawOffsets[i] < 0 || index.rawOffsets[i] > rawLength) {
+                throw new IncorrectFormatException();
+            }
+        }
+
+        for (var i = 0; i < blockCount; i++) {
+            // blocks are never empty, so their offsets in the original input only go up
+            if (i > 0 && index.rawOffsets[i] <= index.rawOffsets[i - 1] || index.getBlockLength(i) <= 0) {
+                throw new IncorrectFormatException();
+            }
+
+            final var count = checkpointCount(index.getBlockLength(i), checkpointInterval);
+            if ((long) count * Integer.BYTES > entries.remaining()) {
+                throw new IncorrectFormatException();
+            }
+
+            final var blockCheckpoints = new int[count];
+            for (var j = 0; j < count; j++) {
+                blockCheckpoints[j] = entries.getInt();
+                if (j > 0 && Integer.compareUnsigned(blockCheckpoints[j], blockCheckpoints[j - 1]) < 0) {
+                    throw new IncorrectFormatException();
+                }
+            }
+            index.checkpoints[i] = blockCheckpoints;
+        }
+
+        if (entries.hasRemaining()) {
+            throw new IncorrectFormatException();
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads the given range of the file. Safe to be called from multiple threads.
+     *
+     * @return A buffer with the bytes in the range, ready to be read.
+     */
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        final var buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,494 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.ChecksumMismatchException;
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a compressed file in the block-based format, one block at a time.
+ *
+ * @see BlockWriter
+ */
+class BlockReader {
+    // the largest number of bytes the codes of a block can take before its bit stream
+    private static final int MAX_BLOCK_CODES_SIZE = Math.max(1 + HuffmanTree.SYMBOL_COUNT, BlockWriter.REUSED_CODES_SIZE);
+
+    private final DataInputStream input;
+    private final int flags;
+    private final int blockSize;
+    private final int checkpointInterval;
+    private final int blockHeaderSize;
+    private final HuffmanCodes codes;
+    private final ContextCodes contextCodes;
+    private final int dictionaryId;
+
+    // the codes of the last block read, if every block has codes of its own
+    private HuffmanCodes blockCodes = null;
+
+    // the number of bytes of blocks read so far, and the position of the last block read with codes of its own
+    private long position = 0;
+    private long codesPosition = -1;
+
+    // the offset in the original input of the last block read, and of the block after it
+    private long blockOffset = 0;
+    private long nextBlockOffset = 0;
+
+    // the checksum of the original input of the blocks read so far, and whether the end of the blocks has been read
+    private int checksum = 0;
+    private boolean isFinished = false;
+
+    /**
+     * Reads the header of a block-based compressed file.
+     *
+     * @param input The stream that contains the compressed file, right after the version byte.
+     * @throws IncorrectFormatException When the header is invalid.
+     */
+    BlockReader(DataInputStream input) throws IOException, IncorrectFormatException {
+        this.input = input;
+
+        flags = input.readUnsignedByte();
+        blockSize = input.readInt();
+
+        final var codesFlags = flags & (BlockWriter.FLAG_DICTIONARY | BlockWriter.FLAG_CONTEXTS | BlockWriter.FLAG_BLOCK_CODES);
+        if ((flags & ~(BlockWriter.FLAG_INDEX | BlockWriter.FLAG_CHECKPOINTS | BlockWriter.FLAG_CHECKSUMS | codesFlags)) != 0
+                || Integer.bitCount(codesFlags) > 1 || blockSize <= 0) {
+            throw new IncorrectFormatException();
+        }
+
+        if ((flags & BlockWriter.FLAG_CHECKPOINTS) != 0) {
+            // the checkpoints are stored in the index, so there cannot be any without it
+            checkpointInterval = input.readInt();
+            if (checkpointInterval <= 0 || !hasIndex()) {
+                throw new IncorrectFormatException();
+            }
+        } else {
+            checkpointInterval = 0;
+        }
+
+        blockHeaderSize = BlockWriter.BLOCK_HEADER_SIZE + (hasChecksums() ? BlockWriter.CHECKSUM_SIZE : 0);
+
+        if (hasBlockCodes()) {
+            dictionaryId = 0;
+            codes = null;
+            contextCodes = null;
+        } else if (hasDictionary()) {
+            // the dictionary is only looked up when it is needed, so that the header can be read without it
+            dictionaryId = input.readInt();
+            codes = null;
+            contextCodes = null;
+        } else if (hasContexts()) {
+            dictionaryId = 0;
+            codes = null;
+            contextCodes = ContextCodes.read(input);
+        } else {
+            dictionaryId = 0;
+            codes = HuffmanTableCache.getShared().readCodeLengths(input);
+            contextCodes = null;
+        }
+    }
+
+    /**
+     * @return The maximum number of bytes of the original input in a block.
+     */
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return The number of bytes of the original input between the checkpoints recorded in the {@link BlockIndex},
+     * or 0 if the blocks have no checkpoints.
+     */
+    int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return Whether the blocks are followed by a {@link BlockIndex}.
+     */
+    boolean hasIndex() {
+        return (flags & BlockWriter.FLAG_INDEX) != 0;
+    }
+
+    /**
+     * @return Whether every block stores the checksum of its bytes, and the blocks are followed by the checksum of the
+     * whole original input.
+     */
+    boolean hasChecksums() {
+        return (flags & BlockWriter.FLAG_CHECKSUMS) != 0;
+    }
+
+    /**
+     * @return Whether the blocks are encoded with a {@link HuffmanDictionary} instead of code lengths of their own.
+     */
+    boolean hasDictionary() {
+        return (flags & BlockWriter.FLAG_DICTIONARY) != 0;
+    }
+
+    /**
+     * @return Whether every byte is encoded with the code table of its order-1 context.
+     */
+    boolean hasContexts() {
+        return (flags & BlockWriter.FLAG_CONTEXTS) != 0;
+    }
+
+    /**
+     * @return Whether every block stores its own codes, or refers to the codes of an earlier block.
+     */
+    boolean hasBlockCodes() {
+        return (flags & BlockWriter.FLAG_BLOCK_CODES) != 0;
+    }
+
+    /**
+     * @return The order-1 codes the blocks are encoded with. Only valid if {@link #hasContexts()}.
+     */
+    ContextCodes getContextCodes() {
+        return contextCodes;
+    }
+
+    /**
+     * @return The decoder of the blocks, whose tables are shared rather than built again. If every block has codes of
+     * its own, the decoder of the block last returned by {@link #readBlock()}, or null if no block has been read yet.
+     * @throws IncorrectFormatException When the blocks are encoded with a dictionary that has not been loaded.
+     */
+    BlockDecoder getDecoder() throws IncorrectFormatException {
+        if (hasBlockCodes()) {
+            return blockCodes != null ? blockCodes.getDecodeTable() : null;
+        }
+        if (hasContexts()) {
+            // every checkpoint starts in the context of byte 0 again, which the codes of a single table do not need
+            return checkpointInterval > 0 ? new CheckpointDecoder(contextCodes, checkpointInterval) : contextCodes;
+        }
+        return getCodes().getDecodeTable();
+    }
+
+    /**
+     * @return The index at the end of the given compressed file, along with the checkpoints of its blocks.
+     * @throws IncorrectFormatException When the index is invalid.
+     */
+    BlockIndex readIndex(FileChannel channel) throws IOException, IncorrectFormatException {
+        return BlockIndex.read(channel, checkpointInterval);
+    }
+
+    /**
+     * @return The ID of the dictionary the blocks are encoded with. Only valid if {@link #hasDictionary()}.
+     */
+    int getDictionaryId() {
+        return dictionaryId;
+    }
+
+    /**
+     * @return The canonical codes used to encode the blocks, which are either cached or taken from the dictionary,
+     * so their tables are shared rather than built again.
+     * @throws IncorrectFormatException When the blocks are encoded with a dictionary that has not been loaded,
+     *                                  or with order-1 contexts or codes of their own, which have more than one set
+     *                                  of codes.
+     */
+    HuffmanCodes getCodes() throws IncorrectFormatException {
+        if (hasContexts() || hasBlockCodes()) {
+            throw new IncorrectFormatException();
+        }
+        return hasDictionary() ? HuffmanDictionary.find(dictionaryId).getCodes() : codes;
+    }
+
+    /**
+     * @return The codes to compress other input with when this file is used as a tree source. The same as
+     * {@link #getCodes()}, except that order-1 contexts are merged into order-0 codes, and that if every block has
+     * codes of its own, the codes of the first block are used, which are read along with it. A file without any block
+     * has no codes.
+     * @throws IncorrectFormatException When the blocks are encoded with a dictionary that has not been loaded.
+     */
+    HuffmanCodes getSourceCodes() throws IOException, IncorrectFormatException {
+        if (hasBlockCodes()) {
+            return readBlock() != null ? blockCodes : HuffmanCodes.fromCodeLengths(new int[HuffmanTree.SYMBOL_COUNT]);
+        }
+        return hasContexts() ? contextCodes.toOrder0Codes() : getCodes();
+    }
+
+    /**
+     * @return The canonical code lengths used to encode the blocks. Must not be modified.
+     * @throws IncorrectFormatException When the blocks are encoded with a dictionary that has not been loaded,
+     *                                  or with more than one set of codes.
+     */
+    int[] getCodeLengths() throws IncorrectFormatException {
+        return getCodes().getCodeLengths();
+    }
+
+    /**
+     * Reads the next block in the file. If every block has codes of its own, the codes of the block are read as well,
+     * and only the codes of the last block read are kept, so memory stays bounded no matter how many blocks there are.
+     *
+     * @return The next block, or null if there are no more blocks. Its code lengths are only set if it stores codes
+     * of its own.
+     * @throws IncorrectFormatException When the block is invalid, or {@link ChecksumMismatchException} at the end of
+     *                                  the blocks when the checksums of the blocks do not add up to the checksum of the
+     *                                  whole original input.
+     */
+    EncodedBlock readBlock() throws IOException, IncorrectFormatException {
+        if (isFinished) return null;
+
+        final var rawLength = input.readInt();
+        if (rawLength == 0) {
+            isFinished = true;
+
+            // every block is checked against its own checksum as it is decoded, so the checksum of the whole input
+            // only has to be checked against the checksums of the blocks, which also catches missing blocks
+            if (hasChecksums() && input.readInt() != checksum) {
+                throw new ChecksumMismatchException(-1);
+            }
+            return null;
+        }
+
+        final var bitLength = input.readInt() & 0xFFFFFFFFL;
+        checkBlockHeader(rawLength, bitLength);
+
+        final var blockChecksum = hasChecksums() ? input.readInt() : 0;
+
+        var codesSize = 0;
+        int[] codeLengths = null;
+
+        if (hasBlockCodes()) {
+            final var kind = input.readUnsignedByte();
+
+            if (kind == BlockWriter.CODES_NEW) {
+                final var serializedCodeLengths = HuffmanTreeSerializer.readSerializedCodeLengths(input);
+                blockCodes = HuffmanTableCache.getShared().getCodeLengths(serializedCodeLengths);
+                codeLengths = blockCodes.getCodeLengths();
+                codesPosition = position;
+                codesSize = 1 + serializedCodeLengths.length;
+            } else if (kind == BlockWriter.CODES_REUSED) {
+                // blocks that are read one after another can only reuse the codes that are already known
+                if (codesPosition < 0 || position - input.readLong() != codesPosition) {
+                    throw new IncorrectFormatException();
+                }
+                codesSize = BlockWriter.REUSED_CODES_SIZE;
+            } else {
+                throw new IncorrectFormatException();
+            }
+        }
+
+        final var payload = new byte[EncodedBlock.payloadLength(bitLength)];
+        input.readFully(payload);
+        position += blockHeaderSize + codesSize + payload.length;
+
+        blockOffset = nextBlockOffset;
+        nextBlockOffset += rawLength;
+        checksum = Checksums.combine(checksum, blockChecksum, rawLength);
+
+        return new EncodedBlock(rawLength, bitLength, payload, codeLengths, 0, new int[0], blockChecksum);
+    }
+
+    /**
+     * Checks the decoded bytes of the block last returned by {@link #readBlock()} against its checksum. Does nothing if
+     * the blocks have no checksums.
+     *
+     * @param block   The block last read.
+     * @param decoded The decoded bytes of the block, starting at index 0.
+     * @throws ChecksumMismatchException When the decoded bytes do not match the checksum.
+     */
+    void verifyBlock(EncodedBlock block, byte[] decoded) throws ChecksumMismatchException {
+        if (hasChecksums() && Checksums.crc32c(decoded, 0, block.rawLength) != block.checksum) {
+            throw new ChecksumMismatchException(blockOffset);
+        }
+    }
+
+    /**
+     * Checks the decoded bytes of a mapped block against its checksum. Does nothing if the blocks have no checksums.
+     * Safe to be called from multiple threads.
+     *
+     * @param block     The block.
+     * @param rawOffset The offset of the block in the original input, as recorded in the {@link BlockIndex}.
+     * @param decoded   The decoded bytes of the block, starting at index 0.
+     * @throws ChecksumMismatchException When the decoded bytes do not match the checksum.
+     */
+    void verifyBlock(MappedBlock block, long rawOffset, ByteBuffer decoded) throws ChecksumMismatchException {
+        if (hasChecksums() && Checksums.crc32c(decoded, 0, block.rawLength) != block.checksum) {
+            throw new ChecksumMismatchException(rawOffset);
+        }
+    }
+
+    /**
+     * Checks the checksum of the whole original input, which is stored right before the index of the given file.
+     * Does nothing if the blocks have no checksums.
+     *
+     * @param channel  The compressed file.
+     * @param index    The index of the file.
+     * @param checksum The checksums of every block in the file, combined in order.
+     * @throws ChecksumMismatchException When the checksums of the blocks do not add up to the checksum of the file.
+     */
+    void verifyChecksum(FileChannel channel, BlockIndex index, int checksum) throws IOException, IncorrectFormatException {
+        if (!hasChecksums()) return;
+
+        if (index.getOffset() < BlockWriter.CHECKSUM_SIZE) {
+            throw new IncorrectFormatException();
+        }
+        if (BlockIndex.readFully(channel, index.getOffset() - BlockWriter.CHECKSUM_SIZE, BlockWriter.CHECKSUM_SIZE).getInt() != checksum) {
+            throw new ChecksumMismatchException(-1);
+        }
+    }
+
+    /**
+     * Maps the block at the given offset of the file into memory, so that its payload can be decoded without being
+     * copied. Safe to be called from multiple threads.
+     *
+     * @param channel The compressed file.
+     * @param offset  The offset of the block, as recorded in the {@link BlockIndex}.
+     * @return The block at the offset, along with its decoder.
+     * @throws IncorrectFormatException When the block is invalid.
+     */
+    MappedBlock mapBlock(FileChannel channel, long offset) throws IOException, IncorrectFormatException {
+        final var header = BlockIndex.readFully(channel, offset, blockHeaderSize);
+        final var rawLength = header.getInt();
+        final var bitLength = header.getInt() & 0xFFFFFFFFL;
+        checkBlockHeader(rawLength, bitLength);
+
+        final var blockChecksum = hasChecksums() ? header.getInt() : 0;
+        var payloadOffset = offset + blockHeaderSize;
+        final BlockDecoder decoder;
+
+        if (hasBlockCodes()) {
+            final var mappedCodes = mapBlockCodes(channel, offset, true);
+            payloadOffset += mappedCodes.size;
+            decoder = mappedCodes.codes.getDecodeTable();
+        } else {
+            decoder = getDecoder();
+        }
+
+        final var payloadLength = EncodedBlock.payloadLength(bitLength);
+        if (payloadOffset + payloadLength > channel.size()) {
+            throw new IncorrectFormatException();
+        }
+
+        return new MappedBlock(rawLength, MappedFiles.map(channel, payloadOffset, payloadLength), decoder, blockChecksum);
+    }
+
+    /**
+     * Reads the codes stored before the bit stream of the block at the given offset. The code lengths are looked up
+     * in the {@link HuffmanTableCache#getShared() shared cache}, so blocks that share codes also share their tables.
+     *
+     * @param offset   The offset of the block.
+     * @param canReuse Whether the block may refer to the codes of an earlier block, which is followed.
+     * @return The codes of the block, and the number of bytes they take in the block.
+     * @throws IncorrectFormatException When the codes are invalid.
+     */
+    private MappedCodes mapBlockCodes(FileChannel channel, long offset, boolean canReuse) throws IOException, IncorrectFormatException {
+        final var codesOffset = offset + blockHeaderSize;
+        if (codesOffset >= channel.size()) {
+            throw new IncorrectFormatException();
+        }
+
+        final var bytes = BlockIndex.readFully(channel, codesOffset, (int) Math.min(MAX_BLOCK_CODES_SIZE, channel.size() - codesOffset));
+        final var kind = bytes.get();
+
+        if (kind == BlockWriter.CODES_NEW) {
+            final var stream = new DataInputStream(new ByteArrayInputStream(bytes.array(), bytes.position(), bytes.remaining()));
+            final var serializedCodeLengths = HuffmanTreeSerializer.readSerializedCodeLengths(stream);
+            return new MappedCodes(HuffmanTableCache.getShared().getCodeLengths(serializedCodeLengths), 1 + serializedCodeLengths.length);
+        }
+
+        if (kind != BlockWriter.CODES_REUSED || !canReuse || bytes.remaining() < Long.BYTES) {
+            throw new IncorrectFormatException();
+        }
+
+        // only blocks with codes of their own are referred to, so this never goes back more than one block
+        final var codesBlockOffset = offset - bytes.getLong();
+        if (codesBlockOffset < 0 || codesBlockOffset >= offset) {
+            throw new IncorrectFormatException();
+        }
+
+        return new MappedCodes(mapBlockCodes(channel, codesBlockOffset, false).codes, BlockWriter.REUSED_CODES_SIZE);
+    }
+
+    private void checkBlockHeader(int rawLength, long bitLength) throws IncorrectFormatException {
+        // every byte, escaped or not, is encoded as a single code of at most MAX_CODE_LENGTH bits, since escape codes
+        // are limited like any other code. this stops a corrupted length from allocating a huge payload.
+        if (rawLength <= 0 || rawLength > blockSize || bitLength > (long) rawLength * HuffmanTree.MAX_CODE_LENGTH) {
+            throw new IncorrectFormatException();
+        }
+    }
+
+    /**
+     * A block whose payload is mapped from the compressed file.
+     */
+    static class MappedBlock {
+        /**
+         * The number of bytes of the original input in this block.
+         */
+        final int rawLength;
+
+        /**
+         * The encoded bit stream, padded to a byte boundary.
+         */
+        final ByteBuffer payload;
+
+        /**
+         * The decoder of the bit stream.
+         */
+        final BlockDecoder decoder;
+
+        /**
+         * The CRC32C of the bytes of the original input in this block. 0 if the file has no checksums.
+         */
+        final int checksum;
+
+        MappedBlock(int rawLength, ByteBuffer payload, BlockDecoder decoder, int checksum) {
+            this.rawLength = rawLength;
+            this.payload = payload;
+            this.decoder = decoder;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * Decodes a block whose codes depend on the state of the decoder, which starts again at every checkpoint, by
+     * decoding every part of the block between two checkpoints on its own.
+     */
+    private static class CheckpointDecoder implements BlockDecoder {
+        private final BlockDecoder decoder;
+        private final int checkpointInterval;
+
+        CheckpointDecoder(BlockDecoder decoder, int checkpointInterval) {
+            this.decoder = decoder;
+            this.checkpointInterval = checkpointInterval;
+        }
+
+        @Override
+        public void decode(BitReader reader, byte[] output, int offset, int length) throws IOException, IncorrectFormatException {
+            for (var i = 0; i < length; ) {
+                final var segmentLength = Math.min(checkpointInterval, length - i);
+                decoder.decode(reader, output, offset + i, segmentLength);
+                i += segmentLength;
+            }
+        }
+
+        @Override
+        public void decode(BitReader reader, ByteBuffer output, int offset, int length) throws IOException, IncorrectFormatException {
+            for (var i = 0; i < length; ) {
+                final var segmentLength = Math.min(checkpointInterval, length - i);
+                decoder.decode(reader, output, offset + i, segmentLength);
+                i += segmentLength;
+            }
+        }
+    }
+
+    /**
+     * The codes of a block in a file whose blocks have codes of their own.
+     */
+    private static class MappedCodes {
+        final HuffmanCodes codes;
+
+        /**
+         * The number of bytes the codes take before the bit stream of the block.
+         */
+        final int size;
+
+        MappedCodes(HuffmanCodes codes, int size) {
+            this.codes = codes;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package kenneth.coursework.compression;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a compressed file in the block-based format.
+ * <p>
+ * The file starts with the following header:
+ * <ul>
+ *     <li>The version byte, {@link HuffmanCompressor.FormatVersion#BLOCKS}.</li>
+ *     <li>A byte of flags. See {@link #FLAG_INDEX}, {@link #FLAG_DICTIONARY}, {@link #FLAG_CONTEXTS},
+ *     {@link #FLAG_BLOCK_CODES}, {@link #FLAG_CHECKPOINTS} and {@link #FLAG_CHECKSUMS}.</li>
+ *     <li>The maximum number of bytes of the original input in a block, as an int.</li>
+ *     <li>The number of bytes of the original input between checkpoints, as an int, if the blocks have checkpoints.</li>
+ *     <li>The canonical code lengths, as described in {@link HuffmanTreeSerializer#serializeCodeLengths}, or the ID of
+ *     the {@link HuffmanDictionary} as an int if the file is compressed with a dictionary, or the {@link ContextCodes}
+ *     if the file is compressed with order-1 contexts. Nothing is stored if every block has codes of its own.</li>
+ * </ul>
+ * It is followed by the blocks in the order they appear in the original input. Every block starts with the
+ * number of bytes of the original input in the block as an int, followed by the number of bits in the encoded bit
+ * stream as an int, the CRC32C of the bytes of the original input in the block as an int if the file has checksums,
+ * and the bit stream itself padded to a byte boundary. The blocks end with an int of 0, which is followed by the CRC32C
+ * of the whole original input as an int if the file has checksums, and then by the {@link BlockIndex} if the file
+ * has one.
+ * <p>
+ * If every block has codes of its own, the bit stream of every block is preceded by either {@link #CODES_NEW} and
+ * its code lengths, or {@link #CODES_REUSED} and the distance in bytes back to the start of the block whose codes it
+ * reuses as a long, which is always the last block before it with codes of its own.
+ * <p>
+ * Since every block starts at a byte boundary, blocks can be encoded and decoded independently of each other.
+ */
+class BlockWriter {
+    /**
+     * Set when the blocks are followed by a {@link BlockIndex}.
+     */
+    static final int FLAG_INDEX = 1;
+
+    /**
+     * Set when the code lengths are taken from a {@link HuffmanDictionary}, whose ID is stored in their place.
+     */
+    static final int FLAG_DICTIONARY = 2;
+
+    /**
+     * Set when every byte is encoded with the code table of its context, which is stored in place of the code lengths.
+     */
+    static final int FLAG_CONTEXTS = 4;
+
+    /**
+     * Set when every block stores its own codes, or refers to the codes of an earlier block, before its bit stream.
+     */
+    static final int FLAG_BLOCK_CODES = 8;
+
+    /**
+     * Set when the {@link BlockIndex} records checkpoints inside every block, from which a range of the original input
+     * can be decoded without decoding the whole block. Only set along with {@link #FLAG_INDEX}.
+     */
+    static final int FLAG_CHECKPOINTS = 16;
+
+    /**
+     * Set when every block stores the checksum of its bytes, and the blocks are followed by the checksum of the whole
+     * original input, so that a corrupted file is detected while it is decoded.
+     */
+    static final int FLAG_CHECKSUMS = 32;
+
+    /**
+     * Marks a block whose code lengths are stored before its bit stream.
+     */
+    static final int CODES_NEW = 0;
+
+    /**
+     * Marks a block that is encoded with the codes of an earlier block.
+     */
+    static final int CODES_REUSED = 1;
+
+    /**
+     * The number of bytes that refer to the codes of an earlier block.
+     */
+    static final int REUSED_CODES_SIZE = 1 + Long.BYTES;
+
+    /**
+     * The number of bytes before the bit stream of every block, without the checksum.
+     */
+    static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * The number of bytes of the checksum of a block, which follows the rest of its header if the file has checksums.
+     */
+    static final int CHECKSUM_SIZE = Integer.BYTES;
+
+    private final DataOutputStream output;
+    private final BlockIndex index;
+    private final int checkpointInterval;
+    private final boolean withChecksums;
+    private boolean hasBlockCodes = false;
+
+    // the checksum of the original input of the blocks written so far
+    private int checksum = 0;
+
+    // the number of bytes written into the stream so far
+    private long position = 0;
+
+    // the position of the last block with codes of its own. -1 if there is none.
+    private long codesPosition = -1;
+
+    /**
+     * @param output    The stream to write to.
+     * @param withIndex Whether a {@link BlockIndex} should be written after the blocks, which allows the blocks to be
+     *                  located and decoded in parallel.
+     */
+    BlockWriter(OutputStream output, boolean withIndex) {
+        this(output, withIndex, 0);
+    }
+
+    /**
+     * @param output             The stream to write to.
+     * @param withIndex          Whether a {@link BlockIndex} should be written after the blocks, which allows the blocks
+     *                           to be located and decoded in parallel.
+     * @param checkpointInterval The number of bytes of the original input between checkpoints, or 0 if the blocks have
+     *                           no checkpoints. The index is always written if the blocks have checkpoints, since they
+     *                           are stored in it.
+     */
+    BlockWriter(OutputStream output, boolean withIndex, int checkpointInterval) {
+        this(output, withIndex, checkpointInterval, false);
+    }
+
+    /**
+     * @param output             The stream to write to.
+     * @param withIndex          Whether a {@link BlockIndex} should be written after the blocks, which allows the blocks
+     *                           to be located and decoded in parallel.
+     * @param checkpointInterval The number of bytes of the original input between checkpoints, or 0 if the blocks have
+     *                           no checkpoints.
+     * @param withChecksums      Whether the checksum of every block, and of the whole original input, should be
+     *                           written. The checksum of every block must then be set in {@link EncodedBlock#checksum}.
+     */
+    BlockWriter(OutputStream output, boolean withIndex, int checkpointInterval, boolean withChecksums) {
+        this.output = new DataOutputStream(output);
+        this.checkpointInterval = checkpointInterval;
+        this.withChecksums = withChecksums;
+        index = withIndex || checkpointInterval > 0 ? new BlockIndex(checkpointInterval) : null;
+    }
+
+    /**
+     * @return The number of bytes of the original input between checkpoints, or 0 if the blocks have no checkpoints.
+     */
+    int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Writes the header of the file.
+     *
+     * @param blockSize   The maximum number of bytes of the original input in a block.
+     * @param codeLengths The canonical code lengths used to encode the blocks.
+     */
+    void writeHeader(int blockSize, int[] codeLengths) throws IOException {
+        writeHeader(0, blockSize);
+        HuffmanTreeSerializer.serializeCodeLengths(codeLengths, output);
+        position = output.size();
+    }
+
+    /**
+     * Writes the header of a file whose blocks are encoded with the given dictionary.
+     *
+     * @param blockSize  The maximum number of bytes of the original input in a block.
+     * @param dictionary The dictionary used to encode the blocks.
+     */
+    void writeHeader(int blockSize, HuffmanDictionary dictionary) throws IOException {
+        writeHeader(FLAG_DICTIONARY, blockSize);
+        output.writeInt(dictionary.getId());
+        position = output.size();
+    }
+
+    /**
+     * Writes the header of a file whose blocks are encoded with the given order-1 codes.
+     *
+     * @param blockSize    The maximum number of bytes of the original input in a block.
+     * @param contextCodes The codes used to encode the blocks.
+     */
+    void writeHeader(int blockSize, ContextCodes contextCodes) throws IOException {
+        writeHeader(FLAG_CONTEXTS, blockSize);
+        contextCodes.write(output);
+        position = output.size();
+    }
+
+    /**
+     * Writes the header of a file whose blocks have codes of their own, which are written along with every block.
+     *
+     * @param blockSize The maximum number of bytes of the original input in a block.
+     */
+    void writeHeader(int blockSize) throws IOException {
+        writeHeader(FLAG_BLOCK_CODES, blockSize);
+        position = output.size();
+        hasBlockCodes = true;
+    }
+
+    /**
+     * Writes the start of the header that every file has, up to the codes.
+     *
+     * @param codesFlag The flag that tells how the blocks are encoded, or 0 if they are encoded with the code lengths in
+     *                  the header.
+     */
+    private void writeHeader(int codesFlag, int blockSize) throws IOException {
+        output.writeByte(HuffmanCompressor.FormatVersion.BLOCKS.b);
+        output.writeByte((index != null ? FLAG_INDEX : 0) | (checkpointInterval > 0 ? FLAG_CHECKPOINTS : 0)
+                | (withChecksums ? FLAG_CHECKSUMS : 0) | codesFlag);
+        output.writeInt(blockSize);
+        if (checkpointInterval > 0) {
+            output.writeInt(checkpointInterval);
+        }
+    }
+
+    /**
+     * Writes the given block after the previously written block.
+     *
+     * @param block The block to be written. If every block has codes of its own, the first block must have its
+     *              code lengths, and the blocks without them reuse the codes of the last block that has them.
+     */
+    void writeBlock(EncodedBlock block) throws IOException {
+        if (block.rawLength == 0) return;
+
+        if (index != null) {
+            index.add(position, block.rawLength, block.checkpoints);
+        }
+
+        final var payloadLength = EncodedBlock.payloadLength(block.bitLength);
+        output.writeInt(block.rawLength);
+        output.writeInt((int) block.bitLength);
+        if (withChecksums) {
+            output.writeInt(block.checksum);
+            checksum = Checksums.combine(checksum, block.checksum, block.rawLength);
+        }
+        final var codesSize = hasBlockCodes ? writeBlockCodes(block) : 0;
+        output.write(block.payload, 0, payloadLength);
+        position += BLOCK_HEADER_SIZE + (withChecksums ? CHECKSUM_SIZE : 0) + codesSize + payloadLength;
+    }
+
+    /**
+     * Writes the code lengths of the given block, or the distance to the last block with codes of its own.
+     *
+     * @return The number of bytes written.
+     */
+    private int writeBlockCodes(EncodedBlock block) throws IOException {
+        if (block.codeLengths != null) {
+            output.writeByte(CODES_NEW);
+            HuffmanTreeSerializer.serializeCodeLengths(block.codeLengths, output);
+            codesPosition = position;
+            return 1 + HuffmanTreeSerializer.serializedCodeLengthsSize(block.codeLengths);
+        }
+
+        if (codesPosition < 0) {
+            throw new IllegalStateException("The first block must have codes of its own.");
+        }
+
+        // a distance rather than an offset, so that the codes can be found from the block alone
+        output.writeByte(CODES_REUSED);
+        output.writeLong(position - codesPosition);
+        return REUSED_CODES_SIZE;
+    }
+
+    /**
+     * Marks the end of the blocks, writes the checksum of the whole original input and the index if the file has them,
+     * and flushes everything into the underlying stream.
+     */
+    void finish() throws IOException {
+        output.writeInt(0);
+        position += Integer.BYTES;
+
+        if (withChecksums) {
+            output.writeInt(checksum);
+            position += CHECKSUM_SIZE;
+        }
+
+        if (index != null) {
+            index.write(output, position);
+        }
+
+        output.flush();
+    }
+}
@@ -0,0 +1,94 @@
+package kenneth.coursework.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps track of frequencies of bytes in a byte stream/array.
+ * <p>
+ * Bytes are counted into several sub-histograms in turn, which are only added up when the frequencies are obtained.
+ * Runs of the same byte would otherwise keep incrementing the same counter, where every increment has to wait
+ * for the previous one to be stored before it can load the counter again.
+ */
+class ByteHistogram {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    // number of interleaved sub-histograms
+    private static final int LANES = 4;
+
+    private final long[] counts = new long[LANES * HuffmanTree.SYMBOL_COUNT];
+
+    /**
+     * Counts every byte in the given range of the array.
+     *
+     * @param bytes  The bytes to be counted.
+     * @param offset The index of the first byte to be counted.
+     * @param length The number of bytes to be counted.
+     */
+    void count(byte[] bytes, int offset, int length) {
+        final var counts = this.counts;
+        final var end = offset + length;
+        final var unrolledEnd = offset + (length & ~(LANES - 1));
+
+        var i = offset;
+        while (i < unrolledEnd) {
+            counts[bytes[i] & 0xFF]++;
+            counts[0x100 | (bytes[i + 1] & 0xFF)]++;
+            counts[0x200 | (bytes[i + 2] & 0xFF)]++;
+            counts[0x300 | (bytes[i + 3] & 0xFF)]++;
+            i += LANES;
+        }
+
+        while (i < end) {
+            counts[bytes[i++] & 0xFF]++;
+        }
+    }
+
+    /**
+     * Counts every remaining byte in the given buffer, without changing its position.
+     * Bytes of a memory-mapped buffer are copied into a small array in chunks, since bulk copies from a mapped
+     * buffer are much cheaper than reading it one byte at a time.
+     *
+     * @param bytes The bytes to be counted.
+     */
+    void count(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            count(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            return;
+        }
+
+        final var chunk = new byte[Math.min(CHUNK_SIZE, bytes.remaining())];
+        for (var i = bytes.position(); i < bytes.limit(); i += chunk.length) {
+            final var length = Math.min(chunk.length, bytes.limit() - i);
+            bytes.get(i, chunk, 0, length);
+            count(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Counts every byte in the given stream until the end of the stream is reached.
+     *
+     * @param input The stream to be read.
+     * @throws IOException Thrown when there is an error reading the stream.
+     */
+    void count(InputStream input) throws IOException {
+        final var buffer = new byte[BUFFER_SIZE];
+        for (var read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+            count(buffer, 0, read);
+        }
+    }
+
+    /**
+     * @return The frequency of every byte, indexed by the byte. 0 if the byte is never counted.
+     */
+    long[] toFrequencies() {
+        final var frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+        for (var i = 0; i < counts.length; i++) {
+            frequencies[i & 0xFF] += counts[i];
+        }
+        return frequencies;
+    }
+}
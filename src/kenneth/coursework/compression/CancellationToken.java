@@ -0,0 +1,40 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.OperationCancelledException;
+
+/**
+ * Lets an operation be cancelled from another thread, such as a cancel button or a watchdog that aborts runaway jobs.
+ * <p>
+ * Cancellation is cooperative: the compressor and decompressor check the token between buffers, and stop with an
+ * {@link OperationCancelledException} the next time they see it has been cancelled. A token cannot be reset, so a new
+ * one should be set for every operation that may be cancelled on its own.
+ *
+ * @see HuffmanCompressor#setCancellationToken(CancellationToken)
+ * @see HuffmanDecompressor#setCancellationToken(CancellationToken)
+ */
+public class CancellationToken {
+    private volatile boolean isCancelled = false;
+
+    /**
+     * Cancels every operation that checks this token. Safe to be called from any thread, and more than once.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * @return Whether {@link #cancel()} has been called.
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * @throws OperationCancelledException When {@link #cancel()} has been called.
+     */
+    public void throwIfCancelled() throws OperationCancelledException {
+        if (isCancelled) {
+            throw new OperationCancelledException();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package kenneth.coursework.compression;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * Computes the CRC32C checksums stored in block-based files. {@link CRC32C} is computed with the CRC instructions of
+ * the processor where it has them, so a checksum costs little next to decoding the bytes it covers.
+ * <p>
+ * The checksum of the whole original input is combined from the checksums of its blocks, the same way as zlib's
+ * crc32_combine, so that blocks can still be encoded and decoded in parallel and the input is never read twice.
+ */
+class Checksums {
+    // the CRC32C polynomial, with its bits reversed like the bits of the checksum
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    /**
+     * @return The CRC32C of the given range of the array.
+     */
+    static int crc32c(byte[] bytes, int offset, int length) {
+        final var crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @return The CRC32C of the given range of the buffer. The position of the buffer is not changed.
+     */
+    static int crc32c(ByteBuffer bytes, int offset, int length) {
+        final var crc = new CRC32C();
+        crc.update(bytes.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Combines the checksums of two consecutive ranges of bytes, without the bytes themselves.
+     *
+     * @param crc1    The CRC32C of the first range.
+     * @param crc2    The CRC32C of the second range.
+     * @param length2 The number of bytes in the second range.
+     * @return The CRC32C of the first range followed by the second.
+     */
+    static int combine(int crc1, int crc2, long length2) {
+        // appending zeros to a checksum of 0 leaves it 0, which saves the work for the first block and for files
+        // without checksums
+        if (length2 <= 0 || crc1 == 0) return crc1 ^ crc2;
+
+        // the operator that appends a single zero bit to the bytes of a checksum, as a 32x32 matrix over GF(2),
+        // is squared into the operators that append 2 and 4 zero bits
+        final var odd = new int[Integer.SIZE];
+        final var even = new int[Integer.SIZE];
+        odd[0] = POLYNOMIAL;
+        for (var i = 1; i < Integer.SIZE; i++) {
+            odd[i] = 1 << (i - 1);
+        }
+        square(even, odd);
+        square(odd, even);
+
+        // the first crc is followed by as many zero bytes as the second range has, one bit of the length at a time,
+        // after which the second crc is simply added
+        var crc = crc1;
+        var remaining = length2;
+        while (true) {
+            square(even, odd);
+            if ((remaining & 1) != 0) crc = times(even, crc);
+            remaining >>>= 1;
+            if (remaining == 0) break;
+
+            square(odd, even);
+            if ((remaining & 1) != 0) crc = times(odd, crc);
+            remaining >>>= 1;
+            if (remaining == 0) break;
+        }
+
+        return crc ^ crc2;
+    }
+
+    private static int times(int[] matrix, int vector) {
+        var product = 0;
+        for (var i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                product ^= matrix[i];
+            }
+        }
+        return product;
+    }
+
+    private static void square(int[] square, int[] matrix) {
+        for (var i = 0; i < Integer.SIZE; i++) {
+            square[i] = times(matrix, matrix[i]);
+        }
+    }
+}
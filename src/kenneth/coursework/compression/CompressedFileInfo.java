@@ -0,0 +1,250 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+import kenneth.coursework.exceptions.UnknownDictionaryException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Describes a compressed file from its header, without decoding its content.
+ */
+public class CompressedFileInfo {
+    private HuffmanCompressor.FormatVersion version;
+    private long compressedSize;
+    private long originalSize;
+    private int blockSize = 0;
+    private int blockCount = 0;
+    private boolean hasIndex = false;
+    private int checkpointInterval = 0;
+    private boolean hasChecksums = false;
+    private boolean hasDictionary = false;
+    private int dictionaryId = 0;
+    private int contextTableCount = 0;
+    private int blockCodeCount = 0;
+    private int[] codeLengths;
+
+    private CompressedFileInfo() {
+    }
+
+    /**
+     * Reads the header of the given compressed file. For files in the block-based format without a
+     * {@link BlockIndex}, or whose blocks have codes of their own, every block is read as well to obtain the size of
+     * the original file and the number of codes.
+     * Files in the adaptive format have no header, and are decoded as a whole to obtain it.
+     *
+     * @param file The compressed file.
+     * @return The description of the file.
+     * @throws IncorrectFormatException When the file is not in a correct format.
+     */
+    public static CompressedFileInfo read(File file) throws IOException, IncorrectFormatException {
+        final var info = new CompressedFileInfo();
+        info.compressedSize = file.length();
+
+        try (final var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            info.version = HuffmanCompressor.FormatVersion.fromByte(input.readUnsignedByte());
+
+            switch (info.version) {
+                case LEGACY:
+                    final var size = HuffmanTreeSerializer.readLegacyTreeSize(input);
+                    info.codeLengths = HuffmanTreeSerializer.deserializeTree(HuffmanTreeSerializer.readSerializedTree(input, size)).getCodeLengths();
+                    info.originalSize = input.readLong();
+                    break;
+                case CANONICAL:
+                    info.codeLengths = HuffmanTreeSerializer.deserializeCodeLengths(input);
+                    info.originalSize = input.readLong();
+                    break;
+                case BLOCKS:
+                    final var blockReader = new BlockReader(input);
+                    info.hasDictionary = blockReader.hasDictionary();
+                    info.dictionaryId = blockReader.getDictionaryId();
+                    info.blockSize = blockReader.getBlockSize();
+                    info.hasIndex = blockReader.hasIndex();
+                    info.checkpointInterval = blockReader.getCheckpointInterval();
+                    info.hasChecksums = blockReader.hasChecksums();
+
+                    if (blockReader.hasBlockCodes()) {
+                        info.codeLengths = null;
+                    } else if (blockReader.hasContexts()) {
+                        // every table has its own code lengths, so there are none for the whole file
+                        info.contextTableCount = blockReader.getContextCodes().getTableCount();
+                        info.codeLengths = null;
+                    } else {
+                        try {
+                            info.codeLengths = blockReader.getCodeLengths();
+                        } catch (UnknownDictionaryException ex) {
+                            // the rest of the file can still be described without the dictionary
+                            info.codeLengths = null;
+                        }
+                    }
+
+                    if (info.hasIndex && !blockReader.hasBlockCodes()) {
+                        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                            final var index = blockReader.readIndex(channel);
+                            info.blockCount = index.getBlockCount();
+                            info.originalSize = index.getRawLength();
+                        }
+                    } else {
+                        for (var block = blockReader.readBlock(); block != null; block = blockReader.readBlock()) {
+                            info.blockCount++;
+                            info.originalSize += block.rawLength;
+                            if (block.codeLengths != null) {
+                                info.blockCodeCount++;
+                            }
+                        }
+                    }
+                    break;
+                case ADAPTIVE:
+                    // the end of the bit stream is only marked by a code, so the whole file has to be decoded
+                    final var decoder = new AdaptiveHuffmanDecoder(input);
+                    final var buffer = new byte[1 << 16];
+                    for (var count = decoder.decode(buffer, 0, buffer.length); count >= 0; count = decoder.decode(buffer, 0, buffer.length)) {
+                        info.originalSize += count;
+                    }
+                    break;
+                default:
+                    throw new IncorrectFormatException();
+            }
+        }
+
+        if (info.originalSize < 0) {
+            throw new IncorrectFormatException();
+        }
+
+        return info;
+    }
+
+    /**
+     * @return The name of the format of the file: legacy, canonical, blocks or adaptive.
+     */
+    public String getFormat() {
+        return version.name().toLowerCase();
+    }
+
+    /**
+     * @return The size of the compressed file in bytes.
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * @return The size of the original file in bytes.
+     */
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    /**
+     * @return The maximum number of bytes of the original file in a block. 0 if the file is not split into blocks.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return The number of blocks in the file. 0 if the file is not split into blocks.
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return Whether the blocks of the file are followed by an index, which allows them to be decoded in parallel.
+     */
+    public boolean hasIndex() {
+        return hasIndex;
+    }
+
+    /**
+     * @return The number of bytes of the original file between the checkpoints in the index, from which ranges can be
+     * read with {@link HuffmanRandomAccessReader}. 0 if the file has no checkpoints.
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * @return Whether every block of the file stores the checksum of its content, along with a checksum of the whole
+     * original file, which are checked when the file is decompressed or verified.
+     */
+    public boolean hasChecksums() {
+        return hasChecksums;
+    }
+
+    /**
+     * @return Whether the file is compressed with a {@link HuffmanDictionary} instead of storing its own codes.
+     */
+    public boolean hasDictionary() {
+        return hasDictionary;
+    }
+
+    /**
+     * @return The ID of the dictionary the file is compressed with. Only valid if {@link #hasDictionary()}.
+     */
+    public int getDictionaryId() {
+        return dictionaryId;
+    }
+
+    /**
+     * @return The number of code tables shared by the order-1 contexts of the file, or 0 if it is not compressed
+     * with {@link ContextCodes}.
+     */
+    public int getContextTableCount() {
+        return contextTableCount;
+    }
+
+    /**
+     * @return The number of blocks that store codes of their own, while the other blocks reuse them, or 0 if the
+     * blocks of the file do not have codes of their own.
+     */
+    public int getBlockCodeCount() {
+        return blockCodeCount;
+    }
+
+    /**
+     * @return Whether the codes of the file are known. False if the file is compressed with a dictionary
+     * that has not been loaded, if its codes are adaptive, or if every context or block has its own codes.
+     */
+    public boolean hasCodeLengths() {
+        return codeLengths != null;
+    }
+
+    /**
+     * @return The number of distinct bytes that have a code. 0 if the codes are not known.
+     */
+    public int getSymbolCount() {
+        if (codeLengths == null) return 0;
+
+        var count = 0;
+        for (final var length : codeLengths) {
+            if (length > 0) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return The length of the longest code. 0 if the codes are not known.
+     */
+    public int getMaxCodeLength() {
+        if (codeLengths == null) return 0;
+
+        var max = 0;
+        for (final var length : codeLengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    /**
+     * @return The length of the code of every byte. 0 if the byte does not have a code. Null if the codes are not known.
+     */
+    public int[] getCodeLengths() {
+        return codeLengths == null ? null : codeLengths.clone();
+    }
+}
@@ -0,0 +1,57 @@
+package kenneth.coursework.compression;
+
+/**
+ * Receives measurements of the operations of a {@link HuffmanCompressor} or {@link HuffmanDecompressor}, so that they
+ * can be exported to whatever monitors the service the engines run in.
+ * <p>
+ * Measurements are recorded once per phase, block or operation, never once per byte, and nothing is measured while no
+ * metrics are set. Operations may run on several threads at the same time, such as the files of a
+ * {@link BatchProcessor}, so implementations must be thread-safe.
+ *
+ * @see InMemoryMetrics
+ * @see JmxMetrics
+ * @see HuffmanCompressor#setMetrics(CompressionMetrics)
+ * @see HuffmanDecompressor#setMetrics(CompressionMetrics)
+ */
+public interface CompressionMetrics {
+    /**
+     * The kinds of operations that are measured.
+     */
+    enum Operation {
+        COMPRESSION,
+        DECOMPRESSION,
+    }
+
+    /**
+     * Records the time an operation spent in one of its phases.
+     *
+     * @param phase The phase.
+     * @param nanos The time spent in the phase.
+     */
+    void recordPhase(Progress.Phase phase, long nanos);
+
+    /**
+     * Records an operation that completed successfully.
+     *
+     * @param operation       The kind of operation.
+     * @param rawBytes        The number of bytes of the original, uncompressed data.
+     * @param compressedBytes The number of bytes of the compressed data, including its header.
+     * @param nanos           The time the whole operation took.
+     */
+    void recordOperation(Operation operation, long rawBytes, long compressedBytes, long nanos);
+
+    /**
+     * Records bytes that had no code, and were encoded with escape codes instead. This only happens when the codes come
+     * from a tree source that has never seen these bytes.
+     *
+     * @param count The number of escaped bytes.
+     */
+    void recordEscapedBytes(long count);
+
+    /**
+     * Records the codes built or used to compress a file, or a block with codes of its own.
+     *
+     * @param codeLengths The length of the code of every byte. 0 if a byte has no code.
+     */
+    void recordCodeLengths(int[] codeLengths);
+}
@@ -0,0 +1,32 @@
+package kenneth.coursework.compression;
+
+import java.util.Map;
+
+/**
+ * The attributes {@link JmxMetrics} exports through JMX. Every attribute is a total since the metrics were created.
+ */
+public interface CompressionMetricsMXBean {
+    long getCompressionCount();
+
+    long getDecompressionCount();
+
+    long getCompressionRawBytes();
+
+    long getCompressionCompressedBytes();
+
+    long getDecompressionRawBytes();
+
+    long getDecompressionCompressedBytes();
+
+    long getCompressionNanos();
+
+    long getDecompressionNanos();
+
+    double getCompressionRatio();
+
+    Map<String, Long> getPhaseNanos();
+
+    long getEscapedBytes();
+
+    long[] getCodeLengthHistogram();
+}
@@ -0,0 +1,504 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Order-1 canonical codes, where every byte is encoded with the code table of the context it appears in, which is the
+ * byte right before it. In text, the byte after a space or a letter is far more predictable than a byte on its own.
+ * <p>
+ * A table for each of the 256 contexts would make the header larger than the savings of most files, so contexts whose
+ * bytes have similar frequencies share a table. Contexts are grouped with k-means, where the distance between a
+ * context and a table is the number of bits its bytes would take with the table, for up to {@link #MAX_TABLE_COUNT}
+ * tables. The number of tables that gives the smallest file, including the header, is chosen.
+ * <p>
+ * The codes are stored as the number of tables as a byte, followed by the table of every context as a byte, and the
+ * code lengths of every table as described in {@link HuffmanTreeSerializer#serializeCodeLengths}.
+ * Blocks start in the context of byte 0, so that they can still be encoded and decoded independently. So do the
+ * checkpoints of a block, described in {@link BlockIndex}, which are decoded without the byte before them.
+ * <p>
+ * Encoding and decoding stay table-driven: a byte is encoded with flat arrays of codes indexed by its context and
+ * itself, and decoded with the {@link HuffmanDecodeTable} of its context.
+ */
+class ContextCodes implements BlockDecoder {
+    /**
+     * The maximum number of code tables.
+     */
+    static final int MAX_TABLE_COUNT = 16;
+
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    // the number of times contexts are assigned to the closest table before the tables are final
+    private static final int MAX_ITERATIONS = 10;
+
+    private final int[] contextTables;
+    private final HuffmanCodes[] tables;
+
+    // the code and its length of byte b in context c are at contextOffsets[c] | b
+    private final int[] codes;
+    private final int[] lengths;
+    private final int[] contextOffsets = new int[HuffmanTree.SYMBOL_COUNT];
+
+    // the decode table of every context, built the first time the codes are decoded
+    private volatile HuffmanDecodeTable[] contextDecodeTables;
+
+    /**
+     * @param contextTables The index of the table of every context.
+     * @param tables        The codes of every table.
+     */
+    private ContextCodes(int[] contextTables, HuffmanCodes[] tables) {
+        this.contextTables = contextTables;
+        this.tables = tables;
+
+        codes = new int[tables.length * HuffmanTree.SYMBOL_COUNT];
+        lengths = new int[tables.length * HuffmanTree.SYMBOL_COUNT];
+        for (var table = 0; table < tables.length; table++) {
+            final var codeTable = tables[table].getCodeTable(HuffmanTree.MAX_CODE_LENGTH);
+            System.arraycopy(codeTable.codes, 0, codes, table << 8, HuffmanTree.SYMBOL_COUNT);
+            System.arraycopy(codeTable.lengths, 0, lengths, table << 8, HuffmanTree.SYMBOL_COUNT);
+        }
+
+        for (var context = 0; context < HuffmanTree.SYMBOL_COUNT; context++) {
+            contextOffsets[context] = contextTables[context] << 8;
+        }
+    }
+
+    /**
+     * Groups the contexts of the given frequencies into tables, and builds the codes of every table.
+     *
+     * @param frequencies   The frequency of every byte in every context, as counted by {@link ContextHistogram}.
+     * @param maxCodeLength The maximum length of a code.
+     * @return The codes that give the smallest file, or null if a single order-0 table gives a smaller file.
+     */
+    static ContextCodes build(long[] frequencies, int maxCodeLength) {
+        final var order0Frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+        for (var i = 0; i < frequencies.length; i++) {
+            order0Frequencies[i & 0xFF] += frequencies[i];
+        }
+
+        final var order0Lengths = HuffmanTree.computeCodeLengths(order0Frequencies, maxCodeLength);
+        var bestSize = HuffmanTree.encodedBits(order0Frequencies, order0Lengths) + 8L * HuffmanTreeSerializer.serializedCodeLengthsSize(order0Lengths);
+        ContextCodes best = null;
+
+        final var contexts = new ContextFrequencies(frequencies);
+        for (var tableCount = 2; tableCount <= Math.min(MAX_TABLE_COUNT, contexts.count); tableCount *= 2) {
+            final var contextTables = contexts.cluster(tableCount);
+
+            final var tableFrequencies = new long[tableCount][HuffmanTree.SYMBOL_COUNT];
+            final var contextCounts = new int[tableCount];
+            for (var i = 0; i < contexts.count; i++) {
+                contexts.addTo(i, tableFrequencies[contextTables[i]]);
+                contextCounts[contextTables[i]]++;
+            }
+
+            // tables that end up without any context are dropped
+            final var tableIndices = new int[tableCount];
+            var usedTableCount = 0;
+            for (var table = 0; table < tableCount; table++) {
+                tableIndices[table] = contextCounts[table] > 0 ? usedTableCount++ : -1;
+            }
+
+            // the table count and the table of every context
+            var size = 8L * (1 + HuffmanTree.SYMBOL_COUNT);
+            final var tables = new HuffmanCodes[usedTableCount];
+            for (var table = 0; table < tableCount; table++) {
+                final var index = tableIndices[table];
+                if (index < 0) continue;
+
+                final var codeLengths = HuffmanTree.computeCodeLengths(tableFrequencies[table], maxCodeLength);
+                size += HuffmanTree.encodedBits(tableFrequencies[table], codeLengths) + 8L * HuffmanTreeSerializer.serializedCodeLengthsSize(codeLengths);
+                tables[index] = HuffmanCodes.fromCodeLengths(codeLengths);
+            }
+
+            if (size < bestSize) {
+                // contexts that never appear use the first table
+                final var allContextTables = new int[HuffmanTree.SYMBOL_COUNT];
+                for (var i = 0; i < contexts.count; i++) {
+                    allContextTables[contexts.contexts[i]] = tableIndices[contextTables[i]];
+                }
+
+                bestSize = size;
+                best = new ContextCodes(allContextTables, tables);
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Reads the codes from the given stream. The code lengths of every table are looked up in the
+     * {@link HuffmanTableCache#getShared() shared cache}.
+     *
+     * @param stream The stream that contains the codes.
+     * @return The codes.
+     * @throws IncorrectFormatException When the codes are not serialized in a correct format.
+     */
+    static ContextCodes read(DataInputStream stream) throws IOException, IncorrectFormatException {
+        final var tableCount = stream.readUnsignedByte();
+        if (tableCount == 0 || tableCount > MAX_TABLE_COUNT) {
+            throw new IncorrectFormatException();
+        }
+
+        final var contextTables = new int[HuffmanTree.SYMBOL_COUNT];
+        for (var context = 0; context < HuffmanTree.SYMBOL_COUNT; context++) {
+            contextTables[context] = stream.readUnsignedByte();
+            if (contextTables[context] >= tableCount) {
+                throw new IncorrectFormatException();
+            }
+        }
+
+        final var tables = new HuffmanCodes[tableCount];
+        for (var table = 0; table < tableCount; table++) {
+            tables[table] = HuffmanTableCache.getShared().readCodeLengths(stream);
+        }
+
+        return new ContextCodes(contextTables, tables);
+    }
+
+    /**
+     * Writes the codes into the given stream.
+     *
+     * @param stream The stream to write to.
+     */
+    void write(DataOutputStream stream) throws IOException {
+        stream.writeByte(tables.length);
+        for (final var table : contextTables) {
+            stream.writeByte(table);
+        }
+        for (final var table : tables) {
+            HuffmanTreeSerializer.serializeCodeLengths(table.getCodeLengths(), stream);
+        }
+    }
+
+    /**
+     * @return The number of code tables.
+     */
+    int getTableCount() {
+        return tables.length;
+    }
+
+    /**
+     * @return The code lengths of every table.
+     */
+    int[][] getCodeLengths() {
+        final var codeLengths = new int[tables.length][];
+        for (var table = 0; table < tables.length; table++) {
+            codeLengths[table] = tables[table].getCodeLengths();
+        }
+        return codeLengths;
+    }
+
+    /**
+     * Merges the tables into order-0 codes, such as the codes of a tree source, which encodes bytes without their
+     * contexts.
+     * <p>
+     * How often every context appears is not stored, so every context that appears is given the same weight. A context
+     * appears when its byte has a code in any table, and so does the context of byte 0, which every block starts in.
+     * A code of length n in a table is used for roughly 2^-n of the bytes in its contexts.
+     *
+     * @return The order-0 codes, through the {@link HuffmanTableCache#getShared() shared cache}.
+     */
+    HuffmanCodes toOrder0Codes() throws IOException, IncorrectFormatException {
+        final var frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+        for (var context = 0; context < HuffmanTree.SYMBOL_COUNT; context++) {
+            if (context != 0 && !hasCode(context)) continue;
+
+            final var offset = contextOffsets[context];
+            for (var b = 0; b < HuffmanTree.SYMBOL_COUNT; b++) {
+                if (lengths[offset | b] > 0) {
+                    frequencies[b] += 1L << (HuffmanTree.MAX_CODE_LENGTH - lengths[offset | b]);
+                }
+            }
+        }
+
+        final var serializedCodeLengths = new ByteArrayOutputStream();
+        HuffmanTreeSerializer.serializeCodeLengths(HuffmanTree.computeCodeLengths(frequencies),
+                new DataOutputStream(serializedCodeLengths));
+        return HuffmanTableCache.getShared().getCodeLengths(serializedCodeLengths.toByteArray());
+    }
+
+    private boolean hasCode(int b) {
+        for (var table = 0; table < tables.length; table++) {
+            if (lengths[(table << 8) | b] > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Encodes the remaining bytes of the given block into the given bit stream, without changing its position.
+     *
+     * @param bytes  The block to be encoded, such as a memory-mapped region of the input file.
+     * @param writer The bit stream the codes are written to.
+     * @throws IOException When a byte does not have a code in its context, which happens when the input changes
+     *                     after it is counted.
+     */
+    void encode(ByteBuffer bytes, BitWriter writer) throws IOException {
+        if (bytes.hasArray()) {
+            encode(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), 0, writer);
+            return;
+        }
+
+        final var chunk = new byte[Math.min(CHUNK_SIZE, bytes.remaining())];
+        var previous = 0;
+        for (var i = bytes.position(); i < bytes.limit(); i += chunk.length) {
+            final var length = Math.min(chunk.length, bytes.limit() - i);
+            bytes.get(i, chunk, 0, length);
+            previous = encode(chunk, 0, length, previous, writer);
+        }
+    }
+
+    /**
+     * @return The last encoded byte, which is the context of the byte after it.
+     */
+    private int encode(byte[] bytes, int offset, int length, int previous, BitWriter writer) throws IOException {
+        final var codes = this.codes;
+        final var lengths = this.lengths;
+        final var contextOffsets = this.contextOffsets;
+        final var end = offset + length;
+
+        for (var i = offset; i < end; i++) {
+            final var b = bytes[i] & 0xFF;
+            final var index = contextOffsets[previous] | b;
+            final var bitLength = lengths[index];
+
+            if (bitLength == 0) {
+                throw new IOException("The input has changed while it was being compressed.");
+            }
+
+            writer.write(codes[index], bitLength);
+            previous = b;
+        }
+
+        return previous;
+    }
+
+    @Override
+    public void decode(BitReader reader, byte[] output, int offset, int length) throws IOException, IncorrectFormatException {
+        decode(reader, output, offset, length, 0);
+    }
+
+    @Override
+    public void decode(BitReader reader, ByteBuffer output, int offset, int length) throws IOException, IncorrectFormatException {
+        if (output.hasArray()) {
+            decode(reader, output.array(), output.arrayOffset() + offset, length, 0);
+            return;
+        }
+
+        final var chunk = new byte[Math.min(CHUNK_SIZE, length)];
+        final var end = offset + length;
+        var previous = 0;
+        for (var i = offset; i < end; i += chunk.length) {
+            final var chunkLength = Math.min(chunk.length, end - i);
+            previous = decode(reader, chunk, 0, chunkLength, previous);
+            output.put(i, chunk, 0, chunkLength);
+        }
+    }
+
+    /**
+     * @return The last decoded byte, which is the context of the byte after it.
+     */
+    private int decode(BitReader reader, byte[] output, int offset, int length, int previous) throws IOException, IncorrectFormatException {
+        final var decodeTables = getDecodeTables();
+        final var end = offset + length;
+
+        for (var i = offset; i < end; i++) {
+            previous = decodeTables[previous].decode(reader);
+            output[i] = (byte) previous;
+        }
+
+        return previous;
+    }
+
+    private HuffmanDecodeTable[] getDecodeTables() {
+        var decodeTables = contextDecodeTables;
+        if (decodeTables == null) {
+            decodeTables = new HuffmanDecodeTable[HuffmanTree.SYMBOL_COUNT];
+            for (var context = 0; context < HuffmanTree.SYMBOL_COUNT; context++) {
+                decodeTables[context] = tables[contextTables[context]].getDecodeTable();
+            }
+            contextDecodeTables = decodeTables;
+        }
+        return decodeTables;
+    }
+
+    /**
+     * The frequencies of the contexts that appear in the input, with only the bytes that appear in each of them,
+     * so that the cost of a context with a table only goes through the bytes it has.
+     */
+    private static class ContextFrequencies {
+        // added to every frequency when it is turned into a number of bits, so that bytes a table has never seen
+        // are expensive rather than impossible
+        private static final double SMOOTHING = 0.5;
+
+        final int count;
+        final int[] contexts;
+        private final int[][] symbols;
+        private final long[][] frequencies;
+
+        ContextFrequencies(long[] pairFrequencies) {
+            final var contexts = new int[HuffmanTree.SYMBOL_COUNT];
+            final var symbols = new int[HuffmanTree.SYMBOL_COUNT][];
+            final var frequencies = new long[HuffmanTree.SYMBOL_COUNT][];
+            var count = 0;
+
+            for (var context = 0; context < HuffmanTree.SYMBOL_COUNT; context++) {
+                var symbolCount = 0;
+                for (var b = 0; b < HuffmanTree.SYMBOL_COUNT; b++) {
+                    if (pairFrequencies[(context << 8) | b] > 0) symbolCount++;
+                }
+                if (symbolCount == 0) continue;
+
+                contexts[count] = context;
+                symbols[count] = new int[symbolCount];
+                frequencies[count] = new long[symbolCount];
+                var i = 0;
+                for (var b = 0; b < HuffmanTree.SYMBOL_COUNT; b++) {
+                    if (pairFrequencies[(context << 8) | b] > 0) {
+                        symbols[count][i] = b;
+                        frequencies[count][i] = pairFrequencies[(context << 8) | b];
+                        i++;
+                    }
+                }
+                count++;
+            }
+
+            this.count = count;
+            this.contexts = contexts;
+            this.symbols = symbols;
+            this.frequencies = frequencies;
+        }
+
+        /**
+         * Adds the frequencies of the context at the given index into the given histogram.
+         */
+        void addTo(int index, long[] histogram) {
+            for (var i = 0; i < symbols[index].length; i++) {
+                histogram[symbols[index][i]] += frequencies[index][i];
+            }
+        }
+
+        /**
+         * Groups the contexts into the given number of tables with k-means. The first table starts from the context
+         * with the most bytes, and every other table starts from the context that is the most expensive to encode
+         * with the tables before it.
+         *
+         * @return The table of the context at every index.
+         */
+        int[] cluster(int tableCount) {
+            final var contextTables = new int[count];
+            final var bits = new double[tableCount][];
+            final var costs = new double[count];
+            final var ownCosts = new double[count];
+
+            var first = 0;
+            for (var i = 1; i < count; i++) {
+                if (total(i) > total(first)) first = i;
+            }
+            bits[0] = bitsOf(histogramOf(first));
+            for (var i = 0; i < count; i++) {
+                costs[i] = cost(i, bits[0]);
+                ownCosts[i] = cost(i, bitsOf(histogramOf(i)));
+            }
+
+            for (var table = 1; table < tableCount; table++) {
+                // the excess cost over the context encoded with its own table
+                var farthest = 0;
+                var farthestExcess = -1.0;
+                for (var i = 0; i < count; i++) {
+                    final var excess = costs[i] - ownCosts[i];
+                    if (excess > farthestExcess) {
+                        farthest = i;
+                        farthestExcess = excess;
+                    }
+                }
+
+                bits[table] = bitsOf(histogramOf(farthest));
+                for (var i = 0; i < count; i++) {
+                    final var cost = cost(i, bits[table]);
+                    if (cost < costs[i]) {
+                        costs[i] = cost;
+                        contextTables[i] = table;
+                    }
+                }
+            }
+
+            for (var iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+                final var histograms = new long[tableCount][HuffmanTree.SYMBOL_COUNT];
+                for (var i = 0; i < count; i++) {
+                    addTo(i, histograms[contextTables[i]]);
+                }
+                for (var table = 0; table < tableCount; table++) {
+                    bits[table] = bitsOf(histograms[table]);
+                }
+
+                var isChanged = false;
+                for (var i = 0; i < count; i++) {
+                    var closest = contextTables[i];
+                    var closestCost = cost(i, bits[closest]);
+                    for (var table = 0; table < tableCount; table++) {
+                        final var cost = cost(i, bits[table]);
+                        if (cost < closestCost) {
+                            closest = table;
+                            closestCost = cost;
+                        }
+                    }
+
+                    if (closest != contextTables[i]) {
+                        contextTables[i] = closest;
+                        isChanged = true;
+                    }
+                }
+
+                if (!isChanged) break;
+            }
+
+            return contextTables;
+        }
+
+        private long total(int index) {
+            var total = 0L;
+            for (final var frequency : frequencies[index]) {
+                total += frequency;
+            }
+            return total;
+        }
+
+        private long[] histogramOf(int index) {
+            final var histogram = new long[HuffmanTree.SYMBOL_COUNT];
+            addTo(index, histogram);
+            return histogram;
+        }
+
+        /**
+         * @return The number of bits the bytes of the context at the given index take with the given bits per byte.
+         */
+        private double cost(int index, double[] bits) {
+            var cost = 0.0;
+            for (var i = 0; i < symbols[index].length; i++) {
+                cost += frequencies[index][i] * bits[symbols[index][i]];
+            }
+            return cost;
+        }
+
+        /**
+         * @return The number of bits every byte would ideally take with the given frequencies.
+         */
+        private static double[] bitsOf(long[] histogram) {
+            var total = 0.0;
+            for (final var frequency : histogram) {
+                total += frequency + SMOOTHING;
+            }
+
+            final var bits = new double[HuffmanTree.SYMBOL_COUNT];
+            for (var b = 0; b < HuffmanTree.SYMBOL_COUNT; b++) {
+                bits[b] = Math.log(total / (histogram[b] + SMOOTHING)) / Math.log(2);
+            }
+            return bits;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package kenneth.coursework.compression;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps track of the frequencies of bytes in every order-1 context, which is the byte right before them.
+ * <p>
+ * Every block is counted on its own, starting in the context of byte 0, since blocks are encoded and decoded
+ * independently of each other. So is every part of a block between two checkpoints, described in {@link BlockIndex}.
+ */
+class ContextHistogram {
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    // the frequency of byte b after byte c is at (c << 8) | b
+    private final long[] counts = new long[HuffmanTree.SYMBOL_COUNT * HuffmanTree.SYMBOL_COUNT];
+    private final int checkpointInterval;
+
+    /**
+     * @param checkpointInterval The number of bytes between the checkpoints of a block, or 0 if blocks have none.
+     */
+    ContextHistogram(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Counts every remaining byte in the given block, without changing its position.
+     *
+     * @param bytes The block to be counted.
+     */
+    void count(ByteBuffer bytes) {
+        if (checkpointInterval == 0) {
+            countSegment(bytes);
+            return;
+        }
+
+        for (var i = bytes.position(); i < bytes.limit(); ) {
+            final var length = Math.min(checkpointInterval, bytes.limit() - i);
+            countSegment(bytes.slice(i, length));
+            i += length;
+        }
+    }
+
+    /**
+     * Counts every remaining byte in the given part of a block, starting in the context of byte 0.
+     */
+    private void countSegment(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            count(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), 0);
+            return;
+        }
+
+        final var chunk = new byte[Math.min(CHUNK_SIZE, bytes.remaining())];
+        var previous = 0;
+        for (var i = bytes.position(); i < bytes.limit(); i += chunk.length) {
+            final var length = Math.min(chunk.length, bytes.limit() - i);
+            bytes.get(i, chunk, 0, length);
+            previous = count(chunk, 0, length, previous);
+        }
+    }
+
+    /**
+     * @return The byte the given range ends with, which is the context of the byte after it.
+     */
+    private int count(byte[] bytes, int offset, int length, int previous) {
+        final var counts = this.counts;
+        final var end = offset + length;
+
+        for (var i = offset; i < end; i++) {
+            final var b = bytes[i] & 0xFF;
+            counts[(previous << 8) | b]++;
+            previous = b;
+        }
+
+        return previous;
+    }
+
+    /**
+     * @return The frequency of every byte in every context. The frequency of byte b after byte c is at (c << 8) | b.
+     */
+    long[] toFrequencies() {
+        return counts.clone();
+    }
+}
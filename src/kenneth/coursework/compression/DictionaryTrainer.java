@@ -0,0 +1,84 @@
+package kenneth.coursework.compression;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trains a {@link HuffmanDictionary} from samples of the inputs it will be used to compress.
+ * <p>
+ * The bytes of every sample are counted together, so larger samples weigh more. Every byte is given a code in the
+ * dictionary, even if it does not appear in any sample, so that any input can be compressed with it.
+ */
+public class DictionaryTrainer {
+    private final ByteHistogram histogram = new ByteHistogram();
+    private int maxCodeLength = HuffmanTree.DEFAULT_MAX_CODE_LENGTH;
+    private long sampleCount = 0;
+
+    /**
+     * Sets the maximum length of a code in the dictionary. Defaults to {@link HuffmanTree#DEFAULT_MAX_CODE_LENGTH}.
+     *
+     * @param maxCodeLength The maximum length of a code, between {@link HuffmanTree#MIN_CODE_LENGTH_LIMIT} and
+     *                      {@link HuffmanTree#MAX_CODE_LENGTH}.
+     */
+    public void setMaxCodeLength(int maxCodeLength) {
+        if (maxCodeLength < HuffmanTree.MIN_CODE_LENGTH_LIMIT || maxCodeLength > HuffmanTree.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Maximum code length must be between " + HuffmanTree.MIN_CODE_LENGTH_LIMIT
+                    + " and " + HuffmanTree.MAX_CODE_LENGTH + ".");
+        }
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    /**
+     * Counts the bytes of the given file.
+     *
+     * @param file The sample file.
+     */
+    public void addSample(File file) throws IOException {
+        try (final var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedFiles.forEachWindow(channel, 0, channel.size(), histogram::count);
+        }
+        sampleCount++;
+    }
+
+    /**
+     * Counts the bytes of the given stream, until the end of the stream. The stream is not closed.
+     *
+     * @param input The sample stream.
+     */
+    public void addSample(InputStream input) throws IOException {
+        histogram.count(input);
+        sampleCount++;
+    }
+
+    /**
+     * Counts the bytes in the given range of the array.
+     *
+     * @param bytes  The sample.
+     * @param offset The index of the first byte of the sample.
+     * @param length The number of bytes in the sample.
+     */
+    public void addSample(byte[] bytes, int offset, int length) {
+        histogram.count(bytes, offset, length);
+        sampleCount++;
+    }
+
+    /**
+     * @return The number of samples added so far.
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Builds a dictionary from the samples added so far, and loads it.
+     *
+     * @return The trained dictionary.
+     */
+    public HuffmanDictionary train() {
+        return HuffmanDictionary.fromCodeLengths(
+                HuffmanTree.computeCompleteCodeLengths(histogram.toFrequencies(), maxCodeLength));
+    }
+}
@@ -0,0 +1,93 @@
+package kenneth.coursework.compression;
+
+/**
+ * A block of the input that is encoded independently from other blocks in a block-based compressed file.
+ */
+class EncodedBlock {
+    /**
+     * The number of bytes of the original input in this block.
+     */
+    final int rawLength;
+
+    /**
+     * The number of bits in the encoded bit stream, excluding the bits used to pad the stream to a byte boundary.
+     */
+    final long bitLength;
+
+    /**
+     * The encoded bit stream, padded to a byte boundary.
+     */
+    final byte[] payload;
+
+    /**
+     * The code lengths stored before the bit stream, when the block has codes of its own. Null if the block is
+     * encoded with the codes in the header of the file, or with the codes of the last block that has codes of its own.
+     */
+    final int[] codeLengths;
+
+    /**
+     * The number of bytes in this block that had no code, and were encoded with escape codes. Only known while
+     * compressing.
+     */
+    final int escapedByteCount;
+
+    /**
+     * The offset in the bit stream of the code of every byte at a multiple of the checkpoint interval after the start
+     * of this block, as unsigned ints. Empty if the file has no checkpoints.
+     *
+     * @see BlockIndex
+     */
+    final int[] checkpoints;
+
+    /**
+     * The CRC32C of the bytes of the original input in this block. 0 if the file has no checksums.
+     */
+    final int checksum;
+
+    EncodedBlock(int rawLength, long bitLength, byte[] payload) {
+        this(rawLength, bitLength, payload, null);
+    }
+
+    EncodedBlock(int rawLength, long bitLength, byte[] payload, int[] codeLengths) {
+        this(rawLength, bitLength, payload, codeLengths, 0, new int[0]);
+    }
+
+    EncodedBlock(int rawLength, long bitLength, byte[] payload, int[] codeLengths, int escapedByteCount, int[] checkpoints) {
+        this(rawLength, bitLength, payload, codeLengths, escapedByteCount, checkpoints, 0);
+    }
+
+    EncodedBlock(int rawLength, long bitLength, byte[] payload, int[] codeLengths, int escapedByteCount, int[] checkpoints, int checksum) {
+        this.rawLength = rawLength;
+        this.bitLength = bitLength;
+        this.payload = payload;
+        this.codeLengths = codeLengths;
+        this.escapedByteCount = escapedByteCount;
+        this.checkpoints = checkpoints;
+        this.checksum = checksum;
+    }
+
+    /**
+     * @param codeLengths The code lengths the block is encoded with, or null if it reuses the codes of the last block
+     *                    that has codes of its own.
+     * @return The same block, with the given code lengths stored before its bit stream.
+     */
+    EncodedBlock withCodeLengths(int[] codeLengths) {
+        return new EncodedBlock(rawLength, bitLength, payload, codeLengths, escapedByteCount, checkpoints, checksum);
+    }
+
+    /**
+     * @param checksum The CRC32C of the bytes of the original input in the block.
+     * @return The same block, with the given checksum stored before its bit stream.
+     */
+    EncodedBlock withChecksum(int checksum) {
+        return new EncodedBlock(rawLength, bitLength, payload, codeLengths, escapedByteCount, checkpoints, checksum);
+    }
+
+    /**
+     * @param bitLength The number of bits in a bit stream.
+     * @return The number of bytes needed to store the bit stream.
+     */
+    static int payloadLength(long bitLength) {
+        return (int) ((bitLength + 7) >>> 3);
+    }
+}
@@ -0,0 +1,68 @@
+package kenneth.coursework.compression;
+
+/**
+ * Maps bytes to their huffman codes, stored in flat arrays indexed by the byte.
+ */
+class HuffmanCodeTable {
+    /**
+     * The huffman code of every byte, right aligned.
+     */
+    final int[] codes;
+
+    /**
+     * The length of the huffman code of every byte. 0 if the byte is not in the tree.
+     */
+    final int[] lengths;
+
+    /**
+     * 1 for every byte whose code is an escape code, as described in {@link HuffmanTree#addEscapeCodes}, and 0 for
+     * the others. Null if no byte has an escape code.
+     */
+    final int[] escapes;
+
+    HuffmanCodeTable(int[] codes, int[] lengths) {
+        this(codes, lengths, null);
+    }
+
+    private HuffmanCodeTable(int[] codes, int[] lengths, int[] escapes) {
+        this.codes = codes;
+        this.lengths = lengths;
+        this.escapes = escapes;
+    }
+
+    /**
+     * Creates a code table of canonical huffman codes with the given lengths.
+     *
+     * @param codeLengths The length of the code of every byte. 0 if the byte is not in the tree.
+     * @return The code table.
+     * @see HuffmanTree#canonicalCodes(int[])
+     */
+    static HuffmanCodeTable fromCodeLengths(int[] codeLengths) {
+        return new HuffmanCodeTable(HuffmanTree.canonicalCodes(codeLengths), codeLengths.clone());
+    }
+
+    /**
+     * Creates a code table of canonical huffman codes that gives every byte a code, including the bytes that have no
+     * code in the given lengths, which are given escape codes.
+     *
+     * @param codeLengths   The length of the code of every byte. 0 if the byte is not in the tree.
+     * @param escapeShift   The expected share of escaped bytes as n, for a share of 2^-n.
+     * @param maxCodeLength The maximum length of a code.
+     * @return The code table.
+     * @see HuffmanTree#addEscapeCodes(int[], int, int)
+     */
+    static HuffmanCodeTable withEscapeCodes(int[] codeLengths, int escapeShift, int maxCodeLength) {
+        final var lengths = HuffmanTree.addEscapeCodes(codeLengths, escapeShift, maxCodeLength);
+        final var escapes = new int[codeLengths.length];
+        var hasEscapes = false;
+
+        for (var b = 0; b < codeLengths.length; b++) {
+            if (codeLengths[b] == 0) {
+                escapes[b] = 1;
+                hasEscapes = true;
+            }
+        }
+
+        return new HuffmanCodeTable(HuffmanTree.canonicalCodes(lengths), lengths.clone(), hasEscapes ? escapes : null);
+    }
+}
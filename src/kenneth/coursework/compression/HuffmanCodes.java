@@ -0,0 +1,114 @@
+package kenneth.coursework.compression;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The codes described by the header of a compressed file, along with the tables derived from them.
+ * <p>
+ * Tables are only built the first time they are needed, and are kept for as long as the codes are kept in a
+ * {@link HuffmanTableCache}. Every table is immutable once built, so the same codes can be used to encode and decode
+ * on any number of threads. Two threads that need a table at the same time may both build it, in which case one of
+ * the tables is simply discarded.
+ */
+class HuffmanCodes {
+    private final int[] codeLengths;
+
+    // the legacy serialized tree. null if the codes are canonical.
+    private final HuffmanTree tree;
+
+    private volatile HuffmanDecodeTable decodeTable;
+
+    // the canonical code table of the code lengths limited to every possible maximum length
+    private final AtomicReferenceArray<HuffmanCodeTable> limitedCodeTables =
+            new AtomicReferenceArray<>(HuffmanTree.MAX_CODE_LENGTH + 1);
+
+    // the same tables, with escape codes for the bytes that have no code, for every estimated share of escaped bytes
+    private final AtomicReferenceArray<HuffmanCodeTable> completeCodeTables =
+            new AtomicReferenceArray<>((HuffmanTree.MAX_CODE_LENGTH + 1) * (HuffmanTree.MAX_ESCAPE_SHIFT + 1));
+
+    private HuffmanCodes(int[] codeLengths, HuffmanTree tree) {
+        this.codeLengths = codeLengths;
+        this.tree = tree;
+    }
+
+    /**
+     * @param codeLengths The canonical code lengths.
+     * @return The canonical codes with the given lengths.
+     */
+    static HuffmanCodes fromCodeLengths(int[] codeLengths) {
+        return new HuffmanCodes(codeLengths, null);
+    }
+
+    /**
+     * @param tree The tree serialized in the legacy format, whose codes are not necessarily canonical.
+     * @return The codes of the tree.
+     */
+    static HuffmanCodes fromTree(HuffmanTree tree) {
+        return new HuffmanCodes(tree.getCodeLengths(), tree);
+    }
+
+    /**
+     * @return The length of the code of every byte. Must not be modified.
+     */
+    int[] getCodeLengths() {
+        return codeLengths;
+    }
+
+    /**
+     * @return The tree of the codes. For canonical codes, a new canonical tree is built every time.
+     */
+    HuffmanTree getTree() {
+        return tree != null ? tree : HuffmanTree.fromCodeLengths(codeLengths);
+    }
+
+    /**
+     * @return The table that decodes the codes.
+     */
+    HuffmanDecodeTable getDecodeTable() {
+        var table = decodeTable;
+        if (table == null) {
+            table = tree != null ? HuffmanDecodeTable.fromTree(tree) : HuffmanDecodeTable.fromCodeLengths(codeLengths);
+            decodeTable = table;
+        }
+        return table;
+    }
+
+    /**
+     * Obtains the table that encodes bytes with canonical codes, whose lengths are the lengths of these codes limited
+     * to the given maximum length.
+     *
+     * @param maxCodeLength The maximum length of a code.
+     * @return The canonical code table.
+     * @see HuffmanTree#limitCodeLengths(int[], int)
+     */
+    HuffmanCodeTable getCodeTable(int maxCodeLength) {
+        var table = limitedCodeTables.get(maxCodeLength);
+        if (table == null) {
+            table = HuffmanCodeTable.fromCodeLengths(HuffmanTree.limitCodeLengths(codeLengths, maxCodeLength));
+            limitedCodeTables.set(maxCodeLength, table);
+        }
+        return table;
+    }
+
+    /**
+     * Obtains the table that encodes every byte, such as the bytes of another input than the one these codes were
+     * built from. The bytes that have no code in these codes are given escape codes, whose length depends on how many
+     * of them the given sample has, and the lengths are limited to the given maximum length.
+     *
+     * @param maxCodeLength     The maximum length of a code.
+     * @param sampleFrequencies The frequency of every byte in a sample of the input to be encoded.
+     * @return The canonical code table.
+     * @see HuffmanTree#addEscapeCodes(int[], int, int)
+     */
+    HuffmanCodeTable getCompleteCodeTable(int maxCodeLength, long[] sampleFrequencies) {
+        final var escapeShift = HuffmanTree.estimateEscapeShift(codeLengths, sampleFrequencies);
+        final var index = maxCodeLength * (HuffmanTree.MAX_ESCAPE_SHIFT + 1) + escapeShift;
+
+        var table = completeCodeTables.get(index);
+        if (table == null) {
+            table = HuffmanCodeTable.withEscapeCodes(codeLengths, escapeShift, maxCodeLength);
+            completeCodeTables.set(index, table);
+        }
+        return table;
+    }
+}
@@ -1,41 +1,395 @@
 package kenneth.coursework.compression;
 
 import kenneth.coursework.exceptions.IncorrectFormatException;
+import kenneth.coursework.exceptions.OperationCancelledException;
 import kenneth.coursework.utils.BinaryTree;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileAlreadyExistsException;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 public class HuffmanCompressor {
     /**
-     * Defines special bytes in the compressed file.
+     * Defines the versions of the format of compressed files, which is stored in the first byte of the file.
      */
-    enum SpecialByte {
+    enum FormatVersion {
         /**
-         * Indicates the following bytes are unknown, meaning it does not exist in the huffman tree.
+         * The tree is serialized node by node as described in {@link HuffmanTreeSerializer}.
+         * Files in this format do not have a version byte. Instead, they start with the size of the serialized tree
+         * as an int, whose first byte is always 0.
          */
-        UNKNOWN_BYTE_STARTS(-2),
+        LEGACY(0),
 
         /**
-         * Indicates the next byte is a known byte.
+         * The tree is stored as the lengths of the canonical huffman code of every byte.
          */
-        UNKNOWN_BYTE_ENDS(-3);
+        CANONICAL(1),
 
-        int b;
+        /**
+         * The input is split into blocks that are encoded independently, as described in {@link BlockWriter}.
+         */
+        BLOCKS(2),
+
+        /**
+         * The codes are updated after every byte, as described in {@link AdaptiveHuffmanTree}, so nothing but the
+         * version byte is stored before the bit stream, which ends with its own marker.
+         */
+        ADAPTIVE(3);
+
+        final int b;
 
-        SpecialByte(int b) {
+        FormatVersion(int b) {
             this.b = b;
         }
 
-        public static boolean isSpecialByte(int b) {
-            return b == SpecialByte.UNKNOWN_BYTE_ENDS.b || b == SpecialByte.UNKNOWN_BYTE_STARTS.b;
+        /**
+         * @param b The first byte of a compressed file.
+         * @return The version of the format the file is in.
+         * @throws IncorrectFormatException When the byte is not a known version.
+         */
+        static FormatVersion fromByte(int b) throws IncorrectFormatException {
+            for (final var version : values()) {
+                if (version.b == b) return version;
+            }
+            throw new IncorrectFormatException();
         }
     }
 
     static final String FILE_EXTENSION = ".huff";
 
+    /**
+     * The default maximum number of bytes of the input in a block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * The maximum number of bytes of the input in a block. The number of bits a block is encoded in is written as an
+     * unsigned 32-bit int, which this keeps from overflowing even if every byte takes {@link HuffmanTree#MAX_CODE_LENGTH}
+     * bits.
+     */
+    public static final int MAX_BLOCK_SIZE = 1 << 27;
+
+    /**
+     * The default number of bytes at the start of a stream used to build the tree.
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 1 << 20;
+
+    // the number of chunks, spread evenly across a file, it is sampled in to estimate how many of its bytes have no
+    // code in a tree source
+    private static final int ESCAPE_SAMPLE_CHUNK_COUNT = 16;
+
+    /**
+     * The default fraction a block may grow by when it reuses the codes of an earlier block.
+     */
+    public static final double DEFAULT_CODE_REUSE_TOLERANCE = 0.01;
+
+    private static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Whether canonical huffman codes are used, in which case only the code lengths are stored in the compressed file
+     * instead of the whole tree.
+     */
+    private boolean useCanonicalCodes = true;
+
+    /**
+     * Sets whether compressed files should use canonical huffman codes, whose header only stores the length of the
+     * code of every byte. Otherwise, the whole tree is serialized into the header in the legacy format.
+     * Enabled by default.
+     *
+     * @param useCanonicalCodes Whether canonical huffman codes should be used.
+     */
+    public void setUseCanonicalCodes(boolean useCanonicalCodes) {
+        this.useCanonicalCodes = useCanonicalCodes;
+    }
+
+    /**
+     * Whether adaptive huffman codes are used, in which case the input is encoded in a single pass without a tree.
+     */
+    private boolean useAdaptiveCodes = false;
+
+    /**
+     * Sets whether compressed files should use adaptive huffman codes, which are updated after every byte instead of
+     * being built from the whole input and stored in the header. The input is only read once and nothing is held back,
+     * which suits streams that never end, at the cost of encoding and decoding a bit at a time.
+     * Disabled by default.
+     * <p>
+     * Tree sources, dictionaries, the block size and the maximum code length are ignored while adaptive codes are
+     * used.
+     *
+     * @param useAdaptiveCodes Whether adaptive huffman codes should be used.
+     * @see AdaptiveHuffmanOutputStream
+     */
+    public void setUseAdaptiveCodes(boolean useAdaptiveCodes) {
+        this.useAdaptiveCodes = useAdaptiveCodes;
+    }
+
+    /**
+     * Whether every byte is encoded with the code table of the byte before it.
+     */
+    private boolean useContextCodes = false;
+
+    /**
+     * Sets whether every byte should be encoded with the code table of its order-1 context, which is the byte before
+     * it, as described in {@link ContextCodes}. Contexts with similar bytes share a table, and a single table is still
+     * used if it gives a smaller file. Text and logs usually shrink noticeably, at a slightly slower count.
+     * Disabled by default.
+     * <p>
+     * Only applies to files in the block-based format whose tree is built from the whole file. It is ignored when a
+     * tree source, a dictionary or a sample size is given, and when a stream is compressed.
+     *
+     * @param useContextCodes Whether order-1 context codes should be used.
+     */
+    public void setUseContextCodes(boolean useContextCodes) {
+        this.useContextCodes = useContextCodes;
+    }
+
+    /**
+     * Whether every block is given codes of its own.
+     */
+    private boolean useBlockCodes = false;
+
+    /**
+     * Sets whether every block should be given codes built from its own bytes, instead of sharing the codes built from
+     * the whole input. This suits inputs whose statistics shift from one part to another, such as archives of
+     * different kinds of files, and streams, which no longer have to be sampled. The codes are stored along with every
+     * block, so files can still be decoded block by block with only the codes of the current block in memory.
+     * Disabled by default.
+     * <p>
+     * Only applies to the block-based format. It is ignored when a tree source, a dictionary or context codes are used.
+     *
+     * @param useBlockCodes Whether every block should be given codes of its own.
+     * @see #setCodeReuseTolerance(double)
+     */
+    public void setUseBlockCodes(boolean useBlockCodes) {
+        this.useBlockCodes = useBlockCodes;
+    }
+
+    /**
+     * The fraction a block may grow by when it reuses the codes of an earlier block.
+     */
+    private double codeReuseTolerance = DEFAULT_CODE_REUSE_TOLERANCE;
+
+    /**
+     * Sets how much larger a block may get by reusing the codes of the last block that has codes of its own, rather
+     * than storing codes of its own, as a fraction of its size with its own codes. Reused codes do not have to be
+     * stored or built again by the decoder, so a small tolerance trades a little size for faster decoding.
+     * Defaults to {@link #DEFAULT_CODE_REUSE_TOLERANCE}. Only applies when every block is given codes of its own.
+     *
+     * @param codeReuseTolerance The fraction, such as 0.01 for 1%. 0 only reuses codes that do not make a block larger.
+     * @see #setUseBlockCodes(boolean)
+     */
+    public void setCodeReuseTolerance(double codeReuseTolerance) {
+        if (!(codeReuseTolerance >= 0)) {
+            throw new IllegalArgumentException("Code reuse tolerance cannot be negative.");
+        }
+        this.codeReuseTolerance = codeReuseTolerance;
+    }
+
+    /**
+     * The maximum length of a huffman code.
+     */
+    private int maxCodeLength = HuffmanTree.DEFAULT_MAX_CODE_LENGTH;
+
+    /**
+     * Sets the maximum length of a huffman code. Bytes that would be given longer codes are given codes of this
+     * length instead, and the other codes are adjusted to make room for them with as little cost as possible.
+     * Shorter limits keep the tables used to decode the file small. Defaults to
+     * {@link HuffmanTree#DEFAULT_MAX_CODE_LENGTH}.
+     *
+     * @param maxCodeLength The maximum length of a code, between {@link HuffmanTree#MIN_CODE_LENGTH_LIMIT} and
+     *                      {@link HuffmanTree#MAX_CODE_LENGTH}.
+     */
+    public void setMaxCodeLength(int maxCodeLength) {
+        if (maxCodeLength < HuffmanTree.MIN_CODE_LENGTH_LIMIT || maxCodeLength > HuffmanTree.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Maximum code length must be between " + HuffmanTree.MIN_CODE_LENGTH_LIMIT
+                    + " and " + HuffmanTree.MAX_CODE_LENGTH + ".");
+        }
+        this.maxCodeLength = maxCodeLength;
+    }
+
+    /**
+     * The maximum number of bytes of the input in a block. 0 if the input is not split into blocks.
+     */
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+
+    /**
+     * The number of threads used to count and encode blocks.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of bytes at the start of the input used to build the tree. 0 if the whole input is used.
+     */
+    private int sampleSize = 0;
+
+    /**
+     * Sets the maximum number of bytes of the input in a block. Blocks are counted and encoded in parallel,
+     * and each of them is written with its own length, so that they can be decoded independently.
+     * Blocks of 1 to 4 MB keep every thread busy without holding too much of the input in memory.
+     * <p>
+     * Blocks require canonical huffman codes. If canonical codes are disabled, or the block size is 0,
+     * the input is encoded as a single stream.
+     *
+     * @param blockSize The maximum number of bytes in a block, at most {@link #MAX_BLOCK_SIZE}, or 0 to disable blocks.
+     * @see #setUseCanonicalCodes(boolean)
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 0 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be between 0 and " + MAX_BLOCK_SIZE + ".");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Sets the number of threads used to count and encode blocks. Defaults to the number of available processors.
+     *
+     * @param parallelism The number of threads. 1 if blocks should be processed on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the number of bytes at the start of the input used to build the tree, so that the input only has to be
+     * read once. Every byte is given a code in a sampled tree, even if it does not appear in the sample: the bytes
+     * missing from the sample share an escape code, as described in {@link HuffmanTree#addEscapeCodes(int[], int, int)}.
+     * An input that ends within the sample is encoded with exact codes.
+     * <p>
+     * Defaults to 0, which reads the whole file to build the tree before encoding it. Only applies to the
+     * block-based format, and is ignored when a tree source is given or every block is given codes of its own. Streams
+     * are always compressed in a single pass, using {@link #DEFAULT_SAMPLE_SIZE} if the sample size is 0.
+     *
+     * @param sampleSize The number of bytes in the sample, or 0 to use the whole input.
+     * @see #setBlockSize(int)
+     */
+    public void setSampleSize(int sampleSize) {
+        if (sampleSize < 0) {
+            throw new IllegalArgumentException("Sample size cannot be negative.");
+        }
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * The number of bytes of the input between checkpoints in a block. 0 if blocks have no checkpoints.
+     */
+    private int checkpointInterval = 0;
+
+    /**
+     * Sets the number of bytes of the input between the checkpoints recorded in the index of a block-based file, so
+     * that {@link HuffmanRandomAccessReader} can decode a range of the original file from the nearest checkpoint before
+     * it instead of from the start of its block. Every checkpoint takes 4 bytes in the index, so checkpoints every 16
+     * to 64 KB keep the index small while a range is decoded in well under a millisecond.
+     * <p>
+     * Defaults to 0, which records no checkpoints. Files with checkpoints always have an index, even if they only have
+     * a single block. Only applies to the block-based format, and is ignored for adaptive codes.
+     *
+     * @param checkpointInterval The number of bytes between checkpoints, or 0 to record none.
+     * @see #setBlockSize(int)
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("Checkpoint interval cannot be negative.");
+        }
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Whether the checksums of every block and of the whole input are written.
+     */
+    private boolean useChecksums = false;
+
+    /**
+     * Sets whether the CRC32C of every block, and of the whole input, should be stored in block-based files, so that a
+     * file corrupted in storage fails to decompress with {@link kenneth.coursework.exceptions.ChecksumMismatchException}
+     * instead of producing garbage. Every block is checked as it is decoded, and the checksums are computed by the
+     * threads that encode the blocks with the CRC instructions of the processor, so they cost little in either
+     * direction. The checksum of the whole input is the CRC32C of the original file, and takes 4 bytes after the
+     * blocks, along with 4 bytes in every block.
+     * <p>
+     * Disabled by default. Only applies to the block-based format, and is ignored for adaptive codes.
+     *
+     * @param useChecksums Whether checksums should be written.
+     * @see HuffmanDecompressor#verify(File)
+     */
+    public void setUseChecksums(boolean useChecksums) {
+        this.useChecksums = useChecksums;
+    }
+
+    /**
+     * The dictionary the input is encoded with. Null if the input is encoded with codes of its own.
+     */
+    private HuffmanDictionary dictionary = null;
+
+    /**
+     * Sets the dictionary the input is encoded with, so that compressed files only store the ID of the dictionary
+     * instead of their own codes. Files compressed with a dictionary can only be decompressed once the same dictionary
+     * has been loaded, and are always in the block-based format, using {@link #DEFAULT_BLOCK_SIZE} if the block size
+     * is 0. Tree sources and the maximum code length are ignored while a dictionary is set.
+     *
+     * @param dictionary The dictionary, or null to give every input codes of its own.
+     */
+    public void setDictionary(HuffmanDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * The listener the progress of every operation is reported to. Null if progress is not reported.
+     */
+    private ProgressListener progressListener = null;
+
+    /**
+     * Sets the listener the progress of every compression is reported to, with the bytes read and written, the current
+     * phase and the throughput.
+     *
+     * @param progressListener The listener, or null to stop reporting progress.
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * The token that cancels every operation. Null if operations cannot be cancelled.
+     */
+    private CancellationToken cancellationToken = null;
+
+    /**
+     * Sets the token that cancels every compression, which is checked between buffers and blocks. A cancelled
+     * compression throws {@link OperationCancelledException}, and the partial output of a file is deleted. Streams are
+     * not cleaned up, since their output belongs to the caller.
+     *
+     * @param cancellationToken The token, or null if compressions cannot be cancelled.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * The metrics every operation is recorded in. Null if operations are not measured.
+     */
+    private CompressionMetrics metrics = null;
+
+    /**
+     * Sets the metrics every compression is recorded in: the time of every phase, the sizes of the input and the
+     * output, the bytes that had no code and the lengths of the codes. Nothing is measured while no metrics are set.
+     *
+     * @param metrics The metrics, such as {@link InMemoryMetrics} or {@link JmxMetrics}, or null to stop measuring.
+     */
+    public void setMetrics(CompressionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Compress the given file, optionally with the huffman tree stored in the given compressed file.
      *
@@ -43,17 +397,13 @@ public class HuffmanCompressor {
      * @param dest       The output file to which compressed content will be written to.
      * @param treeSource The compressed file where the tree is stored. If null, a unique tree is generated for the file.
      * @param overwrite  Whether to overwrite the destination file if it already exists.
+     * @throws OperationCancelledException When the compression is cancelled, after the partial output is deleted.
      */
     public void compress(File inputFile, File dest, File treeSource, boolean overwrite) throws IOException, IncorrectFormatException {
-        HuffmanTree tree;
+        final var progress = new ProgressTracker(progressListener, cancellationToken, metrics, CompressionMetrics.Operation.COMPRESSION);
+        progress.checkCancelled();
 
-        if (treeSource == null) {
-            tree = new HuffmanTree(new BufferedInputStream(new FileInputStream(inputFile)));
-            tree.build();
-        } else {
-            final var treeSourceFileInput = new DataInputStream(new BufferedInputStream(new FileInputStream(treeSource)));
-            tree = HuffmanTreeSerializer.deserializeFromStream(treeSourceFileInput);
-        }
+        final var sourceCodes = treeSource != null && dictionary == null && !useAdaptiveCodes ? readTreeSource(treeSource) : null;
 
         final var file = new File(dest.getAbsolutePath() + FILE_EXTENSION);
         final var isFileCreated = file.createNewFile();
@@ -62,124 +412,524 @@ public class HuffmanCompressor {
             throw new FileAlreadyExistsException(dest + FILE_EXTENSION);
         }
 
-        final var inputFileStream = new BufferedInputStream(new FileInputStream(inputFile));
-        final var fileOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, false)));
+        try {
+            if (useAdaptiveCodes) {
+                try (final var input = new FileInputStream(inputFile);
+                     final var output = progress.countWritten(new FileOutputStream(file, false))) {
+                    progress.startPhase(Progress.Phase.ENCODING, inputFile.length());
+                    compressAdaptive(input, output, false, progress);
+                }
+            } else if (dictionary != null) {
+                compressBlocks(inputFile, file, null, progress);
+            } else if (!useCanonicalCodes || blockSize == 0) {
+                compressSingleStream(inputFile, file, sourceCodes, progress);
+            } else if (sourceCodes == null && sampleSize > 0 && !useBlockCodes) {
+                try (final var input = new FileInputStream(inputFile);
+                     final var output = new BufferedOutputStream(progress.countWritten(new FileOutputStream(file, false)))) {
+                    compressBlocks(input, output, null, sampleSize, progress, inputFile.length());
+                }
+            } else {
+                compressBlocks(inputFile, file, sourceCodes, progress);
+            }
+        } catch (OperationCancelledException ex) {
+            // the output could never be decompressed, so it is not left behind
+            Files.deleteIfExists(file.toPath());
+            throw ex;
+        }
 
-        final var treeVisitor = new HuffmanTreeVisitor();
+        progress.finish(inputFile.length(), file.length());
+    }
 
-        tree.traverse(treeVisitor);
+    /**
+     * Compresses everything in the given stream in a single pass, which allows streams that cannot be read twice,
+     * such as pipes and sockets, to be compressed. The output is in the block-based format, unless adaptive codes are
+     * used.
+     * <p>
+     * If neither a tree source nor a dictionary is given, the tree is built from a sample at the start of the stream,
+     * as configured by {@link #setSampleSize(int)}. With a tree source, the sample is only used to estimate how many
+     * bytes have no code in the tree. With adaptive codes, the output is flushed whenever the input has
+     * no more bytes available yet, so that a stream that is still being written can be decompressed as it goes.
+     * Neither stream is closed.
+     *
+     * @param input      The stream to be compressed.
+     * @param output     The stream to which compressed content will be written to.
+     * @param treeSource The compressed file where the tree is stored. If null, the tree is built from a sample.
+     * @throws OperationCancelledException When the compression is cancelled. The output is left incomplete.
+     */
+    public void compress(InputStream input, OutputStream output, File treeSource) throws IOException, IncorrectFormatException {
+        final var progress = new ProgressTracker(progressListener, cancellationToken, metrics, CompressionMetrics.Operation.COMPRESSION);
 
-        writeSerializedTree(treeVisitor.getSerializedTreeBytes(), treeVisitor.getSerializedTreeSize(), fileOutput);
+        if (useAdaptiveCodes) {
+            progress.startPhase(Progress.Phase.ENCODING, -1);
+            compressAdaptive(input, progress.countWritten(output), true, progress);
+        } else {
+            final var sourceCodes = treeSource != null && dictionary == null ? readTreeSource(treeSource) : null;
 
-        final var bitCodeMap = treeVisitor.getBitCodeMap();
+            final var bufferedOutput = new BufferedOutputStream(progress.countWritten(output));
+            compressBlocks(input, bufferedOutput, sourceCodes, sampleSize > 0 ? sampleSize : DEFAULT_SAMPLE_SIZE, progress, -1);
+            bufferedOutput.flush();
+        }
 
-        fileOutput.writeLong(inputFile.length());
+        // streams are read once, while they are encoded
+        progress.finish(progress.getBytesRead(), progress.getBytesWritten());
+    }
+
+    /**
+     * Compresses everything in the given stream with adaptive huffman codes, and marks the end of the stream.
+     *
+     * @param flushWhenIdle Whether to flush the output whenever the input has no more bytes available yet.
+     */
+    private void compressAdaptive(InputStream input, OutputStream output, boolean flushWhenIdle, ProgressTracker progress) throws IOException {
+        final var adaptiveOutput = new AdaptiveHuffmanOutputStream(output);
+        final var buffer = new byte[STREAM_BUFFER_SIZE];
 
-        var partition = 0;
-        var pos = 8;
-        var isPrevByteUnknown = false;
+        for (var read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+            adaptiveOutput.write(buffer, 0, read);
+            progress.addRead(read);
 
-        for (var b = inputFileStream.read(); b >= 0; b = inputFileStream.read()) {
-            final var bits = bitCodeMap.get(b);
+            if (flushWhenIdle && input.available() == 0) {
+                adaptiveOutput.flush();
+            }
+        }
 
-            if (bits == null) {
-                if (!isPrevByteUnknown) {
-                    fileOutput.write(partition);
-                    fileOutput.writeShort(SpecialByte.UNKNOWN_BYTE_STARTS.b);
-                    partition = 0;
-                    pos = 8;
-                    isPrevByteUnknown = true;
+        adaptiveOutput.finish();
+    }
+
+    /**
+     * Reads the codes stored in the header of the given compressed file. The codes and their tables are cached,
+     * so compressing many files with the same tree source only parses it once.
+     */
+    private static HuffmanCodes readTreeSource(File treeSource) throws IOException, IncorrectFormatException {
+        try (final var treeSourceFileInput = new DataInputStream(new BufferedInputStream(new FileInputStream(treeSource)))) {
+            return HuffmanTreeSerializer.readCodes(treeSourceFileInput);
+        }
+    }
+
+    /**
+     * Counts the bytes of a sample of the given file, made of chunks spread evenly across it, so that the share of its
+     * bytes that have no code in a tree source can be estimated without reading the whole file.
+     */
+    private static long[] countEscapeSample(FileChannel channel, long size) throws IOException {
+        final var histogram = new ByteHistogram();
+
+        if (size <= DEFAULT_SAMPLE_SIZE) {
+            MappedFiles.forEachWindow(channel, 0, size, histogram::count);
+        } else {
+            final var chunkSize = DEFAULT_SAMPLE_SIZE / ESCAPE_SAMPLE_CHUNK_COUNT;
+            for (var i = 0; i < ESCAPE_SAMPLE_CHUNK_COUNT; i++) {
+                histogram.count(MappedFiles.map(channel, (size - chunkSize) * i / (ESCAPE_SAMPLE_CHUNK_COUNT - 1), chunkSize));
+            }
+        }
+
+        return histogram.toFrequencies();
+    }
+
+    /**
+     * Compresses the given file as a single stream, in either the canonical or the legacy format.
+     */
+    private void compressSingleStream(File inputFile, File file, HuffmanCodes sourceCodes, ProgressTracker progress) throws IOException {
+        try (final var inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             final var fileOutput = new DataOutputStream(new BufferedOutputStream(progress.countWritten(new FileOutputStream(file, false))))) {
+            compressSingleStream(inputChannel, fileOutput, sourceCodes, progress);
+        }
+    }
+
+    private void compressSingleStream(FileChannel inputChannel, DataOutputStream fileOutput, HuffmanCodes sourceCodes, ProgressTracker progress) throws IOException {
+        final var inputSize = inputChannel.size();
+        HuffmanTree tree = null;
+        HuffmanCodeTable completeCodeTable = null;
+        final int[] codeLengths;
+
+        if (sourceCodes == null) {
+            final var histogram = new ByteHistogram();
+            progress.startPhase(Progress.Phase.COUNTING, inputSize);
+            MappedFiles.forEachWindow(inputChannel, 0, inputSize, window -> progress.forEachChunk(window, histogram::count));
+            final var frequencies = histogram.toFrequencies();
+            progress.startPhase(Progress.Phase.BUILDING_TREE, -1);
+            tree = HuffmanTree.fromFrequencies(frequencies);
+            codeLengths = HuffmanTree.computeCodeLengths(frequencies, maxCodeLength);
+        } else {
+            completeCodeTable = sourceCodes.getCompleteCodeTable(maxCodeLength, countEscapeSample(inputChannel, inputSize));
+            codeLengths = completeCodeTable.lengths;
+        }
+
+        final HuffmanCodeTable codeTable;
+        startHeader(progress, codeLengths);
+
+        if (useCanonicalCodes) {
+            fileOutput.writeByte(FormatVersion.CANONICAL.b);
+            HuffmanTreeSerializer.serializeCodeLengths(codeLengths, fileOutput);
+            codeTable = completeCodeTable != null ? completeCodeTable : HuffmanCodeTable.fromCodeLengths(codeLengths);
+        } else {
+            if (tree == null) {
+                tree = sourceCodes.getTree();
+            }
+
+            if (!Arrays.equals(codeLengths, tree.getCodeLengths())) {
+                // the tree is deeper than the limit, or lacks bytes that are given escape codes, so it is replaced with
+                // a canonical tree of the new lengths
+                tree = HuffmanTree.fromCodeLengths(codeLengths);
+            }
+
+            final var treeVisitor = new HuffmanTreeVisitor();
+            tree.traverse(treeVisitor);
+            writeSerializedTree(HuffmanTreeSerializer.serializeTree(tree), fileOutput);
+
+            // a tree with escape codes is always canonical, so it has the same codes as the table that knows which
+            // bytes are escaped
+            codeTable = completeCodeTable != null && completeCodeTable.escapes != null ? completeCodeTable : treeVisitor.getCodeTable();
+        }
+
+        fileOutput.writeLong(inputSize);
+
+        final var bitWriter = new BitWriter(fileOutput);
+        final var encoder = new HuffmanEncoder(codeTable, progress.countsEscapedBytes());
+        progress.startPhase(Progress.Phase.ENCODING, inputSize);
+        MappedFiles.forEachWindow(inputChannel, 0, inputSize, window -> progress.forEachChunk(window, chunk -> encoder.encode(chunk, bitWriter)));
+        progress.addEscapedBytes(encoder.getEscapedByteCount());
+
+        // pads the remaining bits to a full byte
+        bitWriter.flush();
+    }
+
+    /**
+     * Compresses the given file in the block-based format. Blocks are counted and encoded in parallel,
+     * and written into the file in the order they appear in the input.
+     */
+    private void compressBlocks(File inputFile, File file, HuffmanCodes sourceCodes, ProgressTracker progress) throws IOException {
+        final var blockSize = this.blockSize > 0 ? this.blockSize : DEFAULT_BLOCK_SIZE;
+        final var countEscapes = progress.countsEscapedBytes();
+
+        try (final var channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             final var fileOutput = new BufferedOutputStream(progress.countWritten(new FileOutputStream(file, false)))) {
+            final var blocks = new InputBlocks(channel, blockSize);
+            final var pool = parallelism > 1 && blocks.count > 1 ? new ForkJoinPool(parallelism) : null;
+
+            try {
+                // a single block can already be decoded without an index, which would only make small files larger
+                final var blockWriter = new BlockWriter(fileOutput, blocks.count > 1, checkpointInterval, useChecksums);
+                final BlockSource source;
+
+                if (dictionary != null) {
+                    final var codeTable = dictionary.getCodeTable();
+                    startHeader(progress, codeTable.lengths);
+                    blockWriter.writeHeader(blockSize, dictionary);
+                    source = mapBlocks(blocks, bytes -> HuffmanEncoder.encodeBlock(bytes, codeTable, checkpointInterval, countEscapes));
+                } else if (sourceCodes != null) {
+                    final var codeTable = sourceCodes.getCompleteCodeTable(maxCodeLength, countEscapeSample(channel, blocks.size));
+                    startHeader(progress, codeTable.lengths);
+                    blockWriter.writeHeader(blockSize, codeTable.lengths);
+                    source = mapBlocks(blocks, bytes -> HuffmanEncoder.encodeBlock(bytes, codeTable, checkpointInterval, countEscapes));
+                } else if (useContextCodes) {
+                    // the order-0 frequencies are the sums of the order-1 frequencies, so the file is only counted once
+                    final var frequencies = countBytes(blocks, pool, true, progress);
+                    progress.startPhase(Progress.Phase.BUILDING_TREE, -1);
+                    final var contextCodes = ContextCodes.build(frequencies, maxCodeLength);
+
+                    if (contextCodes != null) {
+                        startHeader(progress, null);
+                        for (final var codeLengths : contextCodes.getCodeLengths()) {
+                            progress.recordCodeLengths(codeLengths);
+                        }
+                        blockWriter.writeHeader(blockSize, contextCodes);
+                        source = mapBlocks(blocks, bytes -> HuffmanEncoder.encodeBlock(bytes, contextCodes, checkpointInterval));
+                    } else {
+                        final var order0Frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+                        for (var i = 0; i < frequencies.length; i++) {
+                            order0Frequencies[i & 0xFF] += frequencies[i];
+                        }
+                        final var codeTable = HuffmanCodeTable.fromCodeLengths(HuffmanTree.computeCodeLengths(order0Frequencies, maxCodeLength));
+                        startHeader(progress, codeTable.lengths);
+                        blockWriter.writeHeader(blockSize, codeTable.lengths);
+                        source = mapBlocks(blocks, bytes -> HuffmanEncoder.encodeBlock(bytes, codeTable, checkpointInterval, countEscapes));
+                    }
+                } else if (useBlockCodes) {
+                    // the codes of every block are recorded when the block is written
+                    startHeader(progress, null);
+                    blockWriter.writeHeader(blockSize);
+                    source = mapBlocksWithOwnCodes(blocks, pool);
+                } else {
+                    final var frequencies = countBytes(blocks, pool, false, progress);
+                    progress.startPhase(Progress.Phase.BUILDING_TREE, -1);
+                    final var codeTable = HuffmanCodeTable.fromCodeLengths(HuffmanTree.computeCodeLengths(frequencies, maxCodeLength));
+                    startHeader(progress, codeTable.lengths);
+                    blockWriter.writeHeader(blockSize, codeTable.lengths);
+                    source = mapBlocks(blocks, bytes -> HuffmanEncoder.encodeBlock(bytes, codeTable, checkpointInterval, countEscapes));
+                }
+
+                progress.startPhase(Progress.Phase.ENCODING, blocks.size);
+                encodeBlocks(source, blockWriter, pool, progress);
+                blockWriter.finish();
+            } finally {
+                if (pool != null) {
+                    pool.shutdown();
                 }
-                fileOutput.write(b);
-                continue;
-            }
-
-            if (isPrevByteUnknown) {
-                fileOutput.writeShort(SpecialByte.UNKNOWN_BYTE_ENDS.b);
-                isPrevByteUnknown = false;
-            }
-
-            final var bitLength = bits[0];
-            final var bitCode = bits[1];
-
-            // write bits into temporary bytes before writing into stream
-            // each bit code in bitCodeMap is stored in a tuple, where the first item
-            // specifies the length of the bits, and the second item specifies the actual bit code.
-            //
-            // this allows us to obtain leading zero bits in the code which would otherwise not be accessible
-            // if we used a combination of bit mask and while loop to obtain bit length manually, since we
-            // can't distinguish between start of bit code or 0 bit with actual meaning (left node in the huffman tree).
-            //
-            // for example, consider 00100. without knowing the length, it is impossible to tell where the start
-            // of the bit code is. it can be 0100, or 100, or 00100.
-            //
-            // by knowing the length, we can create a bit mask with exactly that amount of bits
-            // (by creating a leading 1 shifted to the left by the same amount).
-            //
-            // we write the byte (partition) left to right - so pos should start at 8 (8 bits = 1 byte).
-            // when we reaches 0, we know the byte is full, so we write the byte to the stream
-            // and reset the byte (partition).
-
-            var maskPos = bitLength - 1;
-            var mask = 1 << maskPos;
-            while (mask > 0) {
-                if (pos == 0) {
-                    fileOutput.write(partition);
-                    pos = 8;
-                    partition = 0;
+            }
+        }
+    }
+
+    /**
+     * Provides every block of the given file, encoded by the given function. Every block is mapped by the task that
+     * encodes it, so that blocks are also read in parallel.
+     */
+    private BlockSource mapBlocks(InputBlocks blocks, BlockEncoder encoder) {
+        final var nextBlock = new int[]{0};
+        return () -> {
+            if (nextBlock[0] == blocks.count) return null;
+
+            final var index = nextBlock[0]++;
+            return () -> {
+                final var bytes = blocks.map(index);
+                return withChecksum(encoder.encode(bytes), bytes);
+            };
+        };
+    }
+
+    /**
+     * Provides every block of the given file with codes chosen by a {@link BlockCodeSelector}. Blocks are counted in
+     * the pool ahead of the block being chosen, since the codes of every block depend on the codes chosen before it.
+     */
+    private BlockSource mapBlocksWithOwnCodes(InputBlocks blocks, ForkJoinPool pool) {
+        final var counter = new BlockCounter(blocks, pool, parallelism * 2);
+        final var selector = new BlockCodeSelector(maxCodeLength, codeReuseTolerance);
+        final var nextBlock = new int[]{0};
+        return () -> {
+            if (nextBlock[0] == blocks.count) return null;
+
+            final var index = nextBlock[0]++;
+            final var codeLengths = selector.select(counter.next());
+            final var codeTable = selector.getCodeTable();
+            return () -> {
+                final var bytes = blocks.map(index);
+                return withChecksum(HuffmanEncoder.encodeBlock(bytes, codeTable, checkpointInterval, false), bytes).withCodeLengths(codeLengths);
+            };
+        };
+    }
+
+    /**
+     * Compresses the given stream in the block-based format in a single pass. Blocks are read from the stream
+     * one after another, but still encoded in parallel.
+     *
+     * @param sourceCodes The codes used to encode the stream. If null, the codes are built from a sample, unless every
+     *                    block is given codes of its own.
+     * @param sampleSize The number of bytes at the start of the stream used to build the tree.
+     * @param inputSize  The number of bytes in the stream, or -1 if it is not known.
+     */
+    private void compressBlocks(InputStream input, OutputStream output, HuffmanCodes sourceCodes, int sampleSize, ProgressTracker progress, long inputSize) throws IOException {
+        final var blockSize = this.blockSize > 0 ? this.blockSize : DEFAULT_BLOCK_SIZE;
+        final var countEscapes = progress.countsEscapedBytes();
+        final var blockWriter = new BlockWriter(output, true, checkpointInterval, useChecksums);
+        final HuffmanCodeTable codeTable;
+        BlockCodeSelector selector = null;
+        InputStream blockInput = input;
+
+        if (dictionary != null) {
+            codeTable = dictionary.getCodeTable();
+            startHeader(progress, codeTable.lengths);
+            blockWriter.writeHeader(blockSize, dictionary);
+        } else if (sourceCodes != null) {
+            final var sample = new byte[sampleSize];
+            final var sampleLength = input.readNBytes(sample, 0, sampleSize);
+            final var histogram = new ByteHistogram();
+            histogram.count(sample, 0, sampleLength);
+            codeTable = sourceCodes.getCompleteCodeTable(maxCodeLength, histogram.toFrequencies());
+            startHeader(progress, codeTable.lengths);
+            blockWriter.writeHeader(blockSize, codeTable.lengths);
+            blockInput = new SequenceInputStream(new ByteArrayInputStream(sample, 0, sampleLength), input);
+        } else if (useBlockCodes) {
+            codeTable = null;
+            selector = new BlockCodeSelector(maxCodeLength, codeReuseTolerance);
+            startHeader(progress, null);
+            blockWriter.writeHeader(blockSize);
+        } else {
+            final var sample = new byte[sampleSize];
+            final var sampleLength = input.readNBytes(sample, 0, sampleSize);
+            progress.startPhase(Progress.Phase.BUILDING_TREE, -1);
+            final var histogram = new ByteHistogram();
+            histogram.count(sample, 0, sampleLength);
+            // a stream that ends within the sample is known in full, so it needs no codes for bytes it lacks
+            codeTable = HuffmanCodeTable.fromCodeLengths(
+                    HuffmanTree.computeSampledCodeLengths(histogram.toFrequencies(), sampleLength < sampleSize, maxCodeLength));
+            startHeader(progress, codeTable.lengths);
+            blockWriter.writeHeader(blockSize, codeTable.lengths);
+            // the sample is still part of the input, so it is encoded before the rest of the stream
+            blockInput = new SequenceInputStream(new ByteArrayInputStream(sample, 0, sampleLength), input);
+        }
+
+        final var pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        final var streamInput = blockInput;
+        final var blockSelector = selector;
+
+        try {
+            progress.startPhase(Progress.Phase.ENCODING, inputSize);
+            encodeBlocks(() -> {
+                final var buffer = new byte[blockSize];
+                final var length = streamInput.readNBytes(buffer, 0, blockSize);
+                if (length == 0) return null;
+
+                if (blockSelector == null) {
+                    return () -> withChecksum(HuffmanEncoder.encodeBlock(buffer, length, codeTable, checkpointInterval, countEscapes), ByteBuffer.wrap(buffer, 0, length));
+                }
+
+                // the block is counted as it is read, since the codes of every block depend on the codes before it
+                final var histogram = new ByteHistogram();
+                histogram.count(buffer, 0, length);
+                final var codeLengths = blockSelector.select(histogram.toFrequencies());
+                final var blockCodeTable = blockSelector.getCodeTable();
+                return () -> withChecksum(HuffmanEncoder.encodeBlock(buffer, length, blockCodeTable, checkpointInterval, false), ByteBuffer.wrap(buffer, 0, length))
+                        .withCodeLengths(codeLengths);
+            }, blockWriter, pool, progress);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        blockWriter.finish();
+    }
+
+    /**
+     * @param block The encoded block.
+     * @param bytes The bytes the block was encoded from.
+     * @return The given block, along with the checksum of its bytes if checksums are written. Called by the task that
+     * encoded the block, while its bytes are still in the cache.
+     */
+    private EncodedBlock withChecksum(EncodedBlock block, ByteBuffer bytes) {
+        return useChecksums ? block.withChecksum(Checksums.crc32c(bytes, bytes.position(), bytes.remaining())) : block;
+    }
+
+    /**
+     * Counts the frequencies of bytes in every block.
+     *
+     * @param withContexts Whether bytes are counted in their order-1 contexts, as described in {@link ContextHistogram}.
+     */
+    private long[] countBytes(InputBlocks blocks, ForkJoinPool pool, boolean withContexts, ProgressTracker progress) throws IOException {
+        progress.startPhase(Progress.Phase.COUNTING, blocks.size);
+
+        if (pool == null) {
+            final var frequencies = new long[withContexts ? HuffmanTree.SYMBOL_COUNT * HuffmanTree.SYMBOL_COUNT : HuffmanTree.SYMBOL_COUNT];
+            for (var i = 0; i < blocks.count; i++) {
+                final var block = blocks.map(i);
+                final var length = block.remaining();
+                CountTask.add(frequencies, CountTask.count(block, withContexts, checkpointInterval));
+                progress.addRead(length);
+            }
+            return frequencies;
+        }
+
+        try {
+            return pool.invoke(new CountTask(blocks, 0, blocks.count, withContexts, checkpointInterval, progress));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Encodes every block provided by the given source, and writes them in order.
+     *
+     * @param source      Provides the task that encodes each block.
+     * @param blockWriter The writer the encoded blocks are written to.
+     * @param pool        The pool the blocks are encoded in. If null, blocks are encoded on the calling thread.
+     * @param progress    Records every block once it is written, and stops the blocks when it is cancelled.
+     */
+    private void encodeBlocks(BlockSource source, BlockWriter blockWriter, ForkJoinPool pool, ProgressTracker progress) throws IOException {
+        if (pool == null) {
+            for (var task = source.next(); task != null; task = source.next()) {
+                writeBlock(blockWriter, task.encode(), progress);
+            }
+            return;
+        }
+
+        // blocks are encoded ahead of the block being written, but only a limited number of them,
+        // so that memory usage stays bounded no matter how large the input is.
+        final var maxPendingBlocks = parallelism * 2;
+        final var pendingBlocks = new ArrayDeque<Future<EncodedBlock>>(maxPendingBlocks);
+
+        try {
+            for (var task = source.next(); task != null; task = source.next()) {
+                pendingBlocks.addLast(pool.submit(task::encode));
+
+                if (pendingBlocks.size() == maxPendingBlocks) {
+                    writeBlock(blockWriter, await(pendingBlocks.removeFirst()), progress);
                 }
-                partition |= ((bitCode & mask) >> maskPos--) << (pos-- - 1);
-                mask >>>= 1;
             }
+
+            while (!pendingBlocks.isEmpty()) {
+                writeBlock(blockWriter, await(pendingBlocks.removeFirst()), progress);
+            }
+        } finally {
+            pendingBlocks.forEach((block) -> block.cancel(true));
         }
+    }
+
+    private static void writeBlock(BlockWriter blockWriter, EncodedBlock block, ProgressTracker progress) throws IOException {
+        blockWriter.writeBlock(block);
+        progress.addRead(block.rawLength);
+        progress.addEscapedBytes(block.escapedByteCount);
 
-        if (pos < 8) {
-            // there are some remaining bits
-            fileOutput.write(partition);
+        if (block.codeLengths != null) {
+            progress.recordCodeLengths(block.codeLengths);
         }
+    }
 
-        inputFileStream.close();
-        fileOutput.close();
+    /**
+     * Starts the phase that writes the header of the output, and records the codes the output is encoded with.
+     *
+     * @param codeLengths The code lengths in the header, or null if they are recorded separately.
+     */
+    private static void startHeader(ProgressTracker progress, int[] codeLengths) throws OperationCancelledException {
+        progress.startPhase(Progress.Phase.SERIALIZING, -1);
+
+        if (codeLengths != null) {
+            progress.recordCodeLengths(codeLengths);
+        }
     }
 
-    private void writeSerializedTree(LinkedList<Short> serializedTree, int size, DataOutputStream stream) throws IOException {
-        stream.writeInt(size);
-        while (size > 0) {
-            stream.writeShort(serializedTree.removeFirst());
-            size--;
+    /**
+     * Waits for the result of the given task, and rethrows the exception it fails with.
+     */
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            final var cause = Tasks.getCause(ex);
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
         }
     }
 
+    private void writeSerializedTree(byte[] serializedTree, DataOutputStream stream) throws IOException {
+        stream.writeInt(serializedTree.length / Short.BYTES);
+        stream.write(serializedTree);
+    }
+
     /**
-     * A {@link BinaryTree.Visitor} that visits nodes in a {@link HuffmanTree} and collects needed information
-     * for compression along the way.
+     * A {@link BinaryTree.Visitor} that visits nodes in a {@link HuffmanTree} and collects the code of every byte
+     * along the way. The tree itself is serialized by {@link HuffmanTreeSerializer#serializeTree(HuffmanTree)}.
      */
     private static class HuffmanTreeVisitor implements BinaryTree.Visitor<HuffmanTree.HuffmanNode> {
-        // maps bytes to their corresponding huffman code
-        final HashMap<Integer, int[]> bitCodeMap = new HashMap<>();
+        // the huffman code of every byte
+        final int[] codes = new int[HuffmanTree.SYMBOL_COUNT];
+        // the length of the huffman code of every byte
+        final int[] codeLengths = new int[HuffmanTree.SYMBOL_COUNT];
         // resultant huffman code of the path of the traversal
         int code = 0;
         // level of last visited node
         int prevLevel = -1;
-        // Number of shorts required to store the given tree.
-        int shortCount = 0;
-        // The serialized tree in shorts.
-        // short is used instead of int to save space, since bytes will never exceed 8 bits.
-        final LinkedList<Short> serializedTree = new LinkedList<>();
 
         @Override
         public void visit(HuffmanTree.HuffmanNode node, BinaryTree.Position position, int level) {
             if (level <= prevLevel) {
                 final var levelDiff = prevLevel - level + 1;
                 code >>>= levelDiff;
-                for (var i = 0; i < levelDiff; i++) {
-                    serializedTree.addLast(HuffmanTreeSerializer.Code.UP.getCode());
-                    shortCount++;
-                }
             }
 
             updateHuffmanCode(node, position, level);
-            serializeNode(node, position);
 
             prevLevel = level;
         }
@@ -191,59 +941,185 @@ public class HuffmanCompressor {
             final var b = node.getByte();
 
             if (b != null) {
-                // we have arrived to an end node
-                final var arr = new int[2];
-                arr[0] = level;
-                arr[1] = code;
-                bitCodeMap.put(b, arr);
-            }
-        }
-
-        private void serializeNode(HuffmanTree.HuffmanNode node, BinaryTree.Position position) {
-            switch (position) {
-                case LEFT:
-                    serializedTree.addLast(HuffmanTreeSerializer.Code.LEFT.getCode());
-                    shortCount++;
-                    break;
-                case RIGHT:
-                    serializedTree.addLast(HuffmanTreeSerializer.Code.RIGHT.getCode());
-                    shortCount++;
-                    break;
-                case ROOT:
-                    serializedTree.addLast(HuffmanTreeSerializer.Code.ROOT.getCode());
-                    shortCount++;
-                    break;
-                default:
-                    break;
+                // we have arrived to an end node. the root contributes a bit of -1 to the code,
+                // so only the bits below the level of the node belong to the code.
+                codes[b] = code & (int) ((1L << level) - 1);
+                codeLengths[b] = level;
             }
+        }
 
-            final var b = node.getByte();
-            if (b != null) {
-                serializedTree.addLast((short) (int) b);
-                shortCount++;
-            }
+        /**
+         * @return The huffman code of every byte. Empty if this visitor hasn't visited any huffman tree.
+         */
+        private HuffmanCodeTable getCodeTable() {
+            return new HuffmanCodeTable(codes, codeLengths);
         }
+    }
 
+    /**
+     * Provides the blocks to be encoded, in the order they appear in the input.
+     */
+    private interface BlockSource {
         /**
-         * @return A map of bytes to their corresponding huffman bit code. Empty if this visitor hasn't visited
-         * any huffman tree.
+         * Called on the thread that writes the blocks, one block at a time.
+         *
+         * @return The task that encodes the next block, or null if there are no more blocks.
          */
-        private HashMap<Integer, int[]> getBitCodeMap() {
-            return bitCodeMap;
+        BlockTask next() throws IOException;
+    }
+
+    /**
+     * Encodes a single block. May run on any thread.
+     */
+    private interface BlockTask {
+        EncodedBlock encode() throws IOException;
+    }
+
+    /**
+     * Encodes the bytes of a single block. May run on any thread.
+     */
+    private interface BlockEncoder {
+        EncodedBlock encode(ByteBuffer bytes) throws IOException;
+    }
+
+    /**
+     * Splits a file into blocks of a fixed size, which can be mapped and read concurrently.
+     */
+    private static class InputBlocks {
+        private final FileChannel channel;
+        private final int blockSize;
+        final long size;
+        final int count;
+
+        InputBlocks(FileChannel channel, int blockSize) throws IOException {
+            this.channel = channel;
+            this.blockSize = blockSize;
+            size = channel.size();
+            count = (int) ((size + blockSize - 1) / blockSize);
         }
 
         /**
-         * @return The length of the serialized version of the huffman tree. 0 if this visitor hasn't visited any huffman tree.
+         * Maps the block at the given index into memory, so that it can be read without being copied.
+         * Safe to be called from multiple threads.
+         *
+         * @return The bytes of the block.
          */
-        private int getSerializedTreeSize() {
-            return shortCount;
+        ByteBuffer map(int index) throws IOException {
+            final var position = (long) index * blockSize;
+            final var length = Math.min(blockSize, size - position);
+
+            return MappedFiles.map(channel, position, length);
+        }
+    }
+
+    /**
+     * Counts the frequencies of bytes in every block of a file, one block at a time in order. Blocks are counted in
+     * the pool ahead of the block being returned, but only a limited number of them, so that memory usage stays
+     * bounded no matter how many blocks there are.
+     */
+    private static class BlockCounter {
+        private final InputBlocks blocks;
+        private final ForkJoinPool pool;
+        private final int maxPendingBlocks;
+        private final ArrayDeque<Future<long[]>> pendingCounts;
+        private int nextBlock = 0;
+        private int nextCount = 0;
+
+        /**
+         * @param pool The pool the blocks are counted in. If null, every block is counted when it is returned.
+         */
+        BlockCounter(InputBlocks blocks, ForkJoinPool pool, int maxPendingBlocks) {
+            this.blocks = blocks;
+            this.pool = pool;
+            this.maxPendingBlocks = maxPendingBlocks;
+            pendingCounts = new ArrayDeque<>(maxPendingBlocks);
+        }
+
+        /**
+         * @return The frequency of every byte in the next block.
+         */
+        long[] next() throws IOException {
+            final var block = nextBlock++;
+            if (pool == null) {
+                return CountTask.count(blocks.map(block), false, 0);
+            }
+
+            while (nextCount < blocks.count && nextCount - block < maxPendingBlocks) {
+                final var index = nextCount++;
+                pendingCounts.addLast(pool.submit(() -> CountTask.count(blocks.map(index), false, 0)));
+            }
+
+            return await(pendingCounts.removeFirst());
+        }
+    }
+
+    /**
+     * Counts the frequencies of bytes in a range of blocks by splitting the range in half until there is only
+     * one block left.
+     */
+    private static class CountTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final InputBlocks blocks;
+        private final int from;
+        private final int to;
+        private final boolean withContexts;
+        private final int checkpointInterval;
+        private final ProgressTracker progress;
+
+        CountTask(InputBlocks blocks, int from, int to, boolean withContexts, int checkpointInterval, ProgressTracker progress) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.withContexts = withContexts;
+            this.checkpointInterval = checkpointInterval;
+            this.progress = progress;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > 1) {
+                final var middle = (from + to) >>> 1;
+                final var left = new CountTask(blocks, from, middle, withContexts, checkpointInterval, progress);
+                left.fork();
+
+                final var frequencies = new CountTask(blocks, middle, to, withContexts, checkpointInterval, progress).compute();
+                add(frequencies, left.join());
+
+                return frequencies;
+            }
+
+            try {
+                final var block = blocks.map(from);
+                final var length = block.remaining();
+                final var frequencies = count(block, withContexts, checkpointInterval);
+                progress.addRead(length);
+                return frequencies;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
         }
 
         /**
-         * @return The serialized version of the huffman tree. Empty if this visitor hasn't visited any huffman tree.
+         * @param checkpointInterval The number of bytes between the checkpoints of the block, at which the contexts
+         *                           start again. Ignored if bytes are not counted in their contexts.
          */
-        private LinkedList<Short> getSerializedTreeBytes() {
-            return serializedTree;
+        static long[] count(ByteBuffer block, boolean withContexts, int checkpointInterval) {
+            if (withContexts) {
+                final var histogram = new ContextHistogram(checkpointInterval);
+                histogram.count(block);
+                return histogram.toFrequencies();
+            }
+
+            final var histogram = new ByteHistogram();
+            histogram.count(block);
+            return histogram.toFrequencies();
+        }
+
+        static void add(long[] frequencies, long[] other) {
+            for (var i = 0; i < frequencies.length; i++) {
+                frequencies[i] += other[i];
+            }
         }
     }
 }
@@ -0,0 +1,292 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A lookup table that decodes a huffman bit stream several bits at a time.
+ * <p>
+ * Instead of walking the {@link HuffmanTree} one bit at a time, the decoder looks at the next
+ * {@link #MAX_PRIMARY_BITS} bits of the stream and uses them as an index into a primary table.
+ * Each entry in the table either stores the decoded byte along with the length of its code,
+ * or points to a secondary table for codes that are longer than the primary table can hold.
+ * Secondary tables can point to further secondary tables, so codes of any length can be decoded.
+ * <p>
+ * All tables are stored in a single int array. An entry is laid out as follows:
+ * <ul>
+ *     <li>0 - no code in the tree starts with the bits used as the index.</li>
+ *     <li>positive - a leaf. The lower 16 bits store the decoded byte, and the upper bits store the length of the
+ *     code relative to the table the entry is in.</li>
+ *     <li>negative - a link to a secondary table. The lower 24 bits store the offset of the table,
+ *     and the next 7 bits store the number of bits used to index it.</li>
+ * </ul>
+ */
+class HuffmanDecodeTable implements BlockDecoder {
+    /**
+     * The maximum number of bits used to index the primary table.
+     * 10 bits keeps the primary table at 4 KB, which comfortably fits in the L1 cache.
+     */
+    static final int MAX_PRIMARY_BITS = 10;
+
+    /**
+     * The maximum number of bits used to index a secondary table.
+     */
+    static final int MAX_SECONDARY_BITS = 8;
+
+    private static final int LINK_FLAG = 0x80000000;
+
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private int[] table;
+    private int size = 0;
+    private final int primaryBits;
+
+    private HuffmanDecodeTable(int primaryBits) {
+        this.primaryBits = primaryBits;
+        table = new int[1 << primaryBits];
+    }
+
+    /**
+     * Builds a decode table that decodes the bit codes of the given huffman tree.
+     *
+     * @param tree The tree to build the table from.
+     * @return The decode table of the tree.
+     */
+    static HuffmanDecodeTable fromTree(HuffmanTree tree) {
+        final var root = tree.getRoot();
+        final var decodeTable = new HuffmanDecodeTable(Math.max(1, Math.min(height(root), MAX_PRIMARY_BITS)));
+
+        decodeTable.size = decodeTable.table.length;
+        if (root != null && root.getByte() == null) {
+            decodeTable.fill(root, 0, 0, 0, decodeTable.primaryBits);
+        }
+
+        decodeTable.table = Arrays.copyOf(decodeTable.table, decodeTable.size);
+
+        return decodeTable;
+    }
+
+    /**
+     * Builds a decode table that decodes canonical huffman codes with the given lengths,
+     * without having to construct the tree first.
+     *
+     * @param codeLengths The length of the code of every byte. 0 if the byte is not in the tree.
+     * @return The decode table of the canonical codes.
+     * @see HuffmanTree#canonicalCodes(int[])
+     */
+    static HuffmanDecodeTable fromCodeLengths(int[] codeLengths) {
+        final var codes = HuffmanTree.canonicalCodes(codeLengths);
+
+        // sort the symbols by their codes. since shorter canonical codes always come first, and codes of the same
+        // length are assigned in ascending order, symbols that share the same prefix end up next to each other.
+        var symbolCount = 0;
+        var maxLength = 0;
+        final var symbols = new int[codeLengths.length];
+        for (var length = 1; length <= HuffmanTree.MAX_CODE_LENGTH; length++) {
+            for (var b = 0; b < codeLengths.length; b++) {
+                if (codeLengths[b] == length) {
+                    symbols[symbolCount++] = b;
+                    maxLength = length;
+                }
+            }
+        }
+
+        final var decodeTable = new HuffmanDecodeTable(Math.max(1, Math.min(maxLength, MAX_PRIMARY_BITS)));
+        decodeTable.size = decodeTable.table.length;
+        decodeTable.fill(symbols, 0, symbolCount, codes, codeLengths, 0, 0, decodeTable.primaryBits);
+        decodeTable.table = Arrays.copyOf(decodeTable.table, decodeTable.size);
+
+        return decodeTable;
+    }
+
+    /**
+     * Decodes the next byte in the given bit stream.
+     *
+     * @param reader The bit stream to be decoded.
+     * @return The decoded byte.
+     * @throws IncorrectFormatException When the bit stream contains a code that does not exist in the tree,
+     *                                  or when the stream ends in the middle of a code.
+     */
+    int decode(BitReader reader) throws IOException, IncorrectFormatException {
+        var bits = primaryBits;
+        var entry = table[reader.peek(bits)];
+
+        while (entry < 0) {
+            // the code is longer than the current table can hold. skip the bits used to index this table,
+            // and look up the rest of the code in the secondary table.
+            reader.skip(bits);
+            bits = (entry >>> 24) & 0x7F;
+            entry = table[(entry & 0xFFFFFF) + reader.peek(bits)];
+        }
+
+        if (entry == 0) {
+            throw new IncorrectFormatException();
+        }
+
+        reader.skip(entry >>> 16);
+        return entry & 0xFFFF;
+    }
+
+    /**
+     * Decodes the given number of bytes in the given bit stream.
+     *
+     * @param reader The bit stream to be decoded.
+     * @param output The array the decoded bytes are written to.
+     * @param offset The index in the array of the first decoded byte.
+     * @param length The number of bytes to decode.
+     * @throws IncorrectFormatException When the bit stream contains a code that does not exist in the tree,
+     *                                  or when the stream ends before all bytes are decoded.
+     */
+    @Override
+    public void decode(BitReader reader, byte[] output, int offset, int length) throws IOException, IncorrectFormatException {
+        final var end = offset + length;
+        for (var i = offset; i < end; i++) {
+            output[i] = (byte) decode(reader);
+        }
+    }
+
+    /**
+     * Decodes the given number of bytes in the given bit stream into a buffer, such as a memory-mapped region of the
+     * output file. Bytes are decoded in chunks into a small array that stays in the L1 cache, and copied into the
+     * buffer in bulk, which is much cheaper than writing a mapped buffer one byte at a time.
+     *
+     * @param reader The bit stream to be decoded.
+     * @param output The buffer the decoded bytes are written to.
+     * @param offset The index in the buffer of the first decoded byte.
+     * @param length The number of bytes to decode.
+     * @throws IncorrectFormatException When the bit stream contains a code that does not exist in the tree,
+     *                                  or when the stream ends before all bytes are decoded.
+     */
+    @Override
+    public void decode(BitReader reader, ByteBuffer output, int offset, int length) throws IOException, IncorrectFormatException {
+        if (output.hasArray()) {
+            decode(reader, output.array(), output.arrayOffset() + offset, length);
+            return;
+        }
+
+        final var chunk = new byte[Math.min(CHUNK_SIZE, length)];
+        final var end = offset + length;
+        for (var i = offset; i < end; i += chunk.length) {
+            final var chunkLength = Math.min(chunk.length, end - i);
+            decode(reader, chunk, 0, chunkLength);
+            output.put(i, chunk, 0, chunkLength);
+        }
+    }
+
+    /**
+     * Fills the entries of the table for every code under the given node.
+     *
+     * @param node        The node whose descendants should be put in the table.
+     * @param code        The bits that lead from the root of the table to the node.
+     * @param depth       The depth of the node relative to the root of the table.
+     * @param tableOffset The offset of the table in the array.
+     * @param tableBits   The number of bits used to index the table.
+     */
+    private void fill(HuffmanTree.HuffmanNode node, int code, int depth, int tableOffset, int tableBits) {
+        if (depth == tableBits) {
+            // the remaining part of the codes under this node do not fit in the table,
+            // so they are moved to a new secondary table.
+            final var subTableBits = Math.min(height(node), MAX_SECONDARY_BITS);
+            final var subTableOffset = allocate(subTableBits);
+            table[tableOffset + code] = LINK_FLAG | (subTableBits << 24) | subTableOffset;
+            fill(node, 0, 0, subTableOffset, subTableBits);
+            return;
+        }
+
+        fillChild((HuffmanTree.HuffmanNode) node.getLeftNode(), code << 1, depth + 1, tableOffset, tableBits);
+        fillChild((HuffmanTree.HuffmanNode) node.getRightNode(), (code << 1) | 1, depth + 1, tableOffset, tableBits);
+    }
+
+    private void fillChild(HuffmanTree.HuffmanNode child, int code, int depth, int tableOffset, int tableBits) {
+        if (child == null) return;
+
+        final var b = child.getByte();
+        if (b == null) {
+            fill(child, code, depth, tableOffset, tableBits);
+            return;
+        }
+
+        // every index that starts with the code of the leaf decodes to the same byte
+        final var unusedBits = tableBits - depth;
+        final var start = tableOffset + (code << unusedBits);
+        Arrays.fill(table, start, start + (1 << unusedBits), (depth << 16) | b);
+    }
+
+    /**
+     * Fills the entries of the table for the given range of symbols sorted by their codes.
+     *
+     * @param symbols     The symbols sorted by their codes.
+     * @param from        The start of the range, inclusive.
+     * @param to          The end of the range, exclusive.
+     * @param codes       The code of every symbol.
+     * @param codeLengths The length of the code of every symbol.
+     * @param prefixBits  The number of leading bits shared by all symbols in the range that are already
+     *                    consumed by the tables before this table.
+     * @param tableOffset The offset of the table in the array.
+     * @param tableBits   The number of bits used to index the table.
+     */
+    private void fill(int[] symbols, int from, int to, int[] codes, int[] codeLengths, int prefixBits, int tableOffset, int tableBits) {
+        var i = from;
+        while (i < to) {
+            final var b = symbols[i];
+            final var length = codeLengths[b] - prefixBits;
+
+            if (length <= tableBits) {
+                final var unusedBits = tableBits - length;
+                final var start = tableOffset + ((codes[b] & ((1 << length) - 1)) << unusedBits);
+                Arrays.fill(table, start, start + (1 << unusedBits), (length << 16) | b);
+                i++;
+                continue;
+            }
+
+            // the code does not fit in this table. every symbol that shares the same index in this table
+            // is moved to a secondary table.
+            final var index = indexOf(codes[b], codeLengths[b], prefixBits, tableBits);
+            var end = i + 1;
+            var maxLength = length;
+            while (end < to && indexOf(codes[symbols[end]], codeLengths[symbols[end]], prefixBits, tableBits) == index) {
+                maxLength = codeLengths[symbols[end]] - prefixBits;
+                end++;
+            }
+
+            final var subTableBits = Math.min(maxLength - tableBits, MAX_SECONDARY_BITS);
+            final var subTableOffset = allocate(subTableBits);
+            table[tableOffset + index] = LINK_FLAG | (subTableBits << 24) | subTableOffset;
+            fill(symbols, i, end, codes, codeLengths, prefixBits + tableBits, subTableOffset, subTableBits);
+
+            i = end;
+        }
+    }
+
+    /**
+     * @return The bits of the given code that are used to index a table, given that the first prefixBits bits
+     * have already been consumed.
+     */
+    private static int indexOf(int code, int codeLength, int prefixBits, int tableBits) {
+        return (code >>> (codeLength - prefixBits - tableBits)) & ((1 << tableBits) - 1);
+    }
+
+    private int allocate(int bits) {
+        final var offset = size;
+        size += 1 << bits;
+        if (size > table.length) {
+            table = Arrays.copyOf(table, Math.max(size, table.length * 2));
+        }
+        return offset;
+    }
+
+    /**
+     * @return The number of edges on the longest path between the given node and a leaf.
+     */
+    private static int height(HuffmanTree.HuffmanNode node) {
+        if (node == null || node.getByte() != null) return 0;
+
+        final var left = height((HuffmanTree.HuffmanNode) node.getLeftNode());
+        final var right = height((HuffmanTree.HuffmanNode) node.getRightNode());
+
+        return 1 + Math.max(left, right);
+    }
+}
@@ -1,11 +1,86 @@
 package kenneth.coursework.compression;
 
+import kenneth.coursework.exceptions.ChecksumMismatchException;
 import kenneth.coursework.exceptions.IncorrectFormatException;
+import kenneth.coursework.exceptions.OperationCancelledException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class HuffmanDecompressor {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The number of threads used to decode blocks.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sets the number of threads used to decode the blocks of files that have a block index.
+     * Defaults to the number of available processors.
+     *
+     * @param parallelism The number of threads. 1 if blocks should be decoded on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * The listener the progress of every operation is reported to. Null if progress is not reported.
+     */
+    private ProgressListener progressListener = null;
+
+    /**
+     * Sets the listener the progress of every decompression is reported to, with the bytes read and written and the
+     * throughput. The progress of a phase is measured by the bytes read from the compressed file.
+     *
+     * @param progressListener The listener, or null to stop reporting progress.
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * The token that cancels every operation. Null if operations cannot be cancelled.
+     */
+    private CancellationToken cancellationToken = null;
+
+    /**
+     * Sets the token that cancels every decompression, which is checked between buffers and blocks. A cancelled
+     * decompression throws {@link OperationCancelledException}, and the partial destination file is deleted.
+     *
+     * @param cancellationToken The token, or null if decompressions cannot be cancelled.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * The metrics every operation is recorded in. Null if operations are not measured.
+     */
+    private CompressionMetrics metrics = null;
+
+    /**
+     * Sets the metrics every decompression is recorded in: the time spent reading the header and decoding, and the
+     * sizes of the input and the output. Nothing is measured while no metrics are set.
+     *
+     * @param metrics The metrics, such as {@link InMemoryMetrics} or {@link JmxMetrics}, or null to stop measuring.
+     */
+    public void setMetrics(CompressionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Decompresses the given file, and writes the decompressed content into the given destination.
      *
@@ -14,63 +89,393 @@ public class HuffmanDecompressor {
      * @param overwrite Whether to overwrite the content of the destination file if it exists already.
      * @throws IOException              Thrown when there is an error decompressing, or when the destination file already exists
      *                                  and the overwrite option is not enabled.
-     * @throws IncorrectFormatException When the compressed file is invalid.
+     * @throws IncorrectFormatException When the compressed file is invalid, or {@link ChecksumMismatchException} when
+     *                                  the file has checksums and its content does not match them. The destination
+     *                                  file is left with the content decoded so far.
+     * @throws OperationCancelledException When the decompression is cancelled, after the partial destination file is
+     *                                     deleted.
      */
     public void decompress(File inputFile, File dest, boolean overwrite) throws IOException, IncorrectFormatException {
-        final var fileInput = new DataInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
+        final var progress = new ProgressTracker(progressListener, cancellationToken, metrics, CompressionMetrics.Operation.DECOMPRESSION);
+        decode(inputFile, dest, overwrite, progress);
+        progress.finish(dest.length(), inputFile.length());
+    }
+
+    /**
+     * Checks that the given compressed file can be decompressed, without writing anything. The file is decoded the same
+     * way as by {@link #decompress(File, File, boolean)}, with its blocks in parallel if it has a block index, and
+     * every decoded block is checked against its checksum if the file was compressed with
+     * {@link HuffmanCompressor#setUseChecksums(boolean)}, then discarded. Verifications are reported to the progress
+     * listener, but are not recorded in the metrics.
+     *
+     * @param inputFile The compressed file to be verified.
+     * @return The length of the original content.
+     * @throws IncorrectFormatException When the compressed file is invalid, or {@link ChecksumMismatchException} when
+     *                                  the file has checksums and its content does not match them.
+     * @throws OperationCancelledException When the verification is cancelled.
+     */
+    public long verify(File inputFile) throws IOException, IncorrectFormatException {
+        final var progress = new ProgressTracker(progressListener, cancellationToken, null, CompressionMetrics.Operation.DECOMPRESSION);
+        decode(inputFile, null, false, progress);
+        progress.finish(progress.getBytesWritten(), inputFile.length());
+        return progress.getBytesWritten();
+    }
+
+    /**
+     * Decodes the given compressed file into the given destination, or only checks that it can be decoded.
+     *
+     * @param dest The destination file, or null if the decoded bytes are discarded.
+     */
+    private void decode(File inputFile, File dest, boolean overwrite, ProgressTracker progress) throws IOException, IncorrectFormatException {
+        progress.startPhase(Progress.Phase.SERIALIZING, -1);
+
+        final var countingInput = new CountingInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
+        var isOutputCreated = false;
+        HuffmanDecodeTable decodeTable = null;
+        BlockReader blockReader = null;
+        var fileSize = 0L;
+        var bitStreamOffset = 0L;
+
+        try {
+            // the header is read through the stream, which is closed even if the header is invalid, since a long batch
+            // of files would otherwise run out of file descriptors. the content is only read through the stream in the
+            // adaptive format and when the blocks have no index. otherwise, it is mapped once the stream is closed.
+            try (final var fileInput = new DataInputStream(countingInput)) {
+                final var version = HuffmanCompressor.FormatVersion.fromByte(fileInput.readUnsignedByte());
+
+                switch (version) {
+                    case LEGACY:
+                        final var size = HuffmanTreeSerializer.readLegacyTreeSize(fileInput);
+                        decodeTable = HuffmanTableCache.getShared().readLegacyTree(fileInput, size).getDecodeTable();
+                        break;
+                    case CANONICAL:
+                        decodeTable = HuffmanTableCache.getShared().readCodeLengths(fileInput).getDecodeTable();
+                        break;
+                    case BLOCKS:
+                        blockReader = new BlockReader(fileInput);
+                        // fails before the destination is created if the blocks need a dictionary that has not been loaded
+                        blockReader.getDecoder();
+                        break;
+                    case ADAPTIVE:
+                        // the codes are rebuilt while the bit stream is decoded, so there is nothing else in the header
+                        break;
+                    default:
+                        throw new IncorrectFormatException();
+                }
+
+                if (dest != null) {
+                    final var isFileCreated = dest.createNewFile();
+
+                    if (!isFileCreated && !overwrite) {
+                        throw new FileAlreadyExistsException(dest.getAbsolutePath());
+                    }
+
+                    isOutputCreated = true;
+                }
+
+                progress.addRead(countingInput.getCount());
+                progress.startPhase(Progress.Phase.DECODING, inputFile.length() - countingInput.getCount());
+
+                if (version == HuffmanCompressor.FormatVersion.ADAPTIVE) {
+                    try (final var fileOutput = new BufferedOutputStream(progress.countWritten(openOutput(dest)))) {
+                        decompressAdaptive(countingInput, fileInput, fileOutput, progress);
+                    }
+                    return;
+                }
+
+                if (blockReader != null && !blockReader.hasIndex()) {
+                    try (final var fileOutput = new BufferedOutputStream(progress.countWritten(openOutput(dest)))) {
+                        decompressBlocks(blockReader, fileOutput, progress);
+                    }
+                    return;
+                }
+
+                if (blockReader == null) {
+                    fileSize = fileInput.readLong();
+                    bitStreamOffset = countingInput.getCount();
+                }
+            }
+
+            if (blockReader == null) {
+                decompressStream(inputFile, bitStreamOffset, fileSize, dest, decodeTable, progress);
+            } else {
+                decompressIndexedBlocks(inputFile, dest, blockReader, progress);
+            }
+        } catch (OperationCancelledException ex) {
+            // a destination that existed before is only deleted once it has been overwritten
+            if (isOutputCreated) {
+                Files.deleteIfExists(dest.toPath());
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @param dest The destination file, or null if the decoded bytes are discarded.
+     * @return The stream the decoded bytes are written to.
+     */
+    private static OutputStream openOutput(File dest) throws IOException {
+        return dest != null ? new FileOutputStream(dest) : OutputStream.nullOutputStream();
+    }
+
+    /**
+     * @param dest The destination file, or null if the decoded bytes are discarded.
+     * @return The destination file opened to be mapped, or null if the decoded bytes are discarded.
+     */
+    private static FileChannel openOutputChannel(File dest) throws IOException {
+        return dest != null
+                ? FileChannel.open(dest.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                : null;
+    }
+
+    /**
+     * Decodes a compressed file that is encoded as a single stream. The bit stream is read from memory-mapped windows
+     * of the compressed file, and decoded directly into memory-mapped windows of the destination file.
+     *
+     * @param bitStreamOffset The offset of the bit stream in the compressed file.
+     * @param fileSize        The size of the original file.
+     * @param dest            The destination file, or null if the decoded bytes are discarded.
+     */
+    private void decompressStream(File inputFile, long bitStreamOffset, long fileSize, File dest, HuffmanDecodeTable decodeTable, ProgressTracker progress) throws IOException, IncorrectFormatException {
+        try (final var inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             final var outputChannel = openOutputChannel(dest)) {
+            final var bitStreamLength = inputChannel.size() - bitStreamOffset;
 
-        final var huffmanTree = HuffmanTreeSerializer.deserializeFromStream(fileInput);
-        final var isFileCreated = dest.createNewFile();
+            // every byte takes at least 1 bit to encode. this stops a corrupted size from mapping a huge destination file.
+            if (fileSize < 0 || fileSize > bitStreamLength * 8) {
+                throw new IncorrectFormatException();
+            }
+
+            final var bitReader = new BitReader(chunks(MappedFiles.windows(inputChannel, bitStreamOffset, bitStreamLength), progress));
+
+            if (outputChannel == null) {
+                // the bytes are only decoded, so a small buffer is reused instead of mapping windows of a file
+                final var buffer = new byte[(int) Math.min(OUTPUT_BUFFER_SIZE, fileSize)];
+                for (var position = 0L; position < fileSize; position += buffer.length) {
+                    final var length = (int) Math.min(buffer.length, fileSize - position);
+                    decodeTable.decode(bitReader, buffer, 0, length);
+                    progress.addWritten(length);
+                }
+                return;
+            }
 
-        if (!isFileCreated && !overwrite) {
-            throw new FileAlreadyExistsException(dest.getAbsolutePath());
+            for (var position = 0L; position < fileSize; position += MappedFiles.WINDOW_SIZE) {
+                final var length = (int) Math.min(MappedFiles.WINDOW_SIZE, fileSize - position);
+                final var window = MappedFiles.mapForWriting(outputChannel, position, length);
+                decodeTable.decode(bitReader, window, 0, length);
+                MappedFiles.write(outputChannel, position, window);
+                progress.addWritten(length);
+            }
         }
+    }
 
-        final var fileOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dest)));
-        var fileSize = fileInput.readLong();
+    /**
+     * Provides the windows of the given source in chunks of at most {@link ProgressTracker#CHUNK_SIZE}, and records
+     * every chunk as read when the next one is needed, so that decoding a large window can still be cancelled.
+     */
+    private static BitReader.Source chunks(BitReader.Source windows, ProgressTracker progress) {
+        final var window = new ByteBuffer[]{ByteBuffer.allocate(0)};
+        final var chunkLength = new int[]{0};
 
-        var bytesWritten = 0L;
-        var root = huffmanTree.getRoot();
-        var node = root;
-        var isUnknownByte = false;
+        return () -> {
+            progress.addRead(chunkLength[0]);
 
-        for (var b = fileInput.read(); b >= 0; b = fileInput.read()) {
-            if (b == HuffmanCompressor.SpecialByte.UNKNOWN_BYTE_ENDS.b) {
-                isUnknownByte = false;
-                continue;
+            if (!window[0].hasRemaining()) {
+                window[0] = windows.next();
+                if (window[0] == null) return null;
             }
 
-            if (isUnknownByte) {
-                fileOutput.write(b);
-                continue;
+            final var position = window[0].position();
+            chunkLength[0] = Math.min(ProgressTracker.CHUNK_SIZE, window[0].remaining());
+            window[0].position(position + chunkLength[0]);
+
+            return window[0].slice(position, chunkLength[0]);
+        };
+    }
+
+    /**
+     * Decodes a compressed file in the adaptive format, whose codes are rebuilt from the bytes decoded so far.
+     *
+     * @param countingInput The stream the input is read from, which counts the bytes read for the progress.
+     */
+    private void decompressAdaptive(CountingInputStream countingInput, InputStream input, OutputStream fileOutput, ProgressTracker progress) throws IOException, IncorrectFormatException {
+        final var decoder = new AdaptiveHuffmanDecoder(input);
+        final var outputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+        var readCount = countingInput.getCount();
+
+        for (var count = decoder.decode(outputBuffer, 0, outputBuffer.length); count >= 0; count = decoder.decode(outputBuffer, 0, outputBuffer.length)) {
+            fileOutput.write(outputBuffer, 0, count);
+            progress.addRead(countingInput.getCount() - readCount);
+            readCount = countingInput.getCount();
+        }
+    }
+
+    /**
+     * Decodes the blocks of a block-based compressed file one after another.
+     */
+    private void decompressBlocks(BlockReader blockReader, OutputStream fileOutput, ProgressTracker progress) throws IOException, IncorrectFormatException {
+        // the buffer only grows to the largest block read, so that a corrupted block size in the header does not
+        // allocate a huge buffer before the blocks are even checked
+        var outputBuffer = new byte[0];
+
+        for (var block = blockReader.readBlock(); block != null; block = blockReader.readBlock()) {
+            if (outputBuffer.length < block.rawLength) {
+                outputBuffer = new byte[block.rawLength];
             }
 
-            // read from the start of a byte
-            var mask = 0b10000000;
-            var pos = 7;
-            while (mask > 0) {
-                var bit = (mask & b) >>> pos--;
-
-                final var nextNode = (HuffmanTree.HuffmanNode) (bit == 1 ? node.getRightNode() : node.getLeftNode());
-                final var nextByte = nextNode.getByte();
-
-                if (nextByte != null) {
-                    fileOutput.write(nextByte);
-                    if (++bytesWritten == fileSize) break;
-                    if (b == HuffmanCompressor.SpecialByte.UNKNOWN_BYTE_STARTS.b) {
-                        isUnknownByte = true;
-                        continue;
-                    }
-                    node = root;
-                } else {
-                    node = nextNode;
+            final var bitReader = new BitReader(block.payload, 0, block.payload.length);
+            blockReader.getDecoder().decode(bitReader, outputBuffer, 0, block.rawLength);
+            blockReader.verifyBlock(block, outputBuffer);
+            fileOutput.write(outputBuffer, 0, block.rawLength);
+            progress.addRead(block.payload.length);
+        }
+    }
+
+    /**
+     * Decodes the blocks of a block-based compressed file that has a {@link BlockIndex}, concurrently if more than
+     * one thread is allowed. Every block is located with the index, and its payload is mapped from the compressed file
+     * and decoded directly into its final position in a memory-mapped region of the destination file.
+     *
+     * @param dest The destination file, or null if the decoded bytes are discarded.
+     */
+    private void decompressIndexedBlocks(File inputFile, File dest, BlockReader blockReader, ProgressTracker progress) throws IOException, IncorrectFormatException {
+        try (final var inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+             final var outputChannel = openOutputChannel(dest)) {
+            final var index = blockReader.readIndex(inputChannel);
+            final var blockCount = index.getBlockCount();
+            var checksum = 0;
+
+            if (parallelism == 1 || blockCount < 2) {
+                for (var block = 0; block < blockCount; block++) {
+                    checksum = recordBlock(decodeBlock(blockReader, index, block, inputChannel, outputChannel), checksum, progress);
                 }
+            } else {
+                checksum = decodeBlocksInParallel(blockReader, index, inputChannel, outputChannel, progress);
+            }
 
-                mask >>>= 1;
+            if (outputChannel != null && outputChannel.size() != index.getRawLength()) {
+                throw new IncorrectFormatException();
             }
+            blockReader.verifyChecksum(inputChannel, index, checksum);
         }
+    }
 
-        fileInput.close();
-        fileOutput.close();
+    /**
+     * @return The checksums of every block, combined in order.
+     */
+    private int decodeBlocksInParallel(BlockReader blockReader, BlockIndex index, FileChannel inputChannel, FileChannel outputChannel, ProgressTracker progress) throws IOException, IncorrectFormatException {
+        final var blockCount = index.getBlockCount();
+        final var pool = new ForkJoinPool(parallelism);
+
+        // only a limited number of blocks are decoded at the same time,
+        // so that memory usage stays bounded no matter how large the file is.
+        final var maxPendingBlocks = parallelism * 2;
+        final var pendingBlocks = new ArrayDeque<Future<BlockReader.MappedBlock>>(maxPendingBlocks);
+        var checksum = 0;
+
+        try {
+            for (var i = 0; i < blockCount; i++) {
+                final var block = i;
+                pendingBlocks.addLast(pool.submit(() -> decodeBlock(blockReader, index, block, inputChannel, outputChannel)));
+
+                if (pendingBlocks.size() == maxPendingBlocks) {
+                    checksum = recordBlock(pendingBlocks.removeFirst().get(), checksum, progress);
+                }
+            }
+
+            while (!pendingBlocks.isEmpty()) {
+                checksum = recordBlock(pendingBlocks.removeFirst().get(), checksum, progress);
+            }
+
+            return checksum;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            final var cause = Tasks.getCause(ex);
+            if (cause instanceof IncorrectFormatException) {
+                throw (IncorrectFormatException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pendingBlocks.forEach((block) -> block.cancel(true));
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Decodes the block at the given position in the index, and checks it against its checksum while its bytes are
+     * still in the cache. Safe to be called from multiple threads.
+     *
+     * @param outputChannel The destination file, or null if the decoded bytes are discarded.
+     * @return The decoded block.
+     */
+    private static BlockReader.MappedBlock decodeBlock(BlockReader blockReader, BlockIndex index, int block, FileChannel inputChannel, FileChannel outputChannel) throws IOException, IncorrectFormatException {
+        final var mappedBlock = blockReader.mapBlock(inputChannel, index.getCompressedOffset(block));
+        final var position = index.getRawOffset(block);
+        final var output = outputChannel != null
+                ? MappedFiles.mapForWriting(outputChannel, position, mappedBlock.rawLength)
+                : ByteBuffer.allocate(mappedBlock.rawLength);
+        mappedBlock.decoder.decode(new BitReader(mappedBlock.payload.duplicate()), output, 0, mappedBlock.rawLength);
+        blockReader.verifyBlock(mappedBlock, position, output);
+
+        if (outputChannel != null) {
+            MappedFiles.write(outputChannel, position, output);
+        }
+        return mappedBlock;
+    }
+
+    /**
+     * Records a decoded block in the progress, on the thread that started the decompression.
+     *
+     * @param checksum The checksums of the blocks before this one, combined in order.
+     * @return The checksums of the blocks up to this one, combined in order.
+     */
+    private static int recordBlock(BlockReader.MappedBlock block, int checksum, ProgressTracker progress) throws OperationCancelledException {
+        progress.addWritten(block.rawLength);
+        progress.addRead(block.payload.remaining());
+        return Checksums.combine(checksum, block.checksum, block.rawLength);
+    }
+
+    /**
+     * Counts the bytes read from the underlying stream, so that the offset of the data after a header is known
+     * even though the stream is buffered.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final var read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final var skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        /**
+         * @return The number of bytes read so far.
+         */
+        long getCount() {
+            return count;
+        }
     }
 }
@@ -0,0 +1,161 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+import kenneth.coursework.exceptions.UnknownDictionaryException;
+
+import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A set of canonical code lengths that is shared by many compressed files, instead of being stored in each of them.
+ * <p>
+ * Small inputs such as messages and log lines are too short for a tree of their own to pay for its header, but inputs
+ * of the same kind tend to use bytes with similar frequencies. A dictionary is trained once from samples of such
+ * inputs with {@link DictionaryTrainer}, and saved as a file. Files compressed with a dictionary only store its ID,
+ * and can only be decompressed in a process that has loaded the same dictionary.
+ * <p>
+ * A dictionary file starts with {@link #MAGIC} and the ID of the dictionary as ints, followed by the code lengths as
+ * described in {@link HuffmanTreeSerializer#serializeCodeLengths}. The ID is the CRC32 of the serialized code lengths,
+ * so that a file is never decoded with a dictionary different from the one it was encoded with.
+ * <p>
+ * Every dictionary that is trained or read is kept in memory along with the tables used to encode and decode it,
+ * so that compressing and decompressing with a dictionary never rebuilds them. Reading the same dictionary again
+ * returns the dictionary that is already loaded.
+ */
+public class HuffmanDictionary {
+    /**
+     * The first 4 bytes of a dictionary file, "HUFD" in ASCII.
+     */
+    static final int MAGIC = 0x48554644;
+
+    private static final Map<Integer, HuffmanDictionary> loadedDictionaries = new ConcurrentHashMap<>();
+
+    private final int id;
+    private final int[] codeLengths;
+    private final byte[] serializedCodeLengths;
+    private final HuffmanCodes codes;
+
+    private HuffmanDictionary(int id, int[] codeLengths, byte[] serializedCodeLengths) {
+        this.id = id;
+        this.codeLengths = codeLengths;
+        this.serializedCodeLengths = serializedCodeLengths;
+        codes = HuffmanCodes.fromCodeLengths(codeLengths);
+        // the tables are built up front, since a dictionary is meant to be used many times
+        codes.getDecodeTable();
+        codes.getCodeTable(HuffmanTree.MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Obtains the dictionary with the given code lengths, and loads it if it is not loaded yet.
+     *
+     * @param codeLengths The length of the code of every byte. Every byte must have a code.
+     * @return The dictionary.
+     */
+    static HuffmanDictionary fromCodeLengths(int[] codeLengths) {
+        final var bytes = new ByteArrayOutputStream();
+        try {
+            HuffmanTreeSerializer.serializeCodeLengths(codeLengths, new DataOutputStream(bytes));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        final var serializedCodeLengths = bytes.toByteArray();
+        final var crc = new CRC32();
+        crc.update(serializedCodeLengths);
+        final var id = (int) crc.getValue();
+
+        final var dictionary = loadedDictionaries.computeIfAbsent(id,
+                (key) -> new HuffmanDictionary(key, codeLengths.clone(), serializedCodeLengths));
+
+        if (!Arrays.equals(dictionary.codeLengths, codeLengths)) {
+            // two different dictionaries with the same CRC32 cannot be told apart in compressed files
+            throw new IllegalStateException(String.format("Another dictionary with the ID %08x is already loaded.", id));
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Reads a dictionary file, and loads the dictionary if it is not loaded yet.
+     *
+     * @param file The dictionary file.
+     * @return The dictionary.
+     * @throws IncorrectFormatException When the file is not a dictionary, or when its ID does not match its content.
+     */
+    public static HuffmanDictionary read(File file) throws IOException, IncorrectFormatException {
+        try (final var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IncorrectFormatException();
+            }
+
+            final var id = input.readInt();
+            final var codeLengths = HuffmanTreeSerializer.deserializeCodeLengths(input);
+
+            final var dictionary = fromCodeLengths(codeLengths);
+            if (dictionary.id != id) {
+                throw new IncorrectFormatException();
+            }
+
+            return dictionary;
+        }
+    }
+
+    /**
+     * Obtains a dictionary that has been loaded in this process.
+     *
+     * @param id The ID of the dictionary.
+     * @return The dictionary with the ID.
+     * @throws UnknownDictionaryException When no dictionary with the ID is loaded.
+     */
+    static HuffmanDictionary find(int id) throws UnknownDictionaryException {
+        final var dictionary = loadedDictionaries.get(id);
+        if (dictionary == null) {
+            throw new UnknownDictionaryException(id);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Writes the dictionary into the given file.
+     *
+     * @param dest      The dictionary file.
+     * @param overwrite Whether to overwrite the file if it already exists.
+     */
+    public void write(File dest, boolean overwrite) throws IOException {
+        if (!dest.createNewFile() && !overwrite) {
+            throw new FileAlreadyExistsException(dest.getPath());
+        }
+
+        try (final var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dest, false)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(id);
+            output.write(serializedCodeLengths);
+        }
+    }
+
+    /**
+     * @return The ID that files compressed with the dictionary refer to it by.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return The length of the code of every byte.
+     */
+    public int[] getCodeLengths() {
+        return codeLengths.clone();
+    }
+
+    HuffmanCodes getCodes() {
+        return codes;
+    }
+
+    HuffmanCodeTable getCodeTable() {
+        return codes.getCodeTable(HuffmanTree.MAX_CODE_LENGTH);
+    }
+}
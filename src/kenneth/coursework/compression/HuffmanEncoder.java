@@ -0,0 +1,177 @@
+package kenneth.coursework.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes bytes into their huffman codes with a {@link HuffmanCodeTable}.
+ * <p>
+ * Every byte must have a code in the table. Bytes that do not appear in the input the codes were built from, such
+ * as with a tree source, are given escape codes by {@link HuffmanCodeTable#withEscapeCodes}, which are encoded like
+ * any other code, so input can be encoded in several calls without any state between them.
+ */
+class HuffmanEncoder {
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private final int[] codes;
+    private final int[] lengths;
+    private final int[] escapes;
+    private long escapedByteCount = 0;
+
+    /**
+     * @param codeTable    The codes used to encode the bytes.
+     * @param countEscapes Whether the bytes encoded with escape codes are counted, which reads every byte a second time,
+     *                     so it is only done when they are recorded.
+     */
+    HuffmanEncoder(HuffmanCodeTable codeTable, boolean countEscapes) {
+        codes = codeTable.codes;
+        lengths = codeTable.lengths;
+        escapes = countEscapes ? codeTable.escapes : null;
+    }
+
+    /**
+     * Encodes the given range of bytes into the given bit stream.
+     *
+     * @param bytes  The bytes to be encoded.
+     * @param offset The index of the first byte to be encoded.
+     * @param length The number of bytes to be encoded.
+     * @param writer The bit stream the codes are written to.
+     * @throws IOException When a byte does not have a code, which happens when the input changes after it is counted.
+     */
+    void encode(byte[] bytes, int offset, int length, BitWriter writer) throws IOException {
+        final var codes = this.codes;
+        final var lengths = this.lengths;
+        final var end = offset + length;
+
+        for (var i = offset; i < end; i++) {
+            final var b = bytes[i] & 0xFF;
+            final var bitLength = lengths[b];
+
+            if (bitLength == 0) {
+                throw new IOException("The input has changed while it was being compressed.");
+            }
+
+            writer.write(codes[b], bitLength);
+        }
+
+        if (escapes != null) {
+            // only counted for tables with escape codes when they are recorded, so that the loop above stays the same
+            // for every table
+            final var escapes = this.escapes;
+            var count = 0;
+            for (var i = offset; i < end; i++) {
+                count += escapes[bytes[i] & 0xFF];
+            }
+            escapedByteCount += count;
+        }
+    }
+
+    /**
+     * @return The number of bytes encoded so far with escape codes, since they had no code in the tree they were
+     * encoded with. Always 0 if escaped bytes are not counted.
+     */
+    long getEscapedByteCount() {
+        return escapedByteCount;
+    }
+
+    /**
+     * Encodes the remaining bytes of the given buffer into the given bit stream, without changing its position.
+     * <p>
+     * Bytes of a memory-mapped buffer are read in chunks into a small array that stays in the L1 cache,
+     * since bulk copies from a mapped buffer are much cheaper than reading it one byte at a time.
+     *
+     * @param bytes  The bytes to be encoded.
+     * @param writer The bit stream the codes are written to.
+     */
+    void encode(ByteBuffer bytes, BitWriter writer) throws IOException {
+        if (bytes.hasArray()) {
+            encode(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), writer);
+            return;
+        }
+
+        final var chunk = new byte[Math.min(CHUNK_SIZE, bytes.remaining())];
+        for (var i = bytes.position(); i < bytes.limit(); i += chunk.length) {
+            final var length = Math.min(chunk.length, bytes.limit() - i);
+            bytes.get(i, chunk, 0, length);
+            encode(chunk, 0, length, writer);
+        }
+    }
+
+    /**
+     * Encodes the given bytes into a block of the block-based format.
+     *
+     * @param bytes              The bytes to be encoded, starting at index 0.
+     * @param length             The number of bytes to be encoded.
+     * @param codeTable          The codes used to encode the bytes.
+     * @param checkpointInterval The number of bytes between checkpoints, or 0 if the block has no checkpoints.
+     * @param countEscapes       Whether the bytes encoded with escape codes are counted in the block.
+     * @return The encoded block.
+     */
+    static EncodedBlock encodeBlock(byte[] bytes, int length, HuffmanCodeTable codeTable, int checkpointInterval, boolean countEscapes) throws IOException {
+        return encodeBlock(ByteBuffer.wrap(bytes, 0, length), codeTable, checkpointInterval, countEscapes);
+    }
+
+    /**
+     * Encodes the remaining bytes of the given buffer into a block of the block-based format.
+     *
+     * @param bytes              The bytes to be encoded, such as a memory-mapped region of the input file.
+     * @param codeTable          The codes used to encode the bytes.
+     * @param checkpointInterval The number of bytes between checkpoints, or 0 if the block has no checkpoints.
+     * @param countEscapes       Whether the bytes encoded with escape codes are counted in the block.
+     * @return The encoded block.
+     */
+    static EncodedBlock encodeBlock(ByteBuffer bytes, HuffmanCodeTable codeTable, int checkpointInterval, boolean countEscapes) throws IOException {
+        final var encoder = new HuffmanEncoder(codeTable, countEscapes);
+        return encodeBlock(bytes, checkpointInterval, encoder::encode, encoder);
+    }
+
+    /**
+     * Encodes the remaining bytes of the given buffer into a block of the block-based format, with the code table of
+     * the context of every byte. Every checkpoint starts in the context of byte 0 like the block itself, so that it
+     * can be decoded without the byte before it.
+     *
+     * @param bytes              The bytes to be encoded, such as a memory-mapped region of the input file.
+     * @param contextCodes       The codes used to encode the bytes.
+     * @param checkpointInterval The number of bytes between checkpoints, or 0 if the block has no checkpoints.
+     * @return The encoded block.
+     */
+    static EncodedBlock encodeBlock(ByteBuffer bytes, ContextCodes contextCodes, int checkpointInterval) throws IOException {
+        return encodeBlock(bytes, checkpointInterval, contextCodes::encode, null);
+    }
+
+    /**
+     * Encodes the remaining bytes of the given buffer one segment at a time, recording the offset in the bit stream
+     * of the start of every segment but the first as a checkpoint.
+     *
+     * @param encoder The encoder of the bytes, used to count the bytes with escape codes. Null if there are none.
+     */
+    private static EncodedBlock encodeBlock(ByteBuffer bytes, int checkpointInterval, SegmentEncoder segmentEncoder, HuffmanEncoder encoder) throws IOException {
+        final var length = bytes.remaining();
+        final var payload = new ByteArrayOutputStream(length);
+        final var bitWriter = new BitWriter(payload);
+        final var checkpoints = new int[BlockIndex.checkpointCount(length, checkpointInterval)];
+        final var segmentLength = checkpointInterval > 0 ? checkpointInterval : length;
+
+        for (var i = 0; i <= checkpoints.length; i++) {
+            if (i > 0) {
+                checkpoints[i - 1] = (int) bitWriter.getBitCount();
+            }
+            final var start = i * segmentLength;
+            segmentEncoder.encode(bytes.slice(bytes.position() + start, Math.min(segmentLength, length - start)), bitWriter);
+        }
+
+        final var bitLength = bitWriter.getBitCount();
+        bitWriter.flush();
+
+        final var escapedByteCount = encoder != null ? (int) encoder.getEscapedByteCount() : 0;
+        return new EncodedBlock(length, bitLength, payload.toByteArray(), null, escapedByteCount, checkpoints);
+    }
+
+    /**
+     * Encodes a segment of a block into its bit stream.
+     */
+    private interface SegmentEncoder {
+        void encode(ByteBuffer segment, BitWriter writer) throws IOException;
+    }
+}
@@ -0,0 +1,210 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that decompresses the bytes read from the underlying stream. Every format written by
+ * {@link HuffmanCompressor} and {@link HuffmanOutputStream} is supported.
+ * <p>
+ * Bytes are decoded as they are read. Files in the block-based format are decoded one block at a time,
+ * so at most one block is held in memory. Files that are encoded as a single stream are decoded into a small buffer.
+ * Bytes in the adaptive format can be read as soon as {@link AdaptiveHuffmanOutputStream#flush()} is called on the
+ * writing side, so a stream that is still being written can be decompressed as it goes.
+ * <p>
+ * Since {@link InputStream} can only throw {@link IOException}s, compressed bytes in an incorrect format
+ * are reported with an {@link IOException} whose cause is the {@link IncorrectFormatException}. Blocks with checksums
+ * are checked as they are decoded, so a corrupted block fails before any of its bytes are read.
+ */
+public class HuffmanInputStream extends FilterInputStream {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final DataInputStream input;
+    private boolean isHeaderRead = false;
+    private boolean isClosed = false;
+
+    private HuffmanDecodeTable decodeTable;
+
+    // set if the compressed bytes are in the block-based format
+    private BlockReader blockReader;
+
+    // set if the compressed bytes are in the adaptive format
+    private AdaptiveHuffmanDecoder adaptiveDecoder;
+
+    // set if the compressed bytes are encoded as a single stream
+    private BitReader bitReader;
+    private long remainingBytes;
+
+    // decoded bytes that are not read yet
+    private byte[] buffer = new byte[0];
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * @param in The stream that contains the compressed bytes.
+     */
+    public HuffmanInputStream(InputStream in) {
+        super(in);
+        input = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) return 0;
+
+        if (position == limit && !fill()) {
+            return -1;
+        }
+
+        final var count = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var skipped = 0L;
+
+        while (skipped < n && (position < limit || fill())) {
+            final var count = (int) Math.min(n - skipped, limit - position);
+            position += count;
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    /**
+     * @return The number of decoded bytes that can be read without decoding more bytes.
+     */
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        super.close();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Decodes more bytes into the buffer.
+     *
+     * @return false if there are no more bytes to decode.
+     */
+    private boolean fill() throws IOException {
+        ensureOpen();
+
+        try {
+            if (!isHeaderRead) {
+                readHeader();
+            }
+
+            if (blockReader != null) {
+                final var block = blockReader.readBlock();
+                if (block == null) return false;
+
+                if (buffer.length < block.rawLength) {
+                    buffer = new byte[block.rawLength];
+                }
+                blockReader.getDecoder().decode(new BitReader(block.payload, 0, block.payload.length), buffer, 0, block.rawLength);
+                blockReader.verifyBlock(block, buffer);
+                limit = block.rawLength;
+            } else if (adaptiveDecoder != null) {
+                // a flush decodes no bytes if nothing was written before it, so decoding goes on until there are some
+                var count = 0;
+                while (count == 0) {
+                    count = adaptiveDecoder.decode(buffer, 0, buffer.length);
+                }
+
+                if (count < 0) return false;
+                limit = count;
+            } else {
+                if (remainingBytes == 0) return false;
+
+                final var count = (int) Math.min(remainingBytes, buffer.length);
+                decodeTable.decode(bitReader, buffer, 0, count);
+                remainingBytes -= count;
+                limit = count;
+            }
+        } catch (IncorrectFormatException ex) {
+            throw new IOException(ex);
+        }
+
+        position = 0;
+        return true;
+    }
+
+    private void readHeader() throws IOException, IncorrectFormatException {
+        switch (HuffmanCompressor.FormatVersion.fromByte(input.readUnsignedByte())) {
+            case LEGACY:
+                final var size = HuffmanTreeSerializer.readLegacyTreeSize(input);
+                decodeTable = HuffmanTableCache.getShared().readLegacyTree(input, size).getDecodeTable();
+                break;
+            case CANONICAL:
+                decodeTable = HuffmanTableCache.getShared().readCodeLengths(input).getDecodeTable();
+                break;
+            case BLOCKS:
+                blockReader = new BlockReader(input);
+                // fails on the first read if the blocks need a dictionary that has not been loaded
+                blockReader.getDecoder();
+                break;
+            case ADAPTIVE:
+                adaptiveDecoder = new AdaptiveHuffmanDecoder(input);
+                buffer = new byte[BUFFER_SIZE];
+                break;
+            default:
+                throw new IncorrectFormatException();
+        }
+
+        if (blockReader == null && adaptiveDecoder == null) {
+            remainingBytes = input.readLong();
+            if (remainingBytes < 0) {
+                throw new IncorrectFormatException();
+            }
+            bitReader = new BitReader(input);
+            buffer = new byte[BUFFER_SIZE];
+        }
+
+        isHeaderRead = true;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
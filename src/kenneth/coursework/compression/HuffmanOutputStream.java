@@ -0,0 +1,216 @@
+package kenneth.coursework.compression;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An output stream that compresses the bytes written into it, and writes the compressed bytes into the underlying
+ * stream in the block-based format. The compressed bytes can be decompressed with {@link HuffmanInputStream} or
+ * {@link HuffmanDecompressor}.
+ * <p>
+ * Bytes are collected into a block, which is encoded and written into the underlying stream when it is full or when
+ * the stream is flushed. At most one block is held in memory, no matter how many bytes are written, and the block
+ * only grows to the block size as more bytes are written, so that compressing a small message stays cheap.
+ * Unless a tree or a {@link HuffmanDictionary} is given, the tree is built from the first block, and the bytes it lacks
+ * share an escape code so that the rest of the bytes can always be encoded. A message that is closed before its first
+ * block is written is encoded with exact codes.
+ * <p>
+ * Blocks are written without a {@link BlockIndex}, which would otherwise grow with the number of blocks.
+ * {@link #close()} must be called to mark the end of the compressed bytes.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    private static final int INITIAL_BLOCK_CAPACITY = 1 << 12;
+
+    private final BlockWriter blockWriter;
+    private final int blockSize;
+    private byte[] block;
+    private int blockLength = 0;
+
+    private final int maxCodeLength;
+    private final int[] treeCodeLengths;
+    private final HuffmanDictionary dictionary;
+    private HuffmanCodeTable codeTable;
+    private boolean isClosed = false;
+
+    /**
+     * Creates a compressing stream with blocks of {@link HuffmanCompressor#DEFAULT_BLOCK_SIZE},
+     * whose tree is built from the first block.
+     *
+     * @param out The stream the compressed bytes are written to.
+     */
+    public HuffmanOutputStream(OutputStream out) {
+        this(out, HuffmanCompressor.DEFAULT_BLOCK_SIZE, null);
+    }
+
+    /**
+     * Creates a compressing stream.
+     *
+     * @param out       The stream the compressed bytes are written to.
+     * @param blockSize The maximum number of bytes in a block, at most {@link HuffmanCompressor#MAX_BLOCK_SIZE}.
+     * @param tree      The tree used to encode the bytes. If null, the tree is built from the first block. Bytes
+     *                  that are not in the tree are given escape codes, whose length depends on how many of them the
+     *                  first block has.
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize, HuffmanTree tree) {
+        this(out, blockSize, tree, HuffmanTree.DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Creates a compressing stream whose codes are no longer than the given length.
+     *
+     * @param out           The stream the compressed bytes are written to.
+     * @param blockSize     The maximum number of bytes in a block, at most {@link HuffmanCompressor#MAX_BLOCK_SIZE}.
+     * @param tree          The tree used to encode the bytes. If null, the tree is built from the first block.
+     * @param maxCodeLength The maximum length of a code, between {@link HuffmanTree#MIN_CODE_LENGTH_LIMIT} and
+     *                      {@link HuffmanTree#MAX_CODE_LENGTH}.
+     * @see HuffmanCompressor#setMaxCodeLength(int)
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize, HuffmanTree tree, int maxCodeLength) {
+        this(out, blockSize, maxCodeLength, tree != null ? tree.getCodeLengths() : null, null);
+    }
+
+    /**
+     * Creates a compressing stream with blocks of {@link HuffmanCompressor#DEFAULT_BLOCK_SIZE}, which encodes the
+     * bytes with the given dictionary. Only the ID of the dictionary is written, instead of the codes.
+     *
+     * @param out        The stream the compressed bytes are written to.
+     * @param dictionary The dictionary used to encode the bytes.
+     */
+    public HuffmanOutputStream(OutputStream out, HuffmanDictionary dictionary) {
+        this(out, HuffmanCompressor.DEFAULT_BLOCK_SIZE, HuffmanTree.DEFAULT_MAX_CODE_LENGTH, null, dictionary);
+
+        if (dictionary == null) {
+            throw new IllegalArgumentException("Dictionary cannot be null.");
+        }
+    }
+
+    private HuffmanOutputStream(OutputStream out, int blockSize, int maxCodeLength, int[] treeCodeLengths,
+                                HuffmanDictionary dictionary) {
+        super(out);
+
+        if (blockSize <= 0 || blockSize > HuffmanCompressor.MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + HuffmanCompressor.MAX_BLOCK_SIZE + ".");
+        }
+        if (maxCodeLength < HuffmanTree.MIN_CODE_LENGTH_LIMIT || maxCodeLength > HuffmanTree.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Maximum code length must be between " + HuffmanTree.MIN_CODE_LENGTH_LIMIT
+                    + " and " + HuffmanTree.MAX_CODE_LENGTH + ".");
+        }
+
+        blockWriter = new BlockWriter(out, false);
+        this.blockSize = blockSize;
+        this.maxCodeLength = maxCodeLength;
+        block = new byte[Math.min(blockSize, INITIAL_BLOCK_CAPACITY)];
+        this.treeCodeLengths = treeCodeLengths;
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+
+        if (blockLength == block.length) {
+            growBlock();
+        }
+
+        block[blockLength++] = (byte) b;
+        if (blockLength == blockSize) {
+            writeBlock(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+
+        if ((off | len) < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            if (blockLength == block.length) {
+                growBlock();
+            }
+
+            final var count = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+
+            if (blockLength == blockSize) {
+                writeBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Encodes the bytes written so far into a block, even if the block is not full, and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+
+        writeBlock(false);
+        out.flush();
+    }
+
+    /**
+     * Encodes the remaining bytes, marks the end of the compressed bytes and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) return;
+
+        try {
+            writeBlock(true);
+            blockWriter.finish();
+        } finally {
+            isClosed = true;
+            out.close();
+        }
+    }
+
+    /**
+     * Doubles the capacity of the block, up to the block size.
+     */
+    private void growBlock() {
+        block = Arrays.copyOf(block, (int) Math.min(blockSize, 2L * block.length));
+    }
+
+    /**
+     * @param isLast Whether no more bytes are written after the block, in which case a first block is the whole input
+     *               and its codes can be exact.
+     */
+    private void writeBlock(boolean isLast) throws IOException {
+        if (codeTable == null) {
+            if (dictionary != null) {
+                codeTable = dictionary.getCodeTable();
+                blockWriter.writeHeader(blockSize, dictionary);
+            } else {
+                // the bytes that the tree or the first block lack are given escape codes as short as the first block
+                // needs them
+                final var histogram = new ByteHistogram();
+                histogram.count(block, 0, blockLength);
+                final var frequencies = histogram.toFrequencies();
+                final var codeLengths = treeCodeLengths != null
+                        ? HuffmanTree.addEscapeCodes(treeCodeLengths, HuffmanTree.estimateEscapeShift(treeCodeLengths, frequencies), maxCodeLength)
+                        : HuffmanTree.computeSampledCodeLengths(frequencies, isLast, maxCodeLength);
+                codeTable = HuffmanCodeTable.fromCodeLengths(codeLengths);
+                blockWriter.writeHeader(blockSize, codeLengths);
+            }
+        }
+
+        if (blockLength == 0) return;
+
+        blockWriter.writeBlock(HuffmanEncoder.encodeBlock(block, blockLength, codeTable, 0, false));
+        blockLength = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (isClosed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
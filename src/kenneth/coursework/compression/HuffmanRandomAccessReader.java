@@ -0,0 +1,187 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Reads ranges of the original content of a compressed file without decompressing the rest of it, such as for a
+ * viewer that jumps around a large compressed log.
+ * <p>
+ * The file must be in the block-based format with a {@link BlockIndex}, which is written for files with more than one
+ * block, for compressed streams, and for files compressed with a checkpoint interval. A range is decoded from the
+ * nearest checkpoint before it, or from the start of its block if the file has no checkpoints, so ranges are read
+ * fastest from files compressed with {@link HuffmanCompressor#setCheckpointInterval(int)}.
+ * <p>
+ * The index is read once when the file is opened, and the last block read is kept mapped, since reads are often close
+ * to each other. Safe to be used from multiple threads.
+ * <p>
+ * Checksums cover whole blocks, so the ranges read are not checked against them. Use
+ * {@link HuffmanDecompressor#verify(File)} to check a file with checksums.
+ */
+public class HuffmanRandomAccessReader implements Closeable {
+    private final FileChannel channel;
+    private final BlockReader blockReader;
+    private final BlockIndex index;
+
+    // the bytes decoded from a checkpoint, before the requested part of them is copied
+    private final byte[] segment;
+
+    // the last block read. -1 if no block has been read yet.
+    private int mappedBlockIndex = -1;
+    private BlockReader.MappedBlock mappedBlock = null;
+
+    /**
+     * Opens the given compressed file, and reads its header and index.
+     *
+     * @param file The compressed file.
+     * @throws IncorrectFormatException When the file is not in the block-based format, has no index, or is compressed
+     *                                  with a dictionary that has not been loaded.
+     */
+    public HuffmanRandomAccessReader(File file) throws IOException, IncorrectFormatException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            // the header is read through a stream, but the blocks and the index are read at their offsets in the file
+            final var input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (HuffmanCompressor.FormatVersion.fromByte(input.readUnsignedByte()) != HuffmanCompressor.FormatVersion.BLOCKS) {
+                throw new IncorrectFormatException();
+            }
+
+            blockReader = new BlockReader(input);
+            if (!blockReader.hasIndex()) {
+                throw new IncorrectFormatException();
+            }
+
+            // fails now rather than on the first read if the blocks need a dictionary that has not been loaded
+            blockReader.getDecoder();
+            index = blockReader.readIndex(channel);
+
+            final var checkpointInterval = blockReader.getCheckpointInterval();
+            segment = new byte[checkpointInterval > 0 ? Math.min(checkpointInterval, blockReader.getBlockSize()) : blockReader.getBlockSize()];
+        } catch (IOException | IncorrectFormatException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return The length of the original content.
+     */
+    public long length() {
+        return index.getRawLength();
+    }
+
+    /**
+     * Reads the given range of the original content.
+     *
+     * @param offset The offset of the first byte to read in the original content.
+     * @param length The number of bytes to read.
+     * @return The bytes read, which are fewer than requested only if the range goes past the end of the content.
+     * @throws IncorrectFormatException When the blocks that contain the range are invalid.
+     */
+    public byte[] read(long offset, int length) throws IOException, IncorrectFormatException {
+        final var bytes = new byte[length];
+        final var read = read(offset, bytes, 0, length);
+        return read == length ? bytes : Arrays.copyOf(bytes, Math.max(read, 0));
+    }
+
+    /**
+     * Reads the given range of the original content into the given array.
+     *
+     * @param offset       The offset of the first byte to read in the original content.
+     * @param buffer       The array the bytes are written to.
+     * @param bufferOffset The index in the array of the first byte read.
+     * @param length       The number of bytes to read.
+     * @return The number of bytes read, which is less than requested only if the range goes past the end of the
+     * content, or -1 if the offset is at or after the end of the content.
+     * @throws IncorrectFormatException When the blocks that contain the range are invalid.
+     */
+    public synchronized int read(long offset, byte[] buffer, int bufferOffset, int length) throws IOException, IncorrectFormatException {
+        Objects.checkFromIndexSize(bufferOffset, length, buffer.length);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset cannot be negative.");
+        }
+
+        if (length == 0) return 0;
+        if (offset >= index.getRawLength()) return -1;
+
+        final var end = Math.min(offset + length, index.getRawLength());
+        for (var position = offset; position < end; ) {
+            final var block = index.findBlock(position);
+            final var blockOffset = (int) (position - index.getRawOffset(block));
+            final var blockLength = (int) Math.min(end - position, index.getBlockLength(block) - blockOffset);
+
+            readBlock(block, blockOffset, buffer, bufferOffset + (int) (position - offset), blockLength);
+            position += blockLength;
+        }
+
+        return (int) (end - offset);
+    }
+
+    /**
+     * Decodes the given range of a block from the nearest checkpoint before it.
+     *
+     * @param blockOffset The offset of the range in the block.
+     */
+    private void readBlock(int block, int blockOffset, byte[] buffer, int bufferOffset, int length) throws IOException, IncorrectFormatException {
+        final var mapped = mapBlock(block);
+        if (mapped.rawLength != index.getBlockLength(block)) {
+            throw new IncorrectFormatException();
+        }
+
+        final var interval = index.getCheckpointInterval() > 0 ? index.getCheckpointInterval() : mapped.rawLength;
+        final var checkpoint = blockOffset / interval;
+        final var bitOffset = checkpoint == 0 ? 0 : Integer.toUnsignedLong(index.getCheckpoints(block)[checkpoint - 1]);
+
+        final var payload = mapped.payload;
+        if (bitOffset >= (long) payload.remaining() * 8) {
+            throw new IncorrectFormatException();
+        }
+
+        // the checkpoint can be in the middle of a byte, so the bits before it are skipped
+        final var byteOffset = (int) (bitOffset >>> 3);
+        final var reader = new BitReader(payload.slice(payload.position() + byteOffset, payload.remaining() - byteOffset));
+        final var skippedBits = (int) (bitOffset & 7);
+        reader.peek(skippedBits);
+        reader.skip(skippedBits);
+
+        // every part of the block between two checkpoints is decoded on its own, since the decoder may start again at
+        // every checkpoint
+        final var end = blockOffset + length;
+        for (var segmentStart = checkpoint * interval; segmentStart < end; segmentStart += interval) {
+            final var decodedLength = Math.min(interval, end - segmentStart);
+            mapped.decoder.decode(reader, segment, 0, decodedLength);
+
+            final var from = Math.max(blockOffset, segmentStart);
+            System.arraycopy(segment, from - segmentStart, buffer, bufferOffset + from - blockOffset, segmentStart + decodedLength - from);
+        }
+    }
+
+    /**
+     * @return The given block, which is only mapped again if it is not the last block read.
+     */
+    private BlockReader.MappedBlock mapBlock(int block) throws IOException, IncorrectFormatException {
+        if (block != mappedBlockIndex) {
+            mappedBlock = blockReader.mapBlock(channel, index.getCompressedOffset(block));
+            mappedBlockIndex = block;
+        }
+        return mappedBlock;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mappedBlock = null;
+        mappedBlockIndex = -1;
+        channel.close();
+    }
+}
@@ -0,0 +1,216 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the codes of recently read compressed file headers, along with the tables built from them, so that files that
+ * share the same tree do not parse it and rebuild its tables every time. This is the case for files compressed with
+ * the same tree source, and for every file compressed from the same kind of input with few distinct trees.
+ * <p>
+ * Codes are looked up by the serialized bytes in the header, so the same tree is only parsed once no matter which file
+ * it comes from. When the cache is full, the least recently used codes are evicted.
+ * <p>
+ * Every compressor, decompressor and stream in the process shares {@link #getShared()}. Safe to be used from
+ * multiple threads.
+ */
+public class HuffmanTableCache {
+    /**
+     * The default maximum number of trees in the shared cache.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private static final HuffmanTableCache sharedCache = new HuffmanTableCache(DEFAULT_MAX_ENTRIES);
+
+    private static final byte KIND_CODE_LENGTHS = 0;
+    private static final byte KIND_LEGACY_TREE = 1;
+
+    private final LinkedHashMap<Key, HuffmanCodes> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxEntries;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    /**
+     * @param maxEntries The maximum number of trees in the cache. 0 disables the cache.
+     */
+    public HuffmanTableCache(int maxEntries) {
+        setMaxEntries(maxEntries);
+    }
+
+    /**
+     * @return The cache shared by every compressor, decompressor and stream in the process.
+     */
+    public static HuffmanTableCache getShared() {
+        return sharedCache;
+    }
+
+    /**
+     * Sets the maximum number of trees in the cache, and evicts the least recently used trees that no longer fit.
+     *
+     * @param maxEntries The maximum number of trees. 0 disables the cache.
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("Maximum number of entries cannot be negative.");
+        }
+        this.maxEntries = maxEntries;
+        evictExcessEntries();
+    }
+
+    /**
+     * @return The number of trees in the cache.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of times a tree is found in the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of times a tree is not found in the cache, and has to be parsed.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return The number of trees evicted to make room for other trees.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Removes every tree from the cache. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Reads canonical code lengths from the given stream, and obtains their codes.
+     *
+     * @param stream The stream that contains the code lengths.
+     * @return The codes with the lengths.
+     * @throws IncorrectFormatException When the code lengths do not describe a valid huffman tree.
+     * @see HuffmanTreeSerializer#serializeCodeLengths(int[], java.io.DataOutputStream)
+     */
+    HuffmanCodes readCodeLengths(DataInputStream stream) throws IOException, IncorrectFormatException {
+        return getCodeLengths(HuffmanTreeSerializer.readSerializedCodeLengths(stream));
+    }
+
+    /**
+     * Obtains the codes of canonical code lengths whose bytes have already been read.
+     *
+     * @param serializedCodeLengths The serialized code lengths, as read by
+     *                              {@link HuffmanTreeSerializer#readSerializedCodeLengths(DataInputStream)}.
+     * @return The codes with the lengths.
+     * @throws IncorrectFormatException When the code lengths do not describe a valid huffman tree.
+     */
+    HuffmanCodes getCodeLengths(byte[] serializedCodeLengths) throws IOException, IncorrectFormatException {
+        final var key = new Key(KIND_CODE_LENGTHS, serializedCodeLengths);
+
+        var codes = get(key);
+        if (codes == null) {
+            final var input = new DataInputStream(new ByteArrayInputStream(key.bytes));
+            codes = put(key, HuffmanCodes.fromCodeLengths(HuffmanTreeSerializer.deserializeCodeLengths(input)));
+        }
+
+        return codes;
+    }
+
+    /**
+     * Reads a tree serialized in the legacy format from the given stream, and obtains its codes.
+     *
+     * @param stream The stream that contains the tree, right after its size.
+     * @param size   The number of shorts in the serialized tree.
+     * @return The codes of the tree.
+     * @throws IncorrectFormatException When the tree is not serialized in a correct format.
+     */
+    HuffmanCodes readLegacyTree(DataInputStream stream, int size) throws IOException, IncorrectFormatException {
+        final var key = new Key(KIND_LEGACY_TREE, HuffmanTreeSerializer.readSerializedTree(stream, size));
+
+        var codes = get(key);
+        if (codes == null) {
+            codes = put(key, HuffmanCodes.fromTree(HuffmanTreeSerializer.deserializeTree(key.bytes)));
+        }
+
+        return codes;
+    }
+
+    private synchronized HuffmanCodes get(Key key) {
+        final var codes = entries.get(key);
+        if (codes != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return codes;
+    }
+
+    /**
+     * Adds the given codes to the cache, unless another thread has added the same codes while they were parsed.
+     *
+     * @return The codes in the cache.
+     */
+    private synchronized HuffmanCodes put(Key key, HuffmanCodes codes) {
+        if (maxEntries == 0) return codes;
+
+        final var existing = entries.putIfAbsent(key, codes);
+        if (existing != null) return existing;
+
+        evictExcessEntries();
+        return codes;
+    }
+
+    private void evictExcessEntries() {
+        final Iterator<Map.Entry<Key, HuffmanCodes>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries) {
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * The serialized bytes of a tree, along with the format they are serialized in.
+     */
+    private static class Key {
+        final byte kind;
+        final byte[] bytes;
+        final int hash;
+
+        Key(byte kind, byte[] bytes) {
+            this.kind = kind;
+            this.bytes = bytes;
+            hash = 31 * kind + Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+
+            final var other = (Key) obj;
+            return hash == other.hash && kind == other.kind && Arrays.equals(bytes, other.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
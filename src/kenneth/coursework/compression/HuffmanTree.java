@@ -5,14 +5,44 @@ import kenneth.coursework.utils.BinaryTree;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Represents a huffman encoding tree.
  */
 public class HuffmanTree extends BinaryTree<HuffmanTree.HuffmanNode> {
+    /**
+     * The number of distinct symbols a huffman tree can store, which is every possible value of a byte.
+     */
+    public static final int SYMBOL_COUNT = 256;
+
+    /**
+     * The maximum length of a huffman code, limited by the int that stores the code.
+     */
+    public static final int MAX_CODE_LENGTH = 31;
+
+    /**
+     * The smallest limit of code lengths, which still leaves enough codes for every byte.
+     */
+    public static final int MIN_CODE_LENGTH_LIMIT = 8;
+
+    /**
+     * The default limit of code lengths. Codes of up to 15 bits are decoded with at most one secondary lookup,
+     * and cost almost nothing in compression ratio, since codes that long are only given to very rare bytes.
+     */
+    public static final int DEFAULT_MAX_CODE_LENGTH = 15;
+
+    /**
+     * The largest n for which the share of escaped bytes is estimated as 2^-n, small enough for the escape to still be
+     * given a weight when code lengths are turned back into frequencies.
+     */
+    static final int MAX_ESCAPE_SHIFT = 30;
+
+    // the weight of a code of length 0 when code lengths are turned back into frequencies
+    private static final int LENGTH_WEIGHT_BITS = 40;
+
     private InputStream inputStream;
-    private final ByteFrequencyMap frequencyMap = new ByteFrequencyMap();
+    private final ByteHistogram histogram = new ByteHistogram();
 
     public HuffmanTree(HuffmanNode root) {
         super(root);
@@ -34,46 +64,475 @@ public class HuffmanTree extends BinaryTree<HuffmanTree.HuffmanNode> {
      * @throws IOException
      */
     public void build() throws IOException {
-        constructFrequencyMap();
+        constructHistogram();
+        root = buildRoot(histogram.toFrequencies());
+    }
+
+    /**
+     * Constructs the Huffman encoding tree from frequencies that have already been counted,
+     * for example over a memory-mapped file.
+     *
+     * @param frequencies The frequency of every byte.
+     * @return The huffman tree of the frequencies.
+     */
+    public static HuffmanTree fromFrequencies(long[] frequencies) {
+        return new HuffmanTree(buildRoot(frequencies));
+    }
+
+    private static HuffmanNode buildRoot(long[] frequencies) {
+        final var merged = new MergedNodes(frequencies);
+        final var leafCount = merged.leafCount;
+
+        if (leafCount == 0) return null;
+
+        final var nodes = new HuffmanNode[merged.frequencies.length];
+        for (var i = 0; i < leafCount; i++) {
+            nodes[i] = new HuffmanNode(merged.symbols[i], merged.frequencies[i]);
+        }
+
+        if (leafCount == 1) {
+            return new HuffmanNode(nodes[0], null, nodes[0].frequency);
+        }
+
+        for (var i = leafCount; i < nodes.length; i++) {
+            final var k = i - leafCount;
+            nodes[i] = new HuffmanNode(nodes[merged.children[2 * k]], nodes[merged.children[2 * k + 1]], merged.frequencies[i]);
+        }
+
+        return nodes[nodes.length - 1];
+    }
+
+    /**
+     * Computes the length of the huffman code of every byte with the given frequencies, limited to
+     * {@link #MAX_CODE_LENGTH}.
+     *
+     * @param frequencies The frequency of every byte.
+     * @return The length of the code of every byte. 0 if the byte has a frequency of 0.
+     * @see #computeCodeLengths(long[], int)
+     */
+    public static int[] computeCodeLengths(long[] frequencies) {
+        return computeCodeLengths(frequencies, MAX_CODE_LENGTH);
+    }
+
+    /**
+     * Computes the length of the huffman code of every byte with the given frequencies, without creating the nodes
+     * of the tree. This is cheap enough to be done for every block of a large input.
+     * <p>
+     * Highly skewed frequencies, such as ones that follow the Fibonacci sequence, produce trees that are deeper than
+     * the given limit. The lengths are then computed again with the package-merge algorithm, which gives the optimal
+     * lengths that do not exceed the limit.
+     *
+     * @param frequencies   The frequency of every byte.
+     * @param maxCodeLength The maximum length of a code, between {@link #MIN_CODE_LENGTH_LIMIT} and
+     *                      {@link #MAX_CODE_LENGTH}.
+     * @return The length of the code of every byte. 0 if the byte has a frequency of 0.
+     */
+    public static int[] computeCodeLengths(long[] frequencies, int maxCodeLength) {
+        checkCodeLengthLimit(maxCodeLength);
+
+        final var codeLengths = computeUnlimitedCodeLengths(frequencies);
+        for (final var length : codeLengths) {
+            if (length > maxCodeLength) {
+                return packageMerge(frequencies, maxCodeLength);
+            }
+        }
+
+        return codeLengths;
+    }
+
+    /**
+     * Computes the number of bits the given frequencies take to encode with the given code lengths, so that codes can
+     * be compared without encoding anything.
+     *
+     * @param frequencies The frequency of every byte.
+     * @param codeLengths The length of the code of every byte. 0 if the byte has no code.
+     * @return The number of bits, or -1 if a byte with a frequency has no code.
+     */
+    static long encodedBits(long[] frequencies, int[] codeLengths) {
+        var bits = 0L;
+        for (var b = 0; b < frequencies.length; b++) {
+            if (frequencies[b] == 0) continue;
+            if (codeLengths[b] == 0) return -1;
+
+            bits += frequencies[b] * codeLengths[b];
+        }
+        return bits;
+    }
+
+    /**
+     * Limits the given code lengths when the frequencies they are computed from are no longer known,
+     * such as the lengths of a tree read from a compressed file.
+     * <p>
+     * A code of length n is used for roughly 2^-n of the input, so the lengths are turned back into frequencies
+     * of that proportion, and limited with the package-merge algorithm.
+     *
+     * @param codeLengths   The length of the code of every byte. 0 if the byte is not in the tree.
+     * @param maxCodeLength The maximum length of a code, between {@link #MIN_CODE_LENGTH_LIMIT} and
+     *                      {@link #MAX_CODE_LENGTH}.
+     * @return The given lengths if none of them exceed the limit, otherwise the limited lengths.
+     */
+    public static int[] limitCodeLengths(int[] codeLengths, int maxCodeLength) {
+        checkCodeLengthLimit(maxCodeLength);
+
+        var isLimited = true;
+        for (final var length : codeLengths) {
+            if (length > maxCodeLength) {
+                isLimited = false;
+                break;
+            }
+        }
+        if (isLimited) return codeLengths;
+
+        final var frequencies = new long[codeLengths.length];
+        for (var b = 0; b < codeLengths.length; b++) {
+            if (codeLengths[b] > 0) {
+                frequencies[b] = 1L << (LENGTH_WEIGHT_BITS - Math.min(codeLengths[b], LENGTH_WEIGHT_BITS));
+            }
+        }
+
+        return packageMerge(frequencies, maxCodeLength);
+    }
+
+    private static void checkCodeLengthLimit(int maxCodeLength) {
+        if (maxCodeLength < MIN_CODE_LENGTH_LIMIT || maxCodeLength > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Maximum code length must be between " + MIN_CODE_LENGTH_LIMIT
+                    + " and " + MAX_CODE_LENGTH + ".");
+        }
+    }
+
+    private static int[] computeUnlimitedCodeLengths(long[] frequencies) {
+        final var merged = new MergedNodes(frequencies);
+        final var leafCount = merged.leafCount;
+        final var codeLengths = new int[SYMBOL_COUNT];
+
+        if (leafCount == 1) {
+            codeLengths[merged.symbols[0]] = 1;
+            return codeLengths;
+        }
+
+        // children are always created before their parents, so walking the nodes backwards
+        // visits every parent before its children.
+        final var depths = new int[merged.frequencies.length];
+        for (var i = depths.length - 1; i >= leafCount; i--) {
+            final var k = i - leafCount;
+            depths[merged.children[2 * k]] = depths[i] + 1;
+            depths[merged.children[2 * k + 1]] = depths[i] + 1;
+        }
+
+        for (var i = 0; i < leafCount; i++) {
+            codeLengths[merged.symbols[i]] = depths[i];
+        }
+
+        return codeLengths;
+    }
+
+    /**
+     * Computes the optimal code lengths that do not exceed the given limit with the package-merge algorithm.
+     * <p>
+     * Starting at the deepest level, the items of every level are the leaves merged with packages of two consecutive
+     * items of the level below, in ascending order of their frequencies. The first 2n - 2 items of the top level
+     * are selected, where n is the number of leaves. Every selected package selects the two items it is made of,
+     * and the code of a byte is as long as the number of levels its leaf is selected in.
+     * <p>
+     * Since the leaves are sorted, the leaves selected in a level are always the first ones, so only whether every
+     * item is a leaf has to be stored to follow the selection back down.
+     */
+    private static int[] packageMerge(long[] frequencies, int maxCodeLength) {
+        var leafCount = 0;
+        for (final var frequency : frequencies) {
+            if (frequency > 0) leafCount++;
+        }
+
+        final var packed = new long[leafCount];
+        var i = 0;
+        for (var b = 0; b < frequencies.length; b++) {
+            if (frequencies[b] > 0) {
+                packed[i++] = (frequencies[b] << 8) | b;
+            }
+        }
+        Arrays.sort(packed);
+
+        final var codeLengths = new int[SYMBOL_COUNT];
+        if (leafCount == 1) {
+            codeLengths[(int) (packed[0] & 0xFF)] = 1;
+            return codeLengths;
+        }
+
+        final var leafWeights = new long[leafCount];
+        for (i = 0; i < leafCount; i++) {
+            leafWeights[i] = packed[i] >>> 8;
+        }
+
+        final var isLeaf = new boolean[maxCodeLength + 1][];
+        var previous = new long[0];
+
+        for (var level = maxCodeLength; level >= 1; level--) {
+            final var packageCount = previous.length / 2;
+            final var items = new long[leafCount + packageCount];
+            final var leaves = new boolean[items.length];
+
+            var leaf = 0;
+            var pack = 0;
+            for (var k = 0; k < items.length; k++) {
+                final var packageWeight = pack < packageCount ? previous[2 * pack] + previous[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < leafCount && leafWeights[leaf] <= packageWeight) {
+                    items[k] = leafWeights[leaf++];
+                    leaves[k] = true;
+                } else {
+                    items[k] = packageWeight;
+                    pack++;
+                }
+            }
+
+            isLeaf[level] = leaves;
+            previous = items;
+        }
+
+        var selected = 2 * leafCount - 2;
+        for (var level = 1; level <= maxCodeLength && selected > 0; level++) {
+            var selectedLeaves = 0;
+            for (var k = 0; k < selected; k++) {
+                if (isLeaf[level][k]) selectedLeaves++;
+            }
 
-        final List<HuffmanNode> sortedFrequencyNodes = frequencyMap.toHuffmanNodes();
+            for (var j = 0; j < selectedLeaves; j++) {
+                codeLengths[(int) (packed[j] & 0xFF)]++;
+            }
+
+            selected = 2 * (selected - selectedLeaves);
+        }
 
-        int nodeCount = sortedFrequencyNodes.size();
+        return codeLengths;
+    }
 
-        if (nodeCount == 1) {
-            final var node = sortedFrequencyNodes.get(0);
-            root = new HuffmanNode(node, null, node.frequency);
-            return;
+    /**
+     * Computes code lengths from a sample of the input. If the sample is the whole input, the lengths are exact.
+     * Otherwise every byte missing from the sample is given an escape code, as short as the share of the input such
+     * bytes are expected to make up, so that the rest of the input can always be encoded without making small inputs
+     * pay for codes they never use.
+     *
+     * @param frequencies   The frequency of every byte in the sample.
+     * @param isWholeInput  Whether the sample is the whole input.
+     * @param maxCodeLength The maximum length of a code.
+     * @return The length of the code of every byte.
+     * @see #addEscapeCodes(int[], int, int)
+     */
+    static int[] computeSampledCodeLengths(long[] frequencies, boolean isWholeInput, int maxCodeLength) {
+        final var codeLengths = computeCodeLengths(frequencies, maxCodeLength);
+        if (isWholeInput) return codeLengths;
+
+        return addEscapeCodes(codeLengths, estimateEscapeShift(codeLengths, frequencies), maxCodeLength);
+    }
+
+    /**
+     * Computes code lengths that give every byte a code, including the bytes with a frequency of 0,
+     * which are counted as if they appeared once.
+     *
+     * @param frequencies   The frequency of every byte. Modified in place.
+     * @param maxCodeLength The maximum length of a code.
+     * @return The length of the code of every byte.
+     */
+    static int[] computeCompleteCodeLengths(long[] frequencies, int maxCodeLength) {
+        for (var b = 0; b < frequencies.length; b++) {
+            if (frequencies[b] == 0) {
+                frequencies[b] = 1;
+            }
         }
 
-        while (nodeCount > 0) {
-            final var smallest = sortedFrequencyNodes.remove(0);
-            final var secondSmallest = sortedFrequencyNodes.remove(0);
-            final var totalFrequency = smallest.frequency + secondSmallest.frequency;
+        return computeCodeLengths(frequencies, maxCodeLength);
+    }
 
-            nodeCount = sortedFrequencyNodes.size();
+    /**
+     * Estimates the share of the bytes of an input that have no code in the given lengths from a sample of the input,
+     * rounded to a power of 2, so that only a few complete tables are ever built from the same codes. Since bytes that
+     * are not in the sample can still be in the rest of the input, the sample is counted with one more byte that has
+     * a code and one more that does not.
+     *
+     * @param codeLengths       The length of the code of every byte. 0 if the byte is not in the tree.
+     * @param sampleFrequencies The frequency of every byte in the sample.
+     * @return The estimated share of escaped bytes as n, for a share of 2^-n, between 1 and {@link #MAX_ESCAPE_SHIFT}.
+     */
+    static int estimateEscapeShift(int[] codeLengths, long[] sampleFrequencies) {
+        var escapedCount = 1L;
+        var totalCount = 2L;
+        for (var b = 0; b < codeLengths.length; b++) {
+            totalCount += sampleFrequencies[b];
+            if (codeLengths[b] == 0) {
+                escapedCount += sampleFrequencies[b];
+            }
+        }
 
-            if (nodeCount > 0) {
-                final HuffmanNode parentNode = new HuffmanNode(smallest, secondSmallest, totalFrequency);
+        final var shift = Math.round(Math.log((double) totalCount / escapedCount) / Math.log(2));
+        return (int) Math.max(1, Math.min(MAX_ESCAPE_SHIFT, shift));
+    }
 
-                for (int i = 0; i <= nodeCount; i++) {
-                    if (i == nodeCount) {
-                        sortedFrequencyNodes.add(parentNode);
-                    } else if (sortedFrequencyNodes.get(i).frequency >= totalFrequency) {
-                        sortedFrequencyNodes.add(Math.max(i - 1, 0), parentNode);
-                        break;
+    /**
+     * Gives a code to every byte that has none in the given code lengths, such as the lengths of a tree source built
+     * from other input.
+     * <p>
+     * The escape is a subtree whose leaves are the bytes without a code, all at the same depth or one apart. An escaped
+     * byte is encoded as the code of the escape followed by a literal of at most 8 bits. Since the literal is part of
+     * its code, an escaped byte is decoded by the same table lookups as every other byte, and encoded without checking
+     * whether it has a code.
+     * <p>
+     * The length of the escape code depends on how many bytes are expected to be escaped. A code of length n is used for
+     * roughly 2^-n of the input, so the lengths are turned back into frequencies of that proportion, the escape is given
+     * the expected share of escaped bytes, and the lengths are computed again. Input that mostly lacks codes, such as
+     * random bytes compressed with a tree built from text, then gets a short escape code, and input that matches the
+     * tree keeps almost the same codes.
+     *
+     * @param codeLengths   The length of the code of every byte. 0 if the byte is not in the tree.
+     * @param escapeShift   The expected share of escaped bytes as n, for a share of 2^-n, as estimated by
+     *                      {@link #estimateEscapeShift(int[], long[])}.
+     * @param maxCodeLength The maximum length of a code.
+     * @return The given lengths if every byte has a code, otherwise the lengths with the escaped bytes. Either way, the
+     * lengths are limited to the maximum length.
+     */
+    static int[] addEscapeCodes(int[] codeLengths, int escapeShift, int maxCodeLength) {
+        if (escapeShift < 1 || escapeShift > MAX_ESCAPE_SHIFT) {
+            throw new IllegalArgumentException("Escape shift must be between 1 and " + MAX_ESCAPE_SHIFT + ".");
+        }
+
+        final var frequencies = new long[codeLengths.length];
+        var totalFrequency = 0L;
+        var escapedCount = 0;
+        var escape = -1;
+
+        for (var b = 0; b < codeLengths.length; b++) {
+            if (codeLengths[b] > 0) {
+                frequencies[b] = 1L << (LENGTH_WEIGHT_BITS - Math.min(codeLengths[b], LENGTH_WEIGHT_BITS));
+                totalFrequency += frequencies[b];
+            } else if (escapedCount++ == 0) {
+                escape = b;
+            }
+        }
+
+        if (escapedCount == 0) {
+            return limitCodeLengths(codeLengths, maxCodeLength);
+        }
+
+        // the escape takes the place of the first escaped byte while the lengths are computed, and is the whole tree
+        // if no byte has a code
+        var lengths = new int[codeLengths.length];
+        var escapeLength = 0;
+        if (totalFrequency > 0) {
+            frequencies[escape] = Math.max(1, totalFrequency / ((1L << escapeShift) - 1));
+            lengths = computeUnlimitedCodeLengths(frequencies);
+            escapeLength = lengths[escape];
+        }
+
+        // a balanced subtree of n leaves has 2^d - n leaves at depth d - 1, and the others at depth d
+        final var depth = Integer.SIZE - Integer.numberOfLeadingZeros(escapedCount - 1);
+        var shallowCount = (1 << depth) - escapedCount;
+
+        for (var b = 0; b < lengths.length; b++) {
+            if (codeLengths[b] == 0) {
+                lengths[b] = escapeLength + (shallowCount-- > 0 ? depth - 1 : depth);
+            }
+        }
+
+        return limitCodeLengths(lengths, maxCodeLength);
+    }
+
+    /**
+     * Creates a canonical huffman tree from the given code lengths.
+     * Symbols with the same code length are given consecutive codes in ascending order of the symbols,
+     * and shorter codes always come before longer codes.
+     *
+     * @param codeLengths The length of the code of every byte. 0 if the byte is not in the tree.
+     * @return The canonical huffman tree.
+     */
+    public static HuffmanTree fromCodeLengths(int[] codeLengths) {
+        final var codes = canonicalCodes(codeLengths);
+        HuffmanNode root = null;
+
+        for (var b = 0; b < codeLengths.length; b++) {
+            final var length = codeLengths[b];
+            if (length == 0) continue;
+
+            if (root == null) {
+                root = new HuffmanNode();
+            }
+
+            // follow the code from the root, creating the nodes along the path that do not exist yet
+            var node = root;
+            for (var i = length - 1; i > 0; i--) {
+                final var isRight = ((codes[b] >>> i) & 1) == 1;
+                var next = (HuffmanNode) (isRight ? node.getRightNode() : node.getLeftNode());
+                if (next == null) {
+                    next = new HuffmanNode();
+                    if (isRight) {
+                        node.setRightNode(next);
+                    } else {
+                        node.setLeftNode(next);
                     }
                 }
+                node = next;
+            }
+
+            final var leaf = new HuffmanNode(b, 0);
+            if ((codes[b] & 1) == 1) {
+                node.setRightNode(leaf);
             } else {
-                root = new HuffmanNode(smallest, secondSmallest, totalFrequency);
+                node.setLeftNode(leaf);
             }
         }
+
+        return new HuffmanTree(root);
     }
 
-    private void constructFrequencyMap() throws IOException {
-        for (var b = inputStream.read(); b >= 0; b = inputStream.read()) {
-            frequencyMap.countByte(b);
+    /**
+     * Assigns canonical huffman codes to bytes with the given code lengths.
+     *
+     * @param codeLengths The length of the code of every byte. 0 if the byte is not in the tree.
+     * @return The canonical code of every byte, right aligned. 0 for bytes that are not in the tree.
+     */
+    public static int[] canonicalCodes(int[] codeLengths) {
+        final var lengthCounts = new int[MAX_CODE_LENGTH + 2];
+        for (final var length : codeLengths) {
+            lengthCounts[length]++;
+        }
+        lengthCounts[0] = 0;
+
+        // the first code of every length is obtained by appending a 0 to the code
+        // that comes after the last code of the previous length
+        final var nextCodes = new int[MAX_CODE_LENGTH + 2];
+        var code = 0;
+        for (var length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + lengthCounts[length - 1]) << 1;
+            nextCodes[length] = code;
         }
+
+        final var codes = new int[codeLengths.length];
+        for (var b = 0; b < codeLengths.length; b++) {
+            final var length = codeLengths[b];
+            if (length != 0) {
+                codes[b] = nextCodes[length]++;
+            }
+        }
+
+        return codes;
+    }
+
+    /**
+     * @return The length of the code of every byte in this tree, which is the depth of the node that stores the byte.
+     * 0 if the byte is not in this tree.
+     */
+    public int[] getCodeLengths() {
+        final var codeLengths = new int[SYMBOL_COUNT];
+
+        traverse((node, position, level) -> {
+            final var b = node.getByte();
+            if (b != null) {
+                codeLengths[b] = level;
+            }
+        });
+
+        return codeLengths;
+    }
+
+    private void constructHistogram() throws IOException {
+        histogram.count(inputStream);
     }
 
     @Override
@@ -88,6 +547,83 @@ public class HuffmanTree extends BinaryTree<HuffmanTree.HuffmanNode> {
         return string.toString();
     }
 
+    /**
+     * The nodes of a huffman tree merged from the frequencies of bytes, stored in primitive arrays.
+     * <p>
+     * The leaves are sorted by their frequencies once. After that, the two nodes with the smallest frequencies are
+     * repeatedly merged into a new node. Since the frequencies of merged nodes never decrease, they form a second
+     * sorted queue, and the two smallest nodes are always at the front of one of the two queues.
+     * This makes merging linear after the leaves are sorted.
+     */
+    private static class MergedNodes {
+        /**
+         * The number of leaves, which are the bytes with a frequency of more than 0.
+         */
+        final int leafCount;
+
+        /**
+         * The byte stored in every leaf. Leaves are in ascending order of their frequencies.
+         */
+        final int[] symbols;
+
+        /**
+         * The frequency of every node. The leaves come first, followed by the merged nodes in the order they are created.
+         * The last node is the root of the tree.
+         */
+        final long[] frequencies;
+
+        /**
+         * The indices of the left and right child of every merged node.
+         * The children of node i are stored at 2 * (i - leafCount) and 2 * (i - leafCount) + 1.
+         */
+        final int[] children;
+
+        MergedNodes(long[] byteFrequencies) {
+            var count = 0;
+            for (final var frequency : byteFrequencies) {
+                if (frequency > 0) count++;
+            }
+            leafCount = count;
+
+            // pack every frequency with its byte into a long, so that they can be sorted together without boxing
+            final var packed = new long[leafCount];
+            var i = 0;
+            for (var b = 0; b < byteFrequencies.length; b++) {
+                if (byteFrequencies[b] > 0) {
+                    packed[i++] = (byteFrequencies[b] << 8) | b;
+                }
+            }
+            Arrays.sort(packed);
+
+            symbols = new int[leafCount];
+            frequencies = new long[Math.max(2 * leafCount - 1, 0)];
+            children = new int[Math.max(2 * (leafCount - 1), 0)];
+
+            for (i = 0; i < leafCount; i++) {
+                symbols[i] = (int) (packed[i] & 0xFF);
+                frequencies[i] = packed[i] >>> 8;
+            }
+
+            var leafHead = 0;
+            var mergedHead = leafCount;
+            var mergedTail = leafCount;
+
+            while (mergedTail < frequencies.length) {
+                for (var j = 0; j < 2; j++) {
+                    final int smallest;
+                    if (leafHead < leafCount && (mergedHead == mergedTail || frequencies[leafHead] <= frequencies[mergedHead])) {
+                        smallest = leafHead++;
+                    } else {
+                        smallest = mergedHead++;
+                    }
+                    children[2 * (mergedTail - leafCount) + j] = smallest;
+                    frequencies[mergedTail] += frequencies[smallest];
+                }
+                mergedTail++;
+            }
+        }
+    }
+
     /**
      * Defines a value stored in a Huffman coding binary tree.
      */
@@ -102,19 +638,19 @@ public class HuffmanTree extends BinaryTree<HuffmanTree.HuffmanNode> {
          * If this node stores a character, frequency will be the frequency of the character.
          * Otherwise, it is the total frequency of the children of this node.
          */
-        private final int frequency;
+        private final long frequency;
 
         public HuffmanNode() {
             this(null, null, 0);
         }
 
-        public HuffmanNode(int b, int frequency) {
+        public HuffmanNode(int b, long frequency) {
             super();
             this.b = b;
             this.frequency = frequency;
         }
 
-        public HuffmanNode(HuffmanNode leftNode, HuffmanNode rightNode, int frequency) {
+        public HuffmanNode(HuffmanNode leftNode, HuffmanNode rightNode, long frequency) {
             super(leftNode, rightNode);
             this.b = null;
             this.frequency = frequency;
@@ -3,7 +3,10 @@ package kenneth.coursework.compression;
 import kenneth.coursework.exceptions.IncorrectFormatException;
 
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * Serialize/deserialize huffman trees.
@@ -26,8 +29,19 @@ public class HuffmanTreeSerializer {
         }
     }
 
+    // marks a run of bytes that are not in the tree in serialized code lengths
+    private static final int ZERO_RUN_FLAG = 0x80;
+    private static final int ZERO_RUN_MAX = 128;
+
+    // a tree of every byte has 511 nodes, each of which takes at most 3 shorts, so no valid tree is larger than this
+    private static final int MAX_SERIALIZED_TREE_SIZE = 1 << 12;
+
+    // the number of nodes in a tree of every byte
+    private static final int MAX_TREE_NODES = 2 * HuffmanTree.SYMBOL_COUNT - 1;
+
     /**
-     * Obtains the serialized {@link HuffmanTree} available in the given stream.
+     * Obtains the {@link HuffmanTree} stored in the header of a compressed file available in the given stream.
+     * Both the legacy serialized tree and canonical code lengths are supported.
      *
      * @param stream The stream that contains the {@link HuffmanTree}
      * @return The deserialized {@link HuffmanTree}
@@ -36,39 +50,346 @@ public class HuffmanTreeSerializer {
      *                                  or when the tree is not available.
      */
     public static HuffmanTree deserializeFromStream(DataInputStream stream) throws IOException, IncorrectFormatException {
-        var size = stream.readInt();
-
-        HuffmanTree.HuffmanNode root = null;
-        HuffmanTree.HuffmanNode currentNode = null;
-
-        try {
-            while (size > 0) {
-                short s = stream.readShort();
-                size--;
-
-                if (s == Code.UP.val) {
-                    currentNode = (HuffmanTree.HuffmanNode) currentNode.getParent();
-                } else if (s == Code.LEFT.val) {
-                    final var newNode = new HuffmanTree.HuffmanNode();
-                    currentNode.setLeftNode(newNode);
-                    currentNode = newNode;
-                } else if (s == Code.RIGHT.val) {
-                    final var newNode = new HuffmanTree.HuffmanNode();
-                    currentNode.setRightNode(newNode);
-                    currentNode = newNode;
-                } else if (s == Code.ROOT.val) {
-                    root = new HuffmanTree.HuffmanNode();
-                    currentNode = root;
-                } else if (s >= 0) {
-                    currentNode.setByte(s);
-                } else {
+        final var version = HuffmanCompressor.FormatVersion.fromByte(stream.readUnsignedByte());
+
+        switch (version) {
+            case LEGACY:
+                return deserializeTree(readSerializedTree(stream, readLegacyTreeSize(stream)));
+            case CANONICAL:
+                return HuffmanTree.fromCodeLengths(deserializeCodeLengths(stream));
+            case BLOCKS:
+                return HuffmanTree.fromCodeLengths(new BlockReader(stream).getCodeLengths());
+            default:
+                throw new IncorrectFormatException();
+        }
+    }
+
+    /**
+     * Obtains the codes stored in the header of a compressed file available in the given stream, along with the
+     * tables built from them, through the {@link HuffmanTableCache#getShared() shared cache}.
+     * Order-1 context codes are merged into order-0 codes, as described in {@link ContextCodes#toOrder0Codes()}.
+     *
+     * @param stream The stream that contains the compressed file.
+     * @return The codes in the header. Shared with every other file whose header has the same codes.
+     * @throws IncorrectFormatException Thrown when the codes are not serialized in a correct format.
+     */
+    static HuffmanCodes readCodes(DataInputStream stream) throws IOException, IncorrectFormatException {
+        final var cache = HuffmanTableCache.getShared();
+
+        switch (HuffmanCompressor.FormatVersion.fromByte(stream.readUnsignedByte())) {
+            case LEGACY:
+                return cache.readLegacyTree(stream, readLegacyTreeSize(stream));
+            case CANONICAL:
+                return cache.readCodeLengths(stream);
+            case BLOCKS:
+                return new BlockReader(stream).getSourceCodes();
+            default:
+                throw new IncorrectFormatException();
+        }
+    }
+
+    /**
+     * Reads the size of a legacy serialized tree, after the first byte of the file has been read as the version.
+     * <p>
+     * Legacy files do not have a version byte, and start with the size of the serialized tree as an int instead.
+     * A serialized tree never has more than a few thousand elements, so the first byte of the size is always 0,
+     * which is read as {@link HuffmanCompressor.FormatVersion#LEGACY}.
+     *
+     * @param stream The stream that contains the rest of the size.
+     * @return The number of shorts in the serialized tree.
+     */
+    static int readLegacyTreeSize(DataInputStream stream) throws IOException {
+        return (stream.readUnsignedByte() << 16) | stream.readUnsignedShort();
+    }
+
+    /**
+     * Reads the bytes of a legacy serialized tree without deserializing it, so that they can be looked up in a
+     * {@link HuffmanTableCache}. The size is checked before anything is allocated, and the bytes are only validated
+     * when they are deserialized by {@link #deserializeTree(byte[])}.
+     *
+     * @param stream The stream that contains the tree, right after its size.
+     * @param size   The number of shorts in the serialized tree.
+     * @return The serialized tree.
+     * @throws IncorrectFormatException When the size is larger than any serialized tree can be.
+     */
+    static byte[] readSerializedTree(DataInputStream stream, int size) throws IOException, IncorrectFormatException {
+        if (size < 0 || size > MAX_SERIALIZED_TREE_SIZE) {
+            throw new IncorrectFormatException();
+        }
+
+        final var bytes = new byte[size * Short.BYTES];
+        stream.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads the bytes of serialized code lengths without deserializing them, so that they can be looked up in a
+     * {@link HuffmanTableCache}. The bytes are only validated when they are deserialized.
+     *
+     * @param stream The stream that contains the code lengths.
+     * @return The serialized code lengths.
+     * @see #serializeCodeLengths(int[], DataOutputStream)
+     */
+    static byte[] readSerializedCodeLengths(DataInputStream stream) throws IOException {
+        final var bytes = new byte[HuffmanTree.SYMBOL_COUNT];
+        var size = 0;
+
+        // every byte describes at least one symbol, so there are never more bytes than symbols
+        var b = 0;
+        while (b < HuffmanTree.SYMBOL_COUNT) {
+            final var value = stream.readUnsignedByte();
+            bytes[size++] = (byte) value;
+            b += (value & ZERO_RUN_FLAG) != 0 ? (value & ~ZERO_RUN_FLAG) + 1 : 1;
+        }
+
+        return Arrays.copyOf(bytes, size);
+    }
+
+    /**
+     * Serializes the given tree in the legacy format, node by node, into the bytes of its shorts. The tree is walked
+     * with an explicit stack instead of recursively, and written into a single buffer, so no node is boxed and no
+     * stack frame is used per level of the tree.
+     *
+     * @param tree The tree to be serialized.
+     * @return The serialized tree, which has half as many shorts as bytes. Empty if the tree has no root.
+     * @throws IllegalArgumentException When the tree is larger than any huffman tree of bytes can be.
+     */
+    static byte[] serializeTree(HuffmanTree tree) {
+        final var root = tree.getRoot();
+        if (root == null) return new byte[0];
+
+        final var buffer = ByteBuffer.allocate(MAX_SERIALIZED_TREE_SIZE * Short.BYTES);
+
+        // the nodes that are still to be visited, with their level and their position packed into an int.
+        // a pre-order walk holds at most one pending node per level, plus the node that is visited next.
+        final var pendingNodes = new HuffmanTree.HuffmanNode[MAX_TREE_NODES];
+        final var pendingPlaces = new int[MAX_TREE_NODES];
+        var pendingCount = 1;
+        pendingNodes[0] = root;
+        pendingPlaces[0] = Code.ROOT.val & 0xFFFF;
+
+        var previousLevel = -1;
+        while (pendingCount > 0) {
+            pendingCount--;
+            final var node = pendingNodes[pendingCount];
+            final var level = pendingPlaces[pendingCount] >> 16;
+            final var upCount = level <= previousLevel ? previousLevel - level + 1 : 0;
+
+            // the ups, the direction and the byte
+            if (buffer.remaining() < (upCount + 2) * Short.BYTES || pendingCount + 2 > MAX_TREE_NODES) {
+                throw new IllegalArgumentException("The tree is too large to be serialized.");
+            }
+
+            for (var i = 0; i < upCount; i++) {
+                buffer.putShort(Code.UP.val);
+            }
+            buffer.putShort((short) pendingPlaces[pendingCount]);
+
+            final var b = node.getByte();
+            if (b != null) {
+                buffer.putShort((short) (int) b);
+            }
+            previousLevel = level;
+
+            // the right child is pushed first, so that the left child is visited first
+            final var right = (HuffmanTree.HuffmanNode) node.getRightNode();
+            if (right != null) {
+                pendingNodes[pendingCount] = right;
+                pendingPlaces[pendingCount++] = ((level + 1) << 16) | (Code.RIGHT.val & 0xFFFF);
+            }
+
+            final var left = (HuffmanTree.HuffmanNode) node.getLeftNode();
+            if (left != null) {
+                pendingNodes[pendingCount] = left;
+                pendingPlaces[pendingCount++] = ((level + 1) << 16) | (Code.LEFT.val & 0xFFFF);
+            }
+        }
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Deserializes a tree serialized in the legacy format from the bytes of its shorts.
+     * <p>
+     * The shorts are parsed into primitive arrays first, and the whole tree is validated before any of its nodes is
+     * created: it starts with the root, never goes up past the root, never replaces a child or gives a leaf children,
+     * stores every byte at most once, and stores a byte in every leaf. Every node takes at least one short, so the
+     * arrays are never larger than the serialized tree, which is limited in size.
+     *
+     * @param serializedTree The serialized tree, as read by {@link #readSerializedTree(DataInputStream, int)}.
+     * @return The deserialized {@link HuffmanTree}. Its root is null if the serialized tree is empty.
+     * @throws IncorrectFormatException Thrown when the tree is not serialized in a correct format.
+     */
+    static HuffmanTree deserializeTree(byte[] serializedTree) throws IncorrectFormatException {
+        if (serializedTree.length % Short.BYTES != 0 || serializedTree.length > MAX_SERIALIZED_TREE_SIZE * Short.BYTES) {
+            throw new IncorrectFormatException();
+        }
+
+        final var size = serializedTree.length / Short.BYTES;
+        if (size == 0) return new HuffmanTree((HuffmanTree.HuffmanNode) null);
+
+        final var shorts = ByteBuffer.wrap(serializedTree).asShortBuffer();
+        if (shorts.get(0) != Code.ROOT.val) {
+            throw new IncorrectFormatException();
+        }
+
+        // node 0 is the root, which is never a child, so a child of 0 means there is none
+        final var parents = new int[size];
+        final var lefts = new int[size];
+        final var rights = new int[size];
+        final var symbols = new int[size];
+        final var isSymbolUsed = new boolean[HuffmanTree.SYMBOL_COUNT];
+        Arrays.fill(symbols, -1);
+        parents[0] = -1;
+
+        var nodeCount = 1;
+        var current = 0;
+        for (var i = 1; i < size; i++) {
+            final var s = shorts.get(i);
+
+            if (s == Code.UP.val) {
+                current = parents[current];
+                if (current < 0) {
+                    throw new IncorrectFormatException();
+                }
+            } else if (s == Code.LEFT.val || s == Code.RIGHT.val) {
+                final var children = s == Code.LEFT.val ? lefts : rights;
+                if (children[current] != 0 || symbols[current] >= 0) {
                     throw new IncorrectFormatException();
                 }
+
+                parents[nodeCount] = current;
+                children[current] = nodeCount;
+                current = nodeCount++;
+            } else if (s >= 0 && s < HuffmanTree.SYMBOL_COUNT) {
+                if (isSymbolUsed[s] || symbols[current] >= 0 || lefts[current] != 0 || rights[current] != 0) {
+                    throw new IncorrectFormatException();
+                }
+
+                symbols[current] = s;
+                isSymbolUsed[s] = true;
+            } else {
+                throw new IncorrectFormatException();
+            }
+        }
+
+        // a leaf without a byte could never be decoded, and the root cannot be a leaf, since codes are never empty
+        for (var node = 0; node < nodeCount; node++) {
+            if (lefts[node] == 0 && rights[node] == 0 && (symbols[node] < 0 || node == 0)) {
+                throw new IncorrectFormatException();
+            }
+        }
+
+        // children are always numbered after their parents, so the nodes are created from the last one
+        final var nodes = new HuffmanTree.HuffmanNode[nodeCount];
+        for (var node = nodeCount - 1; node >= 0; node--) {
+            nodes[node] = symbols[node] >= 0
+                    ? new HuffmanTree.HuffmanNode(symbols[node], 0)
+                    : new HuffmanTree.HuffmanNode(lefts[node] != 0 ? nodes[lefts[node]] : null, rights[node] != 0 ? nodes[rights[node]] : null, 0);
+        }
+
+        return new HuffmanTree(nodes[0]);
+    }
+
+    /**
+     * Writes the code lengths of a canonical huffman tree into the given stream.
+     * <p>
+     * Every non-zero length is written as a single byte. Since a length never exceeds
+     * {@link HuffmanTree#MAX_CODE_LENGTH}, the highest bit of the byte is free to mark a run of bytes
+     * that are not in the tree, whose length - 1 is stored in the lower 7 bits.
+     * This keeps the header at a few bytes when only a small number of distinct bytes are used,
+     * and never more than {@link HuffmanTree#SYMBOL_COUNT} bytes.
+     *
+     * @param codeLengths The length of the code of every byte.
+     * @param stream      The stream to write to.
+     * @throws IOException Thrown when there is an error writing to the stream
+     */
+    static void serializeCodeLengths(int[] codeLengths, DataOutputStream stream) throws IOException {
+        final var bytes = new byte[HuffmanTree.SYMBOL_COUNT];
+        var size = 0;
+
+        var b = 0;
+        while (b < HuffmanTree.SYMBOL_COUNT) {
+            if (codeLengths[b] != 0) {
+                bytes[size++] = (byte) codeLengths[b++];
+                continue;
             }
-        } catch (NullPointerException ex) {
+
+            var runLength = 0;
+            while (b < HuffmanTree.SYMBOL_COUNT && codeLengths[b] == 0 && runLength < ZERO_RUN_MAX) {
+                runLength++;
+                b++;
+            }
+            bytes[size++] = (byte) (ZERO_RUN_FLAG | (runLength - 1));
+        }
+
+        stream.write(bytes, 0, size);
+    }
+
+    /**
+     * Computes the number of bytes the given code lengths take when they are serialized, without serializing them.
+     *
+     * @param codeLengths The length of the code of every byte.
+     * @return The number of bytes.
+     * @see #serializeCodeLengths(int[], DataOutputStream)
+     */
+    static int serializedCodeLengthsSize(int[] codeLengths) {
+        var size = 0;
+
+        var b = 0;
+        while (b < HuffmanTree.SYMBOL_COUNT) {
+            size++;
+            if (codeLengths[b] != 0) {
+                b++;
+                continue;
+            }
+
+            var runLength = 0;
+            while (b < HuffmanTree.SYMBOL_COUNT && codeLengths[b] == 0 && runLength < ZERO_RUN_MAX) {
+                runLength++;
+                b++;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Reads the code lengths of a canonical huffman tree from the given stream.
+     *
+     * @param stream The stream that contains the code lengths.
+     * @return The length of the code of every byte.
+     * @throws IOException              Thrown when there is an error reading the stream
+     * @throws IncorrectFormatException Thrown when the code lengths do not describe a valid huffman tree.
+     * @see #serializeCodeLengths(int[], DataOutputStream)
+     */
+    static int[] deserializeCodeLengths(DataInputStream stream) throws IOException, IncorrectFormatException {
+        final var codeLengths = new int[HuffmanTree.SYMBOL_COUNT];
+        // the sum of 2^-length for every code, scaled by 2^MAX_CODE_LENGTH.
+        // it can never exceed 1 in a valid tree, otherwise some codes would share the same prefix.
+        var kraftSum = 0L;
+
+        var b = 0;
+        while (b < HuffmanTree.SYMBOL_COUNT) {
+            final var value = stream.readUnsignedByte();
+
+            if ((value & ZERO_RUN_FLAG) != 0) {
+                b += (value & ~ZERO_RUN_FLAG) + 1;
+                continue;
+            }
+
+            if (value == 0 || value > HuffmanTree.MAX_CODE_LENGTH) {
+                throw new IncorrectFormatException();
+            }
+
+            kraftSum += 1L << (HuffmanTree.MAX_CODE_LENGTH - value);
+            codeLengths[b++] = value;
+        }
+
+        if (b != HuffmanTree.SYMBOL_COUNT || kraftSum > 1L << HuffmanTree.MAX_CODE_LENGTH) {
             throw new IncorrectFormatException();
         }
 
-        return new HuffmanTree(root);
+        return codeLengths;
     }
 }
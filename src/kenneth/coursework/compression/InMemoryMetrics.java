@@ -0,0 +1,190 @@
+package kenneth.coursework.compression;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the totals of every measurement in memory, so that they can be read at any time, such as by a health check or
+ * at the end of a batch. Every total is kept in a {@link LongAdder}, so operations on different threads do not
+ * contend with each other.
+ */
+public class InMemoryMetrics implements CompressionMetrics {
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Progress.Phase[] PHASES = Progress.Phase.values();
+
+    private final LongAdder[] operationCounts = adders(OPERATIONS.length);
+    private final LongAdder[] rawBytes = adders(OPERATIONS.length);
+    private final LongAdder[] compressedBytes = adders(OPERATIONS.length);
+    private final LongAdder[] operationNanos = adders(OPERATIONS.length);
+    private final LongAdder[] phaseNanos = adders(PHASES.length);
+    private final LongAdder escapedBytes = new LongAdder();
+
+    // the number of bytes given a code of every length, with index 0 unused
+    private final LongAdder[] codeLengthCounts = adders(HuffmanTree.MAX_CODE_LENGTH + 1);
+
+    private static LongAdder[] adders(int count) {
+        final var adders = new LongAdder[count];
+        for (var i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public void recordPhase(Progress.Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void recordOperation(Operation operation, long rawBytes, long compressedBytes, long nanos) {
+        operationCounts[operation.ordinal()].increment();
+        this.rawBytes[operation.ordinal()].add(rawBytes);
+        this.compressedBytes[operation.ordinal()].add(compressedBytes);
+        operationNanos[operation.ordinal()].add(nanos);
+    }
+
+    @Override
+    public void recordEscapedBytes(long count) {
+        escapedBytes.add(count);
+    }
+
+    @Override
+    public void recordCodeLengths(int[] codeLengths) {
+        for (final var length : codeLengths) {
+            if (length > 0) {
+                codeLengthCounts[length].increment();
+            }
+        }
+    }
+
+    /**
+     * @return The number of operations of the given kind that completed successfully.
+     */
+    public long getOperationCount(Operation operation) {
+        return operationCounts[operation.ordinal()].sum();
+    }
+
+    /**
+     * @return The total number of bytes of original data in the operations of the given kind.
+     */
+    public long getRawBytes(Operation operation) {
+        return rawBytes[operation.ordinal()].sum();
+    }
+
+    /**
+     * @return The total number of bytes of compressed data in the operations of the given kind.
+     */
+    public long getCompressedBytes(Operation operation) {
+        return compressedBytes[operation.ordinal()].sum();
+    }
+
+    /**
+     * @return The total time taken by the operations of the given kind.
+     */
+    public long getOperationNanos(Operation operation) {
+        return operationNanos[operation.ordinal()].sum();
+    }
+
+    /**
+     * @return The total time spent in the given phase by every operation.
+     */
+    public long getPhaseNanos(Progress.Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    /**
+     * @return The number of files and streams compressed successfully.
+     */
+    public long getCompressionCount() {
+        return getOperationCount(Operation.COMPRESSION);
+    }
+
+    /**
+     * @return The number of files decompressed successfully.
+     */
+    public long getDecompressionCount() {
+        return getOperationCount(Operation.DECOMPRESSION);
+    }
+
+    /**
+     * @return The total size of the original data that has been compressed.
+     */
+    public long getCompressionRawBytes() {
+        return getRawBytes(Operation.COMPRESSION);
+    }
+
+    /**
+     * @return The total size of the output of every compression.
+     */
+    public long getCompressionCompressedBytes() {
+        return getCompressedBytes(Operation.COMPRESSION);
+    }
+
+    /**
+     * @return The total size of the output of every decompression.
+     */
+    public long getDecompressionRawBytes() {
+        return getRawBytes(Operation.DECOMPRESSION);
+    }
+
+    /**
+     * @return The total size of the compressed files that have been decompressed.
+     */
+    public long getDecompressionCompressedBytes() {
+        return getCompressedBytes(Operation.DECOMPRESSION);
+    }
+
+    /**
+     * @return The total time taken by every compression.
+     */
+    public long getCompressionNanos() {
+        return getOperationNanos(Operation.COMPRESSION);
+    }
+
+    /**
+     * @return The total time taken by every decompression.
+     */
+    public long getDecompressionNanos() {
+        return getOperationNanos(Operation.DECOMPRESSION);
+    }
+
+    /**
+     * @return The size of every compressed file as a fraction of the size of its original, over every compression.
+     * 0 if nothing has been compressed yet.
+     */
+    public double getCompressionRatio() {
+        final var raw = getCompressionRawBytes();
+        return raw > 0 ? (double) getCompressionCompressedBytes() / raw : 0;
+    }
+
+    /**
+     * @return The total time spent in every phase, by the name of the phase.
+     */
+    public Map<String, Long> getPhaseNanos() {
+        final var nanos = new LinkedHashMap<String, Long>();
+        for (final var phase : PHASES) {
+            nanos.put(phase.name(), getPhaseNanos(phase));
+        }
+        return nanos;
+    }
+
+    /**
+     * @return The number of bytes that had no code, and were encoded with escape codes.
+     */
+    public long getEscapedBytes() {
+        return escapedBytes.sum();
+    }
+
+    /**
+     * @return The number of bytes given a code of every length, over every recorded set of codes. The count of codes
+     * of length n is at index n, and index 0 is always 0.
+     */
+    public long[] getCodeLengthHistogram() {
+        final var histogram = new long[codeLengthCounts.length];
+        for (var i = 1; i < histogram.length; i++) {
+            histogram[i] = codeLengthCounts[i].sum();
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,44 @@
+package kenneth.coursework.compression;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Keeps the totals of every measurement in memory like {@link InMemoryMetrics}, and exports them as the attributes of
+ * an MXBean in the platform MBean server, where they can be read by JConsole or any JMX exporter.
+ */
+public class JmxMetrics extends InMemoryMetrics implements CompressionMetricsMXBean, AutoCloseable {
+    /**
+     * The name the metrics are registered under by default.
+     */
+    public static final String DEFAULT_OBJECT_NAME = "kenneth.coursework.compression:type=CompressionMetrics";
+
+    private final ObjectName objectName;
+
+    /**
+     * Registers the metrics under {@link #DEFAULT_OBJECT_NAME}.
+     *
+     * @throws JMException When the metrics cannot be registered, such as when the name is already in use.
+     */
+    public JmxMetrics() throws JMException {
+        this(DEFAULT_OBJECT_NAME);
+    }
+
+    /**
+     * @param objectName The name the metrics are registered under, which must be unique in the process.
+     * @throws JMException When the name is invalid or already in use.
+     */
+    public JmxMetrics(String objectName) throws JMException {
+        this.objectName = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+    }
+
+    /**
+     * Removes the metrics from the MBean server. The totals can still be read afterwards.
+     */
+    @Override
+    public void close() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+}
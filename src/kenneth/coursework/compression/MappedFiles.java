@@ -0,0 +1,125 @@
+package kenneth.coursework.compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Utilities to access files through memory-mapped windows.
+ * <p>
+ * Mapping a file lets the encoders and decoders work on the pages of the file directly, instead of copying them
+ * through a stack of streams. Large files are mapped in windows of {@link #WINDOW_SIZE}, since a single mapping
+ * cannot exceed 2 GB.
+ * <p>
+ * Mapping a region takes several system calls and page faults, which cost more than simply reading a small region.
+ * Regions smaller than {@link #MIN_MAPPED_SIZE} are therefore read into and written from heap buffers instead,
+ * which matters when many small files are compressed.
+ */
+class MappedFiles {
+    /**
+     * The maximum number of bytes mapped at once.
+     */
+    static final int WINDOW_SIZE = 1 << 26;
+
+    /**
+     * The minimum number of bytes in a region for it to be mapped.
+     */
+    static final int MIN_MAPPED_SIZE = 1 << 16;
+
+    /**
+     * Called with every window of a mapped region.
+     */
+    interface WindowConsumer {
+        void accept(ByteBuffer window) throws IOException;
+    }
+
+    /**
+     * Maps the given region of the file for reading, one window at a time.
+     *
+     * @param channel  The file to be mapped.
+     * @param position The offset of the region in the file.
+     * @param length   The number of bytes in the region.
+     * @param consumer Called with every window of the region, in order.
+     */
+    static void forEachWindow(FileChannel channel, long position, long length, WindowConsumer consumer) throws IOException {
+        final var end = position + length;
+        while (position < end) {
+            final var size = Math.min(WINDOW_SIZE, end - position);
+            consumer.accept(map(channel, position, size));
+            position += size;
+        }
+    }
+
+    /**
+     * Creates a source of a {@link BitReader} that maps the given region of the file for reading,
+     * one window at a time.
+     *
+     * @param channel  The file to be mapped.
+     * @param position The offset of the region in the file.
+     * @param length   The number of bytes in the region.
+     * @return The source of the bit stream in the region.
+     */
+    static BitReader.Source windows(FileChannel channel, long position, long length) {
+        final var end = position + length;
+        final var nextPosition = new long[]{position};
+
+        return () -> {
+            if (nextPosition[0] >= end) return null;
+
+            final var size = Math.min(WINDOW_SIZE, end - nextPosition[0]);
+            final var window = map(channel, nextPosition[0], size);
+            nextPosition[0] += size;
+
+            return window;
+        };
+    }
+
+    /**
+     * Maps the given region of the file for reading, or reads it into a heap buffer if it is small.
+     *
+     * @param channel  The file to be read.
+     * @param position The offset of the region in the file.
+     * @param length   The number of bytes in the region. At most {@link #WINDOW_SIZE}.
+     * @return The bytes of the region.
+     */
+    static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (length < MIN_MAPPED_SIZE) {
+            return BlockIndex.readFully(channel, position, (int) length);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * Obtains a buffer that the given region of the file is written into. Large regions are mapped, so that the bytes
+     * go straight into the file. Small regions are collected in a heap buffer, which has to be passed to
+     * {@link #write(FileChannel, long, ByteBuffer)} once it is filled.
+     *
+     * @param channel  The file to be written, opened for both reading and writing.
+     * @param position The offset of the region in the file.
+     * @param length   The number of bytes in the region.
+     * @return The buffer of the region, whose bytes are written with absolute puts.
+     */
+    static ByteBuffer mapForWriting(FileChannel channel, long position, int length) throws IOException {
+        if (length < MIN_MAPPED_SIZE) {
+            return ByteBuffer.allocate(length);
+        }
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+    }
+
+    /**
+     * Writes a filled buffer obtained from {@link #mapForWriting(FileChannel, long, int)} into the file.
+     * Nothing needs to be written for mapped buffers.
+     *
+     * @param channel  The file to be written.
+     * @param position The offset of the region in the file.
+     * @param region   The filled buffer of the region.
+     */
+    static void write(FileChannel channel, long position, ByteBuffer region) throws IOException {
+        if (!region.hasArray()) return;
+
+        final var buffer = region.duplicate().clear();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package kenneth.coursework.compression;
+
+/**
+ * The progress of a compression or decompression at a point in time, as reported to a {@link ProgressListener}.
+ */
+public class Progress {
+    /**
+     * The minimum time between two reports of the same phase.
+     */
+    public static final long REPORT_INTERVAL_MILLIS = 100;
+
+    /**
+     * The steps an operation goes through. Not every operation goes through every phase: files compressed with a tree
+     * source, a dictionary or adaptive codes are not counted, and streams are encoded right away.
+     */
+    public enum Phase {
+        /**
+         * The input is read to count the frequency of every byte.
+         */
+        COUNTING,
+
+        /**
+         * The codes are built from the frequencies. The input is not read in this phase.
+         */
+        BUILDING_TREE,
+
+        /**
+         * The codes are written into the header of the output, or read from the header of the input and turned into
+         * decoding tables.
+         */
+        SERIALIZING,
+
+        /**
+         * The input is read and encoded into the output.
+         */
+        ENCODING,
+
+        /**
+         * The compressed input is read and decoded into the output.
+         */
+        DECODING,
+    }
+
+    private final Phase phase;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long phaseBytesRead;
+    private final long phaseTotalBytes;
+    private final long phaseNanos;
+    private final long elapsedNanos;
+
+    Progress(Phase phase, long bytesRead, long bytesWritten, long phaseBytesRead, long phaseTotalBytes, long phaseNanos, long elapsedNanos) {
+        this.phase = phase;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.phaseBytesRead = phaseBytesRead;
+        this.phaseTotalBytes = phaseTotalBytes;
+        this.phaseNanos = phaseNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The current phase of the operation.
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return The number of bytes read from the input since the operation started. Files that are counted before they
+     * are encoded are read twice, so this can be up to twice the size of the input.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The number of bytes written to the output since the operation started.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return The fraction of the input read in the current phase, between 0 and 1, or -1 if the size of the input is
+     * not known, as with streams, or if the phase does not read the input.
+     */
+    public double getPhaseProgress() {
+        if (phaseTotalBytes < 0) return -1;
+        if (phaseTotalBytes == 0) return 1;
+        return Math.min(1, (double) phaseBytesRead / phaseTotalBytes);
+    }
+
+    /**
+     * @return The number of bytes read from the input per second in the current phase. 0 at the start of a phase.
+     */
+    public double getThroughput() {
+        return phaseNanos > 0 ? phaseBytesRead * 1e9 / phaseNanos : 0;
+    }
+
+    /**
+     * @return The time since the operation started.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -0,0 +1,19 @@
+package kenneth.coursework.compression;
+
+/**
+ * Receives the progress of a compression or decompression while it runs.
+ * <p>
+ * The listener is called on the thread that does the work, which is not necessarily the thread that started the
+ * operation, and never by more than one thread at a time for the same operation. It is called when a phase starts, and
+ * then at most about every {@link Progress#REPORT_INTERVAL_MILLIS} milliseconds, so it may update a user interface
+ * directly, but it should return quickly since the operation waits for it.
+ *
+ * @see HuffmanCompressor#setProgressListener(ProgressListener)
+ * @see HuffmanDecompressor#setProgressListener(ProgressListener)
+ */
+public interface ProgressListener {
+    /**
+     * @param progress The progress of the operation so far.
+     */
+    void onProgress(Progress progress);
+}
@@ -0,0 +1,210 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.OperationCancelledException;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the bytes read and written by a single operation, reports them to its {@link ProgressListener},
+ * records the time of every phase in its {@link CompressionMetrics}, and checks its {@link CancellationToken} whenever
+ * the operation moves on.
+ * <p>
+ * Blocks may be counted on several threads at the same time, so every method is synchronized. They are called once
+ * per buffer or block rather than once per byte, which keeps the cost of the lock out of the inner loops.
+ */
+class ProgressTracker {
+    /**
+     * The maximum number of bytes processed between two checks of the token when a file is processed in windows,
+     * so that a cancelled operation stops soon even though windows are large.
+     */
+    static final int CHUNK_SIZE = 1 << 22;
+
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(Progress.REPORT_INTERVAL_MILLIS);
+
+    private final ProgressListener listener;
+    private final CancellationToken cancellationToken;
+    private final CompressionMetrics metrics;
+    private final CompressionMetrics.Operation operation;
+    private final long startTime = System.nanoTime();
+
+    private Progress.Phase phase = null;
+    private long phaseStartTime;
+    private long phaseTotalBytes = -1;
+    private long phaseBytesRead = 0;
+    private long bytesRead = 0;
+    private long bytesWritten = 0;
+    private long lastReportTime;
+
+    /**
+     * @param listener          The listener progress is reported to, or null if it is not reported.
+     * @param cancellationToken The token that cancels the operation, or null if it cannot be cancelled.
+     * @param metrics           The metrics the operation is recorded in, or null if it is not measured.
+     * @param operation         The kind of operation.
+     */
+    ProgressTracker(ProgressListener listener, CancellationToken cancellationToken, CompressionMetrics metrics, CompressionMetrics.Operation operation) {
+        this.listener = listener;
+        this.cancellationToken = cancellationToken;
+        this.metrics = metrics;
+        this.operation = operation;
+    }
+
+    /**
+     * Starts the given phase, and reports it right away.
+     *
+     * @param phase      The phase.
+     * @param totalBytes The number of bytes of the input read in this phase, or -1 if it is not known.
+     * @throws OperationCancelledException When the operation has been cancelled.
+     */
+    synchronized void startPhase(Progress.Phase phase, long totalBytes) throws OperationCancelledException {
+        checkCancelled();
+
+        final var now = System.nanoTime();
+        recordPhase(now);
+
+        this.phase = phase;
+        phaseStartTime = now;
+        phaseTotalBytes = totalBytes;
+        phaseBytesRead = 0;
+        report(phaseStartTime);
+    }
+
+    /**
+     * Records that the given number of bytes have been read from the input in the current phase, and reports the
+     * progress if it has not been reported for a while.
+     *
+     * @throws OperationCancelledException When the operation has been cancelled.
+     */
+    synchronized void addRead(long bytes) throws OperationCancelledException {
+        checkCancelled();
+
+        phaseBytesRead += bytes;
+        bytesRead += bytes;
+
+        final var now = System.nanoTime();
+        if (now - lastReportTime >= REPORT_INTERVAL_NANOS) {
+            report(now);
+        }
+    }
+
+    /**
+     * Records that the given number of bytes have been written to the output.
+     */
+    synchronized void addWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    /**
+     * @return The number of bytes read from the input since the operation started.
+     */
+    synchronized long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return The number of bytes written to the output since the operation started.
+     */
+    synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Ends the current phase and the operation, which completed successfully, reports the final progress and records
+     * the operation in the metrics.
+     *
+     * @param rawBytes        The number of bytes of the original, uncompressed data.
+     * @param compressedBytes The number of bytes of the compressed data, including its header.
+     */
+    synchronized void finish(long rawBytes, long compressedBytes) {
+        final var now = System.nanoTime();
+        recordPhase(now);
+        report(now);
+
+        if (metrics != null) {
+            metrics.recordOperation(operation, rawBytes, compressedBytes, now - startTime);
+        }
+    }
+
+    /**
+     * Records the codes a file or a block is compressed with.
+     */
+    void recordCodeLengths(int[] codeLengths) {
+        if (metrics != null) {
+            metrics.recordCodeLengths(codeLengths);
+        }
+    }
+
+    /**
+     * @return Whether the bytes that have no code in the tree they are encoded with should be counted, which takes
+     * another pass over them, so it is only done when they are recorded in the metrics.
+     */
+    boolean countsEscapedBytes() {
+        return metrics != null;
+    }
+
+    /**
+     * Records the bytes that had no code in an encoded file or block.
+     */
+    void addEscapedBytes(long count) {
+        if (metrics != null && count > 0) {
+            metrics.recordEscapedBytes(count);
+        }
+    }
+
+    /**
+     * @throws OperationCancelledException When the operation has been cancelled.
+     */
+    void checkCancelled() throws OperationCancelledException {
+        if (cancellationToken != null) {
+            cancellationToken.throwIfCancelled();
+        }
+    }
+
+    /**
+     * Calls the given consumer with the given window in chunks of at most {@link #CHUNK_SIZE}, and records every chunk
+     * as read once it has been consumed.
+     */
+    void forEachChunk(ByteBuffer window, MappedFiles.WindowConsumer consumer) throws IOException {
+        for (var position = window.position(); position < window.limit(); position += CHUNK_SIZE) {
+            final var length = Math.min(CHUNK_SIZE, window.limit() - position);
+            consumer.accept(window.slice(position, length));
+            addRead(length);
+        }
+    }
+
+    /**
+     * @param output The stream the output of the operation is written to.
+     * @return A stream that writes into the given stream, and records every byte written into it.
+     */
+    OutputStream countWritten(OutputStream output) {
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                addWritten(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                addWritten(len);
+            }
+        };
+    }
+
+    private void recordPhase(long now) {
+        if (metrics != null && phase != null) {
+            metrics.recordPhase(phase, now - phaseStartTime);
+        }
+    }
+
+    private void report(long now) {
+        lastReportTime = now;
+        if (listener == null) return;
+
+        listener.onProgress(new Progress(phase, bytesRead, bytesWritten, phaseBytesRead, phaseTotalBytes, now - phaseStartTime, now - startTime));
+    }
+}
@@ -0,0 +1,25 @@
+package kenneth.coursework.compression;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Utilities for the tasks that blocks are counted, encoded and decoded with in a {@link ForkJoinPool}.
+ */
+class Tasks {
+    /**
+     * Finds the exception a task failed with. A task submitted to a {@link ForkJoinPool} as a Callable has its checked
+     * exceptions wrapped in plain RuntimeExceptions, once when it fails and once more when its result is awaited on
+     * another thread, so those are removed to find the exception the task actually threw.
+     *
+     * @param ex The exception the result of the task was awaited with.
+     * @return The exception thrown by the task.
+     */
+    static Throwable getCause(ExecutionException ex) {
+        var cause = ex.getCause();
+        while (cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,30 @@
+package kenneth.coursework.exceptions;
+
+/**
+ * Thrown when the content decoded from a compressed file does not match the checksum stored along with it, which means
+ * that the file has been corrupted since it was written.
+ */
+public class ChecksumMismatchException extends IncorrectFormatException {
+    private static final long serialVersionUID = 1L;
+
+    private final long offset;
+
+    /**
+     * @param offset The offset in the original content of the block that does not match its checksum, or -1 if only
+     *               the checksum of the whole content does not match.
+     */
+    public ChecksumMismatchException(long offset) {
+        super(offset >= 0
+                ? "The block at offset " + offset + " of the original content does not match its checksum, so the given file is corrupted."
+                : "The original content does not match its checksum, so the given file is corrupted.");
+        this.offset = offset;
+    }
+
+    /**
+     * @return The offset in the original content of the block that does not match its checksum, or -1 if only the
+     * checksum of the whole content does not match.
+     */
+    public long getOffset() {
+        return offset;
+    }
+}
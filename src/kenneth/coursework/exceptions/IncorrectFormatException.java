@@ -4,4 +4,8 @@ public class IncorrectFormatException extends Exception {
     public IncorrectFormatException() {
         super("The given file does not have the correct format.");
     }
+
+    protected IncorrectFormatException(String message) {
+        super(message);
+    }
 }
@@ -0,0 +1,15 @@
+package kenneth.coursework.exceptions;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a compression or decompression is cancelled through its cancellation token. The partial output of a
+ * cancelled file is deleted before this is thrown.
+ */
+public class OperationCancelledException extends InterruptedIOException {
+    private static final long serialVersionUID = 1L;
+
+    public OperationCancelledException() {
+        super("The operation was cancelled.");
+    }
+}
@@ -0,0 +1,22 @@
+package kenneth.coursework.exceptions;
+
+/**
+ * Thrown when a compressed file refers to a dictionary that has not been loaded.
+ */
+public class UnknownDictionaryException extends IncorrectFormatException {
+    private static final long serialVersionUID = 1L;
+
+    private final int dictionaryId;
+
+    public UnknownDictionaryException(int dictionaryId) {
+        super(String.format("The given file is compressed with dictionary %08x, which has not been loaded.", dictionaryId));
+        this.dictionaryId = dictionaryId;
+    }
+
+    /**
+     * @return The ID of the dictionary the file refers to.
+     */
+    public int getDictionaryId() {
+        return dictionaryId;
+    }
+}
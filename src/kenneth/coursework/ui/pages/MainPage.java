@@ -10,9 +10,13 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
+import kenneth.coursework.compression.CancellationToken;
 import kenneth.coursework.compression.HuffmanCompressor;
 import kenneth.coursework.compression.HuffmanDecompressor;
+import kenneth.coursework.compression.Progress;
+import kenneth.coursework.compression.ProgressListener;
 import kenneth.coursework.exceptions.IncorrectFormatException;
+import kenneth.coursework.exceptions.OperationCancelledException;
 import kenneth.coursework.ui.components.Alerts;
 import kenneth.coursework.ui.components.FileInputField;
 import kenneth.coursework.ui.components.FormField;
@@ -44,8 +48,20 @@ public class MainPage extends VBox {
     private TextField outputFileNameBox;
     private LabeledCheckbox overwriteCheckbox;
     private Dialog progressDialog;
+    private Label progressLabel;
+    private ProgressBar progressBar;
     private ToggleGroup operationModeToggleGroup;
 
+    /**
+     * Cancels the operation in progress when the progress dialog is closed before it completes.
+     */
+    private CancellationToken cancellationToken;
+
+    /**
+     * Shows the progress reported by the compressor and decompressor, which report it from the thread of the task.
+     */
+    private final ProgressListener progressListener = progress -> Platform.runLater(() -> showProgress(progress));
+
     private final FileInputField.FileHandler inputFileHandler = file -> inputFile = file;
 
     private final FileInputField.FileHandler outputDirHandler = file -> outputDirectory = file;
@@ -142,8 +158,20 @@ public class MainPage extends VBox {
         final var isInputValid = validateInput();
         if (!isInputValid) return;
 
+        // the previous operation may still be stopping, so it keeps its own token
+        cancellationToken = new CancellationToken();
+        compressor.setCancellationToken(cancellationToken);
+        compressor.setProgressListener(progressListener);
+        decompressor.setCancellationToken(cancellationToken);
+        decompressor.setProgressListener(progressListener);
+
         new Thread(new CompressionTask()).start();
         showProgressDialog();
+
+        // the dialog is given a result when the task completes, so anything else means it was cancelled or closed
+        if (!Boolean.TRUE.equals(progressDialog.getResult())) {
+            cancellationToken.cancel();
+        }
     }
 
     private void showProgressDialog() {
@@ -152,13 +180,13 @@ public class MainPage extends VBox {
         progressDialog.initOwner(getScene().getWindow());
 
         final var container = new VBox();
-        final var loadingLabel = new Label("Performing operation...");
-        final var progressBar = new ProgressBar();
+        progressLabel = new Label("Performing operation...");
+        progressBar = new ProgressBar();
         progressBar.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
-        loadingLabel.setContentDisplay(ContentDisplay.BOTTOM);
+        progressLabel.setContentDisplay(ContentDisplay.BOTTOM);
         container.setFillWidth(true);
-        loadingLabel.setGraphic(progressBar);
-        container.getChildren().addAll(loadingLabel);
+        progressLabel.setGraphic(progressBar);
+        container.getChildren().addAll(progressLabel);
 
         progressDialog
                 .getDialogPane()
@@ -169,6 +197,32 @@ public class MainPage extends VBox {
         progressDialog.showAndWait();
     }
 
+    private void showProgress(Progress progress) {
+        // reports can still arrive after the dialog has been closed
+        if (progressDialog == null || !progressDialog.isShowing()) return;
+
+        final var fraction = progress.getPhaseProgress();
+        progressBar.setProgress(fraction >= 0 ? fraction : ProgressIndicator.INDETERMINATE_PROGRESS);
+
+        switch (progress.getPhase()) {
+            case COUNTING:
+                progressLabel.setText(String.format("Counting bytes... (%.1f MB/s)", progress.getThroughput() / 1e6));
+                break;
+            case BUILDING_TREE:
+                progressLabel.setText("Building tree...");
+                break;
+            case SERIALIZING:
+                progressLabel.setText("Processing header...");
+                break;
+            case ENCODING:
+                progressLabel.setText(String.format("Compressing... (%.1f MB/s)", progress.getThroughput() / 1e6));
+                break;
+            case DECODING:
+                progressLabel.setText(String.format("Decompressing... (%.1f MB/s)", progress.getThroughput() / 1e6));
+                break;
+        }
+    }
+
     private void hideProgressDialog() {
         progressDialog.setResult(true);
         progressDialog.close();
@@ -220,6 +274,8 @@ public class MainPage extends VBox {
                 }
 
                 Platform.runLater(MainPage.this::showSuccess);
+            } catch (OperationCancelledException ex) {
+                // the dialog has already been closed by the cancel button, and the partial output has been deleted
             } catch (IncorrectFormatException ex) {
                 Platform.runLater(MainPage.this::showInvalidFileError);
             } catch (FileAlreadyExistsException ex) {
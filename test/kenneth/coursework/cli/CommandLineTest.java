@@ -0,0 +1,135 @@
+package kenneth.coursework.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandLineTest {
+    private static final byte[] INPUT = ("The quick brown fox jumps over the lazy dog. ".repeat(200)).getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path dir;
+
+    private byte[] stdout;
+    private String stderr;
+
+    @Test
+    void returnsUsageErrorForInvalidArguments() {
+        assertEquals(CommandLine.EXIT_USAGE, run("unknown"));
+        assertEquals(CommandLine.EXIT_USAGE, run("compress", "--unknown"));
+        assertEquals(CommandLine.EXIT_USAGE, run("compress", "--block-size", "1G"));
+        assertTrue(stderr.contains("--help"));
+
+        assertEquals(CommandLine.EXIT_SUCCESS, run("--help"));
+        assertTrue(new String(stdout, StandardCharsets.US_ASCII).startsWith("Usage:"));
+    }
+
+    @Test
+    void roundTripsFilesIntoOutputDirectory() throws Exception {
+        final var file = write("input.txt", INPUT);
+        final var compressedDirectory = dir.resolve("compressed").toFile();
+        final var decompressedDirectory = dir.resolve("decompressed").toFile();
+
+        assertEquals(CommandLine.EXIT_SUCCESS, run("compress", "-q", "-o", compressedDirectory.getPath(), file.getPath()));
+        final var compressed = new File(compressedDirectory, "input.txt.huff");
+        assertTrue(compressed.exists());
+
+        assertEquals(CommandLine.EXIT_SUCCESS, run("decompress", "-q", "-o", decompressedDirectory.getPath(), compressed.getPath()));
+        assertArrayEquals(INPUT, Files.readAllBytes(new File(decompressedDirectory, "input.txt").toPath()));
+        assertEquals(CommandLine.EXIT_SUCCESS, run("test", "-q", compressed.getPath()));
+    }
+
+    @Test
+    void roundTripsThroughStandardStreams() throws Exception {
+        final var file = write("input.txt", INPUT);
+
+        assertEquals(CommandLine.EXIT_SUCCESS, run("compress", "-q", "--stdout", file.getPath()));
+        final var compressed = stdout;
+        assertFalse(new File(file.getPath() + ".huff").exists());
+
+        assertEquals(CommandLine.EXIT_SUCCESS, runWithInput(compressed, "decompress", "-q"));
+        assertArrayEquals(INPUT, stdout);
+
+        assertEquals(CommandLine.EXIT_SUCCESS, runWithInput(INPUT, "compress", "-q", "-"));
+        assertEquals(CommandLine.EXIT_SUCCESS, runWithInput(stdout, "decompress", "-q"));
+        assertArrayEquals(INPUT, stdout);
+    }
+
+    @Test
+    void refusesToOverwriteWithoutForce() throws Exception {
+        final var file = write("input.txt", INPUT);
+
+        assertEquals(CommandLine.EXIT_SUCCESS, run("compress", "-q", file.getPath()));
+        assertEquals(CommandLine.EXIT_FAILURE, run("compress", "-q", file.getPath()));
+        assertTrue(stderr.contains("already exists"));
+        assertEquals(CommandLine.EXIT_SUCCESS, run("compress", "-q", "--force", file.getPath()));
+    }
+
+    @Test
+    void failsForCorruptedFiles() throws Exception {
+        final var valid = write("valid.txt", INPUT);
+        final var corrupted = write("corrupted.txt.huff", new byte[]{(byte) 0x7F, 1, 2, 3});
+        assertEquals(CommandLine.EXIT_SUCCESS, run("compress", "-q", valid.getPath()));
+        assertTrue(valid.delete());
+
+        // the other files are still processed
+        assertEquals(CommandLine.EXIT_FAILURE, run("decompress", "-q", corrupted.getPath(), valid.getPath() + ".huff"));
+        assertTrue(stderr.contains("corrupted.txt.huff: not in the correct format"));
+        assertArrayEquals(INPUT, Files.readAllBytes(valid.toPath()));
+    }
+
+    @Test
+    void ignoresFilesWithoutExtensionOnDecompress() throws Exception {
+        final var file = write("input.txt", INPUT);
+        final var directory = dir.resolve("tree").toFile();
+        assertTrue(directory.mkdir());
+        Files.write(new File(directory, "other.txt").toPath(), INPUT);
+        assertEquals(CommandLine.EXIT_SUCCESS, run("compress", "-q", "-o", directory.getPath(), file.getPath()));
+
+        // a file given directly is reported, and files found in a directory are skipped silently
+        assertEquals(CommandLine.EXIT_FAILURE, run("decompress", "-q", file.getPath()));
+        assertTrue(stderr.contains("ignored"));
+        assertFalse(new File(file.getPath().replace(".txt", "")).exists());
+
+        assertEquals(CommandLine.EXIT_SUCCESS, run("decompress", "-q", "-r", "-o", dir.resolve("out").toString(), directory.getPath()));
+        assertEquals("", stderr);
+        assertArrayEquals(INPUT, Files.readAllBytes(dir.resolve("out").resolve("input.txt")));
+        assertFalse(Files.exists(dir.resolve("out").resolve("other")));
+    }
+
+    private File write(String name, byte[] bytes) throws IOException {
+        final var file = dir.resolve(name).toFile();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private int run(String... args) {
+        return runWithInput(new byte[0], args);
+    }
+
+    /**
+     * Runs the command line with the given standard input, and keeps its standard output and error.
+     */
+    private int runWithInput(byte[] input, String... args) {
+        final var out = new ByteArrayOutputStream();
+        final var err = new ByteArrayOutputStream();
+        final var exitCode = CommandLine.run(args, new ByteArrayInputStream(input), new PrintStream(out), new PrintStream(err));
+
+        stdout = out.toByteArray();
+        stderr = err.toString(StandardCharsets.UTF_8);
+        return exitCode;
+    }
+}
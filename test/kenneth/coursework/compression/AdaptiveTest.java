@@ -0,0 +1,60 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class AdaptiveTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsAdaptiveFiles() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseAdaptiveCodes(true);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+            }
+        }
+    }
+
+    @Test
+    void roundTripsAdaptiveStreams() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseAdaptiveCodes(true);
+
+        for (final var data : TestData.values()) {
+            final var input = data.generate(20_000);
+            final var output = new ByteArrayOutputStream();
+            compressor.compress(new ByteArrayInputStream(input), output, null);
+
+            RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+        }
+    }
+
+    @Test
+    void decodesFlushedBytesBeforeFinish() throws Exception {
+        final var input = TestData.TEXT.generate(20_000);
+        final var output = new ByteArrayOutputStream();
+        final var adaptiveOutput = new AdaptiveHuffmanOutputStream(output);
+        adaptiveOutput.write(input, 0, 10_000);
+        adaptiveOutput.flush();
+
+        // only the bytes written before the flush are available yet
+        try (final var huffmanInput = new HuffmanInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            assertArrayEquals(Arrays.copyOf(input, 10_000), huffmanInput.readNBytes(10_000));
+        }
+
+        adaptiveOutput.write(input, 10_000, input.length - 10_000);
+        adaptiveOutput.close();
+        RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+    }
+}
@@ -0,0 +1,212 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchProcessorTest {
+    private static final int FILE_COUNT = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compressesAndDecompressesFiles() throws Exception {
+        final var inputs = new ArrayList<byte[]>();
+        final var files = new ArrayList<File>();
+        for (var i = 0; i < FILE_COUNT; i++) {
+            inputs.add(TestData.values()[i % TestData.values().length].generate(10_000 * i, i));
+            files.add(RoundTrips.write(dir, inputs.get(i)));
+        }
+
+        try (final var batch = new BatchProcessor(2, 4)) {
+            final var compressed = new ArrayList<CompletableFuture<BatchProcessor.Result>>();
+            for (final var file : files) {
+                compressed.add(batch.compress(file, file, null, false));
+            }
+
+            var outputSize = 0L;
+            final var decompressed = new ArrayList<CompletableFuture<BatchProcessor.Result>>();
+            for (var i = 0; i < FILE_COUNT; i++) {
+                final var result = compressed.get(i).get();
+                assertEquals(files.get(i), result.getInputFile());
+                assertEquals(inputs.get(i).length, result.getInputSize());
+                assertEquals(result.getOutputFile().length(), result.getOutputSize());
+                outputSize += result.getOutputSize();
+
+                decompressed.add(batch.decompress(result.getOutputFile(), new File(files.get(i).getPath() + ".out"), false));
+            }
+
+            for (var i = 0; i < FILE_COUNT; i++) {
+                assertArrayEquals(inputs.get(i), Files.readAllBytes(decompressed.get(i).get().getOutputFile().toPath()));
+            }
+
+            final var statistics = batch.getStatistics();
+            final var inputSize = inputs.stream().mapToLong(input -> input.length).sum();
+            assertEquals(2 * FILE_COUNT, statistics.getSubmittedCount());
+            assertEquals(2 * FILE_COUNT, statistics.getCompletedCount());
+            assertEquals(0, statistics.getFailedCount());
+            assertEquals(0, statistics.getPendingCount());
+            assertEquals(inputSize + outputSize, statistics.getBytesRead());
+            assertEquals(outputSize + inputSize, statistics.getBytesWritten());
+            assertTrue(statistics.getBusyNanos() > 0);
+        }
+    }
+
+    @Test
+    void completesFailedFilesExceptionally() throws Exception {
+        final var file = RoundTrips.write(dir, TestData.TEXT.generate(1_000));
+
+        try (final var batch = new BatchProcessor(1, 1)) {
+            final var missing = batch.compress(new File(dir.toFile(), "missing"), new File(dir.toFile(), "missing"), null, false);
+            final var ex = assertThrows(ExecutionException.class, missing::get);
+            assertTrue(ex.getCause() instanceof IOException);
+
+            // a file that is not compressed cannot be decompressed, and the batch goes on after it
+            final var notCompressed = batch.decompress(file, new File(file.getPath() + ".out"), false);
+            assertThrows(ExecutionException.class, notCompressed::get);
+            batch.compress(file, file, null, false).get();
+
+            final var statistics = batch.getStatistics();
+            assertEquals(3, statistics.getSubmittedCount());
+            assertEquals(1, statistics.getCompletedCount());
+            assertEquals(2, statistics.getFailedCount());
+            assertEquals(file.length(), statistics.getBytesRead());
+        }
+    }
+
+    @Test
+    void blocksSubmissionWhilePendingFilesAreFull() throws Exception {
+        final var file = RoundTrips.write(dir, TestData.TEXT.generate(1_000));
+        final var release = new CountDownLatch(1);
+
+        try (final var batch = new BatchProcessor(1, 2)) {
+            batch.getCompressor().setProgressListener(progress -> awaitQuietly(release));
+
+            final var first = batch.compress(file, new File(file.getPath() + "1"), null, false);
+            final var second = batch.compress(file, new File(file.getPath() + "2"), null, false);
+
+            // the third file waits for one of the others to complete before it is submitted
+            final var third = new CompletableFuture<CompletableFuture<BatchProcessor.Result>>();
+            final var submitter = new Thread(() -> {
+                try {
+                    third.complete(batch.compress(file, new File(file.getPath() + "3"), null, false));
+                } catch (InterruptedException ex) {
+                    third.completeExceptionally(ex);
+                }
+            });
+            submitter.start();
+
+            submitter.join(200);
+            assertTrue(submitter.isAlive());
+            assertFalse(third.isDone());
+            assertEquals(2, batch.getStatistics().getPendingCount());
+
+            release.countDown();
+            submitter.join();
+            first.get();
+            second.get();
+            third.get().get();
+            assertEquals(3, batch.getStatistics().getCompletedCount());
+        }
+    }
+
+    @Test
+    void cancelsFilesThatHaveNotStartedWhenInterrupted() throws Exception {
+        final var file = RoundTrips.write(dir, TestData.TEXT.generate(1_000));
+        final var started = new CountDownLatch(1);
+        final var release = new CountDownLatch(1);
+
+        final var batch = new BatchProcessor(1, 4);
+        batch.getCompressor().setProgressListener(progress -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+
+        final var running = batch.compress(file, new File(file.getPath() + "1"), null, true);
+        final List<CompletableFuture<BatchProcessor.Result>> queued = List.of(
+                batch.compress(file, new File(file.getPath() + "2"), null, true),
+                batch.compress(file, new File(file.getPath() + "3"), null, true));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Thread.currentThread().interrupt();
+        batch.close();
+        assertTrue(Thread.interrupted());
+
+        for (final var future : queued) {
+            assertTrue(future.isCancelled());
+        }
+
+        // the running file is interrupted, and may or may not get to complete
+        release.countDown();
+        running.handle((result, ex) -> result).get();
+        final var statistics = batch.getStatistics();
+        assertEquals(3, statistics.getCompletedCount() + statistics.getFailedCount());
+        assertEquals(running.isCompletedExceptionally() ? 3 : 2, statistics.getFailedCount());
+        assertEquals(0, statistics.getPendingCount());
+    }
+
+    @Test
+    void processesDirectoryTrees() throws Exception {
+        final var root = dir.resolve("root");
+        final var nested = Files.createDirectories(root.resolve("a").resolve("b"));
+        final var inputs = new ArrayList<byte[]>();
+        final var files = new ArrayList<File>();
+        for (var i = 0; i < FILE_COUNT; i++) {
+            inputs.add(TestData.TEXT.generate(1_000 * (i + 1), i));
+            files.add(RoundTrips.write(i % 2 == 0 ? root : nested, inputs.get(i)));
+        }
+
+        try (final var batch = new BatchProcessor(2, 2)) {
+            final var compressed = batch.compressDirectory(root.toFile(), null, false);
+            assertEquals(FILE_COUNT, compressed.size());
+            for (final var future : compressed) {
+                future.get();
+            }
+
+            // files that are already compressed are skipped
+            final var recompressed = batch.compressDirectory(root.toFile(), null, true);
+            assertEquals(FILE_COUNT, recompressed.size());
+            for (final var future : recompressed) {
+                future.get();
+            }
+
+            for (final var file : files) {
+                Files.delete(file.toPath());
+            }
+            final var decompressed = batch.decompressDirectory(root.toFile(), false);
+            assertEquals(FILE_COUNT, decompressed.size());
+            for (final var future : decompressed) {
+                future.get();
+            }
+        }
+
+        for (var i = 0; i < FILE_COUNT; i++) {
+            assertArrayEquals(inputs.get(i), Files.readAllBytes(files.get(i).toPath()));
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
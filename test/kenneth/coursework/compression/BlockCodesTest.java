@@ -0,0 +1,76 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockCodesTest {
+    private static final int BLOCK_SIZE = 1 << 12;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsBlockCodes() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseBlockCodes(true);
+        compressor.setBlockSize(BLOCK_SIZE);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                final var input = data.generate(size);
+                RoundTrips.assertRoundTrip(compressor, input, dir);
+
+                final var output = new ByteArrayOutputStream();
+                compressor.compress(new ByteArrayInputStream(input), output, null);
+                RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+            }
+        }
+    }
+
+    @Test
+    void givesCodesToEveryKindOfContent() throws Exception {
+        final var input = mixedInput();
+        final var withSingleTree = new HuffmanCompressor();
+        withSingleTree.setBlockSize(BLOCK_SIZE);
+        final var singleTree = RoundTrips.assertRoundTrip(withSingleTree, input, dir);
+
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseBlockCodes(true);
+        compressor.setBlockSize(BLOCK_SIZE);
+        final var blockCodes = RoundTrips.assertRoundTrip(compressor, input, dir);
+
+        // every kind of content has codes of its own, which its other blocks reuse
+        final var info = CompressedFileInfo.read(blockCodes);
+        assertTrue(info.getBlockCodeCount() >= 3);
+        assertTrue(info.getBlockCodeCount() < info.getBlockCount());
+        assertTrue(blockCodes.length() < singleTree.length());
+    }
+
+    @Test
+    void compressesWithBlockCodesTreeSource() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseBlockCodes(true);
+        compressor.setBlockSize(BLOCK_SIZE);
+        final var treeSource = RoundTrips.assertRoundTrip(compressor, mixedInput(), dir);
+
+        RoundTrips.assertRoundTrip(new HuffmanCompressor(), TestData.TEXT.generate(50_000, 2), treeSource, dir);
+    }
+
+    /**
+     * @return Text, random bytes and skewed bytes one after another, several blocks of each.
+     */
+    private static byte[] mixedInput() {
+        final var input = new byte[3 * 8 * BLOCK_SIZE];
+        final var data = new TestData[]{TestData.TEXT, TestData.RANDOM, TestData.SKEWED};
+        for (var i = 0; i < data.length; i++) {
+            System.arraycopy(data[i].generate(8 * BLOCK_SIZE), 0, input, i * 8 * BLOCK_SIZE, 8 * BLOCK_SIZE);
+        }
+        return input;
+    }
+}
@@ -0,0 +1,116 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockFormatTest {
+    private static final int BLOCK_SIZE = 1 << 12;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsBlocks() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(BLOCK_SIZE);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+            }
+        }
+    }
+
+    @Test
+    void writesIndexForSeveralBlocks() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(BLOCK_SIZE);
+
+        final var single = CompressedFileInfo.read(RoundTrips.assertRoundTrip(compressor, TestData.TEXT.generate(BLOCK_SIZE), dir));
+        assertEquals(1, single.getBlockCount());
+        assertFalse(single.hasIndex());
+
+        final var several = CompressedFileInfo.read(RoundTrips.assertRoundTrip(compressor, TestData.TEXT.generate(10 * BLOCK_SIZE + 1), dir));
+        assertEquals(11, several.getBlockCount());
+        assertTrue(several.hasIndex());
+    }
+
+    @Test
+    void parallelCompressionMatchesSequential() throws Exception {
+        final var input = TestData.TEXT.generate(100_000);
+
+        final var sequentialCompressor = new HuffmanCompressor();
+        sequentialCompressor.setBlockSize(BLOCK_SIZE);
+        sequentialCompressor.setParallelism(1);
+        final var sequential = RoundTrips.assertRoundTrip(sequentialCompressor, input, dir);
+
+        final var parallelCompressor = new HuffmanCompressor();
+        parallelCompressor.setBlockSize(BLOCK_SIZE);
+        parallelCompressor.setParallelism(4);
+        final var parallel = RoundTrips.assertRoundTrip(parallelCompressor, input, dir);
+
+        assertArrayEquals(Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+    }
+
+    @Test
+    void decompressesManyBlocksInParallel() throws Exception {
+        final var input = TestData.TEXT.generate(100_000);
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(512);
+        compressor.setParallelism(1);
+        final var compressed = RoundTrips.assertRoundTrip(compressor, input, dir);
+
+        final var decompressor = new HuffmanDecompressor();
+        decompressor.setParallelism(8);
+        final var decompressed = dir.resolve("decompressed").toFile();
+        decompressor.decompress(compressed, decompressed, false);
+
+        assertArrayEquals(input, Files.readAllBytes(decompressed.toPath()));
+    }
+
+    @Test
+    void rejectsBlocksWhoseBitLengthCanOverflow() {
+        // the bit length of a block is written as an unsigned 32-bit int
+        assertTrue((long) HuffmanCompressor.MAX_BLOCK_SIZE * HuffmanTree.MAX_CODE_LENGTH < 1L << Integer.SIZE);
+
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(HuffmanCompressor.MAX_BLOCK_SIZE);
+        assertThrows(IllegalArgumentException.class, () -> compressor.setBlockSize(HuffmanCompressor.MAX_BLOCK_SIZE + 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new HuffmanOutputStream(new ByteArrayOutputStream(), HuffmanCompressor.MAX_BLOCK_SIZE + 1, null));
+    }
+
+    @Test
+    void rejectsBlocksLongerThanTheirCodes() throws Exception {
+        // every byte takes at most MAX_CODE_LENGTH bits, escaped or not
+        final var maxBitLength = 10L * HuffmanTree.MAX_CODE_LENGTH;
+        assertEquals(10, new HuffmanDecompressor().verify(writeBlock(10, maxBitLength)));
+
+        final var file = writeBlock(10, maxBitLength + 1);
+        assertThrows(IncorrectFormatException.class, () -> new HuffmanDecompressor().verify(file));
+    }
+
+    /**
+     * Writes a file with a single block of zero bits, which claims to have the given lengths.
+     */
+    private File writeBlock(int rawLength, long bitLength) throws Exception {
+        final var output = new ByteArrayOutputStream();
+        final var blockWriter = new BlockWriter(output, false);
+        blockWriter.writeHeader(1 << 12, HuffmanTree.computeCodeLengths(new long[]{1, 1}));
+        blockWriter.writeBlock(new EncodedBlock(rawLength, bitLength, new byte[EncodedBlock.payloadLength(bitLength)], null, 0, new int[0]));
+        blockWriter.finish();
+        return RoundTrips.write(dir, output.toByteArray());
+    }
+}
@@ -0,0 +1,125 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.OperationCancelledException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CancellationTest {
+    private static final List<Progress.Phase> COMPRESSION_PHASES = List.of(
+            Progress.Phase.COUNTING, Progress.Phase.BUILDING_TREE, Progress.Phase.SERIALIZING, Progress.Phase.ENCODING);
+    private static final List<Progress.Phase> DECOMPRESSION_PHASES = List.of(
+            Progress.Phase.SERIALIZING, Progress.Phase.DECODING);
+
+    // a single stream, and blocks that are counted, encoded and decoded in parallel
+    private static final int[] BLOCK_SIZES = {0, 1 << 12};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reportsPhasesInOrder() throws Exception {
+        final var input = TestData.TEXT.generate(100_000);
+
+        for (final var blockSize : BLOCK_SIZES) {
+            final var compressor = new HuffmanCompressor();
+            compressor.setBlockSize(blockSize);
+            compressor.setParallelism(4);
+            final var compressionPhases = recordPhases(compressor, null);
+            final var compressed = RoundTrips.assertRoundTrip(compressor, input, dir);
+            assertEquals(COMPRESSION_PHASES, compressionPhases);
+
+            final var decompressor = new HuffmanDecompressor();
+            decompressor.setParallelism(4);
+            final var decompressionPhases = recordPhases(decompressor, null);
+            decompressor.decompress(compressed, new File(compressed.getPath() + ".out"), true);
+            assertEquals(DECOMPRESSION_PHASES, decompressionPhases);
+        }
+    }
+
+    @Test
+    void cancelsCompressionAndDeletesOutput() throws Exception {
+        final var inputFile = RoundTrips.write(dir, TestData.TEXT.generate(100_000));
+        final var output = new File(inputFile.getPath() + HuffmanCompressor.FILE_EXTENSION);
+
+        // a phase is cancelled when it starts, but only seen by the next chunk it reads, which for blocks is in the
+        // tasks that count and encode them in the pool
+        for (final var blockSize : BLOCK_SIZES) {
+            for (final var phase : List.of(Progress.Phase.COUNTING, Progress.Phase.ENCODING)) {
+                final var compressor = new HuffmanCompressor();
+                compressor.setBlockSize(blockSize);
+                compressor.setParallelism(4);
+                final var phases = recordPhases(compressor, phase);
+
+                assertThrows(OperationCancelledException.class, () -> compressor.compress(inputFile, inputFile, null, true));
+                assertFalse(output.exists());
+                assertEquals(COMPRESSION_PHASES.subList(0, COMPRESSION_PHASES.indexOf(phase) + 1), phases);
+            }
+        }
+    }
+
+    @Test
+    void cancelsDecompressionAndDeletesOutput() throws Exception {
+        final var input = TestData.TEXT.generate(100_000);
+
+        for (final var blockSize : BLOCK_SIZES) {
+            final var compressor = new HuffmanCompressor();
+            compressor.setBlockSize(blockSize);
+            final var compressed = RoundTrips.assertRoundTrip(compressor, input, dir);
+            final var output = new File(compressed.getPath() + ".out");
+
+            for (final var phase : DECOMPRESSION_PHASES) {
+                final var decompressor = new HuffmanDecompressor();
+                decompressor.setParallelism(4);
+                final var phases = recordPhases(decompressor, phase);
+
+                assertThrows(OperationCancelledException.class, () -> decompressor.decompress(compressed, output, true));
+                assertFalse(output.exists());
+                assertEquals(DECOMPRESSION_PHASES.subList(0, DECOMPRESSION_PHASES.indexOf(phase) + 1), phases);
+            }
+        }
+    }
+
+    /**
+     * Records every phase the compressor reports, and cancels the compression when the given phase starts.
+     *
+     * @param cancelledPhase The phase that cancels the compression, or null if it is never cancelled.
+     * @return The phases, in the order they start.
+     */
+    private static List<Progress.Phase> recordPhases(HuffmanCompressor compressor, Progress.Phase cancelledPhase) {
+        final var token = new CancellationToken();
+        final var phases = Collections.synchronizedList(new ArrayList<Progress.Phase>());
+        compressor.setCancellationToken(token);
+        compressor.setProgressListener(progress -> record(progress, phases, token, cancelledPhase));
+        return phases;
+    }
+
+    /**
+     * @see #recordPhases(HuffmanCompressor, Progress.Phase)
+     */
+    private static List<Progress.Phase> recordPhases(HuffmanDecompressor decompressor, Progress.Phase cancelledPhase) {
+        final var token = new CancellationToken();
+        final var phases = Collections.synchronizedList(new ArrayList<Progress.Phase>());
+        decompressor.setCancellationToken(token);
+        decompressor.setProgressListener(progress -> record(progress, phases, token, cancelledPhase));
+        return phases;
+    }
+
+    private static void record(Progress progress, List<Progress.Phase> phases, CancellationToken token, Progress.Phase cancelledPhase) {
+        if (phases.isEmpty() || phases.get(phases.size() - 1) != progress.getPhase()) {
+            phases.add(progress.getPhase());
+        }
+        if (progress.getPhase() == cancelledPhase) {
+            token.cancel();
+        }
+    }
+}
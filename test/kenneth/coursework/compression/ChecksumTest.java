@@ -0,0 +1,78 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.ChecksumMismatchException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChecksumTest {
+    private static final int BLOCK_SIZE = 1 << 12;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsWithChecksums() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(BLOCK_SIZE);
+        compressor.setUseChecksums(true);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+            }
+        }
+    }
+
+    @Test
+    void detectsCorruptedPayload() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(BLOCK_SIZE);
+        compressor.setUseChecksums(true);
+        final var compressed = RoundTrips.assertRoundTrip(compressor, TestData.TEXT.generate(100_000), dir);
+
+        // the middle of the file is in the payload of a block, far from any header
+        final var bytes = Files.readAllBytes(compressed.toPath());
+        bytes[bytes.length / 2] ^= 0x10;
+        Files.write(compressed.toPath(), bytes);
+
+        for (final var parallelism : new int[]{1, 4}) {
+            final var decompressor = new HuffmanDecompressor();
+            decompressor.setParallelism(parallelism);
+
+            final var ex = assertThrows(ChecksumMismatchException.class,
+                    () -> decompressor.decompress(compressed, new File(compressed.getPath() + ".out"), true));
+            assertTrue(ex.getOffset() >= 0);
+            assertEquals(0, ex.getOffset() % BLOCK_SIZE);
+            assertThrows(ChecksumMismatchException.class, () -> decompressor.verify(compressed));
+        }
+
+        final var ex = assertThrows(IOException.class, () -> {
+            try (final var input = new HuffmanInputStream(new FileInputStream(compressed))) {
+                input.readAllBytes();
+            }
+        });
+        assertTrue(ex.getCause() instanceof ChecksumMismatchException);
+    }
+
+    @Test
+    void combinesChecksumsOfConsecutiveRanges() {
+        final var bytes = TestData.RANDOM.generate(100_000);
+        final var whole = Checksums.crc32c(bytes, 0, bytes.length);
+
+        for (final var split : new int[]{0, 1, 4_096, 65_537, bytes.length}) {
+            final var first = Checksums.crc32c(bytes, 0, split);
+            final var second = Checksums.crc32c(bytes, split, bytes.length - split);
+            assertEquals(whole, Checksums.combine(first, second, bytes.length - split));
+        }
+    }
+}
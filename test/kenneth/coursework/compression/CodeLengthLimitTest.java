@@ -0,0 +1,111 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CodeLengthLimitTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void limitsFibonacciFrequencies() {
+        // Fibonacci frequencies give the deepest possible tree, one level per byte, so 40 bytes would need codes of
+        // 39 bits without a limit
+        final var frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+        frequencies[0] = 1;
+        frequencies[1] = 1;
+        for (var b = 2; b < 40; b++) {
+            frequencies[b] = frequencies[b - 1] + frequencies[b - 2];
+        }
+
+        for (var limit = HuffmanTree.MIN_CODE_LENGTH_LIMIT; limit <= HuffmanTree.MAX_CODE_LENGTH; limit++) {
+            final var codeLengths = HuffmanTree.computeCodeLengths(frequencies, limit);
+            assertTrue(max(codeLengths) <= limit);
+            assertEquals(1L << HuffmanTree.MAX_CODE_LENGTH, kraftSum(codeLengths));
+        }
+    }
+
+    @Test
+    void keepsLengthsWithinLimit() {
+        final var frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+        for (var b = 0; b < frequencies.length; b++) {
+            frequencies[b] = b + 1;
+        }
+
+        final var codeLengths = HuffmanTree.computeCodeLengths(frequencies, HuffmanTree.DEFAULT_MAX_CODE_LENGTH);
+        assertArrayEquals(codeLengths, HuffmanTree.computeCodeLengths(frequencies, HuffmanTree.MAX_CODE_LENGTH));
+        assertArrayEquals(codeLengths, HuffmanTree.limitCodeLengths(codeLengths, max(codeLengths)));
+    }
+
+    @Test
+    void roundTripsSkewedInputWithShortLimit() throws Exception {
+        final var input = TestData.SKEWED.generate(100_000);
+
+        for (final var blockSize : new int[]{0, 1 << 12}) {
+            final var compressor = new HuffmanCompressor();
+            compressor.setBlockSize(blockSize);
+            compressor.setMaxCodeLength(HuffmanTree.MIN_CODE_LENGTH_LIMIT);
+
+            final var compressed = RoundTrips.assertRoundTrip(compressor, input, dir);
+            assertTrue(CompressedFileInfo.read(compressed).getMaxCodeLength() <= HuffmanTree.MIN_CODE_LENGTH_LIMIT);
+        }
+    }
+
+    @Test
+    void limitsCodesOfOutputStream() throws Exception {
+        final var input = TestData.SKEWED.generate(100_000);
+        final var tree = new HuffmanTree(new ByteArrayInputStream(input));
+        tree.build();
+
+        for (final var streamTree : new HuffmanTree[]{null, tree}) {
+            final var output = new ByteArrayOutputStream();
+            try (final var huffmanOutput = new HuffmanOutputStream(output, 1 << 12, streamTree, 10)) {
+                huffmanOutput.write(input);
+            }
+            RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+
+            final var file = Files.createTempFile(dir, "stream", HuffmanCompressor.FILE_EXTENSION).toFile();
+            Files.write(file.toPath(), output.toByteArray());
+            assertTrue(CompressedFileInfo.read(file).getMaxCodeLength() <= 10);
+        }
+    }
+
+    @Test
+    void rejectsLimitsOutOfRange() {
+        final var compressor = new HuffmanCompressor();
+        assertThrows(IllegalArgumentException.class, () -> compressor.setMaxCodeLength(HuffmanTree.MIN_CODE_LENGTH_LIMIT - 1));
+        assertThrows(IllegalArgumentException.class, () -> compressor.setMaxCodeLength(HuffmanTree.MAX_CODE_LENGTH + 1));
+        assertThrows(IllegalArgumentException.class, () -> new HuffmanOutputStream(new ByteArrayOutputStream(), 1 << 12, null, HuffmanTree.MAX_CODE_LENGTH + 1));
+    }
+
+    private static int max(int[] codeLengths) {
+        var max = 0;
+        for (final var length : codeLengths) {
+            max = Math.max(max, length);
+        }
+        return max;
+    }
+
+    /**
+     * @return The sum of 2^(31 - n) over every code length n, which is 2^31 for a complete tree.
+     */
+    private static long kraftSum(int[] codeLengths) {
+        var sum = 0L;
+        for (final var length : codeLengths) {
+            if (length > 0) {
+                sum += 1L << (HuffmanTree.MAX_CODE_LENGTH - length);
+            }
+        }
+        return sum;
+    }
+}
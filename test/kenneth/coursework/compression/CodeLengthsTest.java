@@ -0,0 +1,77 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CodeLengthsTest {
+    @Test
+    void matchesTextbookHuffmanOnRandomHistograms() {
+        final var random = new Random(3);
+
+        for (var i = 0; i < 20_000; i++) {
+            final var frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+            final var symbolCount = 1 + random.nextInt(HuffmanTree.SYMBOL_COUNT);
+            // Mixes flat histograms with ones whose frequencies span several orders of magnitude, so that both
+            // queues of the merge are drained in every order
+            final var maxShift = random.nextInt(20);
+            for (var s = 0; s < symbolCount; s++) {
+                frequencies[random.nextInt(frequencies.length)] += 1 + random.nextInt(1 << random.nextInt(maxShift + 1));
+            }
+
+            assertOptimal(frequencies);
+        }
+    }
+
+    @Test
+    void matchesTextbookHuffmanOnEqualFrequencies() {
+        // Ties between a leaf and a merged node are where an off-by-one in the merge shows first
+        for (var symbolCount = 1; symbolCount <= HuffmanTree.SYMBOL_COUNT; symbolCount++) {
+            final var frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+            for (var b = 0; b < symbolCount; b++) {
+                frequencies[b] = 7;
+            }
+            assertOptimal(frequencies);
+        }
+    }
+
+    @Test
+    void givesOneBitCodesToOneOrTwoBytes() {
+        final var frequencies = new long[HuffmanTree.SYMBOL_COUNT];
+        frequencies['a'] = 10;
+        assertEquals(1, HuffmanTree.computeCodeLengths(frequencies)['a']);
+
+        frequencies['b'] = 1;
+        final var codeLengths = HuffmanTree.computeCodeLengths(frequencies);
+        assertEquals(1, codeLengths['a']);
+        assertEquals(1, codeLengths['b']);
+    }
+
+    private static void assertOptimal(long[] frequencies) {
+        final var codeLengths = HuffmanTree.computeCodeLengths(frequencies);
+        assertEquals(textbookBits(frequencies), HuffmanTree.encodedBits(frequencies, codeLengths));
+    }
+
+    /**
+     * @return The length in bits of the input encoded with a huffman tree built from a priority queue, which is the
+     * sum of the weights of every merged node. A lone byte still takes 1 bit per occurrence.
+     */
+    private static long textbookBits(long[] frequencies) {
+        final var queue = new PriorityQueue<Long>();
+        for (final var frequency : frequencies) {
+            if (frequency > 0) queue.add(frequency);
+        }
+        if (queue.size() == 1) return queue.peek();
+
+        var bits = 0L;
+        while (queue.size() > 1) {
+            final var merged = queue.poll() + queue.poll();
+            bits += merged;
+            queue.add(merged);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,64 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextCodesTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsContextCodes() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseContextCodes(true);
+        compressor.setBlockSize(1 << 12);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+            }
+        }
+    }
+
+    @Test
+    void makesTextSmaller() throws Exception {
+        final var input = TestData.TEXT.generate(200_000);
+        final var withoutContexts = RoundTrips.assertRoundTrip(new HuffmanCompressor(), input, dir);
+
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseContextCodes(true);
+        final var withContexts = RoundTrips.assertRoundTrip(compressor, input, dir);
+
+        assertTrue(CompressedFileInfo.read(withContexts).getContextTableCount() > 1);
+        assertTrue(withContexts.length() < withoutContexts.length());
+    }
+
+    @Test
+    void keepsSingleTableForRandomInput() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseContextCodes(true);
+        final var compressed = RoundTrips.assertRoundTrip(compressor, TestData.RANDOM.generate(100_000), dir);
+
+        assertEquals(0, CompressedFileInfo.read(compressed).getContextTableCount());
+    }
+
+    @Test
+    void compressesWithContextTreeSource() throws Exception {
+        final var contextCompressor = new HuffmanCompressor();
+        contextCompressor.setUseContextCodes(true);
+        final var treeSource = RoundTrips.assertRoundTrip(contextCompressor, TestData.TEXT.generate(200_000, 1), dir);
+        assertTrue(CompressedFileInfo.read(treeSource).getContextTableCount() > 1);
+
+        final var input = TestData.TEXT.generate(100_000, 2);
+        final var withOwnTree = RoundTrips.assertRoundTrip(new HuffmanCompressor(), input, dir);
+        final var withTreeSource = RoundTrips.assertRoundTrip(new HuffmanCompressor(), input, treeSource, dir);
+
+        // the merged tables are close to the tree of the input itself, which is of the same kind
+        assertTrue(withTreeSource.length() < withOwnTree.length() * 1.05);
+    }
+}
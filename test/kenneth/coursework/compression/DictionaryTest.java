@@ -0,0 +1,96 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.UnknownDictionaryException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DictionaryTest {
+    // the offset of the dictionary ID in a compressed file, after the version, the flags and the block size
+    private static final int DICTIONARY_ID_OFFSET = 6;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsWithDictionary() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setDictionary(train());
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+            }
+        }
+    }
+
+    @Test
+    void makesSmallFilesSmaller() throws Exception {
+        final var input = TestData.TEXT.generate(500, 3);
+
+        final var withoutDictionary = RoundTrips.assertRoundTrip(new HuffmanCompressor(), input, dir);
+        final var compressor = new HuffmanCompressor();
+        compressor.setDictionary(train());
+        final var withDictionary = RoundTrips.assertRoundTrip(compressor, input, dir);
+
+        assertTrue(withDictionary.length() < withoutDictionary.length());
+    }
+
+    @Test
+    void roundTripsOutputStreamWithDictionary() throws Exception {
+        final var input = TestData.TEXT.generate(20_000, 3);
+        final var output = new ByteArrayOutputStream();
+        try (final var huffmanOutput = new HuffmanOutputStream(output, train())) {
+            huffmanOutput.write(input);
+        }
+
+        RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+    }
+
+    @Test
+    void readsWrittenDictionary() throws Exception {
+        final var dictionary = train();
+        final var file = dir.resolve("text.dict").toFile();
+        dictionary.write(file, false);
+
+        final var read = HuffmanDictionary.read(file);
+        assertEquals(dictionary.getId(), read.getId());
+        assertArrayEquals(dictionary.getCodeLengths(), read.getCodeLengths());
+        assertSame(dictionary, read);
+    }
+
+    @Test
+    void rejectsUnknownDictionary() throws Exception {
+        final var dictionary = train();
+        final var compressor = new HuffmanCompressor();
+        compressor.setDictionary(dictionary);
+        final var compressed = RoundTrips.assertRoundTrip(compressor, TestData.TEXT.generate(1_000, 3), dir);
+
+        try (final var file = new RandomAccessFile(compressed, "rw")) {
+            file.seek(DICTIONARY_ID_OFFSET);
+            file.writeInt(~dictionary.getId());
+        }
+
+        final var exception = assertThrows(UnknownDictionaryException.class,
+                () -> new HuffmanDecompressor().decompress(compressed, dir.resolve("decompressed").toFile(), false));
+        assertEquals(~dictionary.getId(), exception.getDictionaryId());
+    }
+
+    private static HuffmanDictionary train() {
+        final var trainer = new DictionaryTrainer();
+        for (var seed = 10; seed < 20; seed++) {
+            final var sample = TestData.TEXT.generate(10_000, seed);
+            trainer.addSample(sample, 0, sample.length);
+        }
+        return trainer.train();
+    }
+}
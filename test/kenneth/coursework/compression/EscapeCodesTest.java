@@ -0,0 +1,117 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EscapeCodesTest {
+    // random bytes take 8 bits each, so an escape of 1 bit and a literal of 8 bits are about 12.5% more
+    private static final double MAX_RANDOM_GROWTH = 1.15;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void givesEveryByteACode() {
+        final var codeLengths = textCodeLengths();
+
+        for (var shift = 1; shift <= HuffmanTree.MAX_ESCAPE_SHIFT; shift++) {
+            final var lengths = HuffmanTree.addEscapeCodes(codeLengths, shift, HuffmanTree.DEFAULT_MAX_CODE_LENGTH);
+            var kraftSum = 0L;
+            for (final var length : lengths) {
+                assertTrue(length > 0 && length <= HuffmanTree.DEFAULT_MAX_CODE_LENGTH);
+                kraftSum += 1L << (HuffmanTree.MAX_CODE_LENGTH - length);
+            }
+            assertEquals(1L << HuffmanTree.MAX_CODE_LENGTH, kraftSum);
+        }
+    }
+
+    @Test
+    void weightsEscapeByEscapedShare() {
+        final var codeLengths = textCodeLengths();
+
+        // most random bytes are missing from text, and text of the same kind misses none of them
+        assertEquals(1, HuffmanTree.estimateEscapeShift(codeLengths, frequencies(TestData.RANDOM.generate(100_000))));
+        assertTrue(HuffmanTree.estimateEscapeShift(codeLengths, frequencies(TestData.TEXT.generate(100_000, 2))) > 10);
+
+        // when half of the input is escaped, every escaped byte costs the literal and only 1 or 2 more bits
+        final var lengths = HuffmanTree.addEscapeCodes(codeLengths, 1, HuffmanTree.MAX_CODE_LENGTH);
+        for (var b = 0; b < lengths.length; b++) {
+            if (codeLengths[b] == 0) {
+                assertTrue(lengths[b] <= 10);
+            }
+        }
+    }
+
+    @Test
+    void countsEscapedBytesOnlyWhenAsked() throws Exception {
+        final var codeTable = HuffmanCodeTable.withEscapeCodes(textCodeLengths(), 1, HuffmanTree.DEFAULT_MAX_CODE_LENGTH);
+        final var input = TestData.RANDOM.generate(10_000);
+
+        assertTrue(HuffmanEncoder.encodeBlock(input, input.length, codeTable, 0, true).escapedByteCount > 0);
+        assertEquals(0, HuffmanEncoder.encodeBlock(input, input.length, codeTable, 0, false).escapedByteCount);
+    }
+
+    @Test
+    void keepsRandomInputSmallWithTextTree() throws Exception {
+        final var treeSource = RoundTrips.assertRoundTrip(new HuffmanCompressor(), TestData.TEXT.generate(50_000, 1), dir);
+        final var input = TestData.RANDOM.generate(200_000);
+
+        for (final var blockSize : new int[]{0, 1 << 14}) {
+            final var compressor = new HuffmanCompressor();
+            compressor.setBlockSize(blockSize);
+            assertSmall(RoundTrips.assertRoundTrip(compressor, input, treeSource, dir).length(), input);
+
+            final var output = new ByteArrayOutputStream();
+            compressor.compress(new ByteArrayInputStream(input), output, treeSource);
+            RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+            assertSmall(output.size(), input);
+        }
+
+        final var tree = new HuffmanTree(new ByteArrayInputStream(TestData.TEXT.generate(50_000, 1)));
+        tree.build();
+        final var output = new ByteArrayOutputStream();
+        try (final var huffmanOutput = new HuffmanOutputStream(output, 1 << 14, tree)) {
+            huffmanOutput.write(input);
+        }
+        RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+        assertSmall(output.size(), input);
+    }
+
+    @Test
+    void keepsMatchingInputCodes() throws Exception {
+        final var treeSource = RoundTrips.assertRoundTrip(new HuffmanCompressor(), TestData.TEXT.generate(50_000, 1), dir);
+        final var input = TestData.TEXT.generate(100_000, 2);
+
+        final var compressor = new HuffmanCompressor();
+        final var withTree = RoundTrips.assertRoundTrip(compressor, input, treeSource, dir);
+        final var withOwnTree = RoundTrips.assertRoundTrip(compressor, input, dir);
+        assertTrue(withTree.length() < withOwnTree.length() * 1.05);
+    }
+
+    private static void assertSmall(long compressedSize, byte[] input) {
+        assertTrue(compressedSize < input.length * MAX_RANDOM_GROWTH, compressedSize + " bytes for " + input.length);
+    }
+
+    private static int[] textCodeLengths() {
+        final var codeLengths = HuffmanTree.computeCodeLengths(frequencies(TestData.TEXT.generate(50_000, 1)));
+        var missing = 0;
+        for (final var length : codeLengths) {
+            if (length == 0) missing++;
+        }
+        assertTrue(missing > 128);
+        return codeLengths;
+    }
+
+    private static long[] frequencies(byte[] bytes) {
+        final var histogram = new ByteHistogram();
+        histogram.count(bytes, 0, bytes.length);
+        return histogram.toFrequencies();
+    }
+}
@@ -0,0 +1,112 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HuffmanStreamsTest {
+    private static final int BLOCK_SIZE = 1 << 12;
+    // the header of the block format, and the header and end of a single block
+    private static final int MAX_FRAMING_SIZE = 48;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsOutputStream() throws Exception {
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                final var input = data.generate(size);
+                final var output = new ByteArrayOutputStream();
+                try (final var huffmanOutput = new HuffmanOutputStream(output, BLOCK_SIZE, null)) {
+                    huffmanOutput.write(input);
+                }
+
+                RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+            }
+        }
+    }
+
+    @Test
+    void roundTripsSingleBytesAndFlushes() throws Exception {
+        final var input = TestData.TEXT.generate(20_000);
+        final var output = new ByteArrayOutputStream();
+        try (final var huffmanOutput = new HuffmanOutputStream(output, BLOCK_SIZE, null)) {
+            for (var i = 0; i < input.length; i++) {
+                huffmanOutput.write(input[i]);
+                if (i % 1_000 == 0) {
+                    huffmanOutput.flush();
+                }
+            }
+        }
+
+        RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+    }
+
+    @Test
+    void roundTripsWithTree() throws Exception {
+        final var tree = new HuffmanTree(new ByteArrayInputStream(TestData.TEXT.generate(50_000, 1)));
+        tree.build();
+
+        for (final var data : TestData.values()) {
+            final var input = data.generate(20_000);
+            final var output = new ByteArrayOutputStream();
+            try (final var huffmanOutput = new HuffmanOutputStream(output, BLOCK_SIZE, tree)) {
+                huffmanOutput.write(input);
+            }
+
+            RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+        }
+    }
+
+    @Test
+    void keepsSmallMessagesSmall() throws Exception {
+        // a message that fits in the first block is known in full when the stream is closed, so it only costs the codes
+        // of the bytes it has
+        final var compressor = new HuffmanCompressor();
+        for (final var size : new int[]{6, 200, 2_000}) {
+            final var input = TestData.TEXT.generate(size);
+            final var fileSize = RoundTrips.assertRoundTrip(compressor, input, dir).length();
+
+            final var output = new ByteArrayOutputStream();
+            try (final var huffmanOutput = new HuffmanOutputStream(output, BLOCK_SIZE, null)) {
+                huffmanOutput.write(input);
+            }
+
+            RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+            assertTrue(output.size() < fileSize + MAX_FRAMING_SIZE, output.size() + " bytes for a file of " + fileSize);
+        }
+    }
+
+    @Test
+    void skipsBytes() throws Exception {
+        final var input = TestData.TEXT.generate(20_000);
+        final var output = new ByteArrayOutputStream();
+        try (final var huffmanOutput = new HuffmanOutputStream(output, BLOCK_SIZE, null)) {
+            huffmanOutput.write(input);
+        }
+
+        try (final var huffmanInput = new HuffmanInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals(10_000, huffmanInput.skip(10_000));
+            assertArrayEquals(Arrays.copyOfRange(input, 10_000, input.length), huffmanInput.readAllBytes());
+        }
+    }
+
+    @Test
+    void rejectsWritesAfterClose() throws Exception {
+        final var huffmanOutput = new HuffmanOutputStream(new ByteArrayOutputStream());
+        huffmanOutput.close();
+
+        assertThrows(IOException.class, () -> huffmanOutput.write(0));
+    }
+}
@@ -0,0 +1,122 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsOperations() throws Exception {
+        final var input = TestData.TEXT.generate(100_000);
+
+        for (final var blockSize : new int[]{0, 1 << 12}) {
+            final var metrics = new InMemoryMetrics();
+            final var compressor = new HuffmanCompressor();
+            compressor.setBlockSize(blockSize);
+            compressor.setMetrics(metrics);
+            final var compressed = RoundTrips.assertRoundTrip(compressor, input, dir);
+
+            final var decompressor = new HuffmanDecompressor();
+            decompressor.setMetrics(metrics);
+            decompressor.decompress(compressed, new File(compressed.getPath() + ".out"), true);
+            // verifications are not recorded
+            decompressor.verify(compressed);
+
+            final var compression = CompressionMetrics.Operation.COMPRESSION;
+            final var decompression = CompressionMetrics.Operation.DECOMPRESSION;
+            assertEquals(1, metrics.getOperationCount(compression));
+            assertEquals(1, metrics.getOperationCount(decompression));
+            assertEquals(input.length, metrics.getRawBytes(compression));
+            assertEquals(input.length, metrics.getRawBytes(decompression));
+            assertEquals(compressed.length(), metrics.getCompressedBytes(compression));
+            assertEquals(compressed.length(), metrics.getCompressedBytes(decompression));
+            assertTrue(metrics.getOperationNanos(compression) > 0);
+            assertTrue(metrics.getOperationNanos(decompression) > 0);
+            assertEquals((double) compressed.length() / input.length, metrics.getCompressionRatio());
+
+            for (final var phase : Progress.Phase.values()) {
+                assertTrue(metrics.getPhaseNanos(phase) > 0, phase.name());
+            }
+
+            // the codes the file is compressed with are recorded once, with a code for every byte of the input
+            final var histogram = metrics.getCodeLengthHistogram();
+            assertEquals(0, histogram[0]);
+            assertEquals(distinctCount(input), Arrays.stream(histogram).sum());
+            assertEquals(0, metrics.getEscapedBytes());
+        }
+    }
+
+    @Test
+    void recordsEscapedBytes() throws Exception {
+        final var treeInput = TestData.TEXT.generate(50_000, 1);
+        final var treeSource = RoundTrips.assertRoundTrip(new HuffmanCompressor(), treeInput, dir);
+        final var input = TestData.RANDOM.generate(100_000);
+
+        // every byte of the input that never appears in the text has no code in its tree
+        final var inTree = new boolean[HuffmanTree.SYMBOL_COUNT];
+        for (final var b : treeInput) {
+            inTree[b & 0xFF] = true;
+        }
+        var escapedCount = 0L;
+        for (final var b : input) {
+            if (!inTree[b & 0xFF]) escapedCount++;
+        }
+        assertTrue(escapedCount > 0);
+
+        for (final var blockSize : new int[]{0, 1 << 12}) {
+            final var metrics = new InMemoryMetrics();
+            final var compressor = new HuffmanCompressor();
+            compressor.setBlockSize(blockSize);
+            compressor.setMetrics(metrics);
+            RoundTrips.assertRoundTrip(compressor, input, treeSource, dir);
+
+            assertEquals(escapedCount, metrics.getEscapedBytes());
+        }
+    }
+
+    @Test
+    void registersMXBean() throws Exception {
+        final var name = "kenneth.coursework.compression:type=CompressionMetrics,name=" + getClass().getSimpleName();
+        final var server = ManagementFactory.getPlatformMBeanServer();
+        final var input = TestData.TEXT.generate(10_000);
+
+        try (final var metrics = new JmxMetrics(name)) {
+            assertTrue(server.isRegistered(new ObjectName(name)));
+
+            final var compressor = new HuffmanCompressor();
+            compressor.setMetrics(metrics);
+            final var compressed = RoundTrips.assertRoundTrip(compressor, input, dir);
+
+            assertEquals(1L, server.getAttribute(new ObjectName(name), "CompressionCount"));
+            assertEquals((long) input.length, server.getAttribute(new ObjectName(name), "CompressionRawBytes"));
+            assertEquals(compressed.length(), server.getAttribute(new ObjectName(name), "CompressionCompressedBytes"));
+            assertTrue(Arrays.equals(metrics.getCodeLengthHistogram(), (long[]) server.getAttribute(new ObjectName(name), "CodeLengthHistogram")));
+        }
+
+        assertFalse(server.isRegistered(new ObjectName(name)));
+    }
+
+    private static int distinctCount(byte[] bytes) {
+        final var isPresent = new boolean[HuffmanTree.SYMBOL_COUNT];
+        var count = 0;
+        for (final var b : bytes) {
+            if (!isPresent[b & 0xFF]) {
+                isPresent[b & 0xFF] = true;
+                count++;
+            }
+        }
+        return count;
+    }
+}
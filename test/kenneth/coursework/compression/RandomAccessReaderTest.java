@@ -0,0 +1,87 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RandomAccessReaderTest {
+    private static final int BLOCK_SIZE = 1 << 12;
+    private static final int CHECKPOINT_INTERVAL = 1_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsCheckpoints() throws Exception {
+        for (final var compressor : compressorsWithCheckpoints()) {
+            for (final var data : TestData.values()) {
+                for (final var size : RoundTrips.SIZES) {
+                    RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+                }
+            }
+        }
+    }
+
+    @Test
+    void readsRangesFromCheckpoints() throws Exception {
+        final var input = TestData.TEXT.generate(100_000);
+        for (final var compressor : compressorsWithCheckpoints()) {
+            assertReadsRanges(RoundTrips.assertRoundTrip(compressor, input, dir), input);
+        }
+    }
+
+    @Test
+    void readsRangesFromStartOfBlocks() throws Exception {
+        final var input = TestData.TEXT.generate(100_000);
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(BLOCK_SIZE);
+
+        assertReadsRanges(RoundTrips.assertRoundTrip(compressor, input, dir), input);
+    }
+
+    @Test
+    void rejectsFilesWithoutIndex() throws Exception {
+        final var compressed = RoundTrips.assertRoundTrip(new HuffmanCompressor(), TestData.TEXT.generate(1_000), dir);
+
+        assertThrows(IncorrectFormatException.class, () -> new HuffmanRandomAccessReader(compressed));
+    }
+
+    /**
+     * @return Compressors that record checkpoints, with a single table, with contexts and with codes for every block.
+     */
+    private static HuffmanCompressor[] compressorsWithCheckpoints() {
+        final var compressors = new HuffmanCompressor[3];
+        for (var i = 0; i < compressors.length; i++) {
+            compressors[i] = new HuffmanCompressor();
+            compressors[i].setBlockSize(BLOCK_SIZE);
+            compressors[i].setCheckpointInterval(CHECKPOINT_INTERVAL);
+        }
+        compressors[1].setUseContextCodes(true);
+        compressors[2].setUseBlockCodes(true);
+        return compressors;
+    }
+
+    private static void assertReadsRanges(File compressed, byte[] input) throws Exception {
+        try (final var reader = new HuffmanRandomAccessReader(compressed)) {
+            assertEquals(input.length, reader.length());
+
+            // ranges within a checkpoint, across checkpoints, across blocks, and past the end
+            final int[][] ranges = {{0, 0}, {0, 1}, {999, 2}, {1_500, 3_000}, {BLOCK_SIZE - 10, 20}, {5_000, 50_000},
+                    {input.length - 100, 100}, {input.length - 10, 100}, {0, input.length}};
+            for (final var range : ranges) {
+                final var end = Math.min(input.length, range[0] + range[1]);
+                assertArrayEquals(Arrays.copyOfRange(input, range[0], end), reader.read(range[0], range[1]));
+            }
+
+            assertEquals(-1, reader.read(input.length, new byte[1], 0, 1));
+        }
+    }
+}
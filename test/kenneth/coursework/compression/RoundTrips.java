@@ -0,0 +1,101 @@
+package kenneth.coursework.compression;
+
+import kenneth.coursework.exceptions.IncorrectFormatException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compresses inputs and checks that they decompress back through every way a compressed file can be read.
+ */
+class RoundTrips {
+    /**
+     * The sizes every kind of {@link TestData} is compressed at: nothing, a single byte, and enough bytes for several
+     * blocks of the block sizes used by the tests.
+     */
+    static final int[] SIZES = {0, 1, 100_000};
+
+    /**
+     * Writes the given bytes into a new file in the given directory.
+     *
+     * @return The file.
+     */
+    static File write(Path dir, byte[] bytes) throws IOException {
+        final var file = Files.createTempFile(dir, "input", "").toFile();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    /**
+     * Compresses the given bytes with the given compressor into a file, and checks that the file decompresses back to
+     * them.
+     *
+     * @param treeSource The compressed file where the tree is stored, or null.
+     * @return The compressed file.
+     * @see #assertDecompresses(File, byte[])
+     */
+    static File assertRoundTrip(HuffmanCompressor compressor, byte[] input, File treeSource, Path dir) throws IOException, IncorrectFormatException {
+        final var inputFile = write(dir, input);
+        // the extension is added to the destination by the compressor
+        compressor.compress(inputFile, inputFile, treeSource, true);
+        final var compressed = new File(inputFile.getPath() + HuffmanCompressor.FILE_EXTENSION);
+
+        assertDecompresses(compressed, input);
+        return compressed;
+    }
+
+    /**
+     * @see #assertRoundTrip(HuffmanCompressor, byte[], File, Path)
+     */
+    static File assertRoundTrip(HuffmanCompressor compressor, byte[] input, Path dir) throws IOException, IncorrectFormatException {
+        return assertRoundTrip(compressor, input, null, dir);
+    }
+
+    /**
+     * Checks that the given compressed file decompresses back to the given bytes, with {@link HuffmanDecompressor}
+     * on one thread and on several, with {@link HuffmanDecompressor#verify(File)}, and with {@link HuffmanInputStream}.
+     */
+    static void assertDecompresses(File compressed, byte[] expected) throws IOException, IncorrectFormatException {
+        for (final var parallelism : new int[]{1, 4}) {
+            final var decompressor = new HuffmanDecompressor();
+            decompressor.setParallelism(parallelism);
+
+            final var decompressed = new File(compressed.getPath() + ".out");
+            decompressor.decompress(compressed, decompressed, true);
+            assertArrayEquals(expected, Files.readAllBytes(decompressed.toPath()));
+            assertEquals(expected.length, decompressor.verify(compressed));
+        }
+
+        try (final var input = new HuffmanInputStream(new FileInputStream(compressed))) {
+            assertArrayEquals(expected, input.readAllBytes());
+        }
+    }
+
+    /**
+     * Checks that the given compressed bytes, such as the output of a stream, decompress back to the given bytes both
+     * as a stream and as a file in the given directory.
+     */
+    static void assertDecompresses(byte[] compressed, byte[] expected, Path dir) throws IOException, IncorrectFormatException {
+        assertArrayEquals(expected, decompress(compressed));
+
+        final var file = Files.createTempFile(dir, "stream", HuffmanCompressor.FILE_EXTENSION).toFile();
+        Files.write(file.toPath(), compressed);
+        assertDecompresses(file, expected);
+    }
+
+    /**
+     * @return The given compressed bytes, decompressed with {@link HuffmanInputStream}.
+     */
+    static byte[] decompress(byte[] compressed) throws IOException {
+        try (final var input = new HuffmanInputStream(new ByteArrayInputStream(compressed))) {
+            return input.readAllBytes();
+        }
+    }
+}
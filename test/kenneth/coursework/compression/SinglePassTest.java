@@ -0,0 +1,99 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SinglePassTest {
+    // the header of the block format, and the header and end of a single block
+    private static final int MAX_FRAMING_SIZE = 48;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compressesStreams() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(1 << 12);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                final var input = data.generate(size);
+                assertStreamRoundTrip(compressor, input, null);
+            }
+        }
+    }
+
+    @Test
+    void encodesBytesMissingFromSample() throws Exception {
+        // the sample only has text, and the rest of the input has every byte
+        final var input = concat(TestData.TEXT.generate(10_000), TestData.RANDOM.generate(10_000));
+
+        final var compressor = new HuffmanCompressor();
+        compressor.setSampleSize(1_000);
+        compressor.setBlockSize(1 << 12);
+        RoundTrips.assertRoundTrip(compressor, input, dir);
+        assertStreamRoundTrip(compressor, input, null);
+    }
+
+    @Test
+    void compressesStreamsWithTreeSource() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        final var treeSource = RoundTrips.assertRoundTrip(compressor, TestData.TEXT.generate(50_000, 1), dir);
+
+        assertStreamRoundTrip(compressor, TestData.TEXT.generate(50_000, 2), treeSource);
+    }
+
+    @Test
+    void keepsSmallStreamsSmall() throws Exception {
+        // a stream shorter than the sample is known in full, so it only costs the codes of the bytes it has and the
+        // framing of the blocks
+        final var compressor = new HuffmanCompressor();
+        for (final var size : new int[]{6, 200, 2_000}) {
+            final var input = TestData.TEXT.generate(size);
+            final var fileSize = RoundTrips.assertRoundTrip(compressor, input, dir).length();
+
+            final var output = new ByteArrayOutputStream();
+            compressor.compress(new ByteArrayInputStream(input), output, null);
+            RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+            assertTrue(output.size() < fileSize + MAX_FRAMING_SIZE, output.size() + " bytes for a file of " + fileSize);
+        }
+    }
+
+    @Test
+    void keepsSampledCodesCloseToExactCodes() throws Exception {
+        // the bytes missing from the sample share a long escape code instead of taking code space from every byte
+        final var input = TestData.TEXT.generate(100_000);
+        final var exactSize = RoundTrips.assertRoundTrip(new HuffmanCompressor(), input, dir).length();
+
+        final var compressor = new HuffmanCompressor();
+        compressor.setSampleSize(1_000);
+        final var output = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(input), output, null);
+        RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+        assertTrue(output.size() < exactSize * 1.02, output.size() + " bytes instead of " + exactSize);
+    }
+
+    /**
+     * Compresses the given bytes as a stream, and checks that they decompress back both as a stream and as a file.
+     */
+    private void assertStreamRoundTrip(HuffmanCompressor compressor, byte[] input, File treeSource) throws Exception {
+        final var output = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(input), output, treeSource);
+
+        RoundTrips.assertDecompresses(output.toByteArray(), input, dir);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        final var bytes = new byte[first.length + second.length];
+        System.arraycopy(first, 0, bytes, 0, first.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,64 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleStreamTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsCanonicalCodes() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setBlockSize(0);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+            }
+        }
+    }
+
+    @Test
+    void roundTripsLegacyTrees() throws Exception {
+        final var compressor = new HuffmanCompressor();
+        compressor.setUseCanonicalCodes(false);
+
+        for (final var data : TestData.values()) {
+            for (final var size : RoundTrips.SIZES) {
+                RoundTrips.assertRoundTrip(compressor, data.generate(size), dir);
+            }
+        }
+    }
+
+    @Test
+    void canonicalHeaderIsSmallerThanLegacyTree() throws Exception {
+        final var input = TestData.TEXT.generate(10_000);
+
+        final var canonicalCompressor = new HuffmanCompressor();
+        canonicalCompressor.setBlockSize(0);
+        final var canonical = RoundTrips.assertRoundTrip(canonicalCompressor, input, dir);
+
+        final var legacyCompressor = new HuffmanCompressor();
+        legacyCompressor.setUseCanonicalCodes(false);
+        final var legacy = RoundTrips.assertRoundTrip(legacyCompressor, input, dir);
+
+        assertTrue(canonical.length() < legacy.length());
+    }
+
+    @Test
+    void compressesWithTreeSource() throws Exception {
+        for (final var useCanonicalCodes : new boolean[]{true, false}) {
+            final var compressor = new HuffmanCompressor();
+            compressor.setUseCanonicalCodes(useCanonicalCodes);
+            compressor.setBlockSize(0);
+
+            final var treeSource = RoundTrips.assertRoundTrip(compressor, TestData.TEXT.generate(50_000, 1), dir);
+            RoundTrips.assertRoundTrip(compressor, TestData.TEXT.generate(50_000, 2), treeSource, dir);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package kenneth.coursework.compression;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TasksTest {
+    @Test
+    void findsCheckedExceptionOfTask() {
+        final var thrown = new EOFException();
+        final var pool = new ForkJoinPool(2);
+        try {
+            final var future = pool.submit(() -> {
+                if (thrown != null) throw thrown;
+                return null;
+            });
+
+            final var ex = assertThrows(ExecutionException.class, future::get);
+            assertSame(thrown, Tasks.getCause(ex));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void keepsRuntimeExceptionsOfTask() {
+        final var thrown = new IllegalStateException(new EOFException());
+        final var pool = new ForkJoinPool(2);
+        try {
+            final var future = pool.submit(() -> {
+                throw thrown;
+            });
+
+            final var ex = assertThrows(ExecutionException.class, future::get);
+            // the pool rethrows a copy of a runtime exception, whose cause is the original
+            assertTrue(Tasks.getCause(ex) instanceof IllegalStateException);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
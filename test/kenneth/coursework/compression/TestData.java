@@ -0,0 +1,90 @@
+package kenneth.coursework.compression;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The kinds of input the tests compress. Every input is generated from a seed, so that a failing test always fails
+ * with the same bytes.
+ */
+enum TestData {
+    /**
+     * English-like prose, with words picked from a small vocabulary.
+     */
+    TEXT {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            var position = 0;
+            while (position < bytes.length) {
+                final var word = WORDS[Math.min(WORDS.length - 1, (int) Math.floor(Math.pow(WORDS.length + 1, random.nextDouble())) - 1)];
+                final var text = (word + (random.nextInt(10) == 0 ? ".\n" : " ")).getBytes(StandardCharsets.US_ASCII);
+                final var length = Math.min(text.length, bytes.length - position);
+                System.arraycopy(text, 0, bytes, position, length);
+                position += length;
+            }
+        }
+    },
+
+    /**
+     * Uniformly random bytes, which cannot be compressed.
+     */
+    RANDOM {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            random.nextBytes(bytes);
+        }
+    },
+
+    /**
+     * Binary data where every byte is half as frequent as the one before it, which produces codes longer than any
+     * limit.
+     */
+    SKEWED {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            for (var i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) Math.min(255, Long.numberOfTrailingZeros(random.nextLong() | Long.MIN_VALUE));
+            }
+        }
+    },
+
+    /**
+     * A single byte repeated over the whole input.
+     */
+    SINGLE_SYMBOL {
+        @Override
+        void fill(byte[] bytes, Random random) {
+            Arrays.fill(bytes, (byte) 'a');
+        }
+    };
+
+    private static final long SEED = 0x7E57_DA7AL;
+
+    private static final String[] WORDS = ("the of and to a in that is was he for it with as his on be at by had not are but "
+            + "from or have an they which one you were her all she there would their we him been has when who will more no "
+            + "if out so said what up its about into than them can only other new some could time these two may then do "
+            + "first any my now such like our over man me even most made after also did many before must through back "
+            + "years where much your way well down should because each just those people how too little state good very").split(" ");
+
+    /**
+     * @param size The number of bytes to generate.
+     * @return The bytes of the input. Always the same for the same size.
+     */
+    byte[] generate(int size) {
+        return generate(size, SEED);
+    }
+
+    /**
+     * @param size The number of bytes to generate.
+     * @param seed The seed of the input, so that different inputs of the same kind can be generated.
+     * @return The bytes of the input.
+     */
+    byte[] generate(int size, long seed) {
+        final var bytes = new byte[size];
+        fill(bytes, new Random(seed));
+        return bytes;
+    }
+
+    abstract void fill(byte[] bytes, Random random);
+}